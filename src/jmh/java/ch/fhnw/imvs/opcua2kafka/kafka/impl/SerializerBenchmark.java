@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Key;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing the key and value of one record.
+ *
+ * {@code CONFLUENT} uses the {@link KafkaAvroSerializer}, {@code SPECIFIC} the {@link AvroSpecificSerializer}.
+ * Both use a mock schema registry, the allocated bytes per record are reported by the {@code gc} profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+    private static final String TOPIC = "benchmark";
+
+    @Param({"CONFLUENT", "SPECIFIC"})
+    private String mode;
+
+    private Serializer<Object> keySerializer;
+
+    private Serializer<Object> valueSerializer;
+
+    private Key key;
+
+    private Message message;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        final SchemaRegistryClient registry = new MockSchemaRegistryClient();
+        if ("CONFLUENT".equals(mode)) {
+            keySerializer = new KafkaAvroSerializer(registry);
+            valueSerializer = new KafkaAvroSerializer(registry);
+        } else {
+            keySerializer = (Serializer<Object>) (Serializer<?>) new AvroSpecificSerializer<Key>(registry, true);
+            valueSerializer = (Serializer<Object>) (Serializer<?>) new AvroSpecificSerializer<Message>(registry, false);
+        }
+        key = Key.newBuilder().setNodeId("ns=2;s=Line1.Machine1.Temperature").build();
+        message = Message.newBuilder()
+                .setMetadata(Metadata.newBuilder()
+                        .setAggregateId("benchmark")
+                        .setTraceId("4d1f3b2a-7c55-4b6e-9f0e-2a1b3c4d5e6f")
+                        .setTimestamp(Instant.now())
+                        .build())
+                .setPayload(Payload.newBuilder()
+                        .setNodeId("ns=2;s=Line1.Machine1.Temperature")
+                        .setBrowseName("Temperature")
+                        .setDisplayName("Temperature")
+                        .setDescription("Temperature of machine 1")
+                        .setValue("21.5")
+                        .setTypedValue(21.5)
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public void serialize(final Blackhole blackhole) {
+        blackhole.consume(keySerializer.serialize(TOPIC, key));
+        blackhole.consume(valueSerializer.serialize(TOPIC, message));
+    }
+}
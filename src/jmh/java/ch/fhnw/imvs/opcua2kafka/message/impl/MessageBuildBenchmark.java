@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.ValueMode;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the Avro {@link Message} of one {@link OpcUaRecord} in the {@link CreateMessagePipe}.
+ *
+ * The record carries all attributes and timestamps of a monitored value, the built message is only consumed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBuildBenchmark {
+
+    @Param({"STRING", "TYPED", "BOTH"})
+    private ValueMode valueMode;
+
+    private CreateMessagePipe pipe;
+
+    private OpcUaRecord record;
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) {
+        final MessagePipe<Message> sink = blackhole::consume;
+        pipe = new CreateMessagePipe(sink, "benchmark", valueMode);
+        final Instant now = Instant.now();
+        record = new OpcUaRecord();
+        record.set(OpcUaAttributes.NodeId, "ns=2;s=Node1");
+        record.set(OpcUaAttributes.BrowseName, "Node1");
+        record.set(OpcUaAttributes.DisplayName, "Node 1");
+        record.set(OpcUaAttributes.Description, "Simulated node 1");
+        record.set(OpcUaAttributes.Value, 3.14159);
+        record.set(OpcUaAttributes.Timestamp, now);
+        record.set(OpcUaAttributes.SourceTimestamp, now);
+        record.set(OpcUaAttributes.ServerTimestamp, now);
+    }
+
+    @Benchmark
+    public void build() {
+        pipe.pipe(record);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.BufferOverflowPolicy;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.BufferWaitStrategy;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.PayloadMode;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.ValueMode;
+import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import ch.fhnw.imvs.opcua2kafka.schemas.Key;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.NodeDescription;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the message pipeline from the OPC UA records to the {@link KafkaService}.
+ *
+ * {@code PER_MESSAGE} pipes every message on its own, {@code BATCH} pipes all messages of a publish response
+ * or Read at once. The Kafka service only consumes the messages, so the numbers show the cost of the pipeline itself.
+ *
+ * The pipes behind the {@link CreateMessagePipe} are created by the {@link DefaultMessagePipeFactory}:
+ * {@code DIRECT} without buffer, {@code BUFFERED} with the ring buffer, {@code BATCHING} and {@code COMPACT} with the
+ * ring buffer and batches resp. compact payloads. With the ring buffer the numbers are those of the OPC UA threads,
+ * which are slowed down to the rate of the consumer threads by the {@code BLOCK} overflow policy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(PipelineBenchmark.MESSAGES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    static final int MESSAGES = 1000;
+
+    @Param({"PER_MESSAGE", "BATCH"})
+    private String mode;
+
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    @Param({"DIRECT", "BUFFERED", "BATCHING", "COMPACT"})
+    private String chain;
+
+    private MessagePipe<Message> sendPipe;
+
+    private CreateMessagePipe pipe;
+
+    private List<List<OpcUaRecord>> batches;
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) {
+        final MessageConfiguration configuration = MessageConfiguration.builder()
+                .aggregateId("benchmark")
+                .valueMode(ValueMode.STRING)
+                .payloadMode("COMPACT".equals(chain) ? PayloadMode.COMPACT : PayloadMode.FULL)
+                .bufferCapacity("DIRECT".equals(chain) ? 0 : 10000)
+                .bufferWaitStrategy(BufferWaitStrategy.BLOCKING)
+                .bufferOverflowPolicy(BufferOverflowPolicy.BLOCK)
+                .bufferConsumerThreads(1)
+                .batchEnabled("BATCHING".equals(chain) || "COMPACT".equals(chain))
+                .batchMaxCount(500)
+                .batchMaxBytes(1000000)
+                .batchMaxDelay(100)
+                .build();
+        sendPipe = new DefaultMessagePipeFactory().createDefaultPipe(new BlackholeKafkaService(blackhole),
+                configuration, new SimpleMeterRegistry());
+        pipe = new CreateMessagePipe(sendPipe, configuration.getAggregateId(), configuration.getValueMode());
+        batches = new ArrayList<>();
+        List<OpcUaRecord> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < MESSAGES; i++) {
+            final OpcUaRecord record = new OpcUaRecord();
+            record.set(OpcUaAttributes.NodeId, "ns=2;s=Node" + i);
+            record.set(OpcUaAttributes.BrowseName, "Node" + i);
+            record.set(OpcUaAttributes.DisplayName, "Node " + i);
+            record.set(OpcUaAttributes.Description, "Simulated node " + i);
+            record.set(OpcUaAttributes.Value, (double) i);
+            batch.add(record);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sendPipe.close();
+    }
+
+    @Benchmark
+    public void pipeline() {
+        for (final List<OpcUaRecord> batch : batches) {
+            if ("BATCH".equals(mode)) {
+                pipe.pipeBatch(batch);
+            } else {
+                for (final OpcUaRecord record : batch) {
+                    pipe.pipe(record);
+                }
+            }
+        }
+    }
+
+    private static final class BlackholeKafkaService implements KafkaService {
+
+        private final Blackhole blackhole;
+
+        BlackholeKafkaService(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void sendMessage(final Message message) {
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void sendMessage(final Key key, final Message message) {
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void sendMessages(final List<Message> messages) {
+            for (final Message message : messages) {
+                blackhole.consume(message);
+            }
+        }
+
+        @Override
+        public void sendBatch(final MessageBatch batch) {
+            blackhole.consume(batch);
+        }
+
+        @Override
+        public void sendNodeDescription(final NodeDescription description) {
+            blackhole.consume(description);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
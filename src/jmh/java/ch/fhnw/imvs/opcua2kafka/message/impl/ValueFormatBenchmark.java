@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting the value of a Variant into the message payload, per OPC UA data type.
+ *
+ * {@code stringValue} is the conversion of the {@code value} field, {@code typedValue} the one of the
+ * {@code typedValue} union. The allocated bytes per value are reported by the {@code gc} profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueFormatBenchmark {
+
+    private static final int ARRAY_LENGTH = 100;
+
+    @Param({"BOOLEAN", "INT32", "UINT32", "DOUBLE", "STRING", "DATETIME", "LOCALIZED_TEXT", "QUALIFIED_NAME", "DOUBLE_ARRAY"})
+    private String type;
+
+    private Object value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (type) {
+            case "BOOLEAN":
+                value = Boolean.TRUE;
+                break;
+            case "INT32":
+                value = 42;
+                break;
+            case "UINT32":
+                value = UInteger.valueOf(42);
+                break;
+            case "DOUBLE":
+                value = 3.14159;
+                break;
+            case "STRING":
+                value = "Simulated value";
+                break;
+            case "DATETIME":
+                value = DateTime.now();
+                break;
+            case "LOCALIZED_TEXT":
+                value = LocalizedText.english("Simulated value");
+                break;
+            case "QUALIFIED_NAME":
+                value = new QualifiedName(2, "Simulated");
+                break;
+            case "DOUBLE_ARRAY":
+                final Double[] array = new Double[ARRAY_LENGTH];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (double) i;
+                }
+                value = array;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    @Benchmark
+    public String stringValue() {
+        return String.valueOf(value);
+    }
+
+    @Benchmark
+    public Object typedValue() {
+        return TypedValues.of(value);
+    }
+}
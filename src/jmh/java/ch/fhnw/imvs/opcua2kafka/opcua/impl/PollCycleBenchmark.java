@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.simulation.SimulationServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Duration of one poll cycle against a local simulation server.
+ *
+ * {@code PER_NODE} issues one Read per node like the poll service did before batching,
+ * {@code BATCHED} uses the {@link BatchedPollReader} and {@code REGISTERED} additionally reads with
+ * registered Node Ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PollCycleBenchmark {
+
+    private static final int PORT = 12686;
+
+    private static final List<OpcUaAttribute> ATTRIBUTES =
+            List.of(OpcUaAttributes.BrowseName, OpcUaAttributes.Value, OpcUaAttributes.DisplayName, OpcUaAttributes.Description);
+
+    @Param({"1000", "10000", "100000"})
+    private int nodeCount;
+
+    @Param({"PER_NODE", "BATCHED", "REGISTERED"})
+    private String mode;
+
+    private SimulationServer server;
+
+    private OpcUaServiceImpl opcUaService;
+
+    private List<String> nodeIds;
+
+    private BatchedPollReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = SimulationServer.start(PORT, nodeCount);
+        nodeIds = server.getNodeIds();
+        opcUaService = new OpcUaServiceImpl(OpcUaConfiguration.builder()
+                .metadataCacheSize(nodeCount)
+                .build(), OpcUaConnectionConfiguration.builder().name("benchmark").build(), new SimpleMeterRegistry());
+        opcUaService.connect(server.getEndpointUrl());
+        reader = new BatchedPollReader(opcUaService, nodeIds, ATTRIBUTES, 0, 4);
+        if ("REGISTERED".equals(mode)) {
+            reader.registerNodes().join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        opcUaService.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public int pollCycle() {
+        final AtomicInteger received = new AtomicInteger();
+        if ("PER_NODE".equals(mode)) {
+            final List<CompletableFuture<Map<OpcUaAttribute, Object>>> reads = new ArrayList<>(nodeIds.size());
+            for (final String nodeId : nodeIds) {
+                reads.add(opcUaService.readAttributes(nodeId, ATTRIBUTES).thenApply((values) -> {
+                    received.incrementAndGet();
+                    return values;
+                }));
+            }
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+        } else {
+            reader.read((values) -> received.addAndGet(values.size())).join();
+        }
+        return received.get();
+    }
+}
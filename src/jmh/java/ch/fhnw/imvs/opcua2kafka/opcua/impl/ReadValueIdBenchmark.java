@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.channel.EncodingLimits;
+import org.eclipse.milo.opcua.stack.core.serialization.SerializationContext;
+import org.eclipse.milo.opcua.stack.core.types.DataTypeManager;
+import org.eclipse.milo.opcua.stack.core.types.OpcUaDataTypeManager;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of preparing the ids of one Read per node.
+ *
+ * {@code PARSED} parses the configured Node Id and builds the {@link ReadValueId} for every Read, like ad-hoc reads do,
+ * {@code PREBUILT} encodes ids which were built once from the configured string Node Ids like the {@link BatchedPollReader},
+ * and {@code REGISTERED} encodes ids built from the numeric Node Ids returned by RegisterNodes.
+ * Registered Node Ids are numeric, so they are shorter to encode and cheaper for the server to resolve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ReadValueIdBenchmark.NODES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadValueIdBenchmark {
+
+    static final int NODES = 1000;
+
+    private static final UInteger VALUE = AttributeId.Value.uid();
+
+    @Param({"PARSED", "PREBUILT", "REGISTERED"})
+    private String mode;
+
+    private final List<String> nodeIds = new ArrayList<>(NODES);
+
+    private final List<ReadValueId> readValueIds = new ArrayList<>(NODES);
+
+    private final SerializationContext context = new SerializationContext() {
+        private final NamespaceTable namespaceTable = new NamespaceTable();
+
+        @Override
+        public EncodingLimits getEncodingLimits() {
+            return EncodingLimits.DEFAULT;
+        }
+
+        @Override
+        public NamespaceTable getNamespaceTable() {
+            return namespaceTable;
+        }
+
+        @Override
+        public DataTypeManager getDataTypeManager() {
+            return OpcUaDataTypeManager.getInstance();
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < NODES; i++) {
+            final String nodeId = "ns=2;s=Simulation.Line" + (i / 100) + ".Station" + (i % 100) + ".Temperature";
+            nodeIds.add(nodeId);
+            final NodeId readNodeId = "REGISTERED".equals(mode) ? new NodeId(2, 100_000 + i) : NodeId.parse(nodeId);
+            readValueIds.add(new ReadValueId(readNodeId, VALUE, null, QualifiedName.NULL_VALUE));
+        }
+    }
+
+    @Benchmark
+    public void encodeReadValueIds(final Blackhole blackhole) {
+        for (int i = 0; i < NODES; i++) {
+            final ReadValueId id = "PARSED".equals(mode)
+                    ? new ReadValueId(NodeId.parse(nodeIds.get(i)), VALUE, null, QualifiedName.NULL_VALUE)
+                    : readValueIds.get(i);
+            blackhole.consume(ExtensionObject.encode(context, id));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing the values of one publish response to a listener.
+ *
+ * {@code MAP} builds an unmodifiable {@link HashMap} per value like the services did before,
+ * {@code RECORD} fills pooled {@link OpcUaRecord}s. Run with {@code -prof gc} to compare the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(RecordBenchmark.VALUES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordBenchmark {
+
+    static final int VALUES = 500;
+
+    @Param({"MAP", "RECORD"})
+    private String mode;
+
+    private final List<NodeMetadata> metadata = new ArrayList<>(VALUES);
+
+    private final List<DataValue> values = new ArrayList<>(VALUES);
+
+    private final RecordBatchPool pool = new RecordBatchPool(4);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < VALUES; i++) {
+            metadata.add(new NodeMetadata("ns=2;s=Node" + i, "Node" + i, "Node " + i, "Simulated node " + i, 0));
+            values.add(new DataValue(new Variant((double) i)));
+        }
+    }
+
+    @Benchmark
+    public void notifyListener(final Blackhole blackhole) {
+        if ("MAP".equals(mode)) {
+            final List<Map<OpcUaAttribute, String>> messages = new ArrayList<>(VALUES);
+            for (int i = 0; i < VALUES; i++) {
+                final NodeMetadata m = metadata.get(i);
+                final Map<OpcUaAttribute, String> map = new HashMap<>();
+                map.put(OpcUaAttributes.NodeId, m.getNodeId());
+                map.put(OpcUaAttributes.BrowseName, m.getBrowseName());
+                map.put(OpcUaAttributes.DisplayName, m.getDisplayName());
+                map.put(OpcUaAttributes.Description, m.getDescription());
+                map.put(OpcUaAttributes.Value, OpcUaAttributes.Value.asString(values.get(i).getValue()));
+                messages.add(Collections.unmodifiableMap(map));
+            }
+            for (final Map<OpcUaAttribute, String> message : messages) {
+                blackhole.consume(message.get(OpcUaAttributes.Value));
+            }
+        } else {
+            final RecordBatchPool.Batch records = pool.acquire();
+            for (int i = 0; i < VALUES; i++) {
+                final NodeMetadata m = metadata.get(i);
+                final OpcUaRecord record = records.add();
+                record.set(OpcUaAttributes.NodeId, m.getNodeId());
+                m.copyTo(record);
+                record.set(OpcUaAttributes.Value, values.get(i).getValue().getValue());
+            }
+            for (int i = 0; i < records.size(); i++) {
+                blackhole.consume(records.get(i).get(OpcUaAttributes.Value));
+            }
+            pool.release(records);
+        }
+    }
+}
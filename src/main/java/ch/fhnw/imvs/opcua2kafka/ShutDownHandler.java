@@ -16,8 +16,10 @@
 package ch.fhnw.imvs.opcua2kafka;
 
 import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
-import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaPollService;
-import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnection;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnectionManager;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,29 +35,34 @@ public class ShutDownHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ShutDownHandler.class);
 
-    private final OpcUaService opcUaService;
+    private final OpcUaConnectionManager connectionManager;
 
-    private final OpcUaPollService opcUaPollService;
+    private final MessagePipe<Message> messagePipe;
 
     private final KafkaService kafkaService;
 
     @Autowired
-    public ShutDownHandler(final OpcUaService opcUaService,
-                           final OpcUaPollService opcUaPollService,
+    public ShutDownHandler(final OpcUaConnectionManager connectionManager,
+                           final MessagePipe<Message> messagePipe,
                            final KafkaService kafkaService) {
-        this.opcUaService = opcUaService;
-        this.opcUaPollService = opcUaPollService;
+        this.connectionManager = connectionManager;
+        this.messagePipe = messagePipe;
         this.kafkaService = kafkaService;
     }
 
     @PreDestroy
     public void destroy() {
         logger.info("Shutting down application...");
-        opcUaPollService.stop();
-        logger.info("Successfully stopped OPC Poll service");
+        for (final OpcUaConnection connection : connectionManager.getConnections()) {
+            connection.getOpcUaPollService().stop();
+            logger.info("Successfully stopped OPC Poll service of connection '{}'", connection.getName());
 
-        opcUaService.disconnect();
-        logger.info("Successfully disconnected OPC UA service");
+            connection.getOpcUaService().disconnect();
+            logger.info("Successfully disconnected OPC UA service of connection '{}' ({})", connection.getName(), connection);
+        }
+
+        messagePipe.close();
+        logger.info("Successfully closed message pipe");
 
         kafkaService.flush();
         logger.info("Successfully flushed to Kafka");
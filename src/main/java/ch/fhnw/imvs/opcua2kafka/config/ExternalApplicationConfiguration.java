@@ -17,10 +17,15 @@ package ch.fhnw.imvs.opcua2kafka.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -31,6 +36,21 @@ public class ExternalApplicationConfiguration {
 
     private static final String OPC_NODE_SEPARATOR = ",";
 
+    private static final String MONITORING_PROFILES_PROPERTY = "configuration.opcua.monitoring.profiles";
+
+    private static final String SUBSCRIPTION_GROUPS_PROPERTY = "configuration.opcua.subscription.groups";
+
+    private static final String POLL_GROUPS_PROPERTY = "configuration.opcua.polling.groups";
+
+    private static final String PARTITION_GROUPS_PROPERTY = "configuration.kafka.partitioning.groups";
+
+    private static final String CONNECTIONS_PROPERTY = "configuration.opcua.connections";
+
+    private static final String DEFAULT_CONNECTION_NAME = "default";
+
+    @Autowired
+    private Environment environment;
+
     @Value(value = "${configuration.opcua.server}")
     private String opcUaServer;
 
@@ -46,6 +66,81 @@ public class ExternalApplicationConfiguration {
     @Value(value = "${configuration.opcua.polling.nodes}")
     private String opcUaPollingNodes;
 
+    @Value(value = "${configuration.opcua.polling.maxNodesPerRead}")
+    private String opcUaPollingMaxNodesPerRead;
+
+    @Value(value = "${configuration.opcua.polling.maxConcurrentReads}")
+    private String opcUaPollingMaxConcurrentReads;
+
+    @Value(value = "${configuration.opcua.polling.changeOnly}")
+    private String opcUaPollingChangeOnly;
+
+    @Value(value = "${configuration.opcua.polling.heartbeatCycles}")
+    private String opcUaPollingHeartbeatCycles;
+
+    @Value(value = "${configuration.opcua.polling.tickDuration}")
+    private String opcUaPollingTickDuration;
+
+    @Value(value = "${configuration.opcua.polling.cycleDeadline}")
+    private String opcUaPollingCycleDeadline;
+
+    @Value(value = "${configuration.opcua.polling.overrunPolicy}")
+    private String opcUaPollingOverrunPolicy;
+
+    @Value(value = "${configuration.opcua.polling.registerNodes}")
+    private String opcUaPollingRegisterNodes;
+
+    @Value(value = "${configuration.opcua.monitoring.samplingInterval}")
+    private String opcUaMonitoringSamplingInterval;
+
+    @Value(value = "${configuration.opcua.monitoring.queueSize}")
+    private String opcUaMonitoringQueueSize;
+
+    @Value(value = "${configuration.opcua.monitoring.discardOldest}")
+    private String opcUaMonitoringDiscardOldest;
+
+    @Value(value = "${configuration.opcua.monitoring.deadbandType}")
+    private String opcUaMonitoringDeadbandType;
+
+    @Value(value = "${configuration.opcua.monitoring.deadbandValue}")
+    private String opcUaMonitoringDeadbandValue;
+
+    @Value(value = "${configuration.opcua.monitoring.trigger}")
+    private String opcUaMonitoringTrigger;
+
+    @Value(value = "${configuration.opcua.monitoring.maxItemsPerCall}")
+    private String opcUaMonitoringMaxItemsPerCall;
+
+    @Value(value = "${configuration.opcua.monitoring.maxConcurrentCalls}")
+    private String opcUaMonitoringMaxConcurrentCalls;
+
+    @Value(value = "${configuration.opcua.monitoring.maxRetries}")
+    private String opcUaMonitoringMaxRetries;
+
+    @Value(value = "${configuration.opcua.subscription.publishingInterval}")
+    private String opcUaSubscriptionPublishingInterval;
+
+    @Value(value = "${configuration.opcua.subscription.maxNotificationsPerPublish}")
+    private String opcUaSubscriptionMaxNotificationsPerPublish;
+
+    @Value(value = "${configuration.opcua.subscription.priority}")
+    private String opcUaSubscriptionPriority;
+
+    @Value(value = "${configuration.opcua.subscription.maxItems}")
+    private String opcUaSubscriptionMaxItems;
+
+    @Value(value = "${configuration.opcua.subscription.dispatcherThreads}")
+    private String opcUaSubscriptionDispatcherThreads;
+
+    @Value(value = "${configuration.opcua.metadataCache.size}")
+    private String opcUaMetadataCacheSize;
+
+    @Value(value = "${configuration.opcua.metadataCache.timeToLive}")
+    private String opcUaMetadataCacheTimeToLive;
+
+    @Value(value = "${configuration.opcua.timestamps}")
+    private String opcUaTimestamps;
+
     @Value(value = "${configuration.kafka.bootstrapServers}")
     private String kafkaBootstrapServers;
 
@@ -61,9 +156,78 @@ public class ExternalApplicationConfiguration {
     @Value(value = "${configuration.kafka.topic.replicationFactor}")
     private String kafkaTopicReplicationFactor;
 
+    @Value(value = "${configuration.kafka.recordTimestamp}")
+    private String kafkaRecordTimestamp;
+
+    @Value(value = "${configuration.kafka.batchTopic.name}")
+    private String kafkaBatchTopicName;
+
+    @Value(value = "${configuration.kafka.metadataTopic.name}")
+    private String kafkaMetadataTopicName;
+
+    @Value(value = "${configuration.kafka.partitioning.strategy}")
+    private String kafkaPartitioningStrategy;
+
+    @Value(value = "${configuration.kafka.spool.directory}")
+    private String kafkaSpoolDirectory;
+
+    @Value(value = "${configuration.kafka.spool.segmentSize}")
+    private String kafkaSpoolSegmentSize;
+
+    @Value(value = "${configuration.kafka.spool.maxBytes}")
+    private String kafkaSpoolMaxBytes;
+
+    @Value(value = "${configuration.kafka.spool.retention}")
+    private String kafkaSpoolRetention;
+
+    @Value(value = "${configuration.kafka.spool.replayRate}")
+    private String kafkaSpoolReplayRate;
+
+    @Value(value = "${configuration.kafka.spool.bufferThreshold}")
+    private String kafkaSpoolBufferThreshold;
+
     @Value(value = "${configuration.aggregateId}")
     private String aggregateId;
 
+    @Value(value = "${configuration.message.valueMode}")
+    private String messageValueMode;
+
+    @Value(value = "${configuration.message.payloadMode}")
+    private String messagePayloadMode;
+
+    @Value(value = "${configuration.message.buffer.capacity}")
+    private String messageBufferCapacity;
+
+    @Value(value = "${configuration.message.buffer.waitStrategy}")
+    private String messageBufferWaitStrategy;
+
+    @Value(value = "${configuration.message.buffer.overflowPolicy}")
+    private String messageBufferOverflowPolicy;
+
+    @Value(value = "${configuration.message.buffer.consumerThreads}")
+    private String messageBufferConsumerThreads;
+
+    @Value(value = "${configuration.message.batch.enabled}")
+    private String messageBatchEnabled;
+
+    @Value(value = "${configuration.message.batch.maxCount}")
+    private String messageBatchMaxCount;
+
+    @Value(value = "${configuration.message.batch.maxBytes}")
+    private String messageBatchMaxBytes;
+
+    @Value(value = "${configuration.message.batch.maxDelay}")
+    private String messageBatchMaxDelay;
+
+    @Value(value = "${configuration.message.capture.file}")
+    private String messageCaptureFile;
+
+    @Value(value = "${configuration.message.replay.file}")
+    private String messageReplayFile;
+
+    @Value(value = "${configuration.message.replay.speed}")
+    private String messageReplaySpeed;
+
     private ApplicationConfiguration applicationConfiguration;
 
     @Bean
@@ -102,7 +266,22 @@ public class ExternalApplicationConfiguration {
     }
 
     private ApplicationConfiguration readApplicationConfiguration() {
-        final MessageConfiguration messageConfiguration = MessageConfiguration.builder().aggregateId(aggregateId).build();
+        final MessageConfiguration messageConfiguration = MessageConfiguration.builder()
+                .aggregateId(aggregateId)
+                .valueMode(MessageConfiguration.ValueMode.valueOf(messageValueMode.toUpperCase()))
+                .payloadMode(MessageConfiguration.PayloadMode.valueOf(messagePayloadMode.toUpperCase()))
+                .bufferCapacity(Integer.parseInt(messageBufferCapacity))
+                .bufferWaitStrategy(MessageConfiguration.BufferWaitStrategy.valueOf(messageBufferWaitStrategy.toUpperCase()))
+                .bufferOverflowPolicy(MessageConfiguration.BufferOverflowPolicy.valueOf(messageBufferOverflowPolicy.toUpperCase()))
+                .bufferConsumerThreads(Integer.parseInt(messageBufferConsumerThreads))
+                .batchEnabled(Boolean.parseBoolean(messageBatchEnabled))
+                .batchMaxCount(Integer.parseInt(messageBatchMaxCount))
+                .batchMaxBytes(Integer.parseInt(messageBatchMaxBytes))
+                .batchMaxDelay(Long.parseLong(messageBatchMaxDelay))
+                .captureFile(messageCaptureFile)
+                .replayFile(messageReplayFile)
+                .replaySpeed(Double.parseDouble(messageReplaySpeed))
+                .build();
         final KafkaConfiguration kafkaConfiguration = KafkaConfiguration
                 .builder()
                 .bootstrapAddress(kafkaBootstrapServers)
@@ -110,6 +289,17 @@ public class ExternalApplicationConfiguration {
                 .topicName(kafkaTopicName)
                 .topicNumPartitions(Integer.parseInt(kafkaTopicPartitionCount))
                 .replicationFactor(Integer.parseInt(kafkaTopicReplicationFactor))
+                .recordTimestamp(KafkaConfiguration.RecordTimestamp.valueOf(kafkaRecordTimestamp.toUpperCase()))
+                .batchTopicName(kafkaBatchTopicName)
+                .metadataTopicName(kafkaMetadataTopicName)
+                .partitionStrategy(KafkaConfiguration.PartitionStrategy.valueOf(kafkaPartitioningStrategy.toUpperCase()))
+                .partitionGroups(readPartitionGroups())
+                .spoolDirectory(kafkaSpoolDirectory)
+                .spoolSegmentSize(Integer.parseInt(kafkaSpoolSegmentSize))
+                .spoolMaxBytes(Long.parseLong(kafkaSpoolMaxBytes))
+                .spoolRetention(Long.parseLong(kafkaSpoolRetention))
+                .spoolReplayRate(Integer.parseInt(kafkaSpoolReplayRate))
+                .spoolBufferThreshold(Double.parseDouble(kafkaSpoolBufferThreshold))
                 .build();
 
 
@@ -120,6 +310,27 @@ public class ExternalApplicationConfiguration {
                 .usePollingService(Boolean.parseBoolean(opcUaPollingEnabled))
                 .defaultPollingCycle(Integer.parseInt(opcUaPollingCycle))
                 .pollingNodes(parseNodeIds(opcUaPollingNodes))
+                .pollingMaxNodesPerRead(Long.parseLong(opcUaPollingMaxNodesPerRead))
+                .pollingMaxConcurrentReads(Integer.parseInt(opcUaPollingMaxConcurrentReads))
+                .pollingChangeOnly(Boolean.parseBoolean(opcUaPollingChangeOnly))
+                .pollingHeartbeatCycles(Integer.parseInt(opcUaPollingHeartbeatCycles))
+                .pollingTickDuration(Long.parseLong(opcUaPollingTickDuration))
+                .pollingCycleDeadline(Long.parseLong(opcUaPollingCycleDeadline))
+                .pollingOverrunPolicy(PollGroup.OverrunPolicy.valueOf(opcUaPollingOverrunPolicy.toUpperCase()))
+                .pollGroups(readPollGroups())
+                .pollingRegisterNodes(Boolean.parseBoolean(opcUaPollingRegisterNodes))
+                .defaultMonitoringProfile(readDefaultMonitoringProfile())
+                .monitoringProfiles(readMonitoringProfiles())
+                .monitoringMaxItemsPerCall(Long.parseLong(opcUaMonitoringMaxItemsPerCall))
+                .monitoringMaxConcurrentCalls(Integer.parseInt(opcUaMonitoringMaxConcurrentCalls))
+                .monitoringMaxRetries(Integer.parseInt(opcUaMonitoringMaxRetries))
+                .defaultSubscriptionGroup(readDefaultSubscriptionGroup())
+                .subscriptionGroups(readSubscriptionGroups())
+                .subscriptionDispatcherThreads(Integer.parseInt(opcUaSubscriptionDispatcherThreads))
+                .metadataCacheSize(Integer.parseInt(opcUaMetadataCacheSize))
+                .metadataCacheTimeToLive(Long.parseLong(opcUaMetadataCacheTimeToLive))
+                .timestamps(OpcUaConfiguration.Timestamps.valueOf(opcUaTimestamps.toUpperCase()))
+                .connections(readConnections())
                 .build();
 
         final ApplicationConfiguration applicationConfiguration = ApplicationConfiguration
@@ -132,6 +343,79 @@ public class ExternalApplicationConfiguration {
         return applicationConfiguration;
     }
 
+    private MonitoringProfile readDefaultMonitoringProfile() {
+        return MonitoringProfile.builder()
+                .name("default")
+                .samplingInterval(Double.parseDouble(opcUaMonitoringSamplingInterval))
+                .queueSize(Integer.parseInt(opcUaMonitoringQueueSize))
+                .discardOldest(Boolean.parseBoolean(opcUaMonitoringDiscardOldest))
+                .deadbandType(MonitoringProfile.DeadbandType.valueOf(opcUaMonitoringDeadbandType.toUpperCase()))
+                .deadbandValue(Double.parseDouble(opcUaMonitoringDeadbandValue))
+                .trigger(MonitoringProfile.Trigger.valueOf(opcUaMonitoringTrigger.toUpperCase()))
+                .build();
+    }
+
+    private List<MonitoringProfile> readMonitoringProfiles() {
+        return Binder.get(environment)
+                .bind(MONITORING_PROFILES_PROPERTY, Bindable.listOf(MonitoringProfile.class))
+                .orElse(Collections.emptyList());
+    }
+
+    private SubscriptionGroup readDefaultSubscriptionGroup() {
+        return SubscriptionGroup.builder()
+                .name("default")
+                .publishingInterval(Double.parseDouble(opcUaSubscriptionPublishingInterval))
+                .maxNotificationsPerPublish(Integer.parseInt(opcUaSubscriptionMaxNotificationsPerPublish))
+                .priority(Integer.parseInt(opcUaSubscriptionPriority))
+                .maxItemsPerSubscription(Integer.parseInt(opcUaSubscriptionMaxItems))
+                .build();
+    }
+
+    private List<SubscriptionGroup> readSubscriptionGroups() {
+        return Binder.get(environment)
+                .bind(SUBSCRIPTION_GROUPS_PROPERTY, Bindable.listOf(SubscriptionGroup.class))
+                .orElse(Collections.emptyList());
+    }
+
+    private List<PollGroup> readPollGroups() {
+        return Binder.get(environment)
+                .bind(POLL_GROUPS_PROPERTY, Bindable.listOf(PollGroup.class))
+                .orElse(Collections.emptyList());
+    }
+
+    private List<PartitionGroup> readPartitionGroups() {
+        return Binder.get(environment)
+                .bind(PARTITION_GROUPS_PROPERTY, Bindable.listOf(PartitionGroup.class))
+                .orElse(Collections.emptyList());
+    }
+
+    private List<OpcUaConnectionConfiguration> readConnections() {
+        final OpcUaConnectionConfiguration defaultConnection = OpcUaConnectionConfiguration.builder()
+                .name(DEFAULT_CONNECTION_NAME)
+                .opcUaServer(opcUaServer)
+                .aggregateId(aggregateId)
+                .usePollingService(Boolean.parseBoolean(opcUaPollingEnabled))
+                .defaultPollingCycle(Long.parseLong(opcUaPollingCycle))
+                .nodes(parseNodeIds(opcUaNodes))
+                .pollingNodes(parseNodeIds(opcUaPollingNodes))
+                .build();
+        final List<OpcUaConnectionConfiguration> connections = Binder.get(environment)
+                .bind(CONNECTIONS_PROPERTY, Bindable.listOf(OpcUaConnectionConfiguration.class))
+                .orElse(Collections.emptyList());
+        if (connections.isEmpty()) {
+            return List.of(defaultConnection.withDefaults(defaultConnection));
+        }
+        final List<OpcUaConnectionConfiguration> result = new ArrayList<>(connections.size());
+        for (int i = 0; i < connections.size(); i++) {
+            final OpcUaConnectionConfiguration connection = connections.get(i).withDefaults(defaultConnection);
+            if (connection.getName() == null) {
+                connection.setName("connection-" + i);
+            }
+            result.add(connection);
+        }
+        return result;
+    }
+
     private List<String> parseNodeIds(final String nodeIds) {
         if (nodeIds == null || nodeIds.isBlank()) {
             return Collections.emptyList();
@@ -20,12 +20,46 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import java.util.List;
+
 @Getter
 @Setter
 @ToString
 @Builder
 public class KafkaConfiguration {
 
+    /**
+     * Distribution of the nodes which do not match a {@link PartitionGroup} over the partitions of the topic.
+     */
+    public enum PartitionStrategy {
+        /**
+         * Hash of the serialized key modulo the number of partitions, the same as the default Kafka partitioner.
+         */
+        DEFAULT,
+        /**
+         * Consistent hash of the Node Id, only few nodes move to another partition when partitions are added.
+         */
+        CONSISTENT
+    }
+
+    /**
+     * Timestamp of the Kafka records.
+     */
+    public enum RecordTimestamp {
+        /**
+         * Time at which the producer sent the record.
+         */
+        PRODUCER,
+        /**
+         * Source timestamp of the value, the producer time if the value has none.
+         */
+        SOURCE,
+        /**
+         * Server timestamp of the value, the producer time if the value has none.
+         */
+        SERVER
+    }
+
     private String bootstrapAddress;
     private String schemaRegistryAddress;
 
@@ -33,4 +67,33 @@ public class KafkaConfiguration {
     private String topicName;
     private int topicNumPartitions;
     private int replicationFactor;
+    private RecordTimestamp recordTimestamp;
+
+    /**
+     * Topic of the message batches, see {@link MessageConfiguration#isBatchEnabled()}.
+     */
+    private String batchTopicName;
+
+    /**
+     * Log compacted topic of the node descriptions, see {@link MessageConfiguration.PayloadMode#COMPACT}.
+     */
+    private String metadataTopicName;
+
+    // Partitioning
+    private PartitionStrategy partitionStrategy;
+    private List<PartitionGroup> partitionGroups;
+
+    // Spool
+    /**
+     * Directory of the spool which keeps the records while Kafka is unreachable, spooling is disabled if empty.
+     */
+    private String spoolDirectory;
+    private int spoolSegmentSize;
+    private long spoolMaxBytes;
+    private long spoolRetention;
+    private int spoolReplayRate;
+    /**
+     * Used part of the producer buffer from which on new records are spooled, between {@code 0} and {@code 1}.
+     */
+    private double spoolBufferThreshold;
 }
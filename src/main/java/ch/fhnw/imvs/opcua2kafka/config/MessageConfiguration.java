@@ -25,5 +25,123 @@ import lombok.ToString;
 @ToString
 @Builder
 public class MessageConfiguration {
+
+    /**
+     * Encoding of the OPC UA value in the message payload.
+     */
+    public enum ValueMode {
+        /**
+         * Only the String representation in {@code value}, as sent by earlier versions.
+         */
+        STRING,
+        /**
+         * Only the typed value in {@code typedValue}.
+         */
+        TYPED,
+        /**
+         * Both representations.
+         */
+        BOTH
+    }
+
+    /**
+     * Attributes of the node which are sent with every value.
+     */
+    public enum PayloadMode {
+        /**
+         * BrowseName, DisplayName and Description are sent in every payload.
+         */
+        FULL,
+        /**
+         * BrowseName, DisplayName and Description are only sent to the metadata topic when they change,
+         * the payloads contain empty strings instead.
+         */
+        COMPACT
+    }
+
+    /**
+     * Behaviour of the message buffer when it is full.
+     */
+    public enum BufferOverflowPolicy {
+        /**
+         * The OPC UA thread waits until there is space in the buffer.
+         */
+        BLOCK,
+        /**
+         * The oldest buffered message is dropped.
+         */
+        DROP_OLDEST,
+        /**
+         * A buffered message of the same node and aggregate is replaced by the newer one, so that only the latest value is sent.
+         * If the buffer is full and contains no message of the node the oldest message is dropped.
+         */
+        CONFLATE
+    }
+
+    /**
+     * Behaviour of the buffer consumer threads while the buffer is empty.
+     */
+    public enum BufferWaitStrategy {
+        /**
+         * Wait until a message is signalled, lowest CPU usage.
+         */
+        BLOCKING,
+        /**
+         * Poll the buffer and sleep shortly between the attempts.
+         */
+        SLEEPING,
+        /**
+         * Poll the buffer and yield between the attempts, lowest latency.
+         */
+        YIELDING
+    }
+
     private String aggregateId;
+
+    private ValueMode valueMode;
+
+    private PayloadMode payloadMode;
+
+    /**
+     * Number of messages which can be buffered between the OPC UA services and Kafka, {@code 0} disables the buffer.
+     */
+    private int bufferCapacity;
+
+    private BufferWaitStrategy bufferWaitStrategy;
+
+    private BufferOverflowPolicy bufferOverflowPolicy;
+
+    private int bufferConsumerThreads;
+
+    /**
+     * Whether the payloads of many messages are sent as one {@code MessageBatch} record to the batch topic.
+     */
+    private boolean batchEnabled;
+
+    private int batchMaxCount;
+
+    /**
+     * Maximum estimated size of a batch in bytes, should stay below the {@code max.request.size} of the producer.
+     */
+    private int batchMaxBytes;
+
+    /**
+     * Maximum time in milliseconds a payload waits for its batch to be sent.
+     */
+    private long batchMaxDelay;
+
+    /**
+     * File to which the records received from the OPC UA servers are captured, capturing is disabled if empty.
+     */
+    private String captureFile;
+
+    /**
+     * Capture file which is replayed instead of connecting to the OPC UA servers, replay is disabled if empty.
+     */
+    private String replayFile;
+
+    /**
+     * Factor by which the capture is replayed faster than it was recorded, {@code 0} replays at maximum speed.
+     */
+    private double replaySpeed;
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.config;
+
+import lombok.*;
+
+/**
+ * Monitoring parameters for all monitored nodes whose Node Id matches {@link #nodePattern}.
+ *
+ * Properties which are {@code null} are taken from the default profile.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class MonitoringProfile {
+
+    public enum DeadbandType {
+        NONE, ABSOLUTE, PERCENT
+    }
+
+    public enum Trigger {
+        STATUS, STATUS_VALUE, STATUS_VALUE_TIMESTAMP
+    }
+
+    private String name;
+
+    /**
+     * Regular expression which has to match the whole Node Id, e.g. {@code ns=2;s=Line1\..*}.
+     */
+    private String nodePattern;
+
+    private Double samplingInterval;
+
+    private Integer queueSize;
+
+    private Boolean discardOldest;
+
+    private DeadbandType deadbandType;
+
+    private Double deadbandValue;
+
+    private Trigger trigger;
+
+    /**
+     * Creates a copy of this profile in which all unset properties are taken from the provided profile.
+     *
+     * @param defaults Profile which provides the missing values.
+     * @return Merged profile.
+     */
+    public MonitoringProfile withDefaults(final MonitoringProfile defaults) {
+        return MonitoringProfile.builder()
+                .name(name)
+                .nodePattern(nodePattern)
+                .samplingInterval(samplingInterval != null ? samplingInterval : defaults.samplingInterval)
+                .queueSize(queueSize != null ? queueSize : defaults.queueSize)
+                .discardOldest(discardOldest != null ? discardOldest : defaults.discardOldest)
+                .deadbandType(deadbandType != null ? deadbandType : defaults.deadbandType)
+                .deadbandValue(deadbandValue != null ? deadbandValue : defaults.deadbandValue)
+                .trigger(trigger != null ? trigger : defaults.trigger)
+                .build();
+    }
+}
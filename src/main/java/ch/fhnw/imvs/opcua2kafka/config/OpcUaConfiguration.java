@@ -27,6 +27,13 @@ import java.util.*;
 @Builder
 public class OpcUaConfiguration {
 
+    /**
+     * Timestamps which are requested with the values of monitored and polled nodes.
+     */
+    public enum Timestamps {
+        SOURCE, SERVER, BOTH, NEITHER
+    }
+
     private String opcUaServer;
 
     private boolean usePollingService;
@@ -37,6 +44,67 @@ public class OpcUaConfiguration {
 
     private List<String> pollingNodes;
 
+    private long pollingMaxNodesPerRead;
+
+    private int pollingMaxConcurrentReads;
+
+    /**
+     * Whether polled nodes are only forwarded if their value changed since the previous cycle.
+     */
+    private boolean pollingChangeOnly;
+
+    /**
+     * Number of unchanged cycles after which a polled node is forwarded anyway, {@code 0} to disable.
+     */
+    private int pollingHeartbeatCycles;
+
+    /**
+     * Resolution of the poll scheduler in Milliseconds.
+     */
+    private long pollingTickDuration;
+
+    /**
+     * Deadline of a poll cycle in Milliseconds, {@code 0} to use the polling interval.
+     */
+    private long pollingCycleDeadline;
+
+    private PollGroup.OverrunPolicy pollingOverrunPolicy;
+
+    private List<PollGroup> pollGroups;
+
+    /**
+     * Whether polled nodes are registered with the RegisterNodes service.
+     */
+    private boolean pollingRegisterNodes;
+
+    private MonitoringProfile defaultMonitoringProfile;
+
+    private List<MonitoringProfile> monitoringProfiles;
+
+    private long monitoringMaxItemsPerCall;
+
+    private int monitoringMaxConcurrentCalls;
+
+    private int monitoringMaxRetries;
+
+    private SubscriptionGroup defaultSubscriptionGroup;
+
+    private List<SubscriptionGroup> subscriptionGroups;
+
+    private int subscriptionDispatcherThreads;
+
+    private int metadataCacheSize;
+
+    private long metadataCacheTimeToLive;
+
+    private Timestamps timestamps;
+
+    /**
+     * Connections to the OPC UA servers, contains a single connection built from the properties above
+     * if no connections are configured explicitly.
+     */
+    private List<OpcUaConnectionConfiguration> connections;
+
     public List<String> getMonitorNodes() {
         final Collection<String> result = new HashSet<>(nodes);
         result.addAll(pollingNodes);
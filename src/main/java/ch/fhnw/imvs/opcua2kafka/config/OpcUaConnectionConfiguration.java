@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.config;
+
+import lombok.*;
+
+import java.util.*;
+
+/**
+ * Configuration of a single OPC UA server connection.
+ *
+ * Properties which are {@code null} are taken from the default connection, which is configured
+ * by the single server properties of the {@link OpcUaConfiguration}. All other properties of the
+ * {@link OpcUaConfiguration}, e.g. the poll and subscription groups, apply to every connection.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class OpcUaConnectionConfiguration {
+
+    private String name;
+
+    private String opcUaServer;
+
+    private String aggregateId;
+
+    private Boolean usePollingService;
+
+    private Long defaultPollingCycle;
+
+    private List<String> nodes;
+
+    private List<String> pollingNodes;
+
+    /**
+     * Monitoring profiles of this connection, the profiles of the {@link OpcUaConfiguration} are used if empty.
+     */
+    private List<MonitoringProfile> monitoringProfiles;
+
+    public List<String> getMonitorNodes() {
+        final Collection<String> result = new HashSet<>(nodes);
+        result.addAll(pollingNodes);
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Creates a copy of this connection in which all unset properties are taken from the provided connection.
+     *
+     * @param defaults Connection which provides the missing values.
+     * @return Merged connection.
+     */
+    public OpcUaConnectionConfiguration withDefaults(final OpcUaConnectionConfiguration defaults) {
+        return OpcUaConnectionConfiguration.builder()
+                .name(name)
+                .opcUaServer(opcUaServer != null ? opcUaServer : defaults.opcUaServer)
+                .aggregateId(aggregateId != null ? aggregateId : defaults.aggregateId)
+                .usePollingService(usePollingService != null ? usePollingService : defaults.usePollingService)
+                .defaultPollingCycle(defaultPollingCycle != null ? defaultPollingCycle : defaults.defaultPollingCycle)
+                .nodes(nodes != null ? nodes : Collections.emptyList())
+                .pollingNodes(pollingNodes != null ? pollingNodes : Collections.emptyList())
+                .monitoringProfiles(monitoringProfiles != null ? monitoringProfiles : Collections.emptyList())
+                .build();
+    }
+}
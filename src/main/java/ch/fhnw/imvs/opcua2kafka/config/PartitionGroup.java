@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.config;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Kafka partitions of all nodes whose Node Id matches {@link #nodePattern}.
+ *
+ * The nodes of a group are distributed over the partitions of the group instead of all partitions of the topic.
+ * Nodes which do not match any group are distributed over all partitions by the {@link KafkaConfiguration.PartitionStrategy}.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class PartitionGroup {
+
+    private String name;
+
+    /**
+     * Regular expression which has to match the whole Node Id, e.g. {@code ns=2;s=Line1\..*}.
+     */
+    private String nodePattern;
+
+    /**
+     * Partitions of the group, a single partition pins all nodes of the group to it.
+     */
+    private List<Integer> partitions;
+
+    /**
+     * Whether the values of each node are spread round robin over all partitions of the group, e.g. for very hot nodes.
+     * The values then carry a sequence number header, so that consumers can restore their order.
+     */
+    private Boolean spread;
+}
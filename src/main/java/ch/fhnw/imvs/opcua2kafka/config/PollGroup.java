@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.config;
+
+import lombok.*;
+
+/**
+ * Polling interval for all polled nodes whose Node Id matches {@link #nodePattern}.
+ *
+ * Properties which are {@code null} are taken from the default group, whose interval is the polling cycle of the connection.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class PollGroup {
+
+    /**
+     * Handling of a poll cycle which is due while the previous cycle is still running.
+     */
+    public enum OverrunPolicy {
+        /**
+         * The cycle is dropped, the next cycle starts at its regular time.
+         */
+        SKIP,
+        /**
+         * All cycles due while the previous cycle runs are merged into one cycle, which starts as soon as the previous completes.
+         */
+        MERGE,
+        /**
+         * The cycle starts as soon as the previous completes and all following cycles are shifted accordingly.
+         */
+        DELAY
+    }
+
+    private String name;
+
+    /**
+     * Regular expression which has to match the whole Node Id, e.g. {@code ns=2;s=Line1\..*}.
+     */
+    private String nodePattern;
+
+    /**
+     * Polling interval in Milliseconds.
+     */
+    private Long interval;
+
+    /**
+     * Time in Milliseconds after the start of a cycle after which reads which have not been sent yet are dropped,
+     * {@code 0} to use the interval.
+     */
+    private Long deadline;
+
+    private OverrunPolicy overrunPolicy;
+
+    /**
+     * Creates a copy of this group in which all unset properties are taken from the provided group.
+     *
+     * @param defaults Group which provides the missing values.
+     * @return Merged group.
+     */
+    public PollGroup withDefaults(final PollGroup defaults) {
+        return PollGroup.builder()
+                .name(name)
+                .nodePattern(nodePattern)
+                .interval(interval != null ? interval : defaults.interval)
+                .deadline(deadline != null ? deadline : defaults.deadline)
+                .overrunPolicy(overrunPolicy != null ? overrunPolicy : defaults.overrunPolicy)
+                .build();
+    }
+}
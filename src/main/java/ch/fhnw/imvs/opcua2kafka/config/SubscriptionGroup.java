@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.config;
+
+import lombok.*;
+
+/**
+ * Subscription parameters for all monitored nodes whose Node Id matches {@link #nodePattern}.
+ *
+ * The nodes of a group are spread over as many subscriptions as needed to stay below {@link #maxItemsPerSubscription}.
+ * Properties which are {@code null} are taken from the default group.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class SubscriptionGroup {
+
+    private String name;
+
+    /**
+     * Regular expression which has to match the whole Node Id, e.g. {@code ns=2;s=Line1\..*}.
+     */
+    private String nodePattern;
+
+    private Double publishingInterval;
+
+    /**
+     * Maximum number of notifications in one publish response, {@code 0} means no limit.
+     */
+    private Integer maxNotificationsPerPublish;
+
+    private Integer priority;
+
+    /**
+     * Maximum number of monitored items in one subscription, {@code 0} means no limit.
+     */
+    private Integer maxItemsPerSubscription;
+
+    /**
+     * Creates a copy of this group in which all unset properties are taken from the provided group.
+     *
+     * @param defaults Group which provides the missing values.
+     * @return Merged group.
+     */
+    public SubscriptionGroup withDefaults(final SubscriptionGroup defaults) {
+        return SubscriptionGroup.builder()
+                .name(name)
+                .nodePattern(nodePattern)
+                .publishingInterval(publishingInterval != null ? publishingInterval : defaults.publishingInterval)
+                .maxNotificationsPerPublish(maxNotificationsPerPublish != null ? maxNotificationsPerPublish : defaults.maxNotificationsPerPublish)
+                .priority(priority != null ? priority : defaults.priority)
+                .maxItemsPerSubscription(maxItemsPerSubscription != null ? maxItemsPerSubscription : defaults.maxItemsPerSubscription)
+                .build();
+    }
+}
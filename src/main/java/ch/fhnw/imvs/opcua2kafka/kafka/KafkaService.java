@@ -17,6 +17,11 @@ package ch.fhnw.imvs.opcua2kafka.kafka;
 
 import ch.fhnw.imvs.opcua2kafka.schemas.Key;
 import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.NodeDescription;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Abstracts a Kafka Connection and enables sending messages to the configured topic.
@@ -40,6 +45,48 @@ public interface KafkaService {
      */
     void sendMessage(Key key, Message message);
 
+    /**
+     * Sends several messages with their default keys to the topic.
+     *
+     * @param messages messages to send, in the order in which they should be appended to their partitions.
+     */
+    void sendMessages(List<Message> messages);
+
+    /**
+     * Sends a batch of payloads to the batch topic, keyed by its aggregate id.
+     *
+     * @param batch batch to send.
+     */
+    void sendBatch(MessageBatch batch);
+
+    /**
+     * Sends the description of a node to the compacted metadata topic, keyed by its Node Id.
+     *
+     * @param description description to send.
+     */
+    void sendNodeDescription(NodeDescription description);
+
+    /**
+     * Prepares the keys of the specified nodes, so that their messages are sent without serializing the key again.
+     *
+     * Should be called when the nodes are monitored, messages of other nodes are still sent.
+     *
+     * @param nodeIds Node Ids of the messages which will be sent.
+     */
+    default void cacheKeys(final Collection<String> nodeIds) {
+    }
+
+    /**
+     * Releases the keys prepared with {@link #cacheKeys(Collection)}, e.g. when the nodes are no longer monitored.
+     *
+     * Every call of {@link #cacheKeys(Collection)} needs its own call of this method, a key which was cached by
+     * several callers is kept until all of them released it.
+     *
+     * @param nodeIds Node Ids of the messages which are no longer sent.
+     */
+    default void evictKeys(final Collection<String> nodeIds) {
+    }
+
     /**
      * Flush all current messages to the Kafka Broker(s).
      *
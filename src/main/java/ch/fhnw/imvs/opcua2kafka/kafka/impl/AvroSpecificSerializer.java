@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes the generated Avro classes in the Confluent wire format: magic byte, schema id and the Avro binary data.
+ *
+ * In contrast to the {@code KafkaAvroSerializer}, the schema id is looked up once per subject, and the output buffer,
+ * encoder and datum writer are reused by every thread, so that only the resulting byte array is allocated per record.
+ * Subjects are named after the topic like the default {@code TopicNameStrategy}.
+ *
+ * @param <T> Generated Avro class.
+ */
+public class AvroSpecificSerializer<T extends SpecificRecord> implements Serializer<T> {
+
+    private static final byte MAGIC_BYTE = 0x0;
+
+    /**
+     * Initial size of the per-thread output buffer, which grows to the largest record.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    private static final int IDENTITY_MAP_CAPACITY = 1000;
+
+    private final Map<String, Integer> schemaIds = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Encoding> encodings = ThreadLocal.withInitial(Encoding::new);
+
+    private SchemaRegistryClient schemaRegistryClient;
+
+    private boolean isKey;
+
+    /**
+     * Constructor used by the Kafka producer, the schema registry is set up in {@link #configure(Map, boolean)}.
+     */
+    public AvroSpecificSerializer() {
+    }
+
+    public AvroSpecificSerializer(final SchemaRegistryClient schemaRegistryClient, final boolean isKey) {
+        this.schemaRegistryClient = schemaRegistryClient;
+        this.isKey = isKey;
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+        this.isKey = isKey;
+        if (schemaRegistryClient == null) {
+            final Object url = configs.get(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG);
+            if (url == null) {
+                throw new IllegalArgumentException(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG + " is not configured");
+            }
+            schemaRegistryClient = new CachedSchemaRegistryClient(String.valueOf(url), IDENTITY_MAP_CAPACITY);
+        }
+    }
+
+    @Override
+    public byte[] serialize(final String topic, final T data) {
+        if (data == null) {
+            return null;
+        }
+        final Schema schema = data.getSchema();
+        final int schemaId = getSchemaId(topic, schema);
+        final Encoding encoding = encodings.get();
+        try {
+            encoding.out.reset();
+            encoding.out.write(MAGIC_BYTE);
+            encoding.out.write(schemaId >>> 24);
+            encoding.out.write(schemaId >>> 16);
+            encoding.out.write(schemaId >>> 8);
+            encoding.out.write(schemaId);
+            encoding.encoder = EncoderFactory.get().directBinaryEncoder(encoding.out, encoding.encoder);
+            encoding.writer(schema).write(data, encoding.encoder);
+            encoding.encoder.flush();
+            return encoding.out.toByteArray();
+        } catch (final IOException | RuntimeException e) {
+            throw new SerializationException("Error serializing Avro message for topic " + topic, e);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private int getSchemaId(final String topic, final Schema schema) {
+        final String subject = topic + (isKey ? "-key" : "-value");
+        final Integer cached = schemaIds.get(subject);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            final int id = schemaRegistryClient.register(subject, schema);
+            schemaIds.put(subject, id);
+            return id;
+        } catch (final IOException | RestClientException e) {
+            throw new SerializationException("Error registering Avro schema for subject " + subject, e);
+        }
+    }
+
+    /**
+     * Buffer, encoder and writer of one thread.
+     */
+    private static final class Encoding {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+        private BinaryEncoder encoder;
+
+        private Schema schema;
+
+        private SpecificDatumWriter<Object> writer;
+
+        SpecificDatumWriter<Object> writer(final Schema recordSchema) {
+            if (recordSchema != schema) {
+                schema = recordSchema;
+                writer = new SpecificDatumWriter<>(recordSchema);
+            }
+            return writer;
+        }
+    }
+}
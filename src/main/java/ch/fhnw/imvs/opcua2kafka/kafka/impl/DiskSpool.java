@@ -0,0 +1,438 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead spool of records in append-only, memory-mapped segment files.
+ *
+ * Each record is stored as its length, its CRC32 and its data. The length is written last, so that a record
+ * which was not completely written ends the segment when it is read again after a crash. Records are read in order
+ * with {@link #peek(int, List)} and only removed by {@link #commit()}, the read position is kept in a checkpoint file.
+ * Segments which are completely read are deleted. The oldest segments are dropped if the spool exceeds its maximum
+ * size or their last record is older than the retention time.
+ */
+final class DiskSpool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSpool.class);
+
+    private static final String SEGMENT_PREFIX = "spool-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CHECKPOINT_FILE = "spool.checkpoint";
+
+    /**
+     * Length and CRC32 in front of the data of each record.
+     */
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+
+    private static final class Segment {
+
+        private final long id;
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        private int records;
+
+        private long lastAppendMillis;
+
+        Segment(final long id, final Path path, final FileChannel channel, final MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final long maxBytes;
+
+    private final long retentionMillis;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Position and number of read records in the first segment.
+     */
+    private int readPosition;
+
+    private int readRecords;
+
+    /**
+     * Position and number of records after the last {@link #peek(int, List)}, which become read on {@link #commit()}.
+     */
+    private int peekPosition = -1;
+
+    private int peekRecords;
+
+    private long records;
+
+    private long appendedRecords;
+
+    private long committedRecords;
+
+    private long droppedRecords;
+
+    /**
+     * Opens the spool in the specified directory and recovers the records of a previous run.
+     *
+     * @param directory Directory of the segment files, created if it does not exist.
+     * @param segmentSize Size of a segment file in bytes, which is also the maximum size of a record.
+     * @param maxBytes Maximum size of all segment files, the oldest segments are dropped if it is exceeded.
+     * @param retentionMillis Time in Milliseconds after which segments are dropped, {@code 0} keeps them.
+     */
+    DiskSpool(final Path directory, final int segmentSize, final long maxBytes, final long retentionMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.retentionMillis = retentionMillis;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to open spool in " + directory, e);
+        }
+    }
+
+    /**
+     * Appends a record at the end of the spool.
+     *
+     * @param data Data of the record.
+     * @return {@code false} if the record is larger than a segment and was dropped.
+     */
+    synchronized boolean append(final byte[] data) {
+        final int size = RECORD_HEADER + data.length;
+        if (size > segmentSize) {
+            droppedRecords++;
+            logger.warn("Dropping record of {} bytes, which is larger than a spool segment", data.length);
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writePosition + size > segment.buffer.capacity()) {
+            segment = roll();
+        }
+        crc.reset();
+        crc.update(data);
+        final int position = segment.writePosition;
+        segment.buffer.position(position + RECORD_HEADER);
+        segment.buffer.put(data);
+        segment.buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        segment.buffer.putInt(position, data.length);
+        segment.writePosition += size;
+        segment.records++;
+        segment.lastAppendMillis = System.currentTimeMillis();
+        records++;
+        appendedRecords++;
+        return true;
+    }
+
+    /**
+     * Reads the next records without removing them.
+     *
+     * Records are only read from one segment per call, so fewer than {@code max} records may be returned even if
+     * more are spooled. Calling this method again without {@link #commit()} returns the same records.
+     *
+     * @param max Maximum number of records.
+     * @param result List to which the records are added.
+     * @return Number of added records.
+     */
+    synchronized int peek(final int max, final List<byte[]> result) {
+        deleteReadSegments();
+        final Segment segment = segments.peekFirst();
+        if (segment == null) {
+            return 0;
+        }
+        int position = readPosition;
+        int count = 0;
+        while (count < max && position + RECORD_HEADER <= segment.writePosition) {
+            final int length = segment.buffer.getInt(position);
+            final byte[] data = new byte[length];
+            segment.buffer.position(position + RECORD_HEADER);
+            segment.buffer.get(data);
+            result.add(data);
+            position += RECORD_HEADER + length;
+            count++;
+        }
+        peekPosition = position;
+        peekRecords = count;
+        return count;
+    }
+
+    /**
+     * Removes the records returned by the last {@link #peek(int, List)}.
+     */
+    synchronized void commit() {
+        if (peekPosition < 0) {
+            return;
+        }
+        readPosition = peekPosition;
+        readRecords += peekRecords;
+        records -= peekRecords;
+        committedRecords += peekRecords;
+        peekPosition = -1;
+        peekRecords = 0;
+        deleteReadSegments();
+        writeCheckpoint();
+    }
+
+    /**
+     * Drops the segments whose last record is older than the retention time.
+     */
+    synchronized void expire() {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        final long limit = System.currentTimeMillis() - retentionMillis;
+        while (!segments.isEmpty() && segments.peekFirst().lastAppendMillis < limit) {
+            drop(segments.peekFirst(), "expired");
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return records == 0;
+    }
+
+    synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return Size of the spooled records in bytes.
+     */
+    synchronized long getSize() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            size += segment.writePosition;
+        }
+        return size - readPosition;
+    }
+
+    synchronized long getAppendedRecordCount() {
+        return appendedRecords;
+    }
+
+    synchronized long getCommittedRecordCount() {
+        return committedRecords;
+    }
+
+    synchronized long getDroppedRecordCount() {
+        return droppedRecords;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (final Segment segment : segments) {
+            segment.buffer.force();
+            closeChannel(segment);
+        }
+        segments.clear();
+    }
+
+    private Segment roll() {
+        final Segment last = segments.peekLast();
+        if (last != null) {
+            last.buffer.force();
+        }
+        final long id = last != null ? last.id + 1 : 0;
+        final Segment segment = open(id, segmentSize);
+        segment.lastAppendMillis = System.currentTimeMillis();
+        segments.addLast(segment);
+        while (segments.size() > 1 && (long) segments.size() * segmentSize > maxBytes) {
+            drop(segments.peekFirst(), "exceeding the maximum spool size");
+        }
+        return segment;
+    }
+
+    /**
+     * Deletes the first segments if all their records are read and they are not written anymore.
+     */
+    private void deleteReadSegments() {
+        while (segments.size() > 1 && readPosition >= segments.peekFirst().writePosition) {
+            final Segment segment = segments.removeFirst();
+            readPosition = 0;
+            readRecords = 0;
+            peekPosition = -1;
+            delete(segment);
+            writeCheckpoint();
+        }
+    }
+
+    private void drop(final Segment segment, final String reason) {
+        final boolean first = segment == segments.peekFirst();
+        final int unread = first ? segment.records - readRecords : segment.records;
+        segments.remove(segment);
+        records -= unread;
+        droppedRecords += unread;
+        if (first) {
+            readPosition = 0;
+            readRecords = 0;
+            peekPosition = -1;
+        }
+        delete(segment);
+        writeCheckpoint();
+        logger.warn("Dropped spool segment {} with {} unsent records due to {}", segment.path.getFileName(), unread, reason);
+    }
+
+    private void recover() throws IOException {
+        final List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        final long[] checkpoint = readCheckpoint();
+        for (final Path file : files) {
+            final String name = file.getFileName().toString();
+            final long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            if (id < checkpoint[0]) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            final Segment segment = open(id, (int) Math.max(segmentSize, Files.size(file)));
+            segment.lastAppendMillis = Files.getLastModifiedTime(file).toMillis();
+            scan(segment, id == checkpoint[0] ? (int) checkpoint[1] : 0);
+            segments.addLast(segment);
+            records += segment.records;
+        }
+        records -= readRecords;
+        if (records > 0) {
+            logger.info("Recovered {} spooled records in {} segments from {}", records, segments.size(), directory);
+        }
+    }
+
+    /**
+     * Finds the end of the complete records of a recovered segment.
+     */
+    private void scan(final Segment segment, final int checkpointPosition) {
+        int position = 0;
+        while (position + RECORD_HEADER <= segment.buffer.capacity()) {
+            final int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER + length > segment.buffer.capacity()) {
+                break;
+            }
+            final byte[] data = new byte[length];
+            segment.buffer.position(position + RECORD_HEADER);
+            segment.buffer.get(data);
+            crc.reset();
+            crc.update(data);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + Integer.BYTES)) {
+                logger.warn("Spool segment {} ends with an incomplete record at position {}", segment.path.getFileName(), position);
+                break;
+            }
+            if (position < checkpointPosition) {
+                readRecords++;
+                readPosition = position + RECORD_HEADER + length;
+            }
+            position += RECORD_HEADER + length;
+            segment.records++;
+        }
+        segment.writePosition = position;
+    }
+
+    private Segment open(final long id, final int size) {
+        final Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try {
+            final FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to open spool segment " + path, e);
+        }
+    }
+
+    private void delete(final Segment segment) {
+        closeChannel(segment);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (final IOException e) {
+            logger.warn("Unable to delete spool segment {}", segment.path, e);
+        }
+    }
+
+    private static void closeChannel(final Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to close spool segment {}", segment.path, e);
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return new long[]{0, 0};
+        }
+        final String[] parts = Files.readString(path, StandardCharsets.US_ASCII).trim().split(":");
+        return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+    }
+
+    private void writeCheckpoint() {
+        final Segment first = segments.peekFirst();
+        final String checkpoint = (first != null ? first.id : 0) + ":" + (first != null ? readPosition : 0);
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        final Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try {
+            Files.writeString(temp, checkpoint, StandardCharsets.US_ASCII);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            logger.warn("Unable to write spool checkpoint {}", path, e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiskSpool{records=" + records +
+                ", bytes=" + getSize() +
+                ", segments=" + segments.size() +
+                ", appended=" + appendedRecords +
+                ", replayed=" + committedRecords +
+                ", dropped=" + droppedRecords +
+                '}';
+    }
+}
@@ -16,14 +16,18 @@
 package ch.fhnw.imvs.opcua2kafka.kafka.impl;
 
 import ch.fhnw.imvs.opcua2kafka.config.KafkaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.schemas.AggregateKey;
 import ch.fhnw.imvs.opcua2kafka.schemas.Key;
-import ch.fhnw.imvs.opcua2kafka.schemas.Message;
-import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
-import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import org.apache.avro.specific.SpecificRecord;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
@@ -38,6 +42,8 @@ public class KafkaProducerConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaProducerConfig.class);
 
+    private static final int IDENTITY_MAP_CAPACITY = 1000;
+
     private final KafkaConfiguration kafkaConfiguration;
 
     @Autowired
@@ -45,29 +51,47 @@ public class KafkaProducerConfig {
         this.kafkaConfiguration = kafkaConfiguration;
     }
 
+    /**
+     * Client of the schema registry shared by all serializers, which can be replaced by registering another
+     * {@link SchemaRegistryClient} bean before the configuration is processed, e.g. an in-memory registry in tests.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public SchemaRegistryClient schemaRegistryClient() {
+        return new CachedSchemaRegistryClient(kafkaConfiguration.getSchemaRegistryAddress(), IDENTITY_MAP_CAPACITY);
+    }
+
+    /**
+     * Serializer of the message keys, the keys are serialized by the {@link KafkaServiceImpl} so that they can be cached.
+     */
+    @Bean
+    public Serializer<Key> keySerializer(final SchemaRegistryClient schemaRegistryClient) {
+        return new AvroSpecificSerializer<>(schemaRegistryClient, true);
+    }
+
+    /**
+     * Serializer of the keys of the metadata topic, which contain the aggregate id as well as the Node Id.
+     */
     @Bean
-    public ProducerFactory<Key, Message> messageProducerFactory() {
+    public Serializer<AggregateKey> aggregateKeySerializer(final SchemaRegistryClient schemaRegistryClient) {
+        return new AvroSpecificSerializer<>(schemaRegistryClient, true);
+    }
+
+    @Bean
+    public ProducerFactory<byte[], SpecificRecord> messageProducerFactory(final SchemaRegistryClient schemaRegistryClient) {
         final Map<String, Object> configProps = new HashMap<>();
         configProps.put(
                 ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
                 kafkaConfiguration.getBootstrapAddress());
-        configProps.put(
-                AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG,
-                kafkaConfiguration.getSchemaRegistryAddress());
-        configProps.put(
-                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
-                KafkaAvroSerializer.class);
-        configProps.put(
-                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
-                KafkaAvroSerializer.class);
         if (configProps.containsValue(null)) throw new RuntimeException("ProducerFactory initialized with at least one null value: " + configProps);
         logger.debug("ProducerFactory configured with: {}", configProps);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new DefaultKafkaProducerFactory<>(configProps, new ByteArraySerializer(),
+                new AvroSpecificSerializer<>(schemaRegistryClient, false));
     }
 
     @Bean
-    public KafkaTemplate<Key, Message> messageKafkaTemplate() {
-        logger.debug("Generating KafkaTemplate<Key, Message> ...");
-        return new KafkaTemplate<>(messageProducerFactory());
+    public KafkaTemplate<byte[], SpecificRecord> messageKafkaTemplate(final ProducerFactory<byte[], SpecificRecord> messageProducerFactory) {
+        logger.debug("Generating KafkaTemplate<byte[], SpecificRecord> ...");
+        return new KafkaTemplate<>(messageProducerFactory);
     }
 }
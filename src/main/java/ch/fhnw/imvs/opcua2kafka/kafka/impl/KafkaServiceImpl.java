@@ -15,71 +15,553 @@
  */
 package ch.fhnw.imvs.opcua2kafka.kafka.impl;
 
+import ch.fhnw.imvs.opcua2kafka.config.KafkaConfiguration;
 import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.message.PipelineLatency;
+import ch.fhnw.imvs.opcua2kafka.schemas.AggregateKey;
 import ch.fhnw.imvs.opcua2kafka.schemas.Key;
 import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.NodeDescription;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.avro.specific.SpecificRecord;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class KafkaServiceImpl implements KafkaService {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaServiceImpl.class);
 
-    private final KafkaTemplate<Key, Message> kafkaTemplate;
+    /**
+     * Header with the sequence number of the values of spread nodes, an 8 byte big endian long per node.
+     */
+    public static final String SEQUENCE_HEADER = "sequence";
+
+    /**
+     * Interval in Milliseconds in which spooled records are replayed.
+     */
+    private static final long SPOOL_REPLAY_INTERVAL = 100;
+
+    /**
+     * Time in Milliseconds after a failed send before spooled records are replayed again.
+     */
+    private static final long SPOOL_RETRY_DELAY = 5_000;
+
+    /**
+     * Subdirectory of the spool with the writer schemas of the spooled records.
+     */
+    private static final String SPOOL_SCHEMA_DIRECTORY = "schemas";
+
+    /**
+     * File in the spool directory with the spooled records which cannot be decoded.
+     */
+    private static final String SPOOL_REJECTED_FILE = "rejected.bin";
+
+    /**
+     * Time in Milliseconds before the partitions of the topic are read again after a failure.
+     */
+    private static final long PARTITIONS_RETRY_DELAY = 10_000;
+
+    /**
+     * Metrics of the producer which are published as gauges, see the producer metrics of the Kafka documentation.
+     */
+    private static final List<String> PRODUCER_METRICS =
+            List.of("buffer-available-bytes", "buffer-total-bytes", "record-queue-time-avg", "batch-size-avg");
+
+    private final KafkaTemplate<byte[], SpecificRecord> kafkaTemplate;
 
     private final KafkaTopicConfig topicConfig;
 
+    private final KafkaConfiguration kafkaConfiguration;
+
+    private final KeyCache keyCache;
+
+    /**
+     * Serializer of the keys of the metadata topic.
+     */
+    private final Serializer<AggregateKey> aggregateKeySerializer;
+
+    /**
+     * Serialized keys of the batches by aggregate id.
+     */
+    private final Map<String, byte[]> batchKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Partitioner of the topic, {@code null} until the number of partitions is known. Until then the producer
+     * chooses the partitions.
+     */
+    private volatile NodePartitioner partitioner;
+
+    private final ScheduledExecutorService partitionsExecutor;
+
+    private final String topicName;
+
+    /**
+     * Spool of the records which could not be sent, {@code null} if disabled.
+     */
+    private final DiskSpool spool;
+
+    private final SpoolCodec spoolCodec;
+
+    private final SpoolReplayer spoolReplayer;
+
+    private final ScheduledExecutorService spoolExecutor;
+
+    private volatile long lastFailureMillis;
+
+    private volatile boolean producerMetricsResolved;
+
+    private final Map<String, Metric> producerMetrics = new ConcurrentHashMap<>();
+
+    private final Timer sendTimer;
+
+    private final Counter sendFailures;
+
+    private final PipelineLatency latency;
+
+    private final KafkaConfiguration.RecordTimestamp recordTimestamp;
+
     @Autowired
-    public KafkaServiceImpl(final KafkaTemplate<Key, Message> kafkaTemplate, final KafkaTopicConfig topicConfig) {
+    public KafkaServiceImpl(final KafkaTemplate<byte[], SpecificRecord> kafkaTemplate,
+                            final KafkaTopicConfig topicConfig,
+                            final Serializer<Key> keySerializer,
+                            final Serializer<AggregateKey> aggregateKeySerializer,
+                            final KafkaConfiguration kafkaConfiguration,
+                            final MeterRegistry meterRegistry,
+                            final PipelineLatency latency) {
         this.kafkaTemplate = kafkaTemplate;
         this.topicConfig = topicConfig;
+        this.kafkaConfiguration = kafkaConfiguration;
+        this.latency = latency;
+        this.recordTimestamp = kafkaConfiguration.getRecordTimestamp() != null
+                ? kafkaConfiguration.getRecordTimestamp()
+                : KafkaConfiguration.RecordTimestamp.PRODUCER;
+        this.topicName = topicConfig.topic().name();
+        this.keyCache = new KeyCache(topicName, keySerializer);
+        this.aggregateKeySerializer = aggregateKeySerializer;
+        final String spoolDirectory = kafkaConfiguration.getSpoolDirectory();
+        if (spoolDirectory != null && !spoolDirectory.isBlank()) {
+            this.spool = new DiskSpool(Paths.get(spoolDirectory), kafkaConfiguration.getSpoolSegmentSize(),
+                    kafkaConfiguration.getSpoolMaxBytes(), kafkaConfiguration.getSpoolRetention());
+            this.spoolCodec = new SpoolCodec(Paths.get(spoolDirectory, SPOOL_SCHEMA_DIRECTORY));
+            this.spoolReplayer = new SpoolReplayer(spool, spoolCodec, this::replay, this::isReadyForReplay,
+                    Paths.get(spoolDirectory, SPOOL_REJECTED_FILE),
+                    Math.max(1, (int) (kafkaConfiguration.getSpoolReplayRate() * SPOOL_REPLAY_INTERVAL / 1000)),
+                    SPOOL_REPLAY_INTERVAL);
+            final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("kafka-spool-");
+            threadFactory.setDaemon(true);
+            this.spoolExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.spoolExecutor.scheduleWithFixedDelay(spoolReplayer, SPOOL_REPLAY_INTERVAL, SPOOL_REPLAY_INTERVAL, TimeUnit.MILLISECONDS);
+            logger.info("Spooling unsent records to {}: {}", spoolDirectory, spool);
+        } else {
+            this.spool = null;
+            this.spoolCodec = null;
+            this.spoolReplayer = null;
+            this.spoolExecutor = null;
+        }
+        this.sendTimer = Timer.builder("kafka.send")
+                .description("Time from handing a record to the producer until Kafka acknowledged it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sendFailures = Counter.builder("kafka.send.failures")
+                .description("Records which Kafka did not acknowledge")
+                .register(meterRegistry);
+        bindMetrics(meterRegistry);
+        final CustomizableThreadFactory partitionsThreadFactory = new CustomizableThreadFactory("kafka-partitions-");
+        partitionsThreadFactory.setDaemon(true);
+        this.partitionsExecutor = Executors.newSingleThreadScheduledExecutor(partitionsThreadFactory);
+        this.partitionsExecutor.execute(this::resolvePartitioner);
     }
 
     @Override
     public void sendMessage(final Message message) {
-        final Key key = Key.newBuilder().setNodeId(message.getPayload().getNodeId()).build();
-        sendMessage(key, message);
+        final NewTopic t = topicConfig.topic();
+        logger.debug("Topic to be sending to: topicName: {}, topicNumPartitions: {}, replicationFactor: {}", t.name(), t.numPartitions(), t.replicationFactor());
+        submit(message);
     }
 
     @Override
     public void sendMessage(final Key key, final Message message) {
         final NewTopic t = topicConfig.topic();
         logger.debug("Topic to be sending to: topicName: {}, topicNumPartitions: {}, replicationFactor: {}", t.name(), t.numPartitions(), t.replicationFactor());
-        logger.debug("Going to send Message with TraceId {}", message.getMetadata().getTraceId());
-        final ListenableFuture<SendResult<Key, Message>> future = kafkaTemplate.send(t.name(), key, message);
+        if (shouldSpool()) {
+            spool(message);
+            return;
+        }
+        final long start = System.nanoTime();
+        addCallback(send(t.name(), key.getNodeId(), keyCache.serialize(key), message), message, start);
+    }
+
+    @Override
+    public void sendMessages(final List<Message> messages) {
+        logger.debug("Going to send {} messages to topic {}", messages.size(), topicName);
+        for (final Message message : messages) {
+            submit(message);
+        }
+    }
+
+    @Override
+    public void sendBatch(final MessageBatch batch) {
+        logger.debug("Going to send batch of {} payloads with TraceId {} to topic {}",
+                batch.getPayloads().size(), batch.getMetadata().getTraceId(), topicConfig.getBatchTopicName());
+        submit(batch);
+    }
+
+    @Override
+    public void sendNodeDescription(final NodeDescription description) {
+        logger.debug("Going to send description of node {} to topic {}", description.getNodeId(), topicConfig.getMetadataTopicName());
+        submit(description);
+    }
+
+    @Override
+    public void cacheKeys(final Collection<String> nodeIds) {
+        keyCache.put(nodeIds);
+        logger.debug("Cached keys of {} nodes: {}", nodeIds.size(), keyCache);
+    }
+
+    @Override
+    public void evictKeys(final Collection<String> nodeIds) {
+        final List<String> evicted = keyCache.evict(nodeIds);
+        final NodePartitioner currentPartitioner = partitioner;
+        if (currentPartitioner != null) {
+            currentPartitioner.evict(evicted);
+        }
+        logger.debug("Evicted keys of {} nodes: {}", evicted.size(), keyCache);
+    }
+
+    /**
+     * Sends the record to Kafka or, if spooling is enabled and the spool is not empty or the producer buffer is
+     * too full, appends it to the spool so that it is sent after the previously spooled records.
+     */
+    private void submit(final SpecificRecord record) {
+        if (shouldSpool()) {
+            spool(record);
+            return;
+        }
+        final long start = System.nanoTime();
+        addCallback(dispatch(record), record, start);
+    }
 
+    private ListenableFuture<SendResult<byte[], SpecificRecord>> dispatch(final SpecificRecord record) {
+        if (record instanceof Message) {
+            final Message message = (Message) record;
+            final String nodeId = message.getPayload().getNodeId();
+            return send(topicName, nodeId, keyCache.get(nodeId), message);
+        }
+        if (record instanceof MessageBatch) {
+            final MessageBatch batch = (MessageBatch) record;
+            return kafkaTemplate.send(topicConfig.getBatchTopicName(),
+                    getBatchKey(batch.getMetadata().getAggregateId()), batch);
+        }
+        if (record instanceof NodeDescription) {
+            final NodeDescription description = (NodeDescription) record;
+            final AggregateKey key = AggregateKey.newBuilder()
+                    .setAggregateId(description.getAggregateId())
+                    .setNodeId(description.getNodeId())
+                    .build();
+            return kafkaTemplate.send(topicConfig.getMetadataTopicName(),
+                    aggregateKeySerializer.serialize(topicConfig.getMetadataTopicName(), key), description);
+        }
+        throw new IllegalArgumentException("Unsupported record type " + record.getClass());
+    }
+
+    /**
+     * Returns the serialized {@link AggregateKey} of the batches of an aggregate, which is cached as there are only
+     * a few aggregates.
+     */
+    private byte[] getBatchKey(final String aggregateId) {
+        return batchKeys.computeIfAbsent(aggregateId, (id) -> aggregateKeySerializer.serialize(topicConfig.getBatchTopicName(),
+                AggregateKey.newBuilder().setAggregateId(id).setNodeId(null).build()));
+    }
+
+    private ListenableFuture<SendResult<byte[], SpecificRecord>> replay(final SpecificRecord record) {
+        final ListenableFuture<SendResult<byte[], SpecificRecord>> future = dispatch(record);
+        future.addCallback(result -> {
+            recordLatency(record);
+            logSuccess(result, record);
+        }, ex -> {
+            sendFailures.increment();
+            lastFailureMillis = System.currentTimeMillis();
+        });
+        return future;
+    }
+
+    private void addCallback(final ListenableFuture<SendResult<byte[], SpecificRecord>> future,
+                             final SpecificRecord record,
+                             final long start) {
         future.addCallback(new ListenableFutureCallback<>() {
             @Override
-            public void onSuccess(final SendResult<Key, Message> result) {
-                logSuccess(result, key, message);
+            public void onSuccess(final SendResult<byte[], SpecificRecord> result) {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                recordLatency(record);
+                logSuccess(result, record);
             }
 
             @Override
             public void onFailure(final Throwable ex) {
-                logger.warn("Unable to send message {} due to {}", message, ex);
+                sendFailures.increment();
+                if (spool == null) {
+                    logger.warn("Unable to send message {} due to {}", record, ex);
+                    return;
+                }
+                logger.debug("Spooling message {} which could not be sent due to {}", record, ex.toString());
+                lastFailureMillis = System.currentTimeMillis();
+                spool(record);
             }
         });
     }
 
+    private void recordLatency(final SpecificRecord record) {
+        final Instant acked = Instant.now();
+        if (record instanceof Message) {
+            final Message message = (Message) record;
+            latency.record(PipelineLatency.Stage.BUILT_ACKED, message.getMetadata().getTimestamp(), acked);
+            latency.record(PipelineLatency.Stage.SOURCE_ACKED, message.getPayload().getSourceTimestamp(), acked);
+        } else if (record instanceof MessageBatch) {
+            final MessageBatch batch = (MessageBatch) record;
+            latency.record(PipelineLatency.Stage.BUILT_ACKED, batch.getMetadata().getTimestamp(), acked);
+            for (final Payload payload : batch.getPayloads()) {
+                latency.record(PipelineLatency.Stage.SOURCE_ACKED, payload.getSourceTimestamp(), acked);
+            }
+        }
+    }
+
+    /**
+     * @return Timestamp of the Kafka record of a value, {@code null} to let the producer set the current time.
+     */
+    private Long getRecordTimestamp(final Payload payload) {
+        final Instant timestamp;
+        switch (recordTimestamp) {
+            case SOURCE:
+                timestamp = payload.getSourceTimestamp();
+                break;
+            case SERVER:
+                timestamp = payload.getServerTimestamp();
+                break;
+            default:
+                timestamp = null;
+        }
+        return timestamp != null ? timestamp.toEpochMilli() : null;
+    }
+
+    private boolean shouldSpool() {
+        return spool != null && (!spool.isEmpty() || getBufferUsage() >= kafkaConfiguration.getSpoolBufferThreshold());
+    }
+
+    private void spool(final SpecificRecord record) {
+        try {
+            spool.append(spoolCodec.encode(record));
+        } catch (final RuntimeException e) {
+            logger.warn("Unable to spool message {}", record, e);
+        }
+    }
+
+    private boolean isReadyForReplay() {
+        return System.currentTimeMillis() - lastFailureMillis >= SPOOL_RETRY_DELAY
+                && getBufferUsage() < kafkaConfiguration.getSpoolBufferThreshold();
+    }
+
+    /**
+     * @return Used part of the producer buffer between {@code 0} and {@code 1}.
+     */
+    private double getBufferUsage() {
+        final double total = getProducerMetric("buffer-total-bytes");
+        final double available = getProducerMetric("buffer-available-bytes");
+        return total > 0 ? 1 - available / total : 0;
+    }
+
+    /**
+     * @return Value of a metric of {@link #PRODUCER_METRICS}, {@code NaN} if the producer does not provide it.
+     */
+    private double getProducerMetric(final String name) {
+        if (!producerMetricsResolved) {
+            resolveProducerMetrics();
+        }
+        final Metric metric = producerMetrics.get(name);
+        final Object value = metric != null ? metric.metricValue() : null;
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    private synchronized void resolveProducerMetrics() {
+        if (producerMetricsResolved) {
+            return;
+        }
+        try {
+            for (final Map.Entry<MetricName, ? extends Metric> entry : kafkaTemplate.metrics().entrySet()) {
+                if ("producer-metrics".equals(entry.getKey().group()) && PRODUCER_METRICS.contains(entry.getKey().name())) {
+                    producerMetrics.put(entry.getKey().name(), entry.getValue());
+                }
+            }
+        } catch (final RuntimeException e) {
+            logger.warn("Unable to read the producer metrics", e);
+        }
+        producerMetricsResolved = true;
+    }
+
+    /**
+     * Registers the meters which are read when they are published, so that sending is not slowed down.
+     */
+    private void bindMetrics(final MeterRegistry meterRegistry) {
+        for (final String name : PRODUCER_METRICS) {
+            Gauge.builder("kafka.producer." + name.replace('-', '.'), this, (service) -> service.getProducerMetric(name))
+                    .description("Producer metric " + name)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("kafka.keys.cached", keyCache, KeyCache::size)
+                .description("Serialized keys in the key cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("kafka.keys.misses", keyCache, KeyCache::getMissCount)
+                .description("Keys serialized because they were not cached")
+                .register(meterRegistry);
+        Gauge.builder("kafka.partition.skew", this, (service) -> service.partitioner != null ? service.partitioner.getSkew() : Double.NaN)
+                .description("Values sent to the busiest partition divided by the mean of all partitions")
+                .register(meterRegistry);
+        if (spool != null) {
+            Gauge.builder("kafka.spool.records", spool, DiskSpool::getRecordCount)
+                    .description("Records in the spool")
+                    .register(meterRegistry);
+            Gauge.builder("kafka.spool.size", spool, DiskSpool::getSize)
+                    .description("Size of the spool files")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            FunctionCounter.builder("kafka.spool.appended", spool, DiskSpool::getAppendedRecordCount)
+                    .description("Records written to the spool")
+                    .register(meterRegistry);
+            FunctionCounter.builder("kafka.spool.replayed", spool, DiskSpool::getCommittedRecordCount)
+                    .description("Spooled records acknowledged by Kafka")
+                    .register(meterRegistry);
+            FunctionCounter.builder("kafka.spool.dropped", spool, DiskSpool::getDroppedRecordCount)
+                    .description("Records dropped because the spool was full or expired")
+                    .register(meterRegistry);
+            FunctionCounter.builder("kafka.spool.rejected", spoolReplayer, SpoolReplayer::getRejectedRecordCount)
+                    .description("Spooled records which cannot be decoded and were moved to the rejected file")
+                    .register(meterRegistry);
+            Gauge.builder("kafka.spool.replay.rate", spoolReplayer, SpoolReplayer::getReplayRate)
+                    .description("Spooled records sent per second")
+                    .register(meterRegistry);
+            Gauge.builder("kafka.spool.drain.time", spoolReplayer, SpoolReplayer::getTimeToDrain)
+                    .description("Estimated time in Seconds until the spool is drained, -1 if it is not being drained")
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Stops the replay and closes the spool, records which are still spooled are sent after the next start.
+     */
+    @PreDestroy
+    public void close() {
+        partitionsExecutor.shutdownNow();
+        if (spool != null) {
+            spoolExecutor.shutdown();
+            try {
+                spoolExecutor.awaitTermination(SPOOL_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Closing spool: {}", spool);
+            spool.close();
+        }
+    }
+
+    private ListenableFuture<SendResult<byte[], SpecificRecord>> send(final String topicName, final String nodeId, final KeyCache.SerializedKey key, final Message message) {
+        logger.debug("Going to send Message with TraceId {}", message.getMetadata().getTraceId());
+        final NodePartitioner currentPartitioner = partitioner;
+        Integer partition = null;
+        RecordHeaders headers = null;
+        if (currentPartitioner != null) {
+            final NodePartitioner.Assignment assignment = currentPartitioner.assignment(nodeId, key);
+            long sequence = -1;
+            if (assignment.isSpread()) {
+                sequence = assignment.nextSequence();
+                headers = new RecordHeaders();
+                headers.add(SEQUENCE_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(sequence).array());
+            }
+            partition = currentPartitioner.partition(assignment, sequence);
+        }
+        return kafkaTemplate.send(new ProducerRecord<>(topicName, partition, getRecordTimestamp(message.getPayload()),
+                key.getBytes(), message, headers));
+    }
+
+    /**
+     * Creates the partitioner of the topic with its number of partitions.
+     *
+     * Runs on its own thread, because reading the partitions blocks while Kafka is unreachable, and is retried after
+     * {@link #PARTITIONS_RETRY_DELAY} until it succeeds. The number of partitions is only read once, so the application
+     * has to be restarted if partitions are added.
+     */
+    private void resolvePartitioner() {
+        try {
+            final int numPartitions = kafkaTemplate.partitionsFor(topicName).size();
+            if (numPartitions > 0) {
+                final NodePartitioner created = new NodePartitioner(kafkaConfiguration.getPartitionStrategy(),
+                        kafkaConfiguration.getPartitionGroups(), numPartitions);
+                partitioner = created;
+                logger.info("Partitioner of topic {} created: {}", topicName, created);
+                partitionsExecutor.shutdown();
+                return;
+            }
+            logger.warn("Topic {} has no partitions, retrying in {} ms", topicName, PARTITIONS_RETRY_DELAY);
+        } catch (final RuntimeException e) {
+            logger.warn("Unable to read the partitions of topic {}, retrying in {} ms: {}", topicName, PARTITIONS_RETRY_DELAY, e.toString());
+        }
+        if (!partitionsExecutor.isShutdown()) {
+            partitionsExecutor.schedule(this::resolvePartitioner, PARTITIONS_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
     public void flush() {
         kafkaTemplate.flush();
     }
 
-    private void logSuccess(final SendResult<Key, Message> result, final Key key, final Message message) {
-        logger.debug("Sent message [key={{}} message={}] with offset {}", key, message, result.getRecordMetadata().offset());
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("KafkaServiceImpl{keys=").append(keyCache)
+                .append(", partitioner=").append(partitioner);
+        if (spool != null) {
+            sb.append(", spool=").append(spool)
+                    .append(", replayRate=").append(String.format("%.0f", spoolReplayer.getReplayRate())).append("/s")
+                    .append(", timeToDrain=").append(spoolReplayer.getTimeToDrain()).append('s');
+        }
+        return sb.append('}').toString();
+    }
+
+    private void logSuccess(final SendResult<byte[], SpecificRecord> result, final SpecificRecord message) {
+        logger.debug("Sent message {} with offset {}", message, result.getRecordMetadata().offset());
         logger.debug("Result record metadata: {}, topic: {}, partition: {}, offset: {}, serializedKeySize: {}, serializedValueSize: {}, original timestamp: {}, timestamp: {}",
                 result.getRecordMetadata(),
                 result.getRecordMetadata().topic(),
@@ -18,9 +18,11 @@ package ch.fhnw.imvs.opcua2kafka.kafka.impl;
 import ch.fhnw.imvs.opcua2kafka.config.KafkaConfiguration;
 import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.KafkaAdmin;
@@ -57,4 +59,41 @@ public class KafkaTopicConfig {
                 newTopic.name(), newTopic.numPartitions(), newTopic.replicationFactor());
         return newTopic;
     }
+
+    /**
+     * Topic of the message batches, only created if batching is enabled.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "configuration.message.batch.enabled", havingValue = "true")
+    public NewTopic batchTopic() {
+        final NewTopic newTopic = new NewTopic(kafkaConfiguration.getBatchTopicName(),
+                kafkaConfiguration.getTopicNumPartitions(),
+                (short) kafkaConfiguration.getReplicationFactor());
+        logger.debug("Batch Topic= topicName: {}, topicNumPartitions: {}, replicationFactor: {}",
+                newTopic.name(), newTopic.numPartitions(), newTopic.replicationFactor());
+        return newTopic;
+    }
+
+    /**
+     * Log compacted topic of the node descriptions, only created in the compact payload mode.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "configuration.message.payloadMode", havingValue = "compact")
+    public NewTopic metadataTopic() {
+        final NewTopic newTopic = new NewTopic(kafkaConfiguration.getMetadataTopicName(),
+                kafkaConfiguration.getTopicNumPartitions(),
+                (short) kafkaConfiguration.getReplicationFactor())
+                .configs(Map.of(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT));
+        logger.debug("Metadata Topic= topicName: {}, topicNumPartitions: {}, replicationFactor: {}",
+                newTopic.name(), newTopic.numPartitions(), newTopic.replicationFactor());
+        return newTopic;
+    }
+
+    public String getMetadataTopicName() {
+        return kafkaConfiguration.getMetadataTopicName();
+    }
+
+    public String getBatchTopicName() {
+        return kafkaConfiguration.getBatchTopicName();
+    }
 }
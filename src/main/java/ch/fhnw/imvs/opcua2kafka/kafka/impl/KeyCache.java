@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Key;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serialized {@link Key}s of the monitored nodes of one topic.
+ *
+ * The set of nodes is known when they are monitored, so their keys are serialized and hashed once and
+ * reused for every message. Keys of nodes which are not cached are serialized on every call.
+ * A node can be cached several times, e.g. when it is monitored and polled or monitored by several connections,
+ * and its key is only evicted when it was evicted as often as it was cached.
+ */
+final class KeyCache {
+
+    /**
+     * Serialized key and its hash, which is the same as used by the default Kafka partitioner.
+     */
+    static final class SerializedKey {
+
+        private final byte[] bytes;
+
+        private final int hash;
+
+        SerializedKey(final byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Utils.toPositive(Utils.murmur2(bytes));
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        int getHash() {
+            return hash;
+        }
+    }
+
+    private final String topicName;
+
+    private final Serializer<Key> serializer;
+
+    private final Map<String, SerializedKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Number of times each cached node was put, guarded by itself.
+     */
+    private final Map<String, Integer> references = new HashMap<>();
+
+    private final LongAdder misses = new LongAdder();
+
+    KeyCache(final String topicName, final Serializer<Key> serializer) {
+        this.topicName = topicName;
+        this.serializer = serializer;
+    }
+
+    void put(final Collection<String> nodeIds) {
+        synchronized (references) {
+            for (final String nodeId : nodeIds) {
+                references.merge(nodeId, 1, Integer::sum);
+                keys.computeIfAbsent(nodeId, id -> serialize(Key.newBuilder().setNodeId(id).build()));
+            }
+        }
+    }
+
+    /**
+     * @return Node Ids whose keys were removed because they are not cached by anyone else.
+     */
+    List<String> evict(final Collection<String> nodeIds) {
+        final List<String> evicted = new ArrayList<>();
+        synchronized (references) {
+            for (final String nodeId : nodeIds) {
+                final Integer remaining = references.computeIfPresent(nodeId, (id, count) -> count > 1 ? count - 1 : null);
+                if (remaining == null && keys.remove(nodeId) != null) {
+                    evicted.add(nodeId);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    SerializedKey get(final String nodeId) {
+        final SerializedKey key = keys.get(nodeId);
+        if (key != null) {
+            return key;
+        }
+        misses.increment();
+        return serialize(Key.newBuilder().setNodeId(nodeId).build());
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    SerializedKey serialize(final Key key) {
+        return new SerializedKey(serializer.serialize(topicName, key));
+    }
+
+    @Override
+    public String toString() {
+        return "KeyCache{topic=" + topicName + ", size=" + size() + ", misses=" + getMissCount() + '}';
+    }
+}
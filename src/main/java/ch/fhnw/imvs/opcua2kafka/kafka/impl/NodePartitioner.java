@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.KafkaConfiguration.PartitionStrategy;
+import ch.fhnw.imvs.opcua2kafka.config.PartitionGroup;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses the partition of the values of a node.
+ *
+ * Nodes which match a {@link PartitionGroup} are pinned to the partitions of the group, nodes of spread groups
+ * go round robin over them with a sequence number per node. All other nodes are distributed over all partitions
+ * by the {@link PartitionStrategy}. The decision of each node is resolved once and cached until it is evicted.
+ * The number of values per partition is counted to show the skew of the distribution.
+ */
+final class NodePartitioner {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodePartitioner.class);
+
+    /**
+     * Partition decision of one node.
+     */
+    static final class Assignment {
+
+        private final int[] partitions;
+
+        private final boolean spread;
+
+        private final int hash;
+
+        private final AtomicLong sequence = new AtomicLong();
+
+        Assignment(final int[] partitions, final boolean spread, final int hash) {
+            this.partitions = partitions;
+            this.spread = spread;
+            this.hash = hash;
+        }
+
+        boolean isSpread() {
+            return spread;
+        }
+
+        /**
+         * @return Sequence number of the next value of a spread node.
+         */
+        long nextSequence() {
+            return sequence.getAndIncrement();
+        }
+    }
+
+    private final PartitionStrategy strategy;
+
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    private final List<PartitionGroup> groups = new ArrayList<>();
+
+    private final int numPartitions;
+
+    private final Map<String, Assignment> assignments = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray counts;
+
+    /**
+     * @param strategy Distribution of the nodes without group.
+     * @param groups Configured groups in their order of precedence.
+     * @param numPartitions Number of partitions of the topic.
+     */
+    NodePartitioner(final PartitionStrategy strategy, final List<PartitionGroup> groups, final int numPartitions) {
+        this.strategy = strategy != null ? strategy : PartitionStrategy.DEFAULT;
+        this.numPartitions = numPartitions;
+        this.counts = new AtomicLongArray(numPartitions);
+        for (final PartitionGroup group : groups != null ? groups : Collections.<PartitionGroup>emptyList()) {
+            if (group.getNodePattern() == null || group.getNodePattern().isBlank()
+                    || group.getPartitions() == null || group.getPartitions().isEmpty()) {
+                logger.warn("Ignoring partition group without node pattern or partitions: {}", group);
+                continue;
+            }
+            patterns.add(Pattern.compile(group.getNodePattern()));
+            this.groups.add(group);
+        }
+    }
+
+    /**
+     * @param nodeId Node Id of the value.
+     * @param key Serialized key of the node.
+     * @return Partition decision of the node.
+     */
+    Assignment assignment(final String nodeId, final KeyCache.SerializedKey key) {
+        final Assignment assignment = assignments.get(nodeId);
+        return assignment != null ? assignment : assignments.computeIfAbsent(nodeId, id -> resolve(id, key));
+    }
+
+    /**
+     * @param assignment Partition decision of the node.
+     * @param sequence Sequence number of the value if the node is spread, see {@link Assignment#nextSequence()}.
+     * @return Partition of the value.
+     */
+    int partition(final Assignment assignment, final long sequence) {
+        final int partition;
+        if (assignment.spread) {
+            partition = assignment.partitions[(int) Math.floorMod(sequence, (long) assignment.partitions.length)];
+        } else if (assignment.partitions != null) {
+            partition = assignment.partitions[assignment.hash % assignment.partitions.length];
+        } else {
+            partition = strategy == PartitionStrategy.CONSISTENT
+                    ? consistentHash(assignment.hash, numPartitions)
+                    : assignment.hash % numPartitions;
+        }
+        counts.incrementAndGet(partition);
+        return partition;
+    }
+
+    void evict(final Collection<String> nodeIds) {
+        assignments.keySet().removeAll(nodeIds);
+    }
+
+    int getNumPartitions() {
+        return numPartitions;
+    }
+
+    long[] getPartitionCounts() {
+        final long[] result = new long[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return Values of the busiest partition divided by the mean values per partition, {@code 1} is an even distribution.
+     */
+    double getSkew() {
+        long max = 0;
+        long sum = 0;
+        for (int i = 0; i < numPartitions; i++) {
+            final long count = counts.get(i);
+            max = Math.max(max, count);
+            sum += count;
+        }
+        return sum > 0 ? max * (double) numPartitions / sum : 1;
+    }
+
+    private Assignment resolve(final String nodeId, final KeyCache.SerializedKey key) {
+        final int hash = strategy == PartitionStrategy.CONSISTENT || key == null
+                ? Utils.toPositive(Utils.murmur2(nodeId.getBytes(StandardCharsets.UTF_8)))
+                : key.getHash();
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(nodeId).matches()) {
+                final PartitionGroup group = groups.get(i);
+                final int[] partitions = group.getPartitions().stream()
+                        .mapToInt(Integer::intValue)
+                        .filter(p -> p >= 0 && p < numPartitions)
+                        .toArray();
+                if (partitions.length == 0) {
+                    logger.warn("Partition group {} has no partition below {}, node {} uses all partitions",
+                            group.getName(), numPartitions, nodeId);
+                    break;
+                }
+                final boolean spread = Boolean.TRUE.equals(group.getSpread()) && partitions.length > 1;
+                logger.debug("Node {} uses partitions {} of group {}", nodeId, group.getPartitions(), group.getName());
+                return new Assignment(partitions, spread, hash);
+            }
+        }
+        return new Assignment(null, false, hash);
+    }
+
+    /**
+     * Jump consistent hash by Lamping and Veach: when the number of buckets grows from n to n + 1,
+     * only 1 / (n + 1) of the keys move, and all of them to the new bucket.
+     */
+    static int consistentHash(final long hash, final int buckets) {
+        long key = hash;
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    @Override
+    public String toString() {
+        final long[] partitionCounts = getPartitionCounts();
+        final StringBuilder sb = new StringBuilder("NodePartitioner{strategy=").append(strategy)
+                .append(", groups=").append(groups.size())
+                .append(", nodes=").append(assignments.size())
+                .append(", skew=").append(String.format("%.2f", getSkew()))
+                .append(", counts=[");
+        for (int i = 0; i < partitionCounts.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(partitionCounts[i]);
+        }
+        return sb.append("]}").toString();
+    }
+}
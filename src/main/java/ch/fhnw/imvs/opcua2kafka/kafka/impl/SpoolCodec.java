@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.NodeDescription;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Encodes the records of the {@link DiskSpool} as a type byte and the fingerprint of the writer schema followed by
+ * the Avro binary data.
+ *
+ * The schema registry is not needed, so records can be spooled while it is unreachable as well. Instead the writer
+ * schemas are stored as files named by their fingerprint, so that records spooled by a previous version are resolved
+ * against the current schemas after an upgrade.
+ */
+final class SpoolCodec {
+
+    private static final List<Class<? extends SpecificRecord>> TYPES = List.of(Message.class, MessageBatch.class, NodeDescription.class);
+
+    /**
+     * Type byte and fingerprint in front of the data of each record.
+     */
+    private static final int HEADER = 1 + Long.BYTES;
+
+    private static final String SCHEMA_SUFFIX = ".avsc";
+
+    private final Path schemaDirectory;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+
+    private final List<Schema> schemas;
+
+    private final List<Long> fingerprints;
+
+    private final List<SpecificDatumWriter<SpecificRecord>> writers;
+
+    /**
+     * Readers by fingerprint of their writer schema.
+     */
+    private final Map<Long, SpecificDatumReader<SpecificRecord>> readers = new HashMap<>();
+
+    private BinaryEncoder encoder;
+
+    private BinaryDecoder decoder;
+
+    /**
+     * @param schemaDirectory Directory of the writer schemas, created if it does not exist.
+     */
+    SpoolCodec(final Path schemaDirectory) {
+        this.schemaDirectory = schemaDirectory;
+        schemas = TYPES.stream().map(SpecificData.get()::getSchema).collect(Collectors.toList());
+        fingerprints = schemas.stream().map(SchemaNormalization::parsingFingerprint64).collect(Collectors.toList());
+        writers = schemas.stream().map(schema -> new SpecificDatumWriter<SpecificRecord>(schema)).collect(Collectors.toList());
+        try {
+            Files.createDirectories(schemaDirectory);
+            for (int type = 0; type < TYPES.size(); type++) {
+                storeSchema(fingerprints.get(type), schemas.get(type));
+                readers.put(fingerprints.get(type), new SpecificDatumReader<>(schemas.get(type)));
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to store spool schemas in " + schemaDirectory, e);
+        }
+    }
+
+    synchronized byte[] encode(final SpecificRecord record) {
+        final int type = TYPES.indexOf(record.getClass());
+        if (type < 0) {
+            throw new IllegalArgumentException("Unable to spool record of type " + record.getClass());
+        }
+        try {
+            out.reset();
+            out.write(type);
+            out.write(ByteBuffer.allocate(Long.BYTES).putLong(fingerprints.get(type)).array());
+            encoder = EncoderFactory.get().directBinaryEncoder(out, encoder);
+            writers.get(type).write(record, encoder);
+            encoder.flush();
+            return out.toByteArray();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the record has an unknown type or writer schema.
+     */
+    synchronized SpecificRecord decode(final byte[] data) {
+        if (data.length < HEADER) {
+            throw new IllegalArgumentException("Spooled record is too short: " + data.length + " bytes");
+        }
+        final int type = data[0];
+        if (type < 0 || type >= TYPES.size()) {
+            throw new IllegalArgumentException("Unknown spooled record type " + type);
+        }
+        final long fingerprint = ByteBuffer.wrap(data, 1, Long.BYTES).getLong();
+        try {
+            SpecificDatumReader<SpecificRecord> reader = readers.get(fingerprint);
+            if (reader == null) {
+                reader = new SpecificDatumReader<>(loadSchema(fingerprint), schemas.get(type));
+                readers.put(fingerprint, reader);
+            }
+            decoder = DecoderFactory.get().binaryDecoder(data, HEADER, data.length - HEADER, decoder);
+            return reader.read(null, decoder);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path getSchemaPath(final long fingerprint) {
+        return schemaDirectory.resolve(String.format("%016x%s", fingerprint, SCHEMA_SUFFIX));
+    }
+
+    private void storeSchema(final long fingerprint, final Schema schema) throws IOException {
+        final Path path = getSchemaPath(fingerprint);
+        if (!Files.exists(path)) {
+            final Path temp = schemaDirectory.resolve(path.getFileName() + ".tmp");
+            Files.writeString(temp, schema.toString(), StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private Schema loadSchema(final long fingerprint) throws IOException {
+        final Path path = getSchemaPath(fingerprint);
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Unknown writer schema of spooled record, " + path + " is missing");
+        }
+        return new Schema.Parser().parse(Files.readString(path, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Sends the records of a {@link DiskSpool} to Kafka in their spooled order.
+ *
+ * Every run sends up to {@code recordsPerRun} records and waits until Kafka acknowledged all of them before they
+ * are removed from the spool, so the spool is drained at most at the configured rate. If a record fails, the records
+ * stay in the spool and are sent again once the sender is ready, so records may be sent twice but are never lost.
+ * Records which cannot be decoded are moved to a file of rejected records, each preceded by its length, before they
+ * are removed from the spool.
+ */
+final class SpoolReplayer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolReplayer.class);
+
+    /**
+     * Time in Milliseconds to wait for the acknowledgements of one run.
+     */
+    private static final long SEND_TIMEOUT = 30_000;
+
+    private final DiskSpool spool;
+
+    private final SpoolCodec codec;
+
+    private final Function<SpecificRecord, ListenableFuture<?>> sender;
+
+    private final BooleanSupplier ready;
+
+    private final Path rejectedFile;
+
+    private final int recordsPerRun;
+
+    private final long runInterval;
+
+    private final List<byte[]> records = new ArrayList<>();
+
+    private final List<byte[]> rejected = new ArrayList<>();
+
+    private final List<ListenableFuture<?>> futures = new ArrayList<>();
+
+    private volatile double replayRate;
+
+    private volatile boolean replaying;
+
+    private volatile long rejectedRecords;
+
+    /**
+     * @param spool Spool to drain.
+     * @param codec Codec of the spooled records.
+     * @param sender Sends a record to Kafka.
+     * @param ready Whether Kafka is ready to receive the spooled records.
+     * @param rejectedFile File to which the records which cannot be decoded are appended.
+     * @param recordsPerRun Maximum number of records sent per run.
+     * @param runInterval Interval of the runs in Milliseconds, used to calculate the replay rate.
+     */
+    SpoolReplayer(final DiskSpool spool,
+                  final SpoolCodec codec,
+                  final Function<SpecificRecord, ListenableFuture<?>> sender,
+                  final BooleanSupplier ready,
+                  final Path rejectedFile,
+                  final int recordsPerRun,
+                  final long runInterval) {
+        this.spool = spool;
+        this.codec = codec;
+        this.sender = sender;
+        this.ready = ready;
+        this.rejectedFile = rejectedFile;
+        this.recordsPerRun = recordsPerRun;
+        this.runInterval = runInterval;
+    }
+
+    @Override
+    public void run() {
+        try {
+            spool.expire();
+            if (spool.isEmpty() || !ready.getAsBoolean()) {
+                replayRate = 0;
+                return;
+            }
+            if (!replaying) {
+                replaying = true;
+                logger.info("Replaying {} spooled records", spool.getRecordCount());
+            }
+            final long start = System.nanoTime();
+            final int count = sendNext();
+            final double seconds = Math.max(TimeUnit.MILLISECONDS.toNanos(runInterval), System.nanoTime() - start) / 1e9;
+            replayRate = count / seconds;
+            if (spool.isEmpty()) {
+                replaying = false;
+                logger.info("Spool drained: {}", spool);
+            }
+        } catch (final ExecutionException | TimeoutException e) {
+            replayRate = 0;
+            logger.warn("Unable to replay spooled records, retrying later", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final RuntimeException e) {
+            logger.error("Replaying spooled records failed", e);
+        }
+    }
+
+    /**
+     * @return Records sent per second by the last run.
+     */
+    double getReplayRate() {
+        return replayRate;
+    }
+
+    /**
+     * @return Number of records which could not be decoded and were moved to the rejected file.
+     */
+    long getRejectedRecordCount() {
+        return rejectedRecords;
+    }
+
+    /**
+     * @return Estimated time in Seconds until the spool is drained, {@code -1} if it is not being drained.
+     */
+    long getTimeToDrain() {
+        final long count = spool.getRecordCount();
+        if (count == 0) {
+            return 0;
+        }
+        final double rate = replayRate;
+        return rate > 0 ? (long) Math.ceil(count / rate) : -1;
+    }
+
+    private int sendNext() throws ExecutionException, TimeoutException, InterruptedException {
+        records.clear();
+        rejected.clear();
+        futures.clear();
+        final int count = spool.peek(recordsPerRun, records);
+        for (final byte[] record : records) {
+            final SpecificRecord decoded;
+            try {
+                decoded = codec.decode(record);
+            } catch (final RuntimeException e) {
+                logger.error("Moving spooled record which cannot be decoded to {}", rejectedFile, e);
+                rejected.add(record);
+                continue;
+            }
+            futures.add(sender.apply(decoded));
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SEND_TIMEOUT);
+        for (final ListenableFuture<?> future : futures) {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        for (final byte[] record : rejected) {
+            reject(record);
+        }
+        spool.commit();
+        return count;
+    }
+
+    /**
+     * Appends the record to the rejected file, the spool is not committed if this fails.
+     */
+    private void reject(final byte[] record) {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(rejectedFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND))) {
+            out.writeInt(record.length);
+            out.write(record);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to write rejected spool record to " + rejectedFile, e);
+        }
+        rejectedRecords++;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package ch.fhnw.imvs.opcua2kafka.message;
 
+import java.util.List;
+
 /**
  * Generic interface which consumes a message and pipes it to a sink or to another {@link MessagePipe}.
  * @param <T> Type of message.
@@ -26,4 +28,26 @@ public interface MessagePipe<T> {
      * @param message Message to pipe.s
      */
     void pipe(T message);
+
+    /**
+     * Pipe several messages at once, e.g. all notifications of a publish response or all values of a Read.
+     *
+     * Pipes which can share work between the messages of a batch override this method.
+     * The list must not be modified or kept after the call, because callers may reuse it.
+     *
+     * @param messages Messages to pipe, in the order in which they were received.
+     */
+    default void pipeBatch(final List<T> messages) {
+        for (final T message : messages) {
+            pipe(message);
+        }
+    }
+
+    /**
+     * Delivers all messages which are buffered by this pipe and releases its resources.
+     *
+     * Called once during shutdown, after the last message was piped. Pipes without buffers do not need to do anything.
+     */
+    default void close() {
+    }
 }
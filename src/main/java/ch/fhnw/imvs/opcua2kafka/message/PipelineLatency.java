@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the values between the stages of the pipeline, from their source timestamp until Kafka acknowledged them.
+ *
+ * Every stage is a {@link Timer} which is registered once and publishes the 50th, 99th and 99.9th percentile.
+ * The percentiles are computed by Micrometer with HdrHistogram over a sliding window of a few minutes.
+ * Negative latencies, which occur if the clocks of the server and the client differ, are ignored.
+ */
+@Component
+public class PipelineLatency {
+
+    public enum Stage {
+        /**
+         * From the source timestamp of a value until the client received it.
+         */
+        SOURCE_RECEIVED("source-received"),
+        /**
+         * From receiving a value until its message was built.
+         */
+        RECEIVED_BUILT("received-built"),
+        /**
+         * From building a message until Kafka acknowledged it.
+         */
+        BUILT_ACKED("built-acked"),
+        /**
+         * From the source timestamp of a value until Kafka acknowledged it.
+         */
+        SOURCE_ACKED("source-acked");
+
+        private final String name;
+
+        Stage(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p99.9"};
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final Timer[] timers = new Timer[STAGES.length];
+
+    @Autowired
+    public PipelineLatency(final MeterRegistry meterRegistry) {
+        for (final Stage stage : STAGES) {
+            timers[stage.ordinal()] = Timer.builder("pipeline.latency")
+                    .description("Latency of the values between two stages of the pipeline")
+                    .tag("stage", stage.getName())
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(Duration.ofMinutes(10))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @param stage Stage whose latency is recorded.
+     * @param from Start of the stage, nothing is recorded if {@code null}.
+     * @param to End of the stage, nothing is recorded if {@code null}.
+     */
+    public void record(final Stage stage, final Instant from, final Instant to) {
+        if (from == null || to == null) {
+            return;
+        }
+        final long nanos = (to.getEpochSecond() - from.getEpochSecond()) * 1_000_000_000L + (to.getNano() - from.getNano());
+        if (nanos >= 0) {
+            timers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public Timer getTimer(final Stage stage) {
+        return timers[stage.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PipelineLatency{");
+        for (final Stage stage : STAGES) {
+            final HistogramSnapshot snapshot = timers[stage.ordinal()].takeSnapshot();
+            if (stage.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(stage.getName()).append("=[count=").append(snapshot.count());
+            final ValueAtPercentile[] percentiles = snapshot.percentileValues();
+            for (int i = 0; i < percentiles.length && i < PERCENTILE_NAMES.length; i++) {
+                sb.append(", ").append(PERCENTILE_NAMES[i]).append('=')
+                        .append(String.format("%.1f", percentiles[i].value(TimeUnit.MILLISECONDS))).append("ms");
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Packs the payloads of many messages into one {@link MessageBatch} which is sent as a single Kafka record.
+ *
+ * There is one open batch per aggregate id. A batch is sent as soon as it contains {@code maxCount} payloads,
+ * its estimated size reaches {@code maxBytes} or its oldest payload is older than {@code maxDelay} milliseconds.
+ * Batches are sent while the lock is held, so that the payloads of a node stay in order.
+ */
+public class BatchingMessagePipe implements MessagePipe<Message> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingMessagePipe.class);
+
+    /**
+     * Estimated encoded size of a payload in addition to its strings and value.
+     */
+    private static final int PAYLOAD_OVERHEAD = 8;
+
+    /**
+     * Encoded size of a timestamp in Microseconds as variable length long.
+     */
+    private static final int TIMESTAMP_SIZE = 8;
+
+    private final KafkaService kafkaService;
+
+    private final int maxCount;
+
+    private final int maxBytes;
+
+    private final long maxDelayNanos;
+
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder sentBatches = new LongAdder();
+
+    private final LongAdder sentPayloads = new LongAdder();
+
+    /**
+     * @param kafkaService Service which sends the batches.
+     * @param maxCount Maximum number of payloads in a batch.
+     * @param maxBytes Maximum estimated size of a batch in bytes, a single larger payload is still sent.
+     * @param maxDelay Maximum time in milliseconds a payload waits for its batch to be sent.
+     */
+    public BatchingMessagePipe(final KafkaService kafkaService, final int maxCount, final int maxBytes, final long maxDelay) {
+        if (maxCount <= 0 || maxBytes <= 0 || maxDelay <= 0) {
+            throw new IllegalArgumentException("Batch limits must be positive: maxCount=" + maxCount + ", maxBytes=" + maxBytes + ", maxDelay=" + maxDelay);
+        }
+        this.kafkaService = kafkaService;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("message-batch-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        final long checkInterval = Math.max(1, maxDelay / 4);
+        this.scheduler.scheduleAtFixedRate(this::sendExpired, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void pipe(final Message message) {
+        add(message);
+    }
+
+    @Override
+    public synchronized void pipeBatch(final List<Message> messages) {
+        for (final Message message : messages) {
+            add(message);
+        }
+    }
+
+    /**
+     * Sends all open batches and stops the timer.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        synchronized (this) {
+            for (final Batch batch : batches.values()) {
+                send(batch);
+            }
+        }
+        logger.info("Message batches closed: {}", this);
+    }
+
+    public long getSentBatchCount() {
+        return sentBatches.sum();
+    }
+
+    public long getSentPayloadCount() {
+        return sentPayloads.sum();
+    }
+
+    private void add(final Message message) {
+        final Metadata metadata = message.getMetadata();
+        final Batch batch = batches.computeIfAbsent(metadata.getAggregateId(), Batch::new);
+        final Payload payload = message.getPayload();
+        final int size = estimateSize(payload);
+        if (!batch.isEmpty() && batch.bytes + size > maxBytes) {
+            send(batch);
+        }
+        batch.add(payload, size, metadata.getTimestamp());
+        if (batch.payloads.size() >= maxCount || batch.bytes >= maxBytes) {
+            send(batch);
+        }
+    }
+
+    private synchronized void sendExpired() {
+        final long now = System.nanoTime();
+        for (final Batch batch : batches.values()) {
+            if (!batch.isEmpty() && now - batch.startedNanos >= maxDelayNanos) {
+                send(batch);
+            }
+        }
+    }
+
+    private void send(final Batch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final MessageBatch messageBatch = batch.build();
+        logger.debug("Going to send batch of {} payloads ({} bytes) of aggregate {}",
+                messageBatch.getPayloads().size(), batch.bytes, batch.aggregateId);
+        batch.clear();
+        try {
+            kafkaService.sendBatch(messageBatch);
+            sentBatches.increment();
+            sentPayloads.add(messageBatch.getPayloads().size());
+        } catch (final RuntimeException e) {
+            logger.warn("Unable to send batch of {} payloads", messageBatch.getPayloads().size(), e);
+        }
+    }
+
+    /**
+     * Estimates the encoded size of a payload, strings are counted with one byte per character.
+     */
+    static int estimateSize(final Payload payload) {
+        return PAYLOAD_OVERHEAD
+                + length(payload.getNodeId())
+                + length(payload.getBrowseName())
+                + length(payload.getDisplayName())
+                + length(payload.getDescription())
+                + length(payload.getValue())
+                + estimateValueSize(payload.getTypedValue())
+                + (payload.getSourceTimestamp() != null ? TIMESTAMP_SIZE : 0)
+                + (payload.getServerTimestamp() != null ? TIMESTAMP_SIZE : 0);
+    }
+
+    private static int estimateValueSize(final Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).remaining();
+        }
+        if (value instanceof List) {
+            int size = 0;
+            for (final Object element : (List<?>) value) {
+                size += 1 + estimateValueSize(element);
+            }
+            return size;
+        }
+        return Long.BYTES;
+    }
+
+    private static int length(final CharSequence value) {
+        return value != null ? value.length() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingMessagePipe{maxCount=" + maxCount +
+                ", maxBytes=" + maxBytes +
+                ", maxDelay=" + TimeUnit.NANOSECONDS.toMillis(maxDelayNanos) + "ms" +
+                ", batches=" + getSentBatchCount() +
+                ", payloads=" + getSentPayloadCount() +
+                '}';
+    }
+
+    /**
+     * Open batch of one aggregate.
+     */
+    private static final class Batch {
+
+        private final String aggregateId;
+
+        private List<Payload> payloads = new ArrayList<>();
+
+        private Instant oldestTimestamp;
+
+        private int bytes;
+
+        private long startedNanos;
+
+        Batch(final String aggregateId) {
+            this.aggregateId = aggregateId;
+        }
+
+        boolean isEmpty() {
+            return payloads.isEmpty();
+        }
+
+        void add(final Payload payload, final int size, final Instant timestamp) {
+            if (payloads.isEmpty()) {
+                startedNanos = System.nanoTime();
+            }
+            payloads.add(payload);
+            bytes += size;
+            if (oldestTimestamp == null || (timestamp != null && timestamp.isBefore(oldestTimestamp))) {
+                oldestTimestamp = timestamp;
+            }
+        }
+
+        MessageBatch build() {
+            return MessageBatch.newBuilder()
+                    .setMetadata(Metadata.newBuilder()
+                            .setAggregateId(aggregateId)
+                            .setTraceId(UUID.randomUUID().toString())
+                            .setTimestamp(oldestTimestamp)
+                            .build())
+                    .setPayloads(payloads)
+                    .build();
+        }
+
+        /**
+         * Starts a new batch, the list of the previous batch belongs to the sent {@link MessageBatch}.
+         */
+        void clear() {
+            payloads = new ArrayList<>(payloads.size());
+            oldestTimestamp = null;
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UShort;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Binary encoding of the attribute values in a capture file.
+ *
+ * Every value is written as a type byte followed by its data, so that the Java objects of the OPC UA built-in types
+ * are restored with their original type. Arrays are restored as {@code Object[]}, values of other types as their
+ * String representation.
+ */
+final class CaptureFormat {
+
+    /**
+     * Marks a capture file, the ASCII characters {@code OUAC}.
+     */
+    static final int MAGIC = 0x4F554143;
+
+    static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte INT = 4;
+    private static final byte LONG = 5;
+    private static final byte FLOAT = 6;
+    private static final byte DOUBLE = 7;
+    private static final byte STRING = 8;
+    private static final byte UBYTE = 9;
+    private static final byte USHORT = 10;
+    private static final byte UINTEGER = 11;
+    private static final byte ULONG = 12;
+    private static final byte DATE_TIME = 13;
+    private static final byte INSTANT = 14;
+    private static final byte BYTE_STRING = 15;
+    private static final byte STATUS_CODE = 16;
+    private static final byte LOCALIZED_TEXT = 17;
+    private static final byte QUALIFIED_NAME = 18;
+    private static final byte NODE_ID = 19;
+    private static final byte GUID = 20;
+    private static final byte ARRAY = 21;
+    private static final byte OTHER = 22;
+
+    private CaptureFormat() {
+    }
+
+    static void writeValue(final DataOutput out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof UByte) {
+            out.writeByte(UBYTE);
+            out.writeByte(((UByte) value).intValue());
+        } else if (value instanceof UShort) {
+            out.writeByte(USHORT);
+            out.writeShort(((UShort) value).intValue());
+        } else if (value instanceof UInteger) {
+            out.writeByte(UINTEGER);
+            out.writeInt(((UInteger) value).intValue());
+        } else if (value instanceof ULong) {
+            out.writeByte(ULONG);
+            out.writeLong(((ULong) value).longValue());
+        } else if (value instanceof DateTime) {
+            out.writeByte(DATE_TIME);
+            out.writeLong(((DateTime) value).getUtcTime());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(((Instant) value).getEpochSecond());
+            out.writeInt(((Instant) value).getNano());
+        } else if (value instanceof ByteString) {
+            out.writeByte(BYTE_STRING);
+            writeBytes(out, ((ByteString) value).bytes());
+        } else if (value instanceof StatusCode) {
+            out.writeByte(STATUS_CODE);
+            out.writeLong(((StatusCode) value).getValue());
+        } else if (value instanceof LocalizedText) {
+            out.writeByte(LOCALIZED_TEXT);
+            writeString(out, ((LocalizedText) value).getLocale());
+            writeString(out, ((LocalizedText) value).getText());
+        } else if (value instanceof QualifiedName) {
+            out.writeByte(QUALIFIED_NAME);
+            out.writeShort(((QualifiedName) value).getNamespaceIndex().intValue());
+            writeString(out, ((QualifiedName) value).getName());
+        } else if (value instanceof NodeId) {
+            out.writeByte(NODE_ID);
+            writeString(out, ((NodeId) value).toParseableString());
+        } else if (value instanceof UUID) {
+            out.writeByte(GUID);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            out.writeByte(ARRAY);
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i));
+            }
+        } else {
+            out.writeByte(OTHER);
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    static Object readValue(final DataInput in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+            case OTHER:
+                return readString(in);
+            case UBYTE:
+                return UByte.valueOf(in.readUnsignedByte());
+            case USHORT:
+                return UShort.valueOf(in.readUnsignedShort());
+            case UINTEGER:
+                return UInteger.valueOf(in.readInt() & 0xFFFFFFFFL);
+            case ULONG:
+                return ULong.valueOf(in.readLong());
+            case DATE_TIME:
+                return new DateTime(in.readLong());
+            case INSTANT:
+                return Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case BYTE_STRING:
+                return new ByteString(readBytes(in));
+            case STATUS_CODE:
+                return new StatusCode(in.readLong());
+            case LOCALIZED_TEXT:
+                return new LocalizedText(readString(in), readString(in));
+            case QUALIFIED_NAME:
+                return new QualifiedName(in.readUnsignedShort(), readString(in));
+            case NODE_ID:
+                return NodeId.parse(readString(in));
+            case GUID:
+                return new UUID(in.readLong(), in.readLong());
+            case ARRAY:
+                final Object[] array = new Object[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readValue(in);
+                }
+                return array;
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Writes a nullable String as its length and UTF-8 bytes, unlike {@link DataOutput#writeUTF(String)} without
+     * a limit of the length.
+     */
+    static void writeString(final DataOutput out, final String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    static String readString(final DataInput in) throws IOException {
+        final byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static void writeBytes(final DataOutput out, final byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the batches of a file written by the {@link CaptureWriter}.
+ *
+ * Attributes which are unknown to this version are skipped. A file which ends within a batch, e.g. because the
+ * application was killed while capturing, is read up to the last complete batch.
+ */
+final class CaptureReader implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureReader.class);
+
+    /**
+     * Records which were received together.
+     */
+    static final class Batch {
+
+        private final Instant received;
+
+        private final String connection;
+
+        private final List<OpcUaRecord> records;
+
+        Batch(final Instant received, final String connection, final List<OpcUaRecord> records) {
+            this.received = received;
+            this.connection = connection;
+            this.records = records;
+        }
+
+        Instant getReceived() {
+            return received;
+        }
+
+        String getConnection() {
+            return connection;
+        }
+
+        List<OpcUaRecord> getRecords() {
+            return records;
+        }
+    }
+
+    private final Path file;
+
+    private final DataInputStream in;
+
+    /**
+     * Attributes by their index in the file, {@code null} for attributes unknown to this version.
+     */
+    private final OpcUaAttributes[] attributes;
+
+    /**
+     * Whether the values of an attribute are referenced by their index, by the index in the file.
+     */
+    private final boolean[] symbolic;
+
+    private final List<String> symbols = new ArrayList<>();
+
+    CaptureReader(final Path file) throws IOException {
+        this.file = file;
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        try {
+            if (in.readInt() != CaptureFormat.MAGIC) {
+                throw new IOException("Not a capture file: " + file);
+            }
+            final int version = in.readInt();
+            if (version != CaptureFormat.VERSION) {
+                throw new IOException("Unsupported capture file version " + version + ": " + file);
+            }
+            final int count = in.readInt();
+            attributes = new OpcUaAttributes[count];
+            symbolic = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                attributes[i] = toAttribute(CaptureFormat.readString(in));
+                symbolic[i] = in.readBoolean();
+            }
+        } catch (final IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Next batch, {@code null} at the end of the file.
+     * @throws IOException if the file could not be read or is corrupt.
+     */
+    Batch next() throws IOException {
+        final long received;
+        try {
+            received = in.readLong();
+        } catch (final EOFException e) {
+            return null;
+        }
+        try {
+            final String connection = CaptureFormat.readString(in);
+            final int count = in.readInt();
+            final List<OpcUaRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                records.add(readRecord());
+            }
+            return new Batch(Instant.EPOCH.plus(received, ChronoUnit.MICROS), connection, records);
+        } catch (final EOFException e) {
+            logger.warn("Capture file {} ends within a batch, the batch is skipped", file);
+            return null;
+        }
+    }
+
+    private OpcUaRecord readRecord() throws IOException {
+        final OpcUaRecord record = new OpcUaRecord();
+        final int count = in.readUnsignedByte();
+        for (int i = 0; i < count; i++) {
+            final int index = in.readUnsignedByte();
+            if (index >= attributes.length) {
+                throw new IOException("Unknown attribute index " + index + " in " + file);
+            }
+            final OpcUaAttributes attribute = attributes[index];
+            final Object value = symbolic[index] ? readSymbol() : CaptureFormat.readValue(in);
+            if (attribute != null) {
+                record.set(attribute, value);
+            }
+        }
+        return record;
+    }
+
+    private Object readSymbol() throws IOException {
+        final int index = in.readInt();
+        if (index < 0) {
+            return CaptureFormat.readValue(in);
+        }
+        if (index == symbols.size()) {
+            symbols.add(CaptureFormat.readString(in));
+        } else if (index > symbols.size()) {
+            throw new IOException("Unknown symbol " + index + " in " + file);
+        }
+        return symbols.get(index);
+    }
+
+    private static OpcUaAttributes toAttribute(final String name) {
+        try {
+            return OpcUaAttributes.valueOf(name);
+        } catch (final IllegalArgumentException e) {
+            logger.warn("Unknown attribute {} in capture file is skipped", name);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
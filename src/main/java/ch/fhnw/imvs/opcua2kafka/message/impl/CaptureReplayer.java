@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Pipes the batches of a capture file into the pipes of their connections, so that recorded traffic can be sent
+ * again without an OPC UA server.
+ *
+ * With a speed of {@code 1} the batches are piped with the delays at which they were received, a speed of {@code N}
+ * divides the delays by {@code N} and a speed of {@code 0} pipes the batches as fast as possible. All timestamps of
+ * a batch are moved by the time between its capture and its replay, so the latencies keep their recorded values.
+ * A batch which the pipes fail to process is counted and skipped, only an unreadable file ends the replay.
+ */
+final class CaptureReplayer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureReplayer.class);
+
+    private static final List<OpcUaAttributes> TIMESTAMPS =
+            List.of(OpcUaAttributes.Timestamp, OpcUaAttributes.SourceTimestamp, OpcUaAttributes.ServerTimestamp);
+
+    private final Path file;
+
+    private final Function<String, MessagePipe<OpcUaRecord>> pipes;
+
+    private final double speed;
+
+    private volatile long batchCount;
+
+    private volatile long recordCount;
+
+    private volatile long failedBatchCount;
+
+    /**
+     * @param file Capture file to replay.
+     * @param pipes Pipe of the connection with the given name.
+     * @param speed Factor by which the replay is faster than the capture, {@code 0} for maximum speed.
+     */
+    CaptureReplayer(final Path file, final Function<String, MessagePipe<OpcUaRecord>> pipes, final double speed) {
+        this.file = file;
+        this.pipes = pipes;
+        this.speed = speed;
+    }
+
+    @Override
+    public void run() {
+        logger.info("Replaying capture {} with speed {}", file, speed > 0 ? speed : "max");
+        final long start = System.nanoTime();
+        try (CaptureReader reader = new CaptureReader(file)) {
+            Instant first = null;
+            CaptureReader.Batch batch;
+            while ((batch = reader.next()) != null) {
+                if (first == null) {
+                    first = batch.getReceived();
+                }
+                if (speed > 0) {
+                    waitUntil(start + (long) (Duration.between(first, batch.getReceived()).toNanos() / speed));
+                }
+                try {
+                    shiftTimestamps(batch.getRecords(), Duration.between(batch.getReceived(), Instant.now()));
+                    pipes.apply(batch.getConnection()).pipeBatch(batch.getRecords());
+                    batchCount++;
+                    recordCount += batch.getRecords().size();
+                } catch (final RuntimeException e) {
+                    failed(batch, e);
+                }
+            }
+            final double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+            logger.info("Replay finished in {} s with {} records/s: {}",
+                    String.format("%.1f", seconds), (long) (recordCount / seconds), this);
+        } catch (final IOException e) {
+            logger.error("Replaying capture {} failed: {}", file, this, e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Replay interrupted: {}", this);
+        }
+    }
+
+    /**
+     * @return Number of batches which could not be piped and were skipped.
+     */
+    long getFailedBatchCount() {
+        return failedBatchCount;
+    }
+
+    /**
+     * Counts a batch which could not be piped, only the first failure is logged with its stack trace.
+     */
+    private void failed(final CaptureReader.Batch batch, final RuntimeException e) {
+        failedBatchCount++;
+        if (failedBatchCount == 1) {
+            logger.error("Skipping batch of connection '{}' captured at {} which could not be replayed, further failures are only counted",
+                    batch.getConnection(), batch.getReceived(), e);
+        } else {
+            logger.debug("Skipping batch of connection '{}' captured at {}: {}", batch.getConnection(), batch.getReceived(), e.toString());
+        }
+    }
+
+    private static void waitUntil(final long deadline) throws InterruptedException {
+        final long delay = deadline - System.nanoTime();
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    private static void shiftTimestamps(final List<OpcUaRecord> records, final Duration shift) {
+        for (final OpcUaRecord record : records) {
+            for (final OpcUaAttributes attribute : TIMESTAMPS) {
+                final Instant timestamp = record.getInstant(attribute);
+                if (timestamp != null) {
+                    record.set(attribute, timestamp.plus(shift));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureReplayer{file=" + file +
+                ", speed=" + speed +
+                ", batches=" + batchCount +
+                ", records=" + recordCount +
+                ", failedBatches=" + failedBatchCount +
+                '}';
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captures the records received from the OPC UA servers to a binary file, which can be replayed by the
+ * {@link CaptureReplayer}.
+ *
+ * The file starts with a header which names the attributes and whether their values are referenced by index. Every batch of records is written with the time at which it
+ * was received in Microseconds since the epoch and the name of its connection. Node Id, BrowseName, DisplayName and
+ * Description are written once per file and then referenced by their index, the other values are encoded by the
+ * {@link CaptureFormat}.
+ *
+ * The batches are copied into a bounded queue and written by a separate thread, so that the OPC UA threads never wait
+ * for the disk. If the queue is full, batches are dropped and counted. The file is flushed whenever the queue is empty,
+ * so that it is complete up to the last written batch if the application stops. If the file cannot be written,
+ * capturing stops without affecting the messages sent to Kafka.
+ */
+final class CaptureWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureWriter.class);
+
+    private static final Set<OpcUaAttributes> SYMBOL_ATTRIBUTES = EnumSet.of(OpcUaAttributes.NodeId,
+            OpcUaAttributes.BrowseName, OpcUaAttributes.DisplayName, OpcUaAttributes.Description);
+
+    private static final OpcUaAttributes[] ATTRIBUTES = OpcUaAttributes.values();
+
+    /**
+     * Number of batches which wait for the writer thread before further batches are dropped.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * Time in Milliseconds the writer thread waits for a batch before it checks whether it is closed.
+     */
+    private static final long POLL_TIMEOUT = 100;
+
+    /**
+     * Time in Milliseconds to wait for the queued batches on close.
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    private final Path file;
+
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> symbols = new HashMap<>();
+
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final Thread writerThread;
+
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    private volatile long batchCount;
+
+    private volatile long recordCount;
+
+    private volatile boolean failed;
+
+    private volatile boolean closed;
+
+    CaptureWriter(final Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(CaptureFormat.MAGIC);
+        out.writeInt(CaptureFormat.VERSION);
+        out.writeInt(ATTRIBUTES.length);
+        for (final OpcUaAttributes attribute : ATTRIBUTES) {
+            CaptureFormat.writeString(out, attribute.name());
+            out.writeBoolean(SYMBOL_ATTRIBUTES.contains(attribute));
+        }
+        out.flush();
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("capture-writer-");
+        threadFactory.setDaemon(true);
+        writerThread = threadFactory.newThread(this::writeQueued);
+        writerThread.start();
+        logger.info("Capturing OPC UA records to {}", file);
+    }
+
+    /**
+     * Queues a batch of records to be written, records which are empty are skipped.
+     *
+     * @param connection Name of the connection which received the records.
+     * @param records Records, which are copied and not kept.
+     * @param received Time at which the records were received.
+     */
+    void write(final String connection, final List<OpcUaRecord> records, final Instant received) {
+        if (failed || closed) {
+            return;
+        }
+        final List<OpcUaRecord> copies = new ArrayList<>(records.size());
+        for (final OpcUaRecord record : records) {
+            if (record != null && !record.isEmpty()) {
+                copies.add(record.copy());
+            }
+        }
+        if (!queue.offer(new Batch(connection, copies, received))) {
+            droppedRecords.addAndGet(copies.size());
+            if (droppedBatches.getAndIncrement() == 0) {
+                logger.warn("Capture queue is full, dropping batches until the writer catches up: {}", this);
+            }
+        }
+    }
+
+    /**
+     * Writes the queued batches until the writer is closed and the queue is empty.
+     */
+    private void writeQueued() {
+        try {
+            while (true) {
+                Batch batch = queue.poll();
+                if (batch == null) {
+                    out.flush();
+                    if (closed) {
+                        break;
+                    }
+                    batch = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        continue;
+                    }
+                }
+                writeBatch(batch);
+            }
+        } catch (final IOException e) {
+            failed = true;
+            queue.clear();
+            logger.error("Unable to write capture file {}, capturing stopped: {}", file, this, e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                logger.warn("Unable to close capture file {}", file, e);
+            }
+        }
+    }
+
+    private void writeBatch(final Batch batch) throws IOException {
+        out.writeLong(ChronoUnit.MICROS.between(Instant.EPOCH, batch.received));
+        CaptureFormat.writeString(out, batch.connection);
+        out.writeInt(batch.records.size());
+        for (final OpcUaRecord record : batch.records) {
+            writeRecord(record);
+        }
+        batchCount++;
+        recordCount += batch.records.size();
+    }
+
+    private void writeRecord(final OpcUaRecord record) throws IOException {
+        int count = 0;
+        for (final OpcUaAttributes attribute : ATTRIBUTES) {
+            if (record.get(attribute) != null) {
+                count++;
+            }
+        }
+        out.writeByte(count);
+        for (final OpcUaAttributes attribute : ATTRIBUTES) {
+            final Object value = record.get(attribute);
+            if (value == null) {
+                continue;
+            }
+            out.writeByte(attribute.ordinal());
+            if (SYMBOL_ATTRIBUTES.contains(attribute) && value instanceof String) {
+                writeSymbol((String) value);
+            } else {
+                if (SYMBOL_ATTRIBUTES.contains(attribute)) {
+                    out.writeInt(-1);
+                }
+                CaptureFormat.writeValue(out, value);
+            }
+        }
+    }
+
+    /**
+     * Writes the index of a String, followed by the String itself if it is written for the first time.
+     */
+    private void writeSymbol(final String value) throws IOException {
+        final Integer index = symbols.get(value);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        final int next = symbols.size();
+        symbols.put(value, next);
+        out.writeInt(next);
+        CaptureFormat.writeString(out, value);
+    }
+
+    /**
+     * @return Number of records written to the file.
+     */
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return Number of records dropped because the queue was full.
+     */
+    long getDroppedRecordCount() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * Writes the queued batches and closes the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(CLOSE_TIMEOUT);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warn("Capture writer did not finish within {} ms", CLOSE_TIMEOUT);
+            writerThread.interrupt();
+        }
+        logger.info("Capture closed: {}", this);
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureWriter{file=" + file +
+                ", batches=" + batchCount +
+                ", records=" + recordCount +
+                ", queued=" + queue.size() +
+                ", dropped=" + droppedRecords.get() +
+                ", failed=" + failed +
+                '}';
+    }
+
+    /**
+     * Copied records of one batch which wait for the writer thread.
+     */
+    private static final class Batch {
+
+        private final String connection;
+
+        private final List<OpcUaRecord> records;
+
+        private final Instant received;
+
+        Batch(final String connection, final List<OpcUaRecord> records, final Instant received) {
+            this.connection = connection;
+            this.records = records;
+            this.received = received;
+        }
+    }
+}
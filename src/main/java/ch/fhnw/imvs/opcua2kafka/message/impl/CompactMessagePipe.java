@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.NodeDescription;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves the BrowseName, DisplayName and Description of the nodes out of the messages.
+ *
+ * The attributes of a node are sent as {@link NodeDescription} to the compacted metadata topic when the first
+ * message of the node passes and again whenever they change. The messages are forwarded with empty attributes,
+ * consumers join them with the latest description of their aggregate id and Node Id, as several connections may
+ * monitor nodes with the same Node Id. The messages are changed in place, they are
+ * created for this pipeline and not shared.
+ */
+public class CompactMessagePipe implements MessagePipe<Message> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompactMessagePipe.class);
+
+    private final MessagePipe<Message> nextPipe;
+
+    private final KafkaService kafkaService;
+
+    /**
+     * Last sent description per aggregate id and Node Id.
+     */
+    private final Map<String, NodeDescription> descriptions = new ConcurrentHashMap<>();
+
+    private final LongAdder sentDescriptions = new LongAdder();
+
+    public CompactMessagePipe(final MessagePipe<Message> nextPipe, final KafkaService kafkaService) {
+        this.nextPipe = nextPipe;
+        this.kafkaService = kafkaService;
+    }
+
+    @Override
+    public void pipe(final Message message) {
+        compact(message);
+        nextPipe.pipe(message);
+    }
+
+    @Override
+    public void pipeBatch(final List<Message> messages) {
+        for (final Message message : messages) {
+            compact(message);
+        }
+        nextPipe.pipeBatch(messages);
+    }
+
+    @Override
+    public void close() {
+        nextPipe.close();
+    }
+
+    public long getSentDescriptionCount() {
+        return sentDescriptions.sum();
+    }
+
+    private void compact(final Message message) {
+        final Payload payload = message.getPayload();
+        final String key = message.getMetadata().getAggregateId() + '\0' + payload.getNodeId();
+        final NodeDescription last = descriptions.get(key);
+        if (last == null || !describes(last, message)) {
+            final NodeDescription description = NodeDescription.newBuilder()
+                    .setNodeId(payload.getNodeId())
+                    .setAggregateId(message.getMetadata().getAggregateId())
+                    .setBrowseName(payload.getBrowseName())
+                    .setDisplayName(payload.getDisplayName())
+                    .setDescription(payload.getDescription())
+                    .setTimestamp(message.getMetadata().getTimestamp())
+                    .build();
+            logger.debug("Going to send description of node {}", payload.getNodeId());
+            kafkaService.sendNodeDescription(description);
+            descriptions.put(key, description);
+            sentDescriptions.increment();
+        }
+        payload.setBrowseName("");
+        payload.setDisplayName("");
+        payload.setDescription("");
+    }
+
+    private static boolean describes(final NodeDescription description, final Message message) {
+        final Payload payload = message.getPayload();
+        return Objects.equals(description.getAggregateId(), message.getMetadata().getAggregateId())
+                && Objects.equals(description.getBrowseName(), payload.getBrowseName())
+                && Objects.equals(description.getDisplayName(), payload.getDisplayName())
+                && Objects.equals(description.getDescription(), payload.getDescription());
+    }
+
+    @Override
+    public String toString() {
+        return "CompactMessagePipe{nodes=" + descriptions.size() + ", descriptions=" + getSentDescriptionCount() + '}';
+    }
+}
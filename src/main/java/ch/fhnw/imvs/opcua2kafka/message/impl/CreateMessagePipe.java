@@ -15,21 +15,32 @@
  */
 package ch.fhnw.imvs.opcua2kafka.message.impl;
 
-import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.ValueMode;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
 import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
 import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
 import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.message.PipelineLatency;
 import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
-
-public final class CreateMessagePipe implements MessagePipe<Map<OpcUaAttribute, String>> {
+/**
+ * Builds the Avro {@link Message}s from the {@link OpcUaRecord}s of the OPC UA services.
+ *
+ * The records are converted before this pipe returns, so the services can reuse them afterwards.
+ * The source and server timestamps of the values are copied into the payload, and the time from the source timestamp
+ * until the value was received and until its message was built is recorded in the {@link PipelineLatency}.
+ */
+public final class CreateMessagePipe implements MessagePipe<OpcUaRecord> {
 
     private static final Logger logger = LoggerFactory.getLogger(CreateMessagePipe.class);
 
@@ -37,35 +48,111 @@ public final class CreateMessagePipe implements MessagePipe<Map<OpcUaAttribute,
 
     private final String aggregateId;
 
+    private final ValueMode valueMode;
+
+    /**
+     * Timer of the time spent building the messages, {@code null} if not measured.
+     */
+    private final Timer buildTimer;
+
+    /**
+     * Latency of the values, {@code null} if not measured.
+     */
+    private final PipelineLatency latency;
+
     public CreateMessagePipe(final MessagePipe<Message> nextPipe, final String aggregateId) {
+        this(nextPipe, aggregateId, ValueMode.STRING);
+    }
+
+    public CreateMessagePipe(final MessagePipe<Message> nextPipe, final String aggregateId, final ValueMode valueMode) {
+        this(nextPipe, aggregateId, valueMode, null);
+    }
+
+    public CreateMessagePipe(final MessagePipe<Message> nextPipe,
+                             final String aggregateId,
+                             final ValueMode valueMode,
+                             final Timer buildTimer) {
+        this(nextPipe, aggregateId, valueMode, buildTimer, null);
+    }
+
+    public CreateMessagePipe(final MessagePipe<Message> nextPipe,
+                             final String aggregateId,
+                             final ValueMode valueMode,
+                             final Timer buildTimer,
+                             final PipelineLatency latency) {
         this.nextPipe = nextPipe;
         this.aggregateId = aggregateId;
+        this.valueMode = valueMode;
+        this.buildTimer = buildTimer;
+        this.latency = latency;
         logger.info("CreateMessagePipe initialized");
     }
 
     @Override
-    public void pipe(final Map<OpcUaAttribute, String> message) {
+    public void pipe(final OpcUaRecord message) {
         if (message != null && !message.isEmpty()) {
             logger.debug("Message received by CreateMessagePipe. Going to build 'Message'");
-            final Metadata metadata = Metadata.newBuilder()
-                    .setAggregateId(aggregateId)
-                    .setTraceId(UUID.randomUUID().toString())
-                    .setTimestamp(Instant.now())
-                    .build();
-            final Payload payload = Payload.newBuilder()
-                    .setNodeId(message.get(OpcUaAttributes.NodeId))
-                    .setBrowseName(message.get(OpcUaAttributes.BrowseName))
-                    .setDisplayName(message.get(OpcUaAttributes.DisplayName))
-                    .setDescription(message.get(OpcUaAttributes.Description))
-                    .setValue(message.get(OpcUaAttributes.Value))
-                    .build();
-
-            final Message m = Message.newBuilder()
-                    .setMetadata(metadata)
-                    .setPayload(payload)
-                    .build();
+            final long start = System.nanoTime();
+            final Message m = createMessage(message, Instant.now());
+            recordBuildTime(start);
             logger.debug("Message built. Going to forward message: {}", m);
             nextPipe.pipe(m);
         }
     }
+
+    /**
+     * Builds the messages of a batch with a common timestamp and forwards them as one batch.
+     */
+    @Override
+    public void pipeBatch(final List<OpcUaRecord> messages) {
+        final long start = System.nanoTime();
+        final Instant timestamp = Instant.now();
+        final List<Message> result = new ArrayList<>(messages.size());
+        for (final OpcUaRecord message : messages) {
+            if (message != null && !message.isEmpty()) {
+                result.add(createMessage(message, timestamp));
+            }
+        }
+        recordBuildTime(start);
+        logger.debug("{} messages built. Going to forward them", result.size());
+        if (!result.isEmpty()) {
+            nextPipe.pipeBatch(result);
+        }
+    }
+
+    private void recordBuildTime(final long start) {
+        if (buildTimer != null) {
+            buildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Message createMessage(final OpcUaRecord message, final Instant timestamp) {
+        final Metadata metadata = Metadata.newBuilder()
+                .setAggregateId(aggregateId)
+                .setTraceId(UUID.randomUUID().toString())
+                .setTimestamp(timestamp)
+                .build();
+        final Object value = message.get(OpcUaAttributes.Value);
+        final Instant sourceTimestamp = message.getInstant(OpcUaAttributes.SourceTimestamp);
+        if (latency != null) {
+            final Instant received = message.getInstant(OpcUaAttributes.Timestamp);
+            latency.record(PipelineLatency.Stage.SOURCE_RECEIVED, sourceTimestamp, received);
+            latency.record(PipelineLatency.Stage.RECEIVED_BUILT, received, timestamp);
+        }
+        final Payload payload = Payload.newBuilder()
+                .setNodeId(message.getString(OpcUaAttributes.NodeId))
+                .setBrowseName(message.getString(OpcUaAttributes.BrowseName))
+                .setDisplayName(message.getString(OpcUaAttributes.DisplayName))
+                .setDescription(message.getString(OpcUaAttributes.Description))
+                .setValue(valueMode != ValueMode.TYPED ? String.valueOf(value) : "")
+                .setTypedValue(valueMode != ValueMode.STRING ? TypedValues.of(value) : null)
+                .setSourceTimestamp(sourceTimestamp)
+                .setServerTimestamp(message.getInstant(OpcUaAttributes.ServerTimestamp))
+                .build();
+
+        return Message.newBuilder()
+                .setMetadata(metadata)
+                .setPayload(payload)
+                .build();
+    }
 }
@@ -17,28 +17,117 @@ package ch.fhnw.imvs.opcua2kafka.message.impl;
 
 import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration;
 import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
-import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
 import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class DefaultMessagePipeFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultMessagePipeFactory.class);
 
+    /**
+     * Creates the Kafka pipe which is shared by all OPC UA connections.
+     * The {@link CreateMessagePipe}s in front of it are created per connection by the {@link MessageManager}.
+     * Unless disabled, the messages are handed over to Kafka by a {@link RingBufferMessagePipe},
+     * so that a blocking producer does not stall the OPC UA threads.
+     * If batching is enabled, the messages are packed into batches by a {@link BatchingMessagePipe} instead of
+     * being sent one by one. In the compact payload mode a {@link CompactMessagePipe} moves the node attributes
+     * to the metadata topic before.
+     * The counters of these pipes are registered as meters, they are only read when the meters are published.
+     */
     @Bean
     @Autowired
-    public MessagePipe<Map<OpcUaAttribute, String>> createDefaultPipe(final KafkaService kafkaService,
-                                                                      final MessageConfiguration messageConfiguration) {
-        final KafkaMessagePipe kafkaMessagePipe = new KafkaMessagePipe(kafkaService);
-        final CreateMessagePipe createMessagePipe = new CreateMessagePipe(kafkaMessagePipe, messageConfiguration.getAggregateId());
+    public MessagePipe<Message> createDefaultPipe(final KafkaService kafkaService,
+                                                  final MessageConfiguration messageConfiguration,
+                                                  final MeterRegistry meterRegistry) {
+        final MessagePipe<Message> kafkaMessagePipe;
+        if (messageConfiguration.isBatchEnabled()) {
+            final BatchingMessagePipe batchingPipe = new BatchingMessagePipe(kafkaService,
+                    messageConfiguration.getBatchMaxCount(),
+                    messageConfiguration.getBatchMaxBytes(),
+                    messageConfiguration.getBatchMaxDelay());
+            bindBatchingMetrics(batchingPipe, meterRegistry);
+            kafkaMessagePipe = batchingPipe;
+        } else {
+            kafkaMessagePipe = new KafkaMessagePipe(kafkaService);
+        }
+        final MessagePipe<Message> sendPipe;
+        if (messageConfiguration.getPayloadMode() == MessageConfiguration.PayloadMode.COMPACT) {
+            final CompactMessagePipe compactPipe = new CompactMessagePipe(kafkaMessagePipe, kafkaService);
+            FunctionCounter.builder("message.descriptions.sent", compactPipe, CompactMessagePipe::getSentDescriptionCount)
+                    .description("Node descriptions sent to the metadata topic")
+                    .register(meterRegistry);
+            sendPipe = compactPipe;
+        } else {
+            sendPipe = kafkaMessagePipe;
+        }
+        if (messageConfiguration.getBufferCapacity() <= 0) {
+            logger.info("MessagePipes configured without buffer");
+            return sendPipe;
+        }
+        final RingBufferMessagePipe<Message> bufferPipe = new RingBufferMessagePipe<>(sendPipe,
+                DefaultMessagePipeFactory::getBufferKey,
+                messageConfiguration.getBufferCapacity(),
+                messageConfiguration.getBufferWaitStrategy(),
+                messageConfiguration.getBufferOverflowPolicy(),
+                Math.max(1, messageConfiguration.getBufferConsumerThreads()));
+        bindBufferMetrics(bufferPipe, meterRegistry);
         logger.info("MessagePipes configured");
-        return createMessagePipe;
+        return bufferPipe;
+    }
+
+    /**
+     * Key of a message in the ring buffer. The buffer is shared by all connections, so the key contains the
+     * aggregate id as well, otherwise the values of equal Node Ids of different servers would be conflated.
+     */
+    static String getBufferKey(final Message message) {
+        return message.getMetadata().getAggregateId() + '\0' + message.getPayload().getNodeId();
+    }
+
+    private static void bindBatchingMetrics(final BatchingMessagePipe pipe, final MeterRegistry meterRegistry) {
+        FunctionCounter.builder("message.batch.sent", pipe, BatchingMessagePipe::getSentBatchCount)
+                .description("Message batches sent to Kafka")
+                .register(meterRegistry);
+        FunctionCounter.builder("message.batch.payloads", pipe, BatchingMessagePipe::getSentPayloadCount)
+                .description("Payloads sent in message batches")
+                .register(meterRegistry);
+    }
+
+    private static void bindBufferMetrics(final RingBufferMessagePipe<Message> pipe, final MeterRegistry meterRegistry) {
+        Gauge.builder("message.buffer.size", pipe, RingBufferMessagePipe::getSize)
+                .description("Messages in the buffer")
+                .register(meterRegistry);
+        Gauge.builder("message.buffer.capacity", pipe, RingBufferMessagePipe::getCapacity)
+                .description("Capacity of the buffer")
+                .register(meterRegistry);
+        FunctionCounter.builder("message.buffer.enqueued", pipe, RingBufferMessagePipe::getEnqueuedCount)
+                .description("Messages put into the buffer")
+                .register(meterRegistry);
+        FunctionCounter.builder("message.buffer.forwarded", pipe, RingBufferMessagePipe::getForwardedCount)
+                .description("Messages forwarded from the buffer")
+                .register(meterRegistry);
+        FunctionCounter.builder("message.buffer.dropped", pipe, RingBufferMessagePipe::getDroppedCount)
+                .description("Messages dropped because the buffer was full")
+                .register(meterRegistry);
+        FunctionCounter.builder("message.buffer.conflated", pipe, RingBufferMessagePipe::getConflatedCount)
+                .description("Messages replaced by a newer message of the same node")
+                .register(meterRegistry);
+        TimeGauge.builder("message.buffer.queue.time.avg", pipe, TimeUnit.NANOSECONDS, RingBufferMessagePipe::getAverageQueueNanos)
+                .description("Average time a forwarded message spent in the buffer")
+                .register(meterRegistry);
+        TimeGauge.builder("message.buffer.queue.time.max", pipe, TimeUnit.NANOSECONDS, RingBufferMessagePipe::getMaxQueueNanos)
+                .description("Maximum time a forwarded message spent in the buffer")
+                .register(meterRegistry);
     }
 }
@@ -21,6 +21,8 @@ import ch.fhnw.imvs.opcua2kafka.schemas.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 
 public final class KafkaMessagePipe implements MessagePipe<Message> {
 
@@ -37,4 +39,10 @@ public final class KafkaMessagePipe implements MessagePipe<Message> {
         logger.debug("KafkaMessagePipe received message with TraceId {}", message.getMetadata().getTraceId());
         kafkaService.sendMessage(message);
     }
+
+    @Override
+    public void pipeBatch(final List<Message> messages) {
+        logger.debug("KafkaMessagePipe received {} messages", messages.size());
+        kafkaService.sendMessages(messages);
+    }
 }
@@ -15,18 +15,37 @@
  */
 package ch.fhnw.imvs.opcua2kafka.message.impl;
 
-import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
+import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
 import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.message.PipelineLatency;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
-import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaPollService;
-import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnection;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnectionManager;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaListener;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -34,56 +53,248 @@ public class MessageManager {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageManager.class);
 
-    private final OpcUaService opcUaService;
+    /**
+     * Interval in Seconds in which the throughput of each connection is logged.
+     */
+    private static final long STATISTICS_INTERVAL = 60;
 
-    private final OpcUaPollService opcUaPollService;
+    private final OpcUaConnectionManager connectionManager;
 
-    private final OpcUaConfiguration opcUaConfiguration;
+    private final MessagePipe<Message> messagePipe;
 
-    private final MessagePipe<Map<OpcUaAttribute, String>> messagePipe;
+    private final MessageConfiguration messageConfiguration;
+
+    private final KafkaService kafkaService;
+
+    private final MeterRegistry meterRegistry;
+
+    private final PipelineLatency latency;
+
+    private final CustomizableThreadFactory startThreadFactory;
+
+    private final Map<OpcUaConnection, Long> lastMessageCounts = new HashMap<>();
+
+    private final ScheduledExecutorService statisticsExecutor;
+
+    /**
+     * Writer of the capture file, {@code null} if capturing is disabled.
+     */
+    private CaptureWriter captureWriter;
+
+    /**
+     * Replayer of the capture file, {@code null} if replay is disabled.
+     */
+    private CaptureReplayer captureReplayer;
 
     @Autowired
-    public MessageManager(final OpcUaService opcUaService,
-                          final OpcUaPollService opcUaPollService,
-                          final OpcUaConfiguration opcUaConfiguration,
-                          final MessagePipe<Map<OpcUaAttribute, String>> messagePipe) {
-        this.opcUaService = opcUaService;
-        this.opcUaPollService = opcUaPollService;
-        this.opcUaConfiguration = opcUaConfiguration;
+    public MessageManager(final OpcUaConnectionManager connectionManager,
+                          final MessagePipe<Message> messagePipe,
+                          final MessageConfiguration messageConfiguration,
+                          final KafkaService kafkaService,
+                          final MeterRegistry meterRegistry,
+                          final PipelineLatency latency) {
+        this.connectionManager = connectionManager;
         this.messagePipe = messagePipe;
+        this.messageConfiguration = messageConfiguration;
+        this.kafkaService = kafkaService;
+        this.meterRegistry = meterRegistry;
+        this.latency = latency;
+        this.startThreadFactory = new CustomizableThreadFactory("opcua-connect-");
+        this.startThreadFactory.setDaemon(true);
+        final CustomizableThreadFactory statisticsThreadFactory = new CustomizableThreadFactory("connection-statistics-");
+        statisticsThreadFactory.setDaemon(true);
+        this.statisticsExecutor = Executors.newSingleThreadScheduledExecutor(statisticsThreadFactory);
         logger.debug("MessageManager initialized");
     }
 
+    /**
+     * Starts all connections.
+     *
+     * Every connection is started on its own thread, so that a slow or unreachable server does not delay the others.
+     * If a replay file is configured, the capture is replayed instead and no connection is started.
+     */
     public void start() {
         logger.info("Starting MessageManager");
-        if (opcUaConfiguration != null) {
-            logger.debug("OPC UA Configuration={}", opcUaConfiguration);
-            startOpcUaService(opcUaConfiguration.getMonitorNodes());
-            if (opcUaConfiguration.isUsePollingService()) {
-                startOpcUaPollService(opcUaConfiguration.getPollingNodes());
-            }
-        } else {
-            logger.warn("Unable to start OpcUaServices because 'opcUaConfiguration' is 'null'");
+        if (isSet(messageConfiguration.getReplayFile())) {
+            startReplay();
+            return;
+        }
+        if (isSet(messageConfiguration.getCaptureFile())) {
+            startCapture();
+        }
+        final List<OpcUaConnection> connections = connectionManager.getConnections();
+        if (connections.isEmpty()) {
+            logger.warn("Unable to start OpcUaServices because no OPC UA connection is configured");
             logger.warn("Application not started...");
+            return;
         }
+        for (final OpcUaConnection connection : connections) {
+            startThreadFactory.newThread(() -> startConnection(connection)).start();
+        }
+        statisticsExecutor.scheduleAtFixedRate(this::logStatistics, STATISTICS_INTERVAL, STATISTICS_INTERVAL, TimeUnit.SECONDS);
     }
 
-    private void pipe(final Map<OpcUaAttribute, String> values) {
-        logger.debug("MessageManager received Message: {}", values);
-        messagePipe.pipe(values);
+    private void startConnection(final OpcUaConnection connection) {
+        final OpcUaConnectionConfiguration configuration = connection.getConfiguration();
+        logger.debug("OPC UA Connection Configuration={}", configuration);
+        try {
+            final MessagePipe<OpcUaRecord> pipe = createPipe(connection.getName(), configuration.getAggregateId());
+            bindConnectionMetrics(connection);
+            startOpcUaService(connection, pipe);
+            if (configuration.getUsePollingService()) {
+                startOpcUaPollService(connection, pipe);
+            }
+        } catch (final RuntimeException e) {
+            logger.error("Could not start OPC UA connection '{}'", connection.getName(), e);
+        }
     }
 
-    private void startOpcUaService(final List<String> nodeIds) {
-        opcUaService.connect(opcUaConfiguration.getOpcUaServer());
-        opcUaService.monitorNodes(nodeIds);
-        opcUaService.addListener(this::pipe);
-        opcUaService.addListener(message -> logger.info("Received OPC UA Event Message: {}", message));
-        logger.info("OpcUaService started.");
+    private void startOpcUaService(final OpcUaConnection connection, final MessagePipe<OpcUaRecord> pipe) {
+        final OpcUaConnectionConfiguration configuration = connection.getConfiguration();
+        connection.getOpcUaService().connect(configuration.getOpcUaServer());
+        connection.getOpcUaService().addListener(new OpcUaListener() {
+            @Override
+            public void messageReceived(final Map<OpcUaAttribute, String> message) {
+                recordsReceived(List.of(OpcUaRecord.fromMap(message)));
+            }
+
+            @Override
+            public void recordsReceived(final List<OpcUaRecord> records) {
+                connection.recordSubscriptionMessages(records.size());
+                logger.debug("MessageManager received {} Messages from '{}': {}", records.size(), connection.getName(), records);
+                capture(connection, records);
+                pipe.pipeBatch(records);
+            }
+
+            @Override
+            public void nodesMonitored(final Collection<String> nodeIds) {
+                kafkaService.cacheKeys(nodeIds);
+            }
+
+            @Override
+            public void nodesUnmonitored(final Collection<String> nodeIds) {
+                kafkaService.evictKeys(nodeIds);
+            }
+        });
+        connection.getOpcUaService().monitorNodes(configuration.getMonitorNodes());
+        logger.info("OpcUaService of connection '{}' started.", connection.getName());
     }
 
-    private void startOpcUaPollService(final List<String> nodeIds) {
-        opcUaPollService.start(nodeIds, opcUaConfiguration.getDefaultPollingCycle(), TimeUnit.MILLISECONDS);
-        opcUaPollService.addListener(this::pipe);
-        logger.info("OpcUaPollService started.");
+    private void startOpcUaPollService(final OpcUaConnection connection, final MessagePipe<OpcUaRecord> pipe) {
+        final OpcUaConnectionConfiguration configuration = connection.getConfiguration();
+        connection.getOpcUaPollService().addListener(new OpcUaListener() {
+            @Override
+            public void messageReceived(final Map<OpcUaAttribute, String> message) {
+                recordsReceived(List.of(OpcUaRecord.fromMap(message)));
+            }
+
+            @Override
+            public void recordsReceived(final List<OpcUaRecord> records) {
+                connection.recordPollingMessages(records.size());
+                logger.debug("MessageManager received {} polled Messages from '{}': {}", records.size(), connection.getName(), records);
+                capture(connection, records);
+                pipe.pipeBatch(records);
+            }
+
+            @Override
+            public void nodesMonitored(final Collection<String> nodeIds) {
+                kafkaService.cacheKeys(nodeIds);
+            }
+
+            @Override
+            public void nodesUnmonitored(final Collection<String> nodeIds) {
+                kafkaService.evictKeys(nodeIds);
+            }
+        });
+        connection.getOpcUaPollService().start(configuration.getPollingNodes(), configuration.getDefaultPollingCycle(), TimeUnit.MILLISECONDS);
+        logger.info("OpcUaPollService of connection '{}' started.", connection.getName());
+    }
+
+    private MessagePipe<OpcUaRecord> createPipe(final String connectionName, final String aggregateId) {
+        final Timer buildTimer = Timer.builder("message.build")
+                .description("Time to build the messages of a batch of OPC UA records")
+                .tag("connection", String.valueOf(connectionName))
+                .register(meterRegistry);
+        return new CreateMessagePipe(messagePipe, aggregateId, messageConfiguration.getValueMode(), buildTimer, latency);
+    }
+
+    private void startCapture() {
+        try {
+            captureWriter = new CaptureWriter(Path.of(messageConfiguration.getCaptureFile()));
+        } catch (final IOException | RuntimeException e) {
+            logger.error("Unable to create capture file {}, capturing is disabled", messageConfiguration.getCaptureFile(), e);
+        }
+    }
+
+    private void capture(final OpcUaConnection connection, final List<OpcUaRecord> records) {
+        if (captureWriter != null) {
+            captureWriter.write(connection.getName(), records, Instant.now());
+        }
+    }
+
+    /**
+     * Replays the capture file on its own thread. The records of a connection are piped with the aggregate id of the
+     * configured connection of the same name, or with the default aggregate id if there is none.
+     */
+    private void startReplay() {
+        final Map<String, String> aggregateIds = new HashMap<>();
+        for (final OpcUaConnection connection : connectionManager.getConnections()) {
+            aggregateIds.put(connection.getName(), connection.getConfiguration().getAggregateId());
+        }
+        final Map<String, MessagePipe<OpcUaRecord>> pipes = new ConcurrentHashMap<>();
+        captureReplayer = new CaptureReplayer(Path.of(messageConfiguration.getReplayFile()),
+                (name) -> pipes.computeIfAbsent(name,
+                        (key) -> createPipe(key, aggregateIds.getOrDefault(key, messageConfiguration.getAggregateId()))),
+                messageConfiguration.getReplaySpeed());
+        final CustomizableThreadFactory replayThreadFactory = new CustomizableThreadFactory("capture-replay-");
+        replayThreadFactory.setDaemon(true);
+        replayThreadFactory.newThread(captureReplayer).start();
+        statisticsExecutor.scheduleAtFixedRate(this::logStatistics, STATISTICS_INTERVAL, STATISTICS_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private static boolean isSet(final String value) {
+        return value != null && !value.isBlank();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (captureWriter != null) {
+            captureWriter.close();
+        }
+    }
+
+    private void bindConnectionMetrics(final OpcUaConnection connection) {
+        final String name = String.valueOf(connection.getName());
+        FunctionCounter.builder("opcua.records", connection, OpcUaConnection::getSubscriptionMessageCount)
+                .description("Records received from the OPC UA server")
+                .tags("connection", name, "source", "subscription")
+                .register(meterRegistry);
+        FunctionCounter.builder("opcua.records", connection, OpcUaConnection::getPollingMessageCount)
+                .description("Records received from the OPC UA server")
+                .tags("connection", name, "source", "polling")
+                .register(meterRegistry);
+    }
+
+    private void logStatistics() {
+        if (captureReplayer == null) {
+            for (final OpcUaConnection connection : connectionManager.getConnections()) {
+                final long count = connection.getMessageCount();
+                final long last = lastMessageCounts.getOrDefault(connection, 0L);
+                lastMessageCounts.put(connection, count);
+                logger.info("Connection '{}': {} messages/s ({})",
+                        connection.getName(), (count - last) / STATISTICS_INTERVAL, connection);
+            }
+        }
+        if (messagePipe instanceof RingBufferMessagePipe || messagePipe instanceof BatchingMessagePipe) {
+            logger.info("Message pipe: {}", messagePipe);
+        }
+        if (captureWriter != null) {
+            logger.info("Capture: {}", captureWriter);
+        }
+        if (captureReplayer != null) {
+            logger.info("Replay: {}", captureReplayer);
+        }
+        logger.info("Kafka: {}", kafkaService);
+        logger.info("Latency: {}", latency);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.BufferOverflowPolicy;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.BufferWaitStrategy;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Decouples the OPC UA threads from the next pipe by buffering the messages in preallocated ring buffers.
+ *
+ * Every consumer thread drains its own ring buffer. Messages are assigned to a ring by the hash of their key,
+ * so that the messages of one node are forwarded in the order in which they were received.
+ * The consumers take all available messages at once and forward them with {@link MessagePipe#pipeBatch(List)}.
+ *
+ * @param <T> Type of message.
+ */
+public final class RingBufferMessagePipe<T> implements MessagePipe<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RingBufferMessagePipe.class);
+
+    /**
+     * Time in Milliseconds which {@link #close()} waits for the buffered messages to be forwarded.
+     */
+    private static final long CLOSE_TIMEOUT = 30000;
+
+    /**
+     * Time in Nanoseconds a consumer sleeps between two polls with the {@link BufferWaitStrategy#SLEEPING} strategy.
+     */
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Maximum number of messages a consumer takes from its ring and forwards as one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final MessagePipe<T> nextPipe;
+
+    private final Function<T, Object> keyFunction;
+
+    private final BufferWaitStrategy waitStrategy;
+
+    private final BufferOverflowPolicy overflowPolicy;
+
+    private final List<Ring> rings;
+
+    private final List<Thread> consumers;
+
+    private final LongAdder enqueued = new LongAdder();
+
+    private final LongAdder forwarded = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder conflated = new LongAdder();
+
+    private final LongAdder queueNanos = new LongAdder();
+
+    private final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+
+    private volatile boolean closed;
+
+    /**
+     * @param nextPipe Pipe to which the consumer threads forward the messages.
+     * @param keyFunction Key of a message, used to assign it to a ring buffer and to conflate it.
+     * @param capacity Total number of messages which can be buffered.
+     * @param waitStrategy Behaviour of the consumer threads while their buffer is empty.
+     * @param overflowPolicy Behaviour when a buffer is full.
+     * @param consumerThreads Number of consumer threads and ring buffers.
+     */
+    public RingBufferMessagePipe(final MessagePipe<T> nextPipe,
+                                 final Function<T, Object> keyFunction,
+                                 final int capacity,
+                                 final BufferWaitStrategy waitStrategy,
+                                 final BufferOverflowPolicy overflowPolicy,
+                                 final int consumerThreads) {
+        if (capacity <= 0 || consumerThreads <= 0) {
+            throw new IllegalArgumentException("capacity and consumerThreads must be positive: " + capacity + ", " + consumerThreads);
+        }
+        this.nextPipe = nextPipe;
+        this.keyFunction = keyFunction;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        final int ringCapacity = Math.max(1, (capacity + consumerThreads - 1) / consumerThreads);
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("message-buffer-");
+        threadFactory.setDaemon(true);
+        this.rings = new ArrayList<>(consumerThreads);
+        this.consumers = new ArrayList<>(consumerThreads);
+        for (int i = 0; i < consumerThreads; i++) {
+            final Ring ring = new Ring(ringCapacity);
+            rings.add(ring);
+            consumers.add(threadFactory.newThread(() -> consume(ring)));
+        }
+        consumers.forEach(Thread::start);
+        logger.info("RingBufferMessagePipe initialized with {} buffers of {} messages, waitStrategy={}, overflowPolicy={}",
+                consumerThreads, ringCapacity, waitStrategy, overflowPolicy);
+    }
+
+    @Override
+    public void pipe(final T message) {
+        if (message == null) {
+            return;
+        }
+        if (closed) {
+            logger.warn("Message received after the buffer was closed, forwarding it directly");
+            nextPipe.pipe(message);
+            return;
+        }
+        final Object key = keyFunction.apply(message);
+        final Ring ring = rings.get(rings.size() == 1 ? 0 : Math.floorMod(key != null ? key.hashCode() : 0, rings.size()));
+        ring.lock.lock();
+        try {
+            ring.put(key, message);
+        } finally {
+            ring.lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers a batch of messages, taking the lock of a ring only once if all messages belong to the same ring.
+     */
+    @Override
+    public void pipeBatch(final List<T> messages) {
+        if (closed || rings.size() > 1) {
+            MessagePipe.super.pipeBatch(messages);
+            return;
+        }
+        final Ring ring = rings.get(0);
+        ring.lock.lock();
+        try {
+            for (final T message : messages) {
+                if (message != null) {
+                    ring.put(keyFunction.apply(message), message);
+                }
+            }
+        } finally {
+            ring.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting messages, waits until the buffered messages are forwarded and closes the next pipe.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        rings.forEach(Ring::close);
+        final long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        for (final Thread consumer : consumers) {
+            try {
+                consumer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (getSize() > 0) {
+            logger.warn("{} buffered messages were not forwarded within {} ms", getSize(), CLOSE_TIMEOUT);
+        }
+        logger.info("RingBufferMessagePipe closed: {}", this);
+        nextPipe.close();
+    }
+
+    /**
+     * @return Number of messages which are currently buffered.
+     */
+    public int getSize() {
+        int size = 0;
+        for (final Ring ring : rings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return rings.size() * rings.get(0).slots.length;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long getForwardedCount() {
+        return forwarded.sum();
+    }
+
+    /**
+     * @return Number of messages which were dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Number of messages which were replaced by a newer message of the same key.
+     */
+    public long getConflatedCount() {
+        return conflated.sum();
+    }
+
+    /**
+     * @return Average time in Nanoseconds a forwarded message spent in the buffer.
+     */
+    public long getAverageQueueNanos() {
+        final long count = forwarded.sum();
+        return count > 0 ? queueNanos.sum() / count : 0;
+    }
+
+    public long getMaxQueueNanos() {
+        return maxQueueNanos.get();
+    }
+
+    private void consume(final Ring ring) {
+        final List<T> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (ring.take(batch)) {
+            try {
+                if (batch.size() == 1) {
+                    nextPipe.pipe(batch.get(0));
+                } else {
+                    nextPipe.pipeBatch(batch);
+                }
+            } catch (final RuntimeException e) {
+                logger.warn("Could not forward {} messages", batch.size(), e);
+            }
+            forwarded.add(batch.size());
+            batch.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RingBufferMessagePipe{size=" + getSize() +
+                ", capacity=" + getCapacity() +
+                ", enqueued=" + getEnqueuedCount() +
+                ", dropped=" + getDroppedCount() +
+                ", conflated=" + getConflatedCount() +
+                ", avgQueueMs=" + TimeUnit.NANOSECONDS.toMillis(getAverageQueueNanos()) +
+                ", maxQueueMs=" + TimeUnit.NANOSECONDS.toMillis(getMaxQueueNanos()) +
+                '}';
+    }
+
+    /**
+     * Single consumer ring buffer whose slots are allocated once.
+     *
+     * A plain lock is used instead of a lock-free sequence, because producers may have to replace or drop
+     * buffered messages, which requires a consistent view of the whole ring.
+     */
+    private final class Ring {
+
+        private final Object[] slots;
+
+        private final Object[] keys;
+
+        private final long[] enqueuedAt;
+
+        /**
+         * Sequence of the buffered messages by key, only maintained with the {@link BufferOverflowPolicy#CONFLATE} policy.
+         */
+        private final Map<Object, Long> sequences;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition notEmpty = lock.newCondition();
+
+        private final Condition notFull = lock.newCondition();
+
+        private long head;
+
+        private long tail;
+
+        private boolean stopped;
+
+        Ring(final int capacity) {
+            this.slots = new Object[capacity];
+            this.keys = new Object[capacity];
+            this.enqueuedAt = new long[capacity];
+            this.sequences = overflowPolicy == BufferOverflowPolicy.CONFLATE ? new HashMap<>() : null;
+        }
+
+        /**
+         * Adds a message, the lock has to be held.
+         */
+        void put(final Object key, final T message) {
+            if (sequences != null && key != null) {
+                final Long sequence = sequences.get(key);
+                if (sequence != null) {
+                    slots[index(sequence)] = message;
+                    conflated.increment();
+                    return;
+                }
+            }
+            while (tail - head == slots.length) {
+                if (overflowPolicy == BufferOverflowPolicy.BLOCK) {
+                    notFull.awaitUninterruptibly();
+                } else {
+                    remove();
+                    dropped.increment();
+                }
+            }
+            final int index = index(tail);
+            slots[index] = message;
+            keys[index] = key;
+            enqueuedAt[index] = System.nanoTime();
+            if (sequences != null && key != null) {
+                sequences.put(key, tail);
+            }
+            tail++;
+            enqueued.increment();
+            notEmpty.signal();
+        }
+
+        /**
+         * Takes the buffered messages in their order, waiting with the configured strategy if the ring is empty.
+         *
+         * @param batch List to which at most {@link #MAX_BATCH_SIZE} messages are added.
+         * @return {@code false} if the ring was stopped and is empty.
+         */
+        @SuppressWarnings("unchecked")
+        boolean take(final List<T> batch) {
+            while (true) {
+                lock.lock();
+                try {
+                    if (tail != head) {
+                        final long now = System.nanoTime();
+                        while (tail != head && batch.size() < MAX_BATCH_SIZE) {
+                            final long queued = now - enqueuedAt[index(head)];
+                            queueNanos.add(queued);
+                            maxQueueNanos.accumulate(queued);
+                            batch.add((T) remove());
+                        }
+                        notFull.signalAll();
+                        return true;
+                    }
+                    if (stopped) {
+                        return false;
+                    }
+                    if (waitStrategy == BufferWaitStrategy.BLOCKING) {
+                        notEmpty.awaitUninterruptibly();
+                        continue;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (waitStrategy == BufferWaitStrategy.SLEEPING) {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                stopped = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return (int) (tail - head);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes the message at the head of the ring, the lock has to be held.
+         */
+        private Object remove() {
+            final int index = index(head);
+            final Object message = slots[index];
+            if (sequences != null && keys[index] != null) {
+                sequences.remove(keys[index], head);
+            }
+            slots[index] = null;
+            keys[index] = null;
+            head++;
+            return message;
+        }
+
+        private int index(final long sequence) {
+            return (int) (sequence % slots.length);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UShort;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps the Java objects of OPC UA built-in types to the branches of the {@code typedValue} union of the Avro schema.
+ *
+ * Boolean, Int32, Int64, Float, Double and String values are passed on without conversion. Unsigned and smaller
+ * integer types are widened to the next signed Avro type, UInt64 values above {@link Long#MAX_VALUE} wrap around.
+ * DateTime values are sent as Milliseconds since the epoch, StatusCodes as their numeric code and all other
+ * types as their String representation. Arrays are sent as Avro arrays of the converted elements, the inner
+ * dimensions of multi-dimensional arrays as Strings.
+ */
+final class TypedValues {
+
+    private TypedValues() {
+    }
+
+    static Object of(final Object value) {
+        if (value != null && value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            final List<Object> result = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                result.add(ofScalar(Array.get(value, i)));
+            }
+            return result;
+        }
+        return ofScalar(value);
+    }
+
+    private static Object ofScalar(final Object value) {
+        if (value == null
+                || value instanceof Boolean
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Float
+                || value instanceof Double
+                || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Byte || value instanceof Short) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof UByte || value instanceof UShort) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof UInteger || value instanceof ULong) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof ByteString) {
+            final byte[] bytes = ((ByteString) value).bytes();
+            return bytes != null ? ByteBuffer.wrap(bytes) : null;
+        }
+        if (value instanceof DateTime) {
+            return ((DateTime) value).getJavaTime();
+        }
+        if (value instanceof StatusCode) {
+            return ((StatusCode) value).getValue();
+        }
+        if (value instanceof LocalizedText) {
+            return ((LocalizedText) value).getText();
+        }
+        if (value instanceof NodeId) {
+            return ((NodeId) value).toParseableString();
+        }
+        if (value instanceof QualifiedName) {
+            return ((QualifiedName) value).toParseableString();
+        }
+        if (value instanceof Object[]) {
+            return Arrays.deepToString((Object[]) value);
+        }
+        return String.valueOf(value);
+    }
+}
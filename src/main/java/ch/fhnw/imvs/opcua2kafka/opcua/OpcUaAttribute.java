@@ -43,4 +43,17 @@ public interface OpcUaAttribute {
      * @return String representation of value.
      */
     String asString(Variant object);
+
+    /**
+     * Extracts the value which is passed on to the listeners.
+     *
+     * Descriptive attributes are passed on as {@link String}, the value attribute as the unconverted Java object of
+     * the {@link Variant}, so that the message pipes can decide how to encode it.
+     *
+     * @param object Object to convert
+     * @return Value which is passed on to the listeners.
+     */
+    default Object asValue(final Variant object) {
+        return asString(object);
+    }
 }
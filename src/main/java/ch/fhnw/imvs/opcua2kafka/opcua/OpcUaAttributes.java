@@ -20,16 +20,38 @@ import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
 import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
 import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public enum OpcUaAttributes implements OpcUaAttribute {
     NodeId(AttributeId.NodeId, (v) -> String.valueOf(v.getValue())),
     BrowseName(AttributeId.BrowseName, createQualifiedNameFormatter()),
     DisplayName(AttributeId.DisplayName, createLocalizedTextFormatter()),
     Description(AttributeId.Description, createLocalizedTextFormatter()),
-    Value(AttributeId.Value, (v) -> String.valueOf(v.getValue())),
-    Timestamp(null, String::valueOf);
+    Value(AttributeId.Value, (v) -> String.valueOf(v.getValue())) {
+        @Override
+        public Object asValue(final Variant object) {
+            return object.getValue();
+        }
+    },
+    /**
+     * Time at which the client received the value.
+     */
+    Timestamp(null, String::valueOf),
+    /**
+     * Source timestamp of the value as {@link java.time.Instant}, if requested from the server.
+     */
+    SourceTimestamp(null, String::valueOf),
+    /**
+     * Server timestamp of the value as {@link java.time.Instant}, if requested from the server.
+     */
+    ServerTimestamp(null, String::valueOf);
+
+    private static final List<OpcUaAttribute> READABLE_ATTRIBUTES = Arrays.stream(values())
+            .filter((attribute) -> attribute.attributeId != null)
+            .collect(Collectors.toUnmodifiableList());
 
     private final AttributeId attributeId;
 
@@ -55,8 +77,11 @@ public enum OpcUaAttributes implements OpcUaAttribute {
         return formatFunction.apply(object);
     }
 
+    /**
+     * @return Attributes which can be read from the server, without the timestamps which have no {@link AttributeId}.
+     */
     public static List<OpcUaAttribute> getAll() {
-        return List.of(values());
+        return READABLE_ATTRIBUTES;
     }
 
     private static Function<Variant, String> createQualifiedNameFormatter() {
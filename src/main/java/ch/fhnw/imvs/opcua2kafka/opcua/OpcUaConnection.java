@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua;
+
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Services and statistics of a single OPC UA server connection.
+ */
+public final class OpcUaConnection {
+
+    private final OpcUaConnectionConfiguration configuration;
+
+    private final OpcUaService opcUaService;
+
+    private final OpcUaPollService opcUaPollService;
+
+    private final LongAdder subscriptionMessages = new LongAdder();
+
+    private final LongAdder pollingMessages = new LongAdder();
+
+    public OpcUaConnection(final OpcUaConnectionConfiguration configuration,
+                           final OpcUaService opcUaService,
+                           final OpcUaPollService opcUaPollService) {
+        this.configuration = configuration;
+        this.opcUaService = opcUaService;
+        this.opcUaPollService = opcUaPollService;
+    }
+
+    public String getName() {
+        return configuration.getName();
+    }
+
+    public OpcUaConnectionConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public OpcUaService getOpcUaService() {
+        return opcUaService;
+    }
+
+    public OpcUaPollService getOpcUaPollService() {
+        return opcUaPollService;
+    }
+
+    public void recordSubscriptionMessages(final int count) {
+        subscriptionMessages.add(count);
+    }
+
+    public void recordPollingMessages(final int count) {
+        pollingMessages.add(count);
+    }
+
+    public long getSubscriptionMessageCount() {
+        return subscriptionMessages.sum();
+    }
+
+    public long getPollingMessageCount() {
+        return pollingMessages.sum();
+    }
+
+    public long getMessageCount() {
+        return getSubscriptionMessageCount() + getPollingMessageCount();
+    }
+
+    @Override
+    public String toString() {
+        return "OpcUaConnection{name=" + getName() +
+                ", server=" + configuration.getOpcUaServer() +
+                ", subscriptionMessages=" + getSubscriptionMessageCount() +
+                ", pollingMessages=" + getPollingMessageCount() +
+                '}';
+    }
+}
@@ -15,6 +15,9 @@
  */
 package ch.fhnw.imvs.opcua2kafka.opcua;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -32,4 +35,48 @@ public interface OpcUaListener {
      * @param message Message or event from an OPC UA service.
      */
     void messageReceived(Map<OpcUaAttribute, String> message);
+
+    /**
+     * Notifies that several messages were received together, e.g. in one publish response or one Read.
+     *
+     * @param messages Messages in the order in which they were received.
+     */
+    default void messagesReceived(final List<Map<OpcUaAttribute, String>> messages) {
+        for (final Map<OpcUaAttribute, String> message : messages) {
+            messageReceived(message);
+        }
+    }
+
+    /**
+     * Notifies that several records were received together, this is how the OPC UA services deliver their values.
+     *
+     * The records and the list are reused after the call, see {@link OpcUaRecord}. The default implementation
+     * converts them to maps of Strings, so that listeners which only implement the map based methods keep working.
+     * Listeners which need the typed values override this method.
+     *
+     * @param records Records in the order in which they were received.
+     */
+    default void recordsReceived(final List<OpcUaRecord> records) {
+        final List<Map<OpcUaAttribute, String>> messages = new ArrayList<>(records.size());
+        for (final OpcUaRecord record : records) {
+            messages.add(record.toStringMap());
+        }
+        messagesReceived(messages);
+    }
+
+    /**
+     * Notifies that nodes are monitored or polled from now on, before their first values are received.
+     *
+     * @param nodeIds Node Ids in the form in which they appear in the received messages.
+     */
+    default void nodesMonitored(final Collection<String> nodeIds) {
+    }
+
+    /**
+     * Notifies that nodes are no longer monitored or polled.
+     *
+     * @param nodeIds Node Ids in the form in which they appeared in the received messages.
+     */
+    default void nodesUnmonitored(final Collection<String> nodeIds) {
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Attribute values of one node with one slot per {@link OpcUaAttributes} constant.
+ *
+ * Records are reused by the OPC UA services, therefore a record passed to an {@link OpcUaListener} is only valid
+ * during the notification. Listeners which keep a record have to {@link #copy()} it.
+ */
+public final class OpcUaRecord {
+
+    private static final OpcUaAttributes[] ATTRIBUTES = OpcUaAttributes.values();
+
+    /**
+     * Number of 100 Nanosecond intervals between 1601-01-01, the epoch of OPC UA, and 1970-01-01.
+     */
+    private static final long UA_EPOCH_OFFSET = 116_444_736_000_000_000L;
+
+    private static final long TICKS_PER_SECOND = 10_000_000L;
+
+    private final Object[] values = new Object[ATTRIBUTES.length];
+
+    public Object get(final OpcUaAttributes attribute) {
+        return values[attribute.ordinal()];
+    }
+
+    /**
+     * @return Value of a descriptive attribute, which is always a {@link String}.
+     */
+    public String getString(final OpcUaAttributes attribute) {
+        return (String) values[attribute.ordinal()];
+    }
+
+    /**
+     * @param attribute Attribute, has to be one of the {@link OpcUaAttributes}.
+     * @param value Value of the attribute.
+     */
+    public void set(final OpcUaAttribute attribute, final Object value) {
+        if (!(attribute instanceof OpcUaAttributes)) {
+            throw new IllegalArgumentException("Unsupported attribute: " + attribute);
+        }
+        values[((OpcUaAttributes) attribute).ordinal()] = value;
+    }
+
+    /**
+     * Sets the source and server timestamp of a value and the time at which it was received.
+     *
+     * @param value Value with the timestamps which were requested from the server.
+     * @param received Time at which the client received the value.
+     */
+    public void setTimestamps(final DataValue value, final Instant received) {
+        values[OpcUaAttributes.SourceTimestamp.ordinal()] = toInstant(value.getSourceTime());
+        values[OpcUaAttributes.ServerTimestamp.ordinal()] = toInstant(value.getServerTime());
+        values[OpcUaAttributes.Timestamp.ordinal()] = received;
+    }
+
+    public Instant getInstant(final OpcUaAttributes attribute) {
+        return (Instant) values[attribute.ordinal()];
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+    }
+
+    public boolean isEmpty() {
+        for (final Object value : values) {
+            if (value != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public OpcUaRecord copy() {
+        final OpcUaRecord copy = new OpcUaRecord();
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        return copy;
+    }
+
+    /**
+     * @return Unmodifiable map of the attributes which are set, for listeners which work with maps.
+     */
+    public Map<OpcUaAttribute, Object> toMap() {
+        final Map<OpcUaAttribute, Object> map = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                map.put(ATTRIBUTES[i], values[i]);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return Unmodifiable map of the attributes which are set formatted as {@link String}, as the map based
+     * methods of the {@link OpcUaListener} provide them.
+     */
+    public Map<OpcUaAttribute, String> toStringMap() {
+        final Map<OpcUaAttribute, String> map = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                map.put(ATTRIBUTES[i], String.valueOf(values[i]));
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @param map Attribute values, attributes which are not {@link OpcUaAttributes} are ignored.
+     * @return New record with the values of the map.
+     */
+    public static OpcUaRecord fromMap(final Map<OpcUaAttribute, ?> map) {
+        final OpcUaRecord record = new OpcUaRecord();
+        if (map != null) {
+            for (final Map.Entry<OpcUaAttribute, ?> entry : map.entrySet()) {
+                if (entry.getKey() instanceof OpcUaAttributes) {
+                    record.values[((OpcUaAttributes) entry.getKey()).ordinal()] = entry.getValue();
+                }
+            }
+        }
+        return record;
+    }
+
+    /**
+     * @return Instant of an OPC UA timestamp, {@code null} if it was not sent.
+     */
+    static Instant toInstant(final DateTime dateTime) {
+        if (dateTime == null || dateTime.getUtcTime() <= 0) {
+            return null;
+        }
+        final long ticks = dateTime.getUtcTime() - UA_EPOCH_OFFSET;
+        return Instant.ofEpochSecond(Math.floorDiv(ticks, TICKS_PER_SECOND), Math.floorMod(ticks, TICKS_PER_SECOND) * 100);
+    }
+
+    @Override
+    public String toString() {
+        return "OpcUaRecord" + toMap();
+    }
+}
@@ -15,6 +15,10 @@
  */
 package ch.fhnw.imvs.opcua2kafka.opcua;
 
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -58,9 +62,58 @@ public interface OpcUaService {
      * Reads async the specified attributes of the specified node.
      * @param nodeId Node Id to fetch attributes.
      * @param attributes Attributes to read from the node.
-     * @return Future wich contains the attributes and its values in their {@link String} representation.
+     * @return Future wich contains the attributes and their values as provided by {@link OpcUaAttribute#asValue}.
+     */
+    CompletableFuture<Map<OpcUaAttribute, Object>> readAttributes(String nodeId, List<OpcUaAttribute> attributes);
+
+    /**
+     * Reads async the specified values with a single Read service call.
+     *
+     * The caller is responsible to respect the {@link OperationLimits#getMaxNodesPerRead()} of the server.
+     * @param readValueIds Node and attribute pairs to read.
+     * @return Future which contains the read values in the order of the provided {@link ReadValueId}s.
+     */
+    CompletableFuture<List<DataValue>> read(List<ReadValueId> readValueIds);
+
+    /**
+     * Reads the operation limits of the connected server.
+     *
+     * The limits are read once per connection.
+     * @return Future which contains the server limits, or {@link OperationLimits#UNLIMITED} if they could not be read.
+     */
+    CompletableFuture<OperationLimits> getOperationLimits();
+
+    /**
+     * Registers nodes which are accessed repeatedly with a single RegisterNodes service call.
+     *
+     * The caller is responsible to respect the {@link OperationLimits#getMaxNodesPerRegisterNodes()} of the server.
+     * Registered Node Ids are only valid in the session they were registered in, see {@link #addReconnectListener(Runnable)}.
+     * @param nodeIds Node Ids to register.
+     * @return Future which contains the Node Ids to use instead, in the order of the provided Node Ids.
+     */
+    CompletableFuture<List<NodeId>> registerNodes(List<NodeId> nodeIds);
+
+    /**
+     * Releases nodes registered with {@link #registerNodes(List)}.
+     *
+     * @param registeredNodeIds Registered Node Ids.
+     * @return Future which completes when the server released the nodes.
+     */
+    CompletableFuture<Void> unregisterNodes(List<NodeId> registeredNodeIds);
+
+    /**
+     * Adds a listener which is called when a new session was activated after the previous session was lost,
+     * e.g. to register nodes again.
+     *
+     * @param listener Listener
+     */
+    void addReconnectListener(Runnable listener);
+
+    /**
+     * Removes the specified reconnect listener.
+     * @param listener Listener
      */
-    CompletableFuture<Map<OpcUaAttribute, String>> readAttributes(String nodeId, List<OpcUaAttribute> attributes);
+    void removeReconnectListener(Runnable listener);
 
     /**
      * Adds a listener to get value changes from the monitored nodes.
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Operation limits announced by an OPC UA server in its ServerCapabilities.
+ *
+ * A value of {@code 0} means that the server does not announce a limit.
+ */
+@Getter
+@ToString
+@Builder
+public class OperationLimits {
+
+    /**
+     * Limits used when the server could not be asked for its capabilities.
+     */
+    public static final OperationLimits UNLIMITED = OperationLimits.builder().build();
+
+    private final long maxNodesPerRead;
+
+    private final long maxMonitoredItemsPerCall;
+
+    private final long maxNodesPerRegisterNodes;
+
+    /**
+     * Returns the number of nodes which can be sent in one call without exceeding the specified server limit.
+     *
+     * @param serverLimit Limit announced by the server, {@code 0} if there is none.
+     * @param configuredLimit Limit configured for this application, {@code 0} if there is none.
+     * @param fallback Value to use if neither the server nor the configuration limit the call size.
+     * @return Effective limit, at least {@code 1}.
+     */
+    public static int effectiveLimit(final long serverLimit, final long configuredLimit, final int fallback) {
+        long limit = Long.MAX_VALUE;
+        if (serverLimit > 0) {
+            limit = serverLimit;
+        }
+        if (configuredLimit > 0) {
+            limit = Math.min(limit, configuredLimit);
+        }
+        if (limit == Long.MAX_VALUE) {
+            limit = fallback;
+        }
+        return (int) Math.max(1, Math.min(limit, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of asynchronous OPC UA service calls which are outstanding at the same time.
+ *
+ * Requests beyond the limit are queued and started as soon as a running request completes.
+ * Requests with a deadline which is over when their turn comes are not started at all.
+ * Queued requests are started in a loop by the thread which completed a request, so that requests whose futures
+ * complete synchronously neither nest their callbacks nor complete in reverse order.
+ */
+final class AsyncRequestLimiter {
+
+    private final int maxConcurrentRequests;
+
+    private final Queue<PendingRequest<?>> queue;
+
+    /**
+     * Requests which were taken from the queue and hold a slot, but have not been started yet.
+     */
+    private final Queue<PendingRequest<?>> ready;
+
+    /**
+     * Whether a thread is currently starting the {@link #ready} requests.
+     */
+    private boolean draining;
+
+    private int inFlight;
+
+    private final LongAdder startedRequests = new LongAdder();
+
+    private final LongAdder expiredRequests = new LongAdder();
+
+    private final LongAdder queueWaitNanos = new LongAdder();
+
+    private final LongAccumulator maxQueueWaitNanos = new LongAccumulator(Math::max, 0);
+
+    AsyncRequestLimiter(final int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive: " + maxConcurrentRequests);
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.queue = new ArrayDeque<>();
+        this.ready = new ArrayDeque<>();
+    }
+
+    /**
+     * Submits a request, which is started immediately if the limit allows it.
+     *
+     * @param request Supplier which starts the request.
+     * @param <T> Result type of the request.
+     * @return Future which completes with the result of the request.
+     */
+    <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> request) {
+        return submit(request, false, 0);
+    }
+
+    /**
+     * Submits a request which is only started if its deadline is not over.
+     *
+     * @param request Supplier which starts the request.
+     * @param deadlineNanos Deadline in {@link System#nanoTime()} units.
+     * @param <T> Result type of the request.
+     * @return Future which completes with the result of the request,
+     * or exceptionally with a {@link TimeoutException} if the deadline was over before the request was started.
+     */
+    <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> request, final long deadlineNanos) {
+        return submit(request, true, deadlineNanos);
+    }
+
+    private <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> request,
+                                            final boolean hasDeadline,
+                                            final long deadlineNanos) {
+        final PendingRequest<T> pending = new PendingRequest<>(request, hasDeadline, deadlineNanos);
+        if (pending.isExpired(System.nanoTime())) {
+            expiredRequests.increment();
+            return CompletableFuture.failedFuture(new TimeoutException("Deadline exceeded before the request was started"));
+        }
+        synchronized (this) {
+            if (inFlight >= maxConcurrentRequests) {
+                queue.add(pending);
+                return pending.result;
+            }
+            inFlight++;
+        }
+        start(pending);
+        return pending.result;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getQueued() {
+        return queue.size();
+    }
+
+    long getStartedCount() {
+        return startedRequests.sum();
+    }
+
+    /**
+     * @return Number of requests which were not started because their deadline was over.
+     */
+    long getExpiredCount() {
+        return expiredRequests.sum();
+    }
+
+    /**
+     * @return Average time in Nanoseconds a started request waited in the queue.
+     */
+    long getAverageQueueWaitNanos() {
+        final long started = startedRequests.sum();
+        return started == 0 ? 0 : queueWaitNanos.sum() / started;
+    }
+
+    long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos.get();
+    }
+
+    private <T> void start(final PendingRequest<T> pending) {
+        final long wait = System.nanoTime() - pending.submittedNanos;
+        startedRequests.increment();
+        queueWaitNanos.add(wait);
+        maxQueueWaitNanos.accumulate(wait);
+        CompletableFuture<T> future;
+        try {
+            future = pending.request.get();
+        } catch (final RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                pending.result.complete(result);
+            } else {
+                pending.result.completeExceptionally(throwable);
+            }
+            release();
+            drain();
+        });
+    }
+
+    /**
+     * Passes the slot of a completed request to the next queued request which is not expired.
+     */
+    private void release() {
+        final List<PendingRequest<?>> expired = new ArrayList<>();
+        PendingRequest<?> next;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            // expired requests are dropped here in a loop instead of completing them one after another recursively
+            while ((next = queue.poll()) != null && next.isExpired(now)) {
+                expired.add(next);
+            }
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        for (final PendingRequest<?> request : expired) {
+            expiredRequests.increment();
+            request.result.completeExceptionally(new TimeoutException("Deadline exceeded before the request was started"));
+        }
+        if (next != null) {
+            synchronized (this) {
+                ready.add(next);
+            }
+        }
+    }
+
+    /**
+     * Starts the ready requests, unless another call further up the stack or on another thread already does.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            final PendingRequest<?> next;
+            synchronized (this) {
+                next = ready.poll();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            start(next);
+        }
+    }
+
+    private static final class PendingRequest<T> {
+
+        private final Supplier<CompletableFuture<T>> request;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private final boolean hasDeadline;
+
+        private final long deadlineNanos;
+
+        private final long submittedNanos = System.nanoTime();
+
+        private PendingRequest(final Supplier<CompletableFuture<T>> request, final boolean hasDeadline, final long deadlineNanos) {
+            this.request = request;
+            this.hasDeadline = hasDeadline;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private boolean isExpired(final long now) {
+            return hasDeadline && now - deadlineNanos > 0;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import ch.fhnw.imvs.opcua2kafka.opcua.OperationLimits;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Reads the attributes of a fixed set of nodes with as few Read service calls as possible.
+ *
+ * The {@link ReadValueId}s of all nodes are built once. Every cycle splits them into chunks which respect the
+ * MaxNodesPerRead operation limit of the server and keeps a bounded number of chunks in flight.
+ * With change detection, nodes whose value did not change since the previous cycle are not passed on.
+ * The nodes can be registered at the server, afterwards they are read with the registered Node Ids.
+ * Registered Node Ids are only valid in their session, so reads and registrations which were started before the
+ * registration was reset are discarded instead of passing on the Bad status of the stale Node Ids.
+ */
+final class BatchedPollReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchedPollReader.class);
+
+    /**
+     * Chunk size used if neither the server nor the configuration limit the number of nodes per Read.
+     */
+    static final int DEFAULT_MAX_NODES_PER_READ = 1000;
+
+    /**
+     * Chunk size used if the server does not limit the number of nodes per RegisterNodes call.
+     */
+    static final int DEFAULT_MAX_NODES_PER_REGISTER = 1000;
+
+    /**
+     * Number of record batches kept for reuse, enough for the chunks which complete at the same time.
+     */
+    private static final int RECORD_POOL_SIZE = 8;
+
+    private final OpcUaService opcUaService;
+
+    private final List<OpcUaAttribute> attributes;
+
+    private final List<String> nodeIds;
+
+    private final List<NodeId> nodes;
+
+    /**
+     * Ids read every cycle, replaced by ids built with the registered Node Ids once registration succeeded.
+     */
+    private volatile ReadIds readIds;
+
+    private final long configuredMaxNodesPerRead;
+
+    private final AsyncRequestLimiter limiter;
+
+    private final int valueIndex;
+
+    private final LastValueTable lastValues;
+
+    private final RecordBatchPool recordPool = new RecordBatchPool(RECORD_POOL_SIZE);
+
+    BatchedPollReader(final OpcUaService opcUaService,
+                      final List<String> nodeIds,
+                      final List<OpcUaAttribute> attributes,
+                      final long configuredMaxNodesPerRead,
+                      final int maxConcurrentReads) {
+        this(opcUaService, nodeIds, attributes, configuredMaxNodesPerRead, new AsyncRequestLimiter(maxConcurrentReads), false, 0);
+    }
+
+    /**
+     * @param limiter Limiter of the outstanding Read calls, may be shared with other readers of the same server.
+     * @param changeOnly Whether only nodes whose value changed are passed on, requires the Value attribute to be read.
+     * @param heartbeatCycles Number of unchanged cycles after which a node is passed on anyway, {@code 0} to disable.
+     */
+    BatchedPollReader(final OpcUaService opcUaService,
+                      final List<String> nodeIds,
+                      final List<OpcUaAttribute> attributes,
+                      final long configuredMaxNodesPerRead,
+                      final AsyncRequestLimiter limiter,
+                      final boolean changeOnly,
+                      final int heartbeatCycles) {
+        this.opcUaService = opcUaService;
+        this.attributes = List.copyOf(attributes);
+        this.configuredMaxNodesPerRead = configuredMaxNodesPerRead;
+        this.limiter = limiter;
+
+        final List<String> validNodeIds = new ArrayList<>(nodeIds.size());
+        final List<NodeId> parsedNodes = new ArrayList<>(nodeIds.size());
+        for (final String nodeId : nodeIds) {
+            final Optional<NodeId> parsed = NodeId.parseSafe(nodeId);
+            if (parsed.isPresent()) {
+                validNodeIds.add(nodeId);
+                parsedNodes.add(parsed.get());
+            } else {
+                logger.warn("Ignoring invalid polling nodeId={}", nodeId);
+            }
+        }
+        this.nodeIds = validNodeIds;
+        this.nodes = parsedNodes;
+        this.readIds = new ReadIds(createReadValueIds(parsedNodes), null);
+        this.valueIndex = this.attributes.indexOf(OpcUaAttributes.Value);
+        this.lastValues = changeOnly && valueIndex >= 0 ? new LastValueTable(validNodeIds.size(), heartbeatCycles) : null;
+    }
+
+    int getNodeCount() {
+        return nodeIds.size();
+    }
+
+    /**
+     * @return Configured Node Ids which could be parsed and are polled by this reader.
+     */
+    List<String> getNodeIds() {
+        return Collections.unmodifiableList(nodeIds);
+    }
+
+    /**
+     * @return Last value table of the change detection, {@code null} if every node is passed on in every cycle.
+     */
+    LastValueTable getLastValues() {
+        return lastValues;
+    }
+
+    boolean isRegistered() {
+        return readIds.registeredNodes != null;
+    }
+
+    /**
+     * Registers the nodes at the server and reads them with the registered Node Ids from then on.
+     *
+     * If the registration fails, the nodes are still read with their original Node Ids. A registration which
+     * completes after {@link #resetRegistration()} was called is not used, because it belongs to the previous session.
+     * @return Future which completes when the registration completed or failed.
+     */
+    CompletableFuture<Void> registerNodes() {
+        if (nodes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final ReadIds unregistered = readIds;
+        final long start = System.nanoTime();
+        return opcUaService.getOperationLimits().thenCompose((limits) -> {
+            final int nodesPerChunk = OperationLimits.effectiveLimit(limits.getMaxNodesPerRegisterNodes(), 0, DEFAULT_MAX_NODES_PER_REGISTER);
+            final List<CompletableFuture<List<NodeId>>> chunks = new ArrayList<>();
+            for (int from = 0; from < nodes.size(); from += nodesPerChunk) {
+                final List<NodeId> chunk = nodes.subList(from, Math.min(nodes.size(), from + nodesPerChunk));
+                chunks.add(limiter.submit(() -> opcUaService.registerNodes(chunk)));
+            }
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenAccept((v) -> {
+                final List<NodeId> registered = new ArrayList<>(nodes.size());
+                chunks.forEach((chunk) -> registered.addAll(chunk.join()));
+                if (registered.size() != nodes.size()) {
+                    throw new IllegalStateException("Server registered " + registered.size() + " of " + nodes.size() + " nodes");
+                }
+                synchronized (this) {
+                    if (readIds != unregistered) {
+                        logger.info("Discarding registration of {} polled nodes, the registration was reset meanwhile", registered.size());
+                        return;
+                    }
+                    readIds = new ReadIds(createReadValueIds(registered), registered);
+                }
+                logger.info("Registered {} polled nodes in {} ms", registered.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            });
+        }).exceptionally((throwable) -> {
+            logger.warn("Could not register {} polled nodes, reading them unregistered", nodes.size(), throwable);
+            return null;
+        });
+    }
+
+    /**
+     * Switches back to the original Node Ids, e.g. because the session of the registration was lost.
+     */
+    synchronized void resetRegistration() {
+        readIds = new ReadIds(createReadValueIds(nodes), null);
+    }
+
+    /**
+     * Releases the registered nodes at the server and switches back to the original Node Ids.
+     *
+     * @return Future which completes when the nodes were released.
+     */
+    CompletableFuture<Void> unregisterNodes() {
+        final List<NodeId> registered = readIds.registeredNodes;
+        resetRegistration();
+        if (registered == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return opcUaService.getOperationLimits().thenCompose((limits) -> {
+            final int nodesPerChunk = OperationLimits.effectiveLimit(limits.getMaxNodesPerRegisterNodes(), 0, DEFAULT_MAX_NODES_PER_REGISTER);
+            final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+            for (int from = 0; from < registered.size(); from += nodesPerChunk) {
+                final List<NodeId> chunk = registered.subList(from, Math.min(registered.size(), from + nodesPerChunk));
+                chunks.add(opcUaService.unregisterNodes(chunk));
+            }
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]));
+        }).exceptionally((throwable) -> {
+            logger.debug("Could not unregister {} polled nodes", registered.size(), throwable);
+            return null;
+        });
+    }
+
+    private List<ReadValueId> createReadValueIds(final List<NodeId> nodeIdsToRead) {
+        final List<ReadValueId> ids = new ArrayList<>(nodeIdsToRead.size() * attributes.size());
+        for (final NodeId nodeId : nodeIdsToRead) {
+            for (final OpcUaAttribute attribute : attributes) {
+                ids.add(new ReadValueId(nodeId, attribute.getAttributeId().uid(), null, QualifiedName.NULL_VALUE));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Reads all nodes once and passes the attributes of the nodes of every chunk to the consumer.
+     *
+     * @param consumer Consumer of the read attributes of the nodes of a chunk, called as soon as the chunk arrived.
+     *                 The records are reused after the call.
+     * @return Future which completes when all chunks have been processed.
+     */
+    CompletableFuture<Void> read(final Consumer<List<OpcUaRecord>> consumer) {
+        return read(consumer, false, 0);
+    }
+
+    /**
+     * Reads all nodes once, chunks which could not be sent before the deadline are dropped.
+     *
+     * @param consumer Consumer of the read attributes of the nodes of a chunk, called as soon as the chunk arrived.
+     * @param deadlineNanos Deadline of the cycle in {@link System#nanoTime()} units.
+     * @return Future which completes when all chunks have been processed or dropped.
+     */
+    CompletableFuture<Void> read(final Consumer<List<OpcUaRecord>> consumer, final long deadlineNanos) {
+        return read(consumer, true, deadlineNanos);
+    }
+
+    private CompletableFuture<Void> read(final Consumer<List<OpcUaRecord>> consumer,
+                                         final boolean hasDeadline,
+                                         final long deadlineNanos) {
+        if (nodeIds.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return opcUaService.getOperationLimits().thenCompose((limits) -> {
+            final int maxReadValueIds = OperationLimits.effectiveLimit(
+                    limits.getMaxNodesPerRead(), configuredMaxNodesPerRead, DEFAULT_MAX_NODES_PER_READ);
+            final int nodesPerChunk = Math.max(1, maxReadValueIds / attributes.size());
+            final ReadIds current = readIds;
+            final List<ReadValueId> ids = current.ids;
+            final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+            for (int first = 0; first < nodeIds.size(); first += nodesPerChunk) {
+                final int from = first;
+                final int to = Math.min(nodeIds.size(), first + nodesPerChunk);
+                final Supplier<CompletableFuture<List<DataValue>>> request =
+                        () -> opcUaService.read(ids.subList(from * attributes.size(), to * attributes.size()));
+                chunks.add((hasDeadline ? limiter.submit(request, deadlineNanos) : limiter.submit(request))
+                        .handle((values, throwable) -> {
+                            if (throwable == null && current.registeredNodes != null && current != readIds) {
+                                logger.debug("Poll of nodes {} to {} discarded, it was read with a reset registration", from, to - 1);
+                            } else if (throwable == null) {
+                                dispatch(from, to, values, current.registeredNodes != null, consumer);
+                            } else if (throwable instanceof TimeoutException) {
+                                logger.debug("Poll of nodes {} to {} dropped: {}", from, to - 1, throwable.getMessage());
+                            } else {
+                                logger.warn("Poll of nodes {} to {} failed", from, to - 1, throwable);
+                            }
+                            return null;
+                        }));
+            }
+            logger.debug("Polling {} nodes in {} chunks of at most {} nodes", nodeIds.size(), chunks.size(), nodesPerChunk);
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]));
+        });
+    }
+
+    /**
+     * @param registered Whether the values were read with registered Node Ids, nodes which the server does not know
+     *                   anymore are skipped then, because their registration is from a previous session.
+     */
+    private void dispatch(final int from, final int to, final List<DataValue> values, final boolean registered,
+                          final Consumer<List<OpcUaRecord>> consumer) {
+        final int attributeCount = attributes.size();
+        final Instant received = Instant.now();
+        final RecordBatchPool.Batch results = recordPool.acquire();
+        try {
+            for (int node = from; node < to; node++) {
+                final int offset = (node - from) * attributeCount;
+                if (registered && isUnknownNode(values.get(offset))) {
+                    continue;
+                }
+                if (lastValues != null && !lastValues.update(node, values.get(offset + valueIndex).getValue().getValue())) {
+                    continue;
+                }
+                final OpcUaRecord result = results.add();
+                for (int i = 0; i < attributeCount; i++) {
+                    final DataValue value = values.get(offset + i);
+                    result.set(attributes.get(i), attributes.get(i).asValue(value.getValue()));
+                }
+                result.set(OpcUaAttributes.NodeId, nodeIds.get(node));
+                if (valueIndex >= 0) {
+                    result.setTimestamps(values.get(offset + valueIndex), received);
+                }
+            }
+            if (!results.isEmpty()) {
+                consumer.accept(results);
+            }
+        } finally {
+            recordPool.release(results);
+        }
+    }
+
+    private static boolean isUnknownNode(final DataValue value) {
+        final long status = value.getStatusCode() != null ? value.getStatusCode().getValue() : StatusCodes.Good;
+        return status == StatusCodes.Bad_NodeIdUnknown || status == StatusCodes.Bad_NodeIdInvalid;
+    }
+
+    /**
+     * Ids of one cycle, replaced as a whole so that a read knows which registration it used.
+     */
+    private static final class ReadIds {
+
+        private final List<ReadValueId> ids;
+
+        /**
+         * Registered Node Ids the ids were built from, {@code null} if they were built from the configured Node Ids.
+         */
+        private final List<NodeId> registeredNodes;
+
+        private ReadIds(final List<ReadValueId> ids, final List<NodeId> registeredNodes) {
+            this.ids = ids;
+            this.registeredNodes = registeredNodes;
+        }
+    }
+}
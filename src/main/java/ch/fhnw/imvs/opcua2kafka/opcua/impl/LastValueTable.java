@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Last polled value per node, used to forward only values which changed since the previous poll.
+ *
+ * Nodes are addressed by their index in the poll list. Numeric and boolean values are stored as raw {@code long} bits
+ * in a primitive array, so unchanged numeric values are detected without keeping boxed objects alive.
+ * Every index must only be updated by one thread at a time.
+ */
+final class LastValueTable {
+
+    private static final byte EMPTY = 0;
+
+    private static final byte NULL = 1;
+
+    private static final byte BOOLEAN = 2;
+
+    private static final byte INTEGRAL = 3;
+
+    private static final byte FLOATING = 4;
+
+    private static final byte OBJECT = 5;
+
+    private final int heartbeatCycles;
+
+    private final byte[] kinds;
+
+    private final long[] bits;
+
+    private final Object[] objects;
+
+    private final int[] unchangedCycles;
+
+    private final LongAdder emitted = new LongAdder();
+
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * @param size Number of nodes.
+     * @param heartbeatCycles Number of unchanged cycles after which a value is emitted anyway, {@code 0} to never re-emit.
+     */
+    LastValueTable(final int size, final int heartbeatCycles) {
+        this.heartbeatCycles = heartbeatCycles;
+        this.kinds = new byte[size];
+        this.bits = new long[size];
+        this.objects = new Object[size];
+        this.unchangedCycles = new int[size];
+    }
+
+    /**
+     * Stores the polled value of a node.
+     *
+     * @param index Index of the node.
+     * @param value Polled value, may be {@code null}.
+     * @return Whether the value has to be emitted, because it is the first value, it changed or a heartbeat is due.
+     */
+    boolean update(final int index, final Object value) {
+        final byte kind;
+        final long valueBits;
+        if (value == null) {
+            kind = NULL;
+            valueBits = 0;
+        } else if (value instanceof Boolean) {
+            kind = BOOLEAN;
+            valueBits = (Boolean) value ? 1 : 0;
+        } else if (value instanceof Double || value instanceof Float) {
+            kind = FLOATING;
+            valueBits = Double.doubleToLongBits(((Number) value).doubleValue());
+        } else if (value instanceof Number && !(value instanceof BigInteger) && !(value instanceof BigDecimal)) {
+            kind = INTEGRAL;
+            valueBits = ((Number) value).longValue();
+        } else {
+            kind = OBJECT;
+            valueBits = 0;
+        }
+
+        final boolean changed = kinds[index] != kind
+                || bits[index] != valueBits
+                || (kind == OBJECT && !Objects.deepEquals(objects[index], value));
+        if (changed) {
+            kinds[index] = kind;
+            bits[index] = valueBits;
+            objects[index] = kind == OBJECT ? value : null;
+            unchangedCycles[index] = 0;
+            emitted.increment();
+            return true;
+        }
+        if (heartbeatCycles > 0 && ++unchangedCycles[index] >= heartbeatCycles) {
+            unchangedCycles[index] = 0;
+            emitted.increment();
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    int size() {
+        return kinds.length;
+    }
+
+    long getEmittedCount() {
+        return emitted.sum();
+    }
+
+    long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    /**
+     * @return Ratio of suppressed values to all updates, {@code 0} if there were no updates.
+     */
+    double getSuppressionRatio() {
+        final long suppressedCount = getSuppressedCount();
+        final long total = suppressedCount + getEmittedCount();
+        return total == 0 ? 0 : (double) suppressedCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "LastValueTable{size=" + size() +
+                ", heartbeatCycles=" + heartbeatCycles +
+                ", emitted=" + getEmittedCount() +
+                ", suppressed=" + getSuppressedCount() +
+                ", suppressionRatio=" + String.format("%.3f", getSuppressionRatio()) +
+                '}';
+    }
+}
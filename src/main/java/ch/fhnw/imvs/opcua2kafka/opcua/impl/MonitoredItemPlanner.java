@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OperationLimits;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Executes monitored item service calls (create, delete) for large item lists.
+ *
+ * The items are split into chunks which respect the MaxMonitoredItemsPerCall operation limit of the server,
+ * a bounded number of chunks is sent concurrently and only the items which failed are retried.
+ */
+final class MonitoredItemPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MonitoredItemPlanner.class);
+
+    /**
+     * Items per call if neither the server nor the configuration limit it.
+     */
+    static final int DEFAULT_MAX_ITEMS_PER_CALL = 1000;
+
+    private final long configuredMaxItemsPerCall;
+
+    private final int maxRetries;
+
+    private final long retryDelay;
+
+    private final AsyncRequestLimiter limiter;
+
+    /**
+     * @param configuredMaxItemsPerCall Configured maximum items per call, {@code 0} to use the server limit.
+     * @param maxConcurrentCalls Maximum number of calls which are outstanding at the same time.
+     * @param maxRetries Maximum number of times failed items are retried.
+     * @param retryDelay Delay in Milliseconds before the first retry, multiplied by the attempt for further retries.
+     */
+    MonitoredItemPlanner(final long configuredMaxItemsPerCall,
+                         final int maxConcurrentCalls,
+                         final int maxRetries,
+                         final long retryDelay) {
+        this.configuredMaxItemsPerCall = configuredMaxItemsPerCall;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryDelay = retryDelay;
+        this.limiter = new AsyncRequestLimiter(Math.max(1, maxConcurrentCalls));
+    }
+
+    int getItemsPerCall(final OperationLimits limits) {
+        return OperationLimits.effectiveLimit(limits.getMaxMonitoredItemsPerCall(), configuredMaxItemsPerCall, DEFAULT_MAX_ITEMS_PER_CALL);
+    }
+
+    /**
+     * Executes a service call for all items.
+     *
+     * @param items Items to process.
+     * @param itemsPerCall Maximum number of items in one call.
+     * @param call Sends one chunk and completes with the items of the chunk which should be retried.
+     *             A chunk whose call fails is retried completely.
+     * @param progress Progress which is advanced by the processed items.
+     * @param <T> Item type.
+     * @return Future which completes with the items which still failed after the last retry.
+     */
+    <T> CompletableFuture<List<T>> execute(final List<T> items,
+                                           final int itemsPerCall,
+                                           final Function<List<T>, CompletableFuture<List<T>>> call,
+                                           final Progress progress) {
+        return execute(items, itemsPerCall, call, progress, 0);
+    }
+
+    int getInFlightCalls() {
+        return limiter.getInFlight();
+    }
+
+    int getQueuedCalls() {
+        return limiter.getQueued();
+    }
+
+    /**
+     * @param status Status of a single operation.
+     * @return Whether the operation failed because of a temporary server condition and is worth retrying.
+     */
+    static boolean isRetryable(final StatusCode status) {
+        final long value = status.getValue();
+        return value == StatusCodes.Bad_TooManyOperations
+                || value == StatusCodes.Bad_TooManyMonitoredItems
+                || value == StatusCodes.Bad_Timeout
+                || value == StatusCodes.Bad_ResourceUnavailable
+                || value == StatusCodes.Bad_OutOfMemory;
+    }
+
+    private <T> CompletableFuture<List<T>> execute(final List<T> items,
+                                                   final int itemsPerCall,
+                                                   final Function<List<T>, CompletableFuture<List<T>>> call,
+                                                   final Progress progress,
+                                                   final int attempt) {
+        final List<CompletableFuture<List<T>>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += itemsPerCall) {
+            final List<T> chunk = items.subList(from, Math.min(items.size(), from + itemsPerCall));
+            chunks.add(limiter.submit(() -> call.apply(chunk))
+                    .exceptionally((throwable) -> {
+                        logger.warn("{} of {} items failed: {}", progress.getOperation(), chunk.size(), throwable.getMessage());
+                        return chunk;
+                    })
+                    .thenApply((failed) -> {
+                        progress.advance(chunk.size() - failed.size());
+                        return failed;
+                    }));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenCompose((v) -> {
+            final List<T> failed = new ArrayList<>();
+            chunks.forEach((chunk) -> failed.addAll(chunk.join()));
+            if (failed.isEmpty() || attempt >= maxRetries) {
+                return CompletableFuture.completedFuture(failed);
+            }
+            logger.info("{}: retrying {} failed items (attempt {} of {})",
+                    progress.getOperation(), failed.size(), attempt + 1, maxRetries);
+            return CompletableFuture
+                    .runAsync(() -> { }, CompletableFuture.delayedExecutor(retryDelay * (attempt + 1), TimeUnit.MILLISECONDS))
+                    .thenCompose((ignored) -> execute(failed, itemsPerCall, call, progress, attempt + 1));
+        });
+    }
+
+    /**
+     * Progress of an operation, which may span several {@link #execute} calls.
+     */
+    static final class Progress {
+
+        private final String operation;
+
+        private final int total;
+
+        private final long startNanos;
+
+        private final AtomicInteger processed = new AtomicInteger();
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+
+        private int reportedTenths;
+
+        Progress(final String operation, final int total) {
+            this.operation = operation;
+            this.total = total;
+            this.startNanos = System.nanoTime();
+        }
+
+        String getOperation() {
+            return operation;
+        }
+
+        int getTotal() {
+            return total;
+        }
+
+        int getProcessed() {
+            return processed.get();
+        }
+
+        int getSucceeded() {
+            return succeeded.get();
+        }
+
+        long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        void recordSucceeded(final int count) {
+            succeeded.addAndGet(count);
+        }
+
+        /**
+         * Records processed items and logs every ten percent of the total.
+         */
+        void advance(final int count) {
+            final int done = processed.addAndGet(count);
+            final int tenths = total > 0 ? (int) Math.min(10, (long) done * 10 / total) : 10;
+            synchronized (this) {
+                if (tenths <= reportedTenths) {
+                    return;
+                }
+                reportedTenths = tenths;
+            }
+            logger.info("{}: {} of {} items processed ({} ms)", operation, done, total, getElapsedMillis());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the descriptive attributes of an OPC UA node.
+ *
+ * These attributes rarely change, therefore they are read once and cached by the {@link NodeMetadataCache}.
+ */
+@Getter
+@ToString
+final class NodeMetadata {
+
+    /**
+     * Attributes which are covered by a {@link NodeMetadata} snapshot.
+     */
+    static final List<OpcUaAttribute> ATTRIBUTES = List.of(
+            OpcUaAttributes.BrowseName,
+            OpcUaAttributes.Description,
+            OpcUaAttributes.DisplayName);
+
+    /**
+     * Parseable Node Id, kept so that it is not formatted again for every value.
+     */
+    private final String nodeId;
+
+    private final String browseName;
+
+    private final String displayName;
+
+    private final String description;
+
+    private final long loadedAtNanos;
+
+    NodeMetadata(final String browseName, final String displayName, final String description, final long loadedAtNanos) {
+        this(null, browseName, displayName, description, loadedAtNanos);
+    }
+
+    NodeMetadata(final String nodeId, final String browseName, final String displayName, final String description, final long loadedAtNanos) {
+        this.nodeId = nodeId;
+        this.browseName = browseName;
+        this.displayName = displayName;
+        this.description = description;
+        this.loadedAtNanos = loadedAtNanos;
+    }
+
+    static NodeMetadata of(final String nodeId, final Map<OpcUaAttribute, Object> attributes, final long loadedAtNanos) {
+        return new NodeMetadata(
+                nodeId,
+                (String) attributes.get(OpcUaAttributes.BrowseName),
+                (String) attributes.get(OpcUaAttributes.DisplayName),
+                (String) attributes.get(OpcUaAttributes.Description),
+                loadedAtNanos);
+    }
+
+    void copyTo(final OpcUaRecord record) {
+        record.set(OpcUaAttributes.BrowseName, browseName);
+        record.set(OpcUaAttributes.DisplayName, displayName);
+        record.set(OpcUaAttributes.Description, description);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of {@link NodeMetadata} keyed by {@link NodeId}.
+ *
+ * Entries older than the configured time to live are still returned, but reported as expired so that the caller
+ * can refresh them in the background without delaying the current message.
+ */
+final class NodeMetadataCache {
+
+    private final int maximumSize;
+
+    private final long timeToLiveNanos;
+
+    private final Map<NodeId, NodeMetadata> entries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder loadNanos = new LongAdder();
+
+    NodeMetadataCache(final int maximumSize, final long timeToLive, final TimeUnit timeUnit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive > 0 ? timeUnit.toNanos(timeToLive) : Long.MAX_VALUE;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<NodeId, NodeMetadata> eldest) {
+                if (size() > NodeMetadataCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached metadata of a node.
+     *
+     * @param nodeId Node Id to look up.
+     * @return Cached metadata (possibly expired) or {@code null} if the node is not cached.
+     */
+    NodeMetadata get(final NodeId nodeId) {
+        final NodeMetadata metadata;
+        synchronized (entries) {
+            metadata = entries.get(nodeId);
+        }
+        if (metadata != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return metadata;
+    }
+
+    void put(final NodeId nodeId, final NodeMetadata metadata) {
+        synchronized (entries) {
+            entries.put(nodeId, metadata);
+        }
+    }
+
+    void invalidate(final NodeId nodeId) {
+        synchronized (entries) {
+            entries.remove(nodeId);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    boolean isExpired(final NodeMetadata metadata, final long nowNanos) {
+        return nowNanos - metadata.getLoadedAtNanos() > timeToLiveNanos;
+    }
+
+    /**
+     * Records the duration of a Read which was necessary to load an entry.
+     *
+     * @param nanos Duration of the Read in nanoseconds.
+     */
+    void recordLoad(final long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    double getHitRatio() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Average duration of a metadata Read, which equals the time saved for every message served from the cache.
+     *
+     * @return Average load time in nanoseconds.
+     */
+    long getAverageLoadNanos() {
+        final long count = loads.sum();
+        return count == 0 ? 0 : loadNanos.sum() / count;
+    }
+
+    long getSavedNanos() {
+        return getAverageLoadNanos() * hits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "NodeMetadataCache{size=" + size() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                ", hitRatio=" + String.format("%.3f", getHitRatio()) +
+                ", averageLoadNanos=" + getAverageLoadNanos() +
+                ", savedNanos=" + getSavedNanos() +
+                '}';
+    }
+}
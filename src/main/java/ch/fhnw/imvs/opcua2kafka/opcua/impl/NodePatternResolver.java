@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the configuration entry of a node, e.g. its monitoring profile or subscription group.
+ *
+ * The entries are checked in their configured order, the first entry whose pattern matches the Node Id wins.
+ * Nodes which do not match any entry use the default entry.
+ *
+ * @param <T> Type of the configuration entry.
+ */
+final class NodePatternResolver<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodePatternResolver.class);
+
+    private final T defaultEntry;
+
+    private final List<Pattern> patterns;
+
+    private final List<T> entries;
+
+    /**
+     * @param defaultEntry Entry of nodes which do not match any pattern.
+     * @param entries Configured entries in their order of precedence.
+     * @param patternFunction Returns the Node Id pattern of an entry.
+     * @param mergeFunction Completes an entry with the values of the default entry.
+     */
+    NodePatternResolver(final T defaultEntry,
+                        final List<T> entries,
+                        final Function<T, String> patternFunction,
+                        final BinaryOperator<T> mergeFunction) {
+        this.defaultEntry = defaultEntry;
+        this.patterns = new ArrayList<>();
+        this.entries = new ArrayList<>();
+        for (final T entry : entries != null ? entries : Collections.<T>emptyList()) {
+            final String pattern = patternFunction.apply(entry);
+            if (pattern == null || pattern.isBlank()) {
+                logger.warn("Ignoring configuration entry without node pattern: {}", entry);
+                continue;
+            }
+            this.patterns.add(Pattern.compile(pattern));
+            this.entries.add(mergeFunction.apply(entry, defaultEntry));
+        }
+    }
+
+    T resolve(final String nodeId) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(nodeId).matches()) {
+                return entries.get(i);
+            }
+        }
+        return defaultEntry;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnection;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnectionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Creates an independent {@link OpcUaServiceImpl} and {@link OpcUaPollServiceImpl} for every configured connection,
+ * so that each connection has its own client, subscriptions, dispatcher threads and poll scheduler.
+ */
+@Service
+class OpcUaConnectionManagerImpl implements OpcUaConnectionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpcUaConnectionManagerImpl.class);
+
+    private final List<OpcUaConnection> connections;
+
+    @Autowired
+    public OpcUaConnectionManagerImpl(final OpcUaConfiguration opcUaConfiguration, final MeterRegistry meterRegistry) {
+        final List<OpcUaConnection> result = new ArrayList<>();
+        if (opcUaConfiguration != null && opcUaConfiguration.getConnections() != null) {
+            for (final OpcUaConnectionConfiguration connectionConfiguration : opcUaConfiguration.getConnections()) {
+                final OpcUaServiceImpl opcUaService = new OpcUaServiceImpl(opcUaConfiguration, connectionConfiguration, meterRegistry);
+                final OpcUaPollServiceImpl opcUaPollService = new OpcUaPollServiceImpl(opcUaService, opcUaConfiguration,
+                        meterRegistry, connectionConfiguration.getName());
+                result.add(new OpcUaConnection(connectionConfiguration, opcUaService, opcUaPollService));
+                logger.info("OPC UA connection '{}' to {} configured",
+                        connectionConfiguration.getName(), connectionConfiguration.getOpcUaServer());
+            }
+        }
+        connections = Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public List<OpcUaConnection> getConnections() {
+        return connections;
+    }
+}
@@ -15,56 +15,164 @@
  */
 package ch.fhnw.imvs.opcua2kafka.opcua.impl;
 
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.PollGroup;
 import ch.fhnw.imvs.opcua2kafka.opcua.*;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.ToLongFunction;
 
-@Service
+/**
+ * Polling of a single OPC UA server connection, created per connection by the {@link OpcUaConnectionManagerImpl}.
+ *
+ * The polled nodes are assigned to {@link PollGroup}s by their Node Id. The nodes of a group are split into
+ * {@link PollSlice}s which are spread evenly over the group interval, so that the server sees a steady stream of
+ * small reads instead of one burst per cycle. All slices are scheduled on a single {@link TimingWheel} and share one
+ * {@link AsyncRequestLimiter}, which bounds the number of outstanding Read calls of the connection.
+ * The polled nodes are registered at the server when polling starts and again after every reconnect.
+ */
 public class OpcUaPollServiceImpl implements OpcUaPollService {
 
     private static final Logger logger = LoggerFactory.getLogger(OpcUaPollServiceImpl.class);
 
+    private static final List<OpcUaAttribute> POLLED_ATTRIBUTES =
+            List.of(OpcUaAttributes.BrowseName, OpcUaAttributes.Value, OpcUaAttributes.DisplayName, OpcUaAttributes.Description);
+
+    /**
+     * Tick duration in Milliseconds if none is configured.
+     */
+    private static final long DEFAULT_TICK_DURATION = 10;
+
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * Minimum number of nodes per slice, so that spreading the load does not end in Reads of single nodes.
+     */
+    private static final int MIN_NODES_PER_SLICE = 50;
+
+    /**
+     * Interval in Seconds in which the poll statistics are logged.
+     */
+    private static final long STATISTICS_INTERVAL = 60;
+
     private final OpcUaService opcUaService;
 
+    private final OpcUaConfiguration opcUaConfiguration;
+
     private final Collection<OpcUaListener> listeners;
 
-    private ScheduledExecutorService executorService;
+    private TimingWheel timingWheel;
+
+    private List<PollSlice> slices = Collections.emptyList();
+
+    /**
+     * Node Ids polled by the slices, announced to the listeners on start and stop.
+     */
+    private List<String> polledNodeIds = Collections.emptyList();
+
+    private AsyncRequestLimiter limiter;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Meters of the current slices and limiter, removed when polling stops.
+     */
+    private final List<Meter> pollMeters = new ArrayList<>();
 
-    private List<String> nodeIds;
+    private final String connectionName;
 
-    @Autowired
-    public OpcUaPollServiceImpl(final OpcUaService opcUaService) {
+    public OpcUaPollServiceImpl(final OpcUaService opcUaService,
+                                final OpcUaConfiguration opcUaConfiguration,
+                                final MeterRegistry meterRegistry,
+                                final String connectionName) {
         listeners = new CopyOnWriteArrayList<>();
         this.opcUaService = opcUaService;
+        this.opcUaConfiguration = opcUaConfiguration;
+        this.meterRegistry = meterRegistry;
+        this.connectionName = String.valueOf(connectionName);
+        opcUaService.addReconnectListener(this::onReconnect);
     }
 
     @Override
-    public void start(final List<String> nodeIds, final long interval, final TimeUnit timeUnit) {
+    public synchronized void start(final List<String> nodeIds, final long interval, final TimeUnit timeUnit) {
         logger.info("OpcUaPollService starting...");
-        this.nodeIds = nodeIds;
-        if (executorService != null) {
-            executorService.shutdown();
+        stop();
+
+        final PollGroup defaultGroup = PollGroup.builder()
+                .name("default")
+                .interval(timeUnit.toMillis(interval))
+                .deadline(opcUaConfiguration.getPollingCycleDeadline())
+                .overrunPolicy(opcUaConfiguration.getPollingOverrunPolicy())
+                .build();
+        final NodePatternResolver<PollGroup> groupResolver = new NodePatternResolver<>(
+                defaultGroup,
+                opcUaConfiguration.getPollGroups(),
+                PollGroup::getNodePattern,
+                PollGroup::withDefaults);
+        final Map<PollGroup, List<String>> nodesByGroup = new LinkedHashMap<>();
+        for (final String nodeId : nodeIds) {
+            nodesByGroup.computeIfAbsent(groupResolver.resolve(nodeId), (g) -> new ArrayList<>()).add(nodeId);
+        }
+
+        final long tickDuration = opcUaConfiguration.getPollingTickDuration() > 0
+                ? opcUaConfiguration.getPollingTickDuration()
+                : DEFAULT_TICK_DURATION;
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("opcua-" + connectionName + "-poll-");
+        threadFactory.setDaemon(true);
+        final TimingWheel wheel = new TimingWheel(tickDuration, TimeUnit.MILLISECONDS, WHEEL_SIZE, threadFactory);
+        final AsyncRequestLimiter readLimiter = new AsyncRequestLimiter(Math.max(1, opcUaConfiguration.getPollingMaxConcurrentReads()));
+
+        final List<PollSlice> newSlices = new ArrayList<>();
+        nodesByGroup.forEach((group, groupNodeIds) -> newSlices.addAll(createSlices(group, groupNodeIds, readLimiter, tickDuration)));
+        final List<String> newPolledNodeIds = new ArrayList<>(nodeIds.size());
+        newSlices.forEach((slice) -> newPolledNodeIds.addAll(slice.getReader().getNodeIds()));
+        polledNodeIds = newPolledNodeIds;
+        for (final OpcUaListener listener : listeners) {
+            listener.nodesMonitored(newPolledNodeIds);
+        }
+        for (final PollSlice slice : newSlices) {
+            slice.schedule(wheel, this::notifyListeners);
         }
-        executorService = Executors.newSingleThreadScheduledExecutor();
-        executorService.scheduleAtFixedRate(this::poll, 0, interval, timeUnit);
-        logger.debug("OpcUaPollService executorService scheduled with pollingInterval {} {}", interval, timeUnit);
+        bindLimiterMetrics(readLimiter);
+        wheel.schedule(this::logStatistics, STATISTICS_INTERVAL, STATISTICS_INTERVAL, TimeUnit.SECONDS);
+        if (opcUaConfiguration.isPollingRegisterNodes()) {
+            newSlices.forEach((slice) -> slice.getReader().registerNodes());
+        }
+        wheel.start();
+        slices = newSlices;
+        limiter = readLimiter;
+        timingWheel = wheel;
+        logger.debug("OpcUaPollService scheduled {} nodes in {} groups and {} slices with a tick of {} ms",
+                nodeIds.size(), nodesByGroup.size(), newSlices.size(), tickDuration);
     }
 
     @Override
-    public void stop() {
-        if (executorService != null) {
-            executorService.shutdown();
+    public synchronized void stop() {
+        if (timingWheel != null) {
+            slices.forEach(PollSlice::cancel);
+            slices.forEach((slice) -> slice.getReader().unregisterNodes());
+            timingWheel.stop();
+            timingWheel = null;
+            for (final OpcUaListener listener : listeners) {
+                listener.nodesUnmonitored(polledNodeIds);
+            }
+            polledNodeIds = Collections.emptyList();
+            logStatistics();
+            pollMeters.forEach(meterRegistry::remove);
+            pollMeters.clear();
+            logger.debug("OpcUaPollService timing wheel stopped");
         }
-        executorService = null;
-        logger.debug("OpcUaPollService executorService stopped");
     }
 
     @Override
@@ -83,24 +191,183 @@ public class OpcUaPollServiceImpl implements OpcUaPollService {
         }
     }
 
-    private void poll() {
-        logger.debug("Polling started for {} nodes", nodeIds.size());
-        for (final String nodeId : nodeIds) {
-            final CompletableFuture<Map<OpcUaAttribute, String>> result = opcUaService.readAttributes(
-                    nodeId,
-                    List.of(OpcUaAttributes.BrowseName, OpcUaAttributes.Value, OpcUaAttributes.DisplayName, OpcUaAttributes.Description));
-            result.handle((values, throwable) -> {
-                if (throwable == null) {
-                    logger.debug("Poll for NodeId={} succeeded, values={}", nodeId, values);
-                    final Map<OpcUaAttribute, String> unmodifiableValues = Collections.unmodifiableMap(values);
-                    for (final OpcUaListener listener : listeners) {
-                        listener.messageReceived(unmodifiableValues);
-                    }
-                } else {
-                    logger.warn("Poll for NodeId={} failed, {}", nodeId, throwable);
-                }
-                return null;
-            });
+    /**
+     * Registers the polled nodes again, because registered Node Ids are only valid in the session they were registered in.
+     */
+    private synchronized void onReconnect() {
+        if (timingWheel != null && opcUaConfiguration.isPollingRegisterNodes()) {
+            for (final PollSlice slice : slices) {
+                slice.getReader().resetRegistration();
+                slice.getReader().registerNodes();
+            }
+        }
+    }
+
+    /**
+     * @return Number of Read calls which are currently outstanding.
+     */
+    public int getInFlightReads() {
+        final AsyncRequestLimiter current = limiter;
+        return current != null ? current.getInFlight() : 0;
+    }
+
+    /**
+     * @return Number of Read calls waiting for one of the outstanding calls to complete.
+     */
+    public int getQueuedReads() {
+        final AsyncRequestLimiter current = limiter;
+        return current != null ? current.getQueued() : 0;
+    }
+
+    /**
+     * @return Average time in Milliseconds a Read call waited before it was sent.
+     */
+    public double getAverageQueueWait() {
+        final AsyncRequestLimiter current = limiter;
+        return current != null ? current.getAverageQueueWaitNanos() / 1_000_000.0 : 0;
+    }
+
+    /**
+     * @return Number of Read calls dropped because the deadline of their cycle was over.
+     */
+    public long getDroppedReadCount() {
+        final AsyncRequestLimiter current = limiter;
+        return current != null ? current.getExpiredCount() : 0;
+    }
+
+    /**
+     * @return Number of cycles dropped because the previous cycle of their slice was still running.
+     */
+    public long getDroppedCycleCount() {
+        return slices.stream().mapToLong(PollSlice::getDroppedCycleCount).sum();
+    }
+
+    /**
+     * Splits the nodes of a group into slices with evenly spaced phase offsets within the group interval.
+     */
+    private List<PollSlice> createSlices(final PollGroup group,
+                                         final List<String> nodeIds,
+                                         final AsyncRequestLimiter limiter,
+                                         final long tickDuration) {
+        final long interval = Math.max(tickDuration, group.getInterval());
+        final long maxSlicesByNodes = (nodeIds.size() + MIN_NODES_PER_SLICE - 1) / MIN_NODES_PER_SLICE;
+        final int sliceCount = (int) Math.max(1, Math.min(maxSlicesByNodes, interval / tickDuration));
+        final List<PollSlice> result = new ArrayList<>(sliceCount);
+        final Timer cycleTimer = Timer.builder("opcua.poll.cycle")
+                .description("Duration of the poll cycles of a slice")
+                .tags("connection", connectionName, "group", String.valueOf(group.getName()))
+                .register(meterRegistry);
+        for (int i = 0; i < sliceCount; i++) {
+            final List<String> sliceNodeIds = nodeIds.subList(
+                    (int) ((long) i * nodeIds.size() / sliceCount),
+                    (int) ((long) (i + 1) * nodeIds.size() / sliceCount));
+            final BatchedPollReader reader = new BatchedPollReader(
+                    opcUaService,
+                    sliceNodeIds,
+                    POLLED_ATTRIBUTES,
+                    opcUaConfiguration.getPollingMaxNodesPerRead(),
+                    limiter,
+                    opcUaConfiguration.isPollingChangeOnly(),
+                    opcUaConfiguration.getPollingHeartbeatCycles());
+            result.add(new PollSlice(group, i, i * interval / sliceCount, reader, cycleTimer));
+        }
+        bindSliceMetrics(group, result);
+        logger.info("Poll group {}: {} nodes every {} ms in {} slices", group.getName(), nodeIds.size(), interval, sliceCount);
+        return result;
+    }
+
+    /**
+     * The meters refer to this service, which the registry only references weakly, and keep the slices in their functions.
+     */
+    private void bindSliceMetrics(final PollGroup group, final List<PollSlice> groupSlices) {
+        final Tags tags = Tags.of("connection", connectionName, "group", String.valueOf(group.getName()));
+        pollMeters.add(FunctionCounter.builder("opcua.poll.overruns", this, (service) -> sum(groupSlices, PollSlice::getOverrunCount))
+                .description("Poll cycles which were due while the previous cycle of their slice was still running")
+                .tags(tags)
+                .register(meterRegistry));
+        pollMeters.add(FunctionCounter.builder("opcua.poll.cycles.dropped", this, (service) -> sum(groupSlices, PollSlice::getDroppedCycleCount))
+                .description("Poll cycles dropped because of an overrun")
+                .tags(tags)
+                .register(meterRegistry));
+        pollMeters.add(FunctionCounter.builder("opcua.poll.cycles.late", this, (service) -> sum(groupSlices, PollSlice::getLateCycleCount))
+                .description("Poll cycles which did not complete before their deadline")
+                .tags(tags)
+                .register(meterRegistry));
+        if (opcUaConfiguration.isPollingChangeOnly()) {
+            pollMeters.add(FunctionCounter.builder("opcua.poll.changes.emitted", this,
+                    (service) -> sum(groupSlices, (slice) -> slice.getReader().getLastValues().getEmittedCount()))
+                    .description("Polled values passed on because they changed or the heartbeat was due")
+                    .tags(tags)
+                    .register(meterRegistry));
+            pollMeters.add(FunctionCounter.builder("opcua.poll.changes.suppressed", this,
+                    (service) -> sum(groupSlices, (slice) -> slice.getReader().getLastValues().getSuppressedCount()))
+                    .description("Polled values suppressed because they did not change")
+                    .tags(tags)
+                    .register(meterRegistry));
+        }
+    }
+
+    private void bindLimiterMetrics(final AsyncRequestLimiter readLimiter) {
+        final Tags tags = Tags.of("connection", connectionName);
+        pollMeters.add(Gauge.builder("opcua.poll.reads.inflight", readLimiter, AsyncRequestLimiter::getInFlight)
+                .description("Read calls which are currently outstanding")
+                .tags(tags)
+                .register(meterRegistry));
+        pollMeters.add(Gauge.builder("opcua.poll.reads.queued", readLimiter, AsyncRequestLimiter::getQueued)
+                .description("Read calls waiting for one of the outstanding calls to complete")
+                .tags(tags)
+                .register(meterRegistry));
+        pollMeters.add(FunctionCounter.builder("opcua.poll.reads.dropped", readLimiter, AsyncRequestLimiter::getExpiredCount)
+                .description("Read calls dropped because the deadline of their cycle was over")
+                .tags(tags)
+                .register(meterRegistry));
+        pollMeters.add(TimeGauge.builder("opcua.poll.reads.wait", readLimiter, TimeUnit.NANOSECONDS, AsyncRequestLimiter::getAverageQueueWaitNanos)
+                .description("Average time a Read call waited before it was sent")
+                .tags(tags)
+                .register(meterRegistry));
+    }
+
+    private static long sum(final List<PollSlice> slices, final ToLongFunction<PollSlice> counter) {
+        return slices.stream().mapToLong(counter).sum();
+    }
+
+    private void logStatistics() {
+        long cycles = 0;
+        long overruns = 0;
+        long droppedCycles = 0;
+        long lateCycles = 0;
+        long emitted = 0;
+        long suppressed = 0;
+        for (final PollSlice slice : slices) {
+            cycles += slice.getCycleCount();
+            overruns += slice.getOverrunCount();
+            droppedCycles += slice.getDroppedCycleCount();
+            lateCycles += slice.getLateCycleCount();
+            final LastValueTable lastValues = slice.getReader().getLastValues();
+            if (lastValues != null) {
+                emitted += lastValues.getEmittedCount();
+                suppressed += lastValues.getSuppressedCount();
+            }
+            logger.debug("Poll statistics: {}", slice);
+        }
+        logger.info("Poll statistics: {} slices, {} cycles, {} overruns, {} dropped cycles, {} late cycles",
+                slices.size(), cycles, overruns, droppedCycles, lateCycles);
+        final AsyncRequestLimiter current = limiter;
+        if (current != null) {
+            logger.info("Poll reads: {} in flight, {} queued, {} sent, {} dropped, queue wait {} ms average, {} ms max",
+                    current.getInFlight(), current.getQueued(), current.getStartedCount(), current.getExpiredCount(),
+                    TimeUnit.NANOSECONDS.toMillis(current.getAverageQueueWaitNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(current.getMaxQueueWaitNanos()));
+        }
+        if (opcUaConfiguration.isPollingChangeOnly()) {
+            logger.info("Polling change detection statistics: {} emitted, {} suppressed", emitted, suppressed);
+        }
+    }
+
+    private void notifyListeners(final List<OpcUaRecord> records) {
+        logger.debug("Poll of {} nodes succeeded, values={}", records.size(), records);
+        for (final OpcUaListener listener : listeners) {
+            listener.recordsReceived(records);
         }
     }
 }
@@ -15,53 +15,195 @@
  */
 package ch.fhnw.imvs.opcua2kafka.opcua.impl;
 
+import ch.fhnw.imvs.opcua2kafka.config.MonitoringProfile;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.SubscriptionGroup;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaListener;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import ch.fhnw.imvs.opcua2kafka.opcua.OperationLimits;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.SessionActivityListener;
+import org.eclipse.milo.opcua.sdk.client.api.UaSession;
 import org.eclipse.milo.opcua.sdk.client.api.UaClient;
 import org.eclipse.milo.opcua.sdk.client.api.config.OpcUaClientConfigBuilder;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
 import org.eclipse.milo.opcua.stack.client.DiscoveryClient;
 import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.serialization.SerializationContext;
 import org.eclipse.milo.opcua.stack.core.types.builtin.*;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.MessageSecurityMode;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
 import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
 import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.function.BiConsumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
-@Service
+/**
+ * Client of a single OPC UA server connection, created per connection by the {@link OpcUaConnectionManagerImpl}.
+ */
 class OpcUaServiceImpl implements OpcUaService {
 
     private static final Logger logger = LoggerFactory.getLogger(OpcUaServiceImpl.class);
 
-    private static final double DEFAULT_SUBSCRIPTION_POLLING_INTERVAL = 100.0;
+    /**
+     * Interval in Milliseconds in which a subscription without notifications should send a keep alive.
+     */
+    private static final double KEEP_ALIVE_INTERVAL = 10000.0;
+
+    /**
+     * Delay in Milliseconds before failed monitored items are created again.
+     */
+    private static final long MONITORED_ITEM_RETRY_DELAY = 1000;
+
+    /**
+     * Number of record batches kept for reuse, one per subscription dispatcher is enough.
+     */
+    private static final int RECORD_POOL_SIZE = 64;
+
+    /**
+     * Time in Milliseconds to wait for the disconnect and the queued notifications on shutdown.
+     */
+    private static final long DISPATCHER_SHUTDOWN_TIMEOUT = 5000;
+
+    private OpcUaClient opcUaClient;
 
     private CompletableFuture<UaClient> uaClient;
 
-    private CompletableFuture<UaSubscription> uaSubscription;
+    private CompletableFuture<OperationLimits> operationLimits;
 
     private final Collection<OpcUaListener> listeners;
 
-    public OpcUaServiceImpl() {
+    private final Collection<Runnable> reconnectListeners;
+
+    private final NodeMetadataCache metadataCache;
+
+    private final RecordBatchPool recordPool = new RecordBatchPool(RECORD_POOL_SIZE);
+
+    private final Map<NodeId, CompletableFuture<NodeMetadata>> pendingMetadataLoads;
+
+    private final NodePatternResolver<MonitoringProfile> monitoringProfileResolver;
+
+    private final NodePatternResolver<SubscriptionGroup> subscriptionGroupResolver;
+
+    private final Map<SubscriptionGroup, List<SubscriptionShard>> shards;
+
+    private final CustomizableThreadFactory dispatcherThreadFactory;
+
+    private final int dispatcherThreads;
+
+    /**
+     * Threads which dispatch the notifications of all subscriptions, created on connect and stopped on disconnect.
+     */
+    private volatile ExecutorService dispatcherPool;
+
+    private final MonitoredItemPlanner monitoredItemPlanner;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String connectionName;
+
+    /**
+     * Timestamps requested with the values of monitored and polled nodes.
+     */
+    private final TimestampsToReturn timestampsToReturn;
+
+    /**
+     * Meters of the subscription shards, guarded by {@link #shards}.
+     */
+    private final List<Meter> shardMeters = new ArrayList<>();
+
+    OpcUaServiceImpl(final OpcUaConfiguration opcUaConfiguration,
+                     final OpcUaConnectionConfiguration connectionConfiguration,
+                     final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.connectionName = String.valueOf(connectionConfiguration.getName());
+        this.timestampsToReturn = toTimestampsToReturn(opcUaConfiguration.getTimestamps());
         listeners = new CopyOnWriteArrayList<>();
+        reconnectListeners = new CopyOnWriteArrayList<>();
+        metadataCache = new NodeMetadataCache(
+                opcUaConfiguration.getMetadataCacheSize(),
+                opcUaConfiguration.getMetadataCacheTimeToLive(),
+                TimeUnit.MILLISECONDS);
+        pendingMetadataLoads = new ConcurrentHashMap<>();
+        monitoringProfileResolver = new NodePatternResolver<>(
+                opcUaConfiguration.getDefaultMonitoringProfile(),
+                connectionConfiguration.getMonitoringProfiles() != null && !connectionConfiguration.getMonitoringProfiles().isEmpty()
+                        ? connectionConfiguration.getMonitoringProfiles()
+                        : opcUaConfiguration.getMonitoringProfiles(),
+                MonitoringProfile::getNodePattern,
+                MonitoringProfile::withDefaults);
+        subscriptionGroupResolver = new NodePatternResolver<>(
+                opcUaConfiguration.getDefaultSubscriptionGroup(),
+                opcUaConfiguration.getSubscriptionGroups(),
+                SubscriptionGroup::getNodePattern,
+                SubscriptionGroup::withDefaults);
+        shards = new LinkedHashMap<>();
+        dispatcherThreadFactory = new CustomizableThreadFactory("opcua-" + connectionName + "-dispatcher-");
+        dispatcherThreadFactory.setDaemon(true);
+        dispatcherThreads = opcUaConfiguration.getSubscriptionDispatcherThreads() > 0
+                ? opcUaConfiguration.getSubscriptionDispatcherThreads()
+                : Runtime.getRuntime().availableProcessors();
+        monitoredItemPlanner = new MonitoredItemPlanner(
+                opcUaConfiguration.getMonitoringMaxItemsPerCall(),
+                opcUaConfiguration.getMonitoringMaxConcurrentCalls(),
+                opcUaConfiguration.getMonitoringMaxRetries(),
+                MONITORED_ITEM_RETRY_DELAY);
+        bindMetadataCacheMetrics();
+    }
+
+    private void bindMetadataCacheMetrics() {
+        final Tags tags = Tags.of("connection", connectionName);
+        FunctionCounter.builder("opcua.metadata.cache.hits", metadataCache, NodeMetadataCache::getHitCount)
+                .description("Messages whose node metadata was taken from the cache")
+                .tags(tags)
+                .register(meterRegistry);
+        FunctionCounter.builder("opcua.metadata.cache.misses", metadataCache, NodeMetadataCache::getMissCount)
+                .description("Messages whose node metadata had to be read from the server")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("opcua.metadata.cache.size", metadataCache, NodeMetadataCache::size)
+                .description("Nodes whose metadata is cached")
+                .tags(tags)
+                .register(meterRegistry);
+        TimeGauge.builder("opcua.metadata.cache.saved", metadataCache, TimeUnit.NANOSECONDS, NodeMetadataCache::getSavedNanos)
+                .description("Time saved by the cache hits, estimated from the average metadata Read")
+                .tags(tags)
+                .register(meterRegistry);
     }
 
     @Override
@@ -73,7 +215,13 @@ class OpcUaServiceImpl implements OpcUaService {
                 final OpcUaClientConfigBuilder configBuilder = new OpcUaClientConfigBuilder();
                 configBuilder.setEndpoint(endpointDescription.get());
                 configBuilder.setApplicationName(LocalizedText.english("opc2kafka"));
-                uaClient = OpcUaClient.create(configBuilder.build()).connect();
+                opcUaClient = OpcUaClient.create(configBuilder.build());
+                opcUaClient.addSessionActivityListener(new ReconnectNotifier());
+                if (dispatcherPool == null) {
+                    dispatcherPool = Executors.newFixedThreadPool(dispatcherThreads, dispatcherThreadFactory);
+                }
+                uaClient = opcUaClient.connect();
+                operationLimits = null;
             } else {
                 logger.error("No compatible OPC UA endpoint found");
             }
@@ -84,81 +232,108 @@ class OpcUaServiceImpl implements OpcUaService {
 
     @Override
     public void disconnect() {
+        CompletableFuture<?> disconnected = CompletableFuture.completedFuture(null);
         if (uaClient != null) {
-            uaClient.thenAccept((client) -> {
+            disconnected = uaClient.thenCompose((client) -> {
                 final Collection<UaSubscription> subscriptions = client.getSubscriptionManager().getSubscriptions();
                 subscriptions.forEach((s) -> client.getSubscriptionManager().deleteSubscription(s.getSubscriptionId()));
-                client.disconnect();
                 uaClient = null;
+                return client.disconnect().thenApply((disconnectedClient) -> null);
             });
         }
+        synchronized (shards) {
+            shards.values().forEach((groupShards) -> groupShards.forEach((shard) -> logger.info("Subscription statistics: {}", shard)));
+            shards.clear();
+            shardMeters.forEach(meterRegistry::remove);
+            shardMeters.clear();
+        }
+        logger.info("Node metadata cache statistics: {}", metadataCache);
+        metadataCache.invalidateAll();
+        final ExecutorService pool = dispatcherPool;
+        dispatcherPool = null;
+        if (pool != null) {
+            shutdownDispatcherPool(pool, disconnected);
+        }
+    }
+
+    /**
+     * Stops the dispatcher threads once the client is disconnected, so that no notifications arrive anymore.
+     * Notifications which are still queued after {@link #DISPATCHER_SHUTDOWN_TIMEOUT} are dropped.
+     */
+    private void shutdownDispatcherPool(final ExecutorService pool, final CompletableFuture<?> disconnected) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DISPATCHER_SHUTDOWN_TIMEOUT);
+        try {
+            disconnected.get(DISPATCHER_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException | TimeoutException e) {
+            logger.warn("Could not disconnect ua client", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                logger.warn("Dispatcher threads did not finish within {} ms", DISPATCHER_SHUTDOWN_TIMEOUT);
+                pool.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
     public void monitorNodes(final Collection<String> nodeIds) {
         if (uaClient != null) {
-            if (uaSubscription == null) {
-                uaSubscription = uaClient.thenCompose((client) -> client.getSubscriptionManager().createSubscription(DEFAULT_SUBSCRIPTION_POLLING_INTERVAL));
+            final List<String> monitoredNodeIds = nodeIds
+                    .stream()
+                    .map(NodeId::parseSafe)
+                    .filter(Optional::isPresent)
+                    .map((nodeId) -> nodeId.get().toParseableString())
+                    .collect(Collectors.toList());
+            for (final OpcUaListener listener : listeners) {
+                listener.nodesMonitored(monitoredNodeIds);
             }
-            final CompletableFuture<List<MonitoredItemCreateRequest>> monitorRequests = createMonitoredItemCreateRequests(nodeIds);
-
-            final BiConsumer<UaMonitoredItem, Integer> onItemCreated =
-                    (item, id) -> item.setValueConsumer(this::onSubscriptionValue);
-
-            monitorRequests.thenAccept((requests) -> {
-                uaSubscription.thenAccept((subscription) -> {
-                    subscription.createMonitoredItems(TimestampsToReturn.Neither, requests, onItemCreated).thenAccept((uaMonitoredItems) -> {
-                        for (final UaMonitoredItem item : uaMonitoredItems) {
-                            if (item.getStatusCode().isGood()) {
-                                logger.info("MonitoredItem created for nodeId={}", item.getReadValueId().getNodeId());
-                            } else {
-                                logger.warn(
-                                        "failed to create item for nodeId={} (status={})",
-                                        item.getReadValueId().getNodeId(), item.getStatusCode());
-                            }
-                        }
-                    });
-                });
-            });
+
+            final MonitoredItemPlanner.Progress progress = new MonitoredItemPlanner.Progress("Monitored item creation", nodeIds.size());
+            final List<CompletableFuture<Void>> creations = new ArrayList<>();
+            assignToShards(nodeIds).forEach((shard, shardNodeIds) -> creations.add(createMonitoredItems(shard, shardNodeIds, progress)));
+            CompletableFuture.allOf(creations.toArray(new CompletableFuture[0])).thenRun(() ->
+                    logger.info("Fully subscribed: {} of {} nodes monitored in {} ms",
+                            progress.getSucceeded(), progress.getTotal(), progress.getElapsedMillis()));
         }
     }
 
     @Override
     public void unMonitorNodes(final Collection<String> nodeIds) {
         if (uaClient != null) {
-            if (uaSubscription == null) {
-                return;
+            final Set<NodeId> nodes = nodeIds
+                    .stream()
+                    .map(NodeId::parseSafe)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toSet());
+            nodes.forEach(metadataCache::invalidate);
+            final List<String> unmonitoredNodeIds = nodes.stream().map(NodeId::toParseableString).collect(Collectors.toList());
+            for (final OpcUaListener listener : listeners) {
+                listener.nodesUnmonitored(unmonitoredNodeIds);
             }
 
-            uaSubscription.thenAccept((subscription) -> {
-                final List<NodeId> nodes = nodeIds
-                        .stream()
-                        .map(NodeId::parseSafe)
-                        .filter(Optional::isPresent)
-                        .map(Optional::get)
-                        .collect(Collectors.toList());
-
-                final List<UaMonitoredItem> toRemove = subscription
-                        .getMonitoredItems()
-                        .stream()
-                        .filter(mi -> nodes.contains(mi.getReadValueId().getNodeId()))
-                        .collect(Collectors.toList());
-
-                subscription.deleteMonitoredItems(toRemove)
-                        .handle((r, t) -> {
-                            if (t == null && r.stream().allMatch(StatusCode::isGood)) {
-                                logger.info("Removed all nodes");
-                            } else {
-                                logger.warn("could not remove monitored items, ", t);
-                            }
-                            return null;
-                        });
-            });
+            final MonitoredItemPlanner.Progress progress = new MonitoredItemPlanner.Progress("Monitored item deletion", nodes.size());
+            final List<SubscriptionShard> allShards = new ArrayList<>();
+            synchronized (shards) {
+                shards.values().forEach(allShards::addAll);
+            }
+            final List<CompletableFuture<Void>> deletions = new ArrayList<>();
+            for (final SubscriptionShard shard : allShards) {
+                deletions.add(deleteMonitoredItems(shard, nodes, progress));
+            }
+            CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0])).thenRun(() ->
+                    logger.info("Removed {} monitored items in {} ms", progress.getSucceeded(), progress.getElapsedMillis()));
         }
     }
 
     @Override
-    public CompletableFuture<Map<OpcUaAttribute, String>> readAttributes(final String nodeId, final List<OpcUaAttribute> attributes) {
+    public CompletableFuture<Map<OpcUaAttribute, Object>> readAttributes(final String nodeId, final List<OpcUaAttribute> attributes) {
         logger.debug("Reading {} attributes for node '{}'", attributes.size(), nodeId);
         if (uaClient != null) {
             final Optional<NodeId> nodeIdOptional = NodeId.parseSafe(nodeId);
@@ -172,9 +347,9 @@ class OpcUaServiceImpl implements OpcUaService {
 
                     return reads.handle((rs, throwable) -> {
                         if (throwable == null) {
-                            final Map<OpcUaAttribute, String> results = new HashMap<>();
+                            final Map<OpcUaAttribute, Object> results = new HashMap<>();
                             for (int i = 0; i < attributes.size(); i++) {
-                                results.put(attributes.get(i), attributes.get(i).asString(rs.get(i).getValue()));
+                                results.put(attributes.get(i), attributes.get(i).asValue(rs.get(i).getValue()));
                             }
                             results.put(OpcUaAttributes.NodeId, nodeId);
                             return results;
@@ -189,6 +364,85 @@ class OpcUaServiceImpl implements OpcUaService {
         return null;
     }
 
+    @Override
+    public CompletableFuture<List<DataValue>> read(final List<ReadValueId> readValueIds) {
+        logger.debug("Reading {} values", readValueIds.size());
+        if (uaClient == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("OpcUaService is not connected"));
+        }
+        return uaClient
+                .thenCompose((client) -> client.read(0, timestampsToReturn, readValueIds))
+                .thenApply((response) -> response.getResults() != null
+                        ? Arrays.asList(response.getResults())
+                        : Collections.emptyList());
+    }
+
+    @Override
+    public synchronized CompletableFuture<OperationLimits> getOperationLimits() {
+        if (uaClient == null) {
+            return CompletableFuture.completedFuture(OperationLimits.UNLIMITED);
+        }
+        if (operationLimits == null) {
+            operationLimits = uaClient
+                    .thenCompose((client) -> client.read(
+                            0,
+                            TimestampsToReturn.Neither,
+                            List.of(Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRead,
+                                    Identifiers.Server_ServerCapabilities_OperationLimits_MaxMonitoredItemsPerCall,
+                                    Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRegisterNodes),
+                            List.of(AttributeId.Value.uid(), AttributeId.Value.uid(), AttributeId.Value.uid())))
+                    .thenApply((values) -> OperationLimits.builder()
+                            .maxNodesPerRead(readLimit(values.get(0)))
+                            .maxMonitoredItemsPerCall(readLimit(values.get(1)))
+                            .maxNodesPerRegisterNodes(readLimit(values.get(2)))
+                            .build())
+                    .exceptionally((throwable) -> {
+                        logger.warn("Could not read server operation limits", throwable);
+                        return OperationLimits.UNLIMITED;
+                    });
+            operationLimits.thenAccept((limits) -> logger.info("Server operation limits: {}", limits));
+        }
+        return operationLimits;
+    }
+
+    @Override
+    public CompletableFuture<List<NodeId>> registerNodes(final List<NodeId> nodeIds) {
+        logger.debug("Registering {} nodes", nodeIds.size());
+        if (uaClient == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("OpcUaService is not connected"));
+        }
+        return uaClient
+                .thenCompose((client) -> client.registerNodes(nodeIds))
+                .thenApply((response) -> response.getRegisteredNodeIds() != null
+                        ? Arrays.asList(response.getRegisteredNodeIds())
+                        : Collections.emptyList());
+    }
+
+    @Override
+    public CompletableFuture<Void> unregisterNodes(final List<NodeId> registeredNodeIds) {
+        logger.debug("Unregistering {} nodes", registeredNodeIds.size());
+        if (uaClient == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return uaClient
+                .thenCompose((client) -> client.unregisterNodes(registeredNodeIds))
+                .thenApply((response) -> null);
+    }
+
+    @Override
+    public void addReconnectListener(final Runnable listener) {
+        if (listener != null) {
+            reconnectListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeReconnectListener(final Runnable listener) {
+        if (listener != null) {
+            reconnectListeners.remove(listener);
+        }
+    }
+
     @Override
     public void addListener(final OpcUaListener listener) {
         if (listener != null) {
@@ -205,53 +459,465 @@ class OpcUaServiceImpl implements OpcUaService {
         }
     }
 
-    private MonitoringParameters createDefaultMonitoringParameters(final UInteger nextClientHandle) {
+    private static long readLimit(final DataValue value) {
+        if (value.getStatusCode() != null && value.getStatusCode().isGood()
+                && value.getValue().getValue() instanceof Number) {
+            return ((Number) value.getValue().getValue()).longValue();
+        }
+        return 0;
+    }
+
+    /**
+     * @return Monitoring profile of a node, from the profiles of the connection if it has any.
+     */
+    MonitoringProfile getMonitoringProfile(final String nodeId) {
+        return monitoringProfileResolver.resolve(nodeId);
+    }
+
+    private MonitoringParameters createMonitoringParameters(final UInteger nextClientHandle, final MonitoringProfile profile) {
+        return createMonitoringParameters(nextClientHandle, profile, opcUaClient.getSerializationContext());
+    }
+
+    static MonitoringParameters createMonitoringParameters(final UInteger nextClientHandle,
+                                                           final MonitoringProfile profile,
+                                                           final SerializationContext serializationContext) {
+        final DataChangeFilter filter = createDataChangeFilter(profile);
         return new MonitoringParameters(
                 nextClientHandle,
-                DEFAULT_SUBSCRIPTION_POLLING_INTERVAL,
-                null,
-                UInteger.valueOf(1),
-                true
+                profile.getSamplingInterval(),
+                filter != null ? ExtensionObject.encode(serializationContext, filter) : null,
+                UInteger.valueOf(profile.getQueueSize()),
+                profile.getDiscardOldest()
         );
     }
 
-    private CompletableFuture<List<MonitoredItemCreateRequest>> createMonitoredItemCreateRequests(final Collection<String> nodeIds) {
-        logger.debug("Creating MonitorRequests for {} nodes", nodeIds.size());
-        return uaSubscription.thenApply(subscription -> {
-            final List<MonitoredItemCreateRequest> monitorRequests = new ArrayList<>();
-            for (final String nodeId : nodeIds) {
-                final Optional<NodeId> nodeIdOptional = NodeId.parseSafe(nodeId);
+    /**
+     * Creates the server side filter of a profile.
+     *
+     * @param profile Monitoring profile.
+     * @return Filter, or {@code null} if the server default (StatusValue, no deadband) applies.
+     */
+    static DataChangeFilter createDataChangeFilter(final MonitoringProfile profile) {
+        final MonitoringProfile.DeadbandType deadbandType = profile.getDeadbandType();
+        final MonitoringProfile.Trigger trigger = profile.getTrigger();
+        if ((deadbandType == null || deadbandType == MonitoringProfile.DeadbandType.NONE)
+                && (trigger == null || trigger == MonitoringProfile.Trigger.STATUS_VALUE)) {
+            return null;
+        }
+        return new DataChangeFilter(
+                toDataChangeTrigger(trigger),
+                UInteger.valueOf(toDeadbandType(deadbandType).getValue()),
+                profile.getDeadbandValue() != null ? profile.getDeadbandValue() : 0.0);
+    }
 
-                if (nodeIdOptional.isPresent()) {
-                    final ReadValueId readValueId = new ReadValueId(
-                            nodeIdOptional.get(), AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+    private static DataChangeTrigger toDataChangeTrigger(final MonitoringProfile.Trigger trigger) {
+        if (trigger == null) {
+            return DataChangeTrigger.StatusValue;
+        }
+        switch (trigger) {
+            case STATUS:
+                return DataChangeTrigger.Status;
+            case STATUS_VALUE_TIMESTAMP:
+                return DataChangeTrigger.StatusValueTimestamp;
+            default:
+                return DataChangeTrigger.StatusValue;
+        }
+    }
+
+    private static DeadbandType toDeadbandType(final MonitoringProfile.DeadbandType deadbandType) {
+        if (deadbandType == null) {
+            return DeadbandType.None;
+        }
+        switch (deadbandType) {
+            case ABSOLUTE:
+                return DeadbandType.Absolute;
+            case PERCENT:
+                return DeadbandType.Percent;
+            default:
+                return DeadbandType.None;
+        }
+    }
+
+    private Map<SubscriptionShard, List<String>> assignToShards(final Collection<String> nodeIds) {
+        synchronized (shards) {
+            return assignToShards(nodeIds, subscriptionGroupResolver, shards, this::createShard);
+        }
+    }
+
+    /**
+     * Spreads the nodes over the subscriptions of their groups.
+     *
+     * Existing subscriptions are filled up first, new subscriptions are created when a group is full.
+     *
+     * @param nodeIds Node Ids to monitor.
+     * @param groupResolver Resolves the subscription group of a node.
+     * @param shards Existing subscriptions per group, new subscriptions are added.
+     * @param shardFactory Creates the subscription of a group with the given index.
+     * @return Node Ids to monitor per subscription.
+     */
+    static Map<SubscriptionShard, List<String>> assignToShards(final Collection<String> nodeIds,
+                                                              final NodePatternResolver<SubscriptionGroup> groupResolver,
+                                                              final Map<SubscriptionGroup, List<SubscriptionShard>> shards,
+                                                              final BiFunction<SubscriptionGroup, Integer, SubscriptionShard> shardFactory) {
+        final Map<SubscriptionGroup, List<String>> nodesByGroup = new LinkedHashMap<>();
+        for (final String nodeId : nodeIds) {
+            nodesByGroup.computeIfAbsent(groupResolver.resolve(nodeId), (g) -> new ArrayList<>()).add(nodeId);
+        }
+
+        final Map<SubscriptionShard, List<String>> assignments = new LinkedHashMap<>();
+        nodesByGroup.forEach((group, groupNodeIds) -> {
+            final List<SubscriptionShard> groupShards = shards.computeIfAbsent(group, (g) -> new ArrayList<>());
+            int assigned = 0;
+            for (final SubscriptionShard shard : groupShards) {
+                assigned += assign(shard, groupNodeIds, assigned, assignments);
+            }
+            while (assigned < groupNodeIds.size()) {
+                final SubscriptionShard shard = shardFactory.apply(group, groupShards.size());
+                groupShards.add(shard);
+                assigned += assign(shard, groupNodeIds, assigned, assignments);
+            }
+        });
+        return assignments;
+    }
+
+    private static int assign(final SubscriptionShard shard,
+                              final List<String> nodeIds,
+                              final int offset,
+                              final Map<SubscriptionShard, List<String>> assignments) {
+        final int granted = shard.reserve(nodeIds.size() - offset);
+        if (granted > 0) {
+            assignments.computeIfAbsent(shard, (s) -> new ArrayList<>()).addAll(nodeIds.subList(offset, offset + granted));
+        }
+        return granted;
+    }
+
+    private SubscriptionShard createShard(final SubscriptionGroup group, final int index) {
+        final double publishingInterval = group.getPublishingInterval();
+        final UInteger maxKeepAliveCount = UInteger.valueOf(Math.max(1, (long) Math.ceil(KEEP_ALIVE_INTERVAL / publishingInterval)));
+        final UInteger lifetimeCount = UInteger.valueOf(maxKeepAliveCount.longValue() * 3);
+        final CompletableFuture<UaSubscription> subscription = uaClient.thenCompose((client) -> client.getSubscriptionManager().createSubscription(
+                publishingInterval,
+                lifetimeCount,
+                maxKeepAliveCount,
+                UInteger.valueOf(group.getMaxNotificationsPerPublish()),
+                true,
+                UByte.valueOf(group.getPriority())));
+        final SubscriptionShard shard = new SubscriptionShard(group, index, subscription, dispatcherPool);
+        final Tags tags = Tags.of("connection", connectionName, "group", String.valueOf(group.getName()), "subscription", String.valueOf(index));
+        shardMeters.add(FunctionCounter.builder("opcua.subscription.notifications", shard, SubscriptionShard::getNotificationCount)
+                .description("Notifications received by the subscription")
+                .tags(tags)
+                .register(meterRegistry));
+        shardMeters.add(Gauge.builder("opcua.subscription.queued", shard, SubscriptionShard::getQueuedNotifications)
+                .description("Publish responses waiting for the dispatcher of the subscription")
+                .tags(tags)
+                .register(meterRegistry));
+        subscription.whenComplete((s, throwable) -> {
+            if (throwable == null) {
+                logger.info("Subscription {} of group {} created (publishingInterval={})",
+                        index, group.getName(), s.getRevisedPublishingInterval());
+                s.addNotificationListener(new UaSubscription.NotificationListener() {
+                    @Override
+                    public void onDataChangeNotification(final UaSubscription subscription,
+                                                         final List<UaMonitoredItem> monitoredItems,
+                                                         final List<DataValue> dataValues,
+                                                         final DateTime publishTime) {
+                        final Instant received = Instant.now();
+                        shard.dispatch(monitoredItems.size(), () -> onSubscriptionValues(monitoredItems, dataValues, received));
+                    }
+                });
+            } else {
+                logger.warn("Could not create subscription {} of group {}", index, group.getName(), throwable);
+            }
+        });
+        return shard;
+    }
 
-                    final UInteger nextClientHandle = subscription.nextClientHandle();
-                    final MonitoringParameters parameters = createDefaultMonitoringParameters(nextClientHandle);
+    /**
+     * Creates the monitored items of a shard in chunks, see {@link MonitoredItemPlanner}.
+     */
+    private CompletableFuture<Void> createMonitoredItems(final SubscriptionShard shard,
+                                                         final List<String> nodeIds,
+                                                         final MonitoredItemPlanner.Progress progress) {
+        return shard.getSubscription()
+                .thenCombine(getOperationLimits(), (subscription, limits) -> monitoredItemPlanner.execute(
+                        nodeIds,
+                        monitoredItemPlanner.getItemsPerCall(limits),
+                        (chunk) -> createMonitoredItemChunk(shard, subscription, chunk, progress),
+                        progress))
+                .thenCompose((failed) -> failed)
+                .handle((failed, throwable) -> {
+                    final int failedCount = throwable == null ? failed.size() : nodeIds.size();
+                    if (failedCount > 0) {
+                        logger.warn("Could not create {} monitored items in {}", failedCount, shard);
+                        shard.release(failedCount);
+                    }
+                    return null;
+                });
+    }
 
-                    final MonitoredItemCreateRequest request = new MonitoredItemCreateRequest(
-                            readValueId,
-                            MonitoringMode.Reporting,
-                            parameters
-                    );
+    /**
+     * Sends a single CreateMonitoredItems call.
+     *
+     * @return Future which completes with the Node Ids whose creation failed temporarily and should be retried.
+     */
+    private CompletableFuture<List<String>> createMonitoredItemChunk(final SubscriptionShard shard,
+                                                                     final UaSubscription subscription,
+                                                                     final List<String> nodeIds,
+                                                                     final MonitoredItemPlanner.Progress progress) {
+        final List<String> requestedNodeIds = new ArrayList<>(nodeIds.size());
+        final List<MonitoredItemCreateRequest> requests = createMonitoredItemCreateRequests(subscription, nodeIds, requestedNodeIds);
+        shard.release(nodeIds.size() - requests.size());
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
 
-                    monitorRequests.add(request);
+        return subscription.createMonitoredItems(timestampsToReturn, requests).thenApply((uaMonitoredItems) -> {
+            final List<String> retry = new ArrayList<>();
+            int created = 0;
+            int rejected = 0;
+            for (int i = 0; i < uaMonitoredItems.size(); i++) {
+                final UaMonitoredItem item = uaMonitoredItems.get(i);
+                if (item.getStatusCode().isGood()) {
+                    created++;
+                    logger.debug("MonitoredItem created for nodeId={} (samplingInterval={}, queueSize={})",
+                            item.getReadValueId().getNodeId(), item.getRevisedSamplingInterval(), item.getRevisedQueueSize());
+                    loadMetadata(item.getReadValueId().getNodeId());
+                } else if (MonitoredItemPlanner.isRetryable(item.getStatusCode())) {
+                    retry.add(requestedNodeIds.get(i));
+                } else {
+                    rejected++;
+                    logger.warn(
+                            "failed to create item for nodeId={} (status={})",
+                            item.getReadValueId().getNodeId(), item.getStatusCode());
                 }
             }
-            return monitorRequests;
+            progress.recordSucceeded(created);
+            shard.release(rejected);
+            return retry;
         });
     }
 
-    private void onSubscriptionValue(final UaMonitoredItem item, final DataValue value) {
-        logger.debug("subscription value received: item={}, value={}", item.getReadValueId().getNodeId(), value.getValue());
-        this.readAttributes(item.getReadValueId().getNodeId().toParseableString(), List.of(OpcUaAttributes.BrowseName, OpcUaAttributes.Description, OpcUaAttributes.DisplayName))
-                .thenAccept((map) -> {
-                    final Map<OpcUaAttribute, String> resultMap = new HashMap<>(map);
-                    resultMap.put(OpcUaAttributes.Value, String.valueOf(value.getValue().getValue()));
-                    logger.debug("Value map={}", map);
-                    for (final OpcUaListener listener : listeners) {
-                        listener.messageReceived(Collections.unmodifiableMap(resultMap));
+    /**
+     * Deletes the monitored items of the specified nodes from a shard in chunks, see {@link MonitoredItemPlanner}.
+     */
+    private CompletableFuture<Void> deleteMonitoredItems(final SubscriptionShard shard,
+                                                         final Collection<NodeId> nodes,
+                                                         final MonitoredItemPlanner.Progress progress) {
+        return shard.getSubscription()
+                .thenCombine(getOperationLimits(), (subscription, limits) -> {
+                    final List<UaMonitoredItem> toRemove = subscription
+                            .getMonitoredItems()
+                            .stream()
+                            .filter(mi -> nodes.contains(mi.getReadValueId().getNodeId()))
+                            .collect(Collectors.toList());
+                    if (toRemove.isEmpty()) {
+                        return CompletableFuture.completedFuture(Collections.<UaMonitoredItem>emptyList());
+                    }
+                    return monitoredItemPlanner.execute(
+                            toRemove,
+                            monitoredItemPlanner.getItemsPerCall(limits),
+                            (chunk) -> deleteMonitoredItemChunk(shard, subscription, chunk, progress),
+                            progress);
+                })
+                .thenCompose((failed) -> failed)
+                .handle((failed, throwable) -> {
+                    if (throwable != null || !failed.isEmpty()) {
+                        logger.warn("could not remove monitored items from {}", shard, throwable);
                     }
+                    return null;
                 });
     }
+
+    private CompletableFuture<List<UaMonitoredItem>> deleteMonitoredItemChunk(final SubscriptionShard shard,
+                                                                              final UaSubscription subscription,
+                                                                              final List<UaMonitoredItem> items,
+                                                                              final MonitoredItemPlanner.Progress progress) {
+        return subscription.deleteMonitoredItems(items).thenApply((results) -> {
+            final List<UaMonitoredItem> retry = new ArrayList<>();
+            int removed = 0;
+            for (int i = 0; i < results.size(); i++) {
+                final StatusCode status = results.get(i);
+                if (status.isGood()) {
+                    removed++;
+                } else if (MonitoredItemPlanner.isRetryable(status)) {
+                    retry.add(items.get(i));
+                } else {
+                    logger.warn("failed to remove item for nodeId={} (status={})",
+                            items.get(i).getReadValueId().getNodeId(), status);
+                }
+            }
+            progress.recordSucceeded(removed);
+            shard.release(removed);
+            return retry;
+        });
+    }
+
+    private List<MonitoredItemCreateRequest> createMonitoredItemCreateRequests(final UaSubscription subscription,
+                                                                               final Collection<String> nodeIds,
+                                                                               final List<String> requestedNodeIds) {
+        logger.debug("Creating MonitorRequests for {} nodes", nodeIds.size());
+        final List<MonitoredItemCreateRequest> monitorRequests = new ArrayList<>();
+        for (final String nodeId : nodeIds) {
+            final Optional<NodeId> nodeIdOptional = NodeId.parseSafe(nodeId);
+
+            if (nodeIdOptional.isPresent()) {
+                final ReadValueId readValueId = new ReadValueId(
+                        nodeIdOptional.get(), AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+
+                final UInteger nextClientHandle = subscription.nextClientHandle();
+                final MonitoringProfile profile = getMonitoringProfile(nodeId);
+                final MonitoringParameters parameters = createMonitoringParameters(nextClientHandle, profile);
+
+                final MonitoredItemCreateRequest request = new MonitoredItemCreateRequest(
+                        readValueId,
+                        MonitoringMode.Reporting,
+                        parameters
+                );
+
+                monitorRequests.add(request);
+                requestedNodeIds.add(nodeId);
+            } else {
+                logger.warn("invalid nodeId={}, not monitored", nodeId);
+            }
+        }
+        return monitorRequests;
+    }
+
+    /**
+     * Processes the data change notifications of one publish response and passes them to the listeners as one batch.
+     *
+     * The records are taken from the {@link RecordBatchPool}, so that no maps are allocated per value.
+     * Values of nodes whose metadata is not cached yet are passed on separately as soon as the metadata is loaded.
+     */
+    private void onSubscriptionValues(final List<UaMonitoredItem> items, final List<DataValue> values, final Instant received) {
+        final RecordBatchPool.Batch records = recordPool.acquire();
+        try {
+            final long now = System.nanoTime();
+            for (int i = 0; i < items.size(); i++) {
+                final NodeId nodeId = items.get(i).getReadValueId().getNodeId();
+                final DataValue value = values.get(i);
+                logger.debug("subscription value received: item={}, value={}", nodeId, value.getValue());
+                final NodeMetadata metadata = metadataCache.get(nodeId);
+                if (metadata != null) {
+                    if (metadataCache.isExpired(metadata, now)) {
+                        // serve the stale entry, the refreshed one is used by the next value
+                        loadMetadata(nodeId);
+                    }
+                    fillRecord(records.add(), nodeId, metadata, value, received);
+                } else {
+                    loadMetadata(nodeId).thenAccept((m) -> {
+                        if (m != null) {
+                            final OpcUaRecord record = new OpcUaRecord();
+                            fillRecord(record, nodeId, m, value, received);
+                            notifyListeners(List.of(record));
+                        }
+                    });
+                }
+            }
+            if (!records.isEmpty()) {
+                notifyListeners(records);
+            }
+        } finally {
+            recordPool.release(records);
+        }
+    }
+
+    private static void fillRecord(final OpcUaRecord record,
+                                   final NodeId nodeId,
+                                   final NodeMetadata metadata,
+                                   final DataValue value,
+                                   final Instant received) {
+        record.set(OpcUaAttributes.NodeId, metadata.getNodeId() != null ? metadata.getNodeId() : nodeId.toParseableString());
+        metadata.copyTo(record);
+        record.set(OpcUaAttributes.Value, value.getValue().getValue());
+        record.setTimestamps(value, received);
+    }
+
+    private static TimestampsToReturn toTimestampsToReturn(final OpcUaConfiguration.Timestamps timestamps) {
+        if (timestamps == null) {
+            return TimestampsToReturn.Neither;
+        }
+        switch (timestamps) {
+            case SOURCE:
+                return TimestampsToReturn.Source;
+            case SERVER:
+                return TimestampsToReturn.Server;
+            case BOTH:
+                return TimestampsToReturn.Both;
+            default:
+                return TimestampsToReturn.Neither;
+        }
+    }
+
+    private void notifyListeners(final List<OpcUaRecord> records) {
+        logger.debug("Value records={}", records);
+        for (final OpcUaListener listener : listeners) {
+            listener.recordsReceived(records);
+        }
+    }
+
+    /**
+     * Reads the metadata attributes of a node and stores them in the {@link NodeMetadataCache}.
+     *
+     * Concurrent loads of the same node share a single Read.
+     *
+     * @param nodeId Node Id to load.
+     * @return Future which completes with the loaded metadata or {@code null} if the Read failed.
+     */
+    private CompletableFuture<NodeMetadata> loadMetadata(final NodeId nodeId) {
+        final CompletableFuture<NodeMetadata> load = new CompletableFuture<>();
+        final CompletableFuture<NodeMetadata> pending = pendingMetadataLoads.putIfAbsent(nodeId, load);
+        if (pending != null) {
+            return pending;
+        }
+        final long start = System.nanoTime();
+        final CompletableFuture<Map<OpcUaAttribute, Object>> read = readAttributes(nodeId.toParseableString(), NodeMetadata.ATTRIBUTES);
+        if (read == null) {
+            pendingMetadataLoads.remove(nodeId, load);
+            load.complete(null);
+            return load;
+        }
+        read.whenComplete((attributes, throwable) -> {
+            pendingMetadataLoads.remove(nodeId, load);
+            if (throwable == null && attributes != null && !attributes.isEmpty()) {
+                final long loadedAt = System.nanoTime();
+                final NodeMetadata metadata = NodeMetadata.of(nodeId.toParseableString(), attributes, loadedAt);
+                metadataCache.recordLoad(loadedAt - start);
+                metadataCache.put(nodeId, metadata);
+                load.complete(metadata);
+            } else {
+                logger.warn("Could not load metadata of nodeId={}", nodeId);
+                load.complete(null);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Notifies the reconnect listeners when a session becomes active after the previous one was lost.
+     */
+    private final class ReconnectNotifier implements SessionActivityListener {
+
+        private boolean sessionLost;
+
+        @Override
+        public synchronized void onSessionInactive(final UaSession session) {
+            sessionLost = true;
+        }
+
+        @Override
+        public void onSessionActive(final UaSession session) {
+            synchronized (this) {
+                if (!sessionLost) {
+                    return;
+                }
+                sessionLost = false;
+            }
+            logger.info("OPC UA session reactivated, notifying {} listeners", reconnectListeners.size());
+            for (final Runnable listener : reconnectListeners) {
+                listener.run();
+            }
+        }
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.PollGroup;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Part of the nodes of a {@link PollGroup}, which is polled at its own phase offset within the group interval.
+ *
+ * At most one cycle of a slice runs at a time, cycles which are due while the previous cycle is still running
+ * are handled according to the {@link PollGroup.OverrunPolicy} of the group. Reads of a cycle which could not be
+ * sent before the cycle deadline are dropped, so that a slow server never accumulates outstanding reads.
+ */
+final class PollSlice {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollSlice.class);
+
+    private final PollGroup group;
+
+    private final int index;
+
+    private final long phaseOffset;
+
+    private final BatchedPollReader reader;
+
+    private final Timer cycleTimer;
+
+    private final LongAdder cycles = new LongAdder();
+
+    private final LongAdder overruns = new LongAdder();
+
+    private final LongAdder droppedCycles = new LongAdder();
+
+    private final LongAdder lateCycles = new LongAdder();
+
+    private TimingWheel wheel;
+
+    private TimingWheel.Task task;
+
+    private Consumer<List<OpcUaRecord>> consumer;
+
+    private boolean running;
+
+    private boolean pending;
+
+    private boolean stopped;
+
+    private volatile long lastDuration;
+
+    /**
+     * @param group Poll group of the slice.
+     * @param index Index of the slice within its group.
+     * @param phaseOffset Offset in Milliseconds of the slice within the group interval.
+     * @param reader Reader of the nodes of the slice.
+     * @param cycleTimer Timer which records the duration of the cycles.
+     */
+    PollSlice(final PollGroup group, final int index, final long phaseOffset, final BatchedPollReader reader, final Timer cycleTimer) {
+        this.group = group;
+        this.index = index;
+        this.phaseOffset = phaseOffset;
+        this.reader = reader;
+        this.cycleTimer = cycleTimer;
+    }
+
+    BatchedPollReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Schedules the cycles of this slice.
+     *
+     * @param timingWheel Wheel which triggers the cycles.
+     * @param valueConsumer Consumer of the read attributes of a single node.
+     */
+    synchronized void schedule(final TimingWheel timingWheel, final Consumer<List<OpcUaRecord>> valueConsumer) {
+        this.wheel = timingWheel;
+        this.consumer = valueConsumer;
+        this.task = timingWheel.schedule(this::onDue, phaseOffset, group.getInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void cancel() {
+        stopped = true;
+        pending = false;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private void onDue() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            if (running) {
+                onOverrun();
+                return;
+            }
+            running = true;
+        }
+        startCycle();
+    }
+
+    private void onOverrun() {
+        overruns.increment();
+        final PollGroup.OverrunPolicy policy = getOverrunPolicy();
+        if (policy == PollGroup.OverrunPolicy.SKIP || pending) {
+            // with MERGE and DELAY, a second overrun is merged into the pending cycle
+            droppedCycles.increment();
+        } else {
+            pending = true;
+        }
+        final long count = overruns.sum();
+        if (count == 1 || count % 100 == 0) {
+            logger.warn("Poll cycle of {} is due while the previous cycle is still running ({}, {} overruns so far)", this, policy, count);
+        }
+    }
+
+    private void startCycle() {
+        cycles.increment();
+        final long start = System.nanoTime();
+        final long deadline = group.getDeadline() != null && group.getDeadline() > 0 ? group.getDeadline() : group.getInterval();
+        reader.read(consumer, start + TimeUnit.MILLISECONDS.toNanos(deadline))
+                .whenComplete((r, throwable) -> onCycleComplete(start, throwable));
+    }
+
+    private void onCycleComplete(final long start, final Throwable throwable) {
+        final long durationNanos = System.nanoTime() - start;
+        cycleTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        final long duration = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        lastDuration = duration;
+        if (duration > group.getInterval()) {
+            lateCycles.increment();
+            logger.debug("Poll cycle of {} took {} ms, longer than its interval", this, duration);
+        }
+        if (throwable != null) {
+            logger.warn("Poll cycle of {} failed after {} ms", this, duration, throwable);
+        }
+
+        synchronized (this) {
+            running = pending && !stopped;
+            pending = false;
+            if (!running) {
+                return;
+            }
+            if (getOverrunPolicy() == PollGroup.OverrunPolicy.DELAY) {
+                // shift the schedule, the following cycles are due one interval after this one
+                task.cancel();
+                task = wheel.schedule(this::onDue, group.getInterval(), group.getInterval(), TimeUnit.MILLISECONDS);
+            }
+        }
+        startCycle();
+    }
+
+    private PollGroup.OverrunPolicy getOverrunPolicy() {
+        return group.getOverrunPolicy() != null ? group.getOverrunPolicy() : PollGroup.OverrunPolicy.SKIP;
+    }
+
+    long getCycleCount() {
+        return cycles.sum();
+    }
+
+    long getOverrunCount() {
+        return overruns.sum();
+    }
+
+    long getDroppedCycleCount() {
+        return droppedCycles.sum();
+    }
+
+    long getLateCycleCount() {
+        return lateCycles.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PollSlice{group=" + group.getName() +
+                ", index=" + index +
+                ", nodes=" + reader.getNodeCount() +
+                ", interval=" + group.getInterval() +
+                ", phaseOffset=" + phaseOffset +
+                ", cycles=" + getCycleCount() +
+                ", overruns=" + getOverrunCount() +
+                ", droppedCycles=" + getDroppedCycleCount() +
+                ", lateCycles=" + getLateCycleCount() +
+                ", lastDuration=" + lastDuration +
+                '}';
+    }
+}
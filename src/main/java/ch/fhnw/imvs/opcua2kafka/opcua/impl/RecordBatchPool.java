@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable {@link OpcUaRecord} batches, so that notifying the listeners does not allocate per value.
+ *
+ * A batch is acquired before a publish response or Read response is processed and released after the listeners
+ * were notified. Batches which do not fit into the pool on release are left to the garbage collector.
+ */
+final class RecordBatchPool {
+
+    private final BlockingQueue<Batch> batches;
+
+    private final LongAdder allocatedBatches = new LongAdder();
+
+    RecordBatchPool(final int maxPooledBatches) {
+        this.batches = new ArrayBlockingQueue<>(maxPooledBatches);
+    }
+
+    Batch acquire() {
+        final Batch batch = batches.poll();
+        if (batch != null) {
+            return batch;
+        }
+        allocatedBatches.increment();
+        return new Batch();
+    }
+
+    void release(final Batch batch) {
+        batch.clear();
+        batches.offer(batch);
+    }
+
+    /**
+     * @return Number of batches which were allocated because the pool was empty.
+     */
+    long getAllocatedBatchCount() {
+        return allocatedBatches.sum();
+    }
+
+    /**
+     * Records of one notification, the list view only contains the records which are in use.
+     */
+    static final class Batch extends AbstractList<OpcUaRecord> {
+
+        private final List<OpcUaRecord> records = new ArrayList<>();
+
+        private int size;
+
+        /**
+         * @return Empty record which was appended to this batch.
+         */
+        OpcUaRecord add() {
+            if (size == records.size()) {
+                records.add(new OpcUaRecord());
+            }
+            return records.get(size++);
+        }
+
+        @Override
+        public OpcUaRecord get(final int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return records.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < size; i++) {
+                records.get(i).clear();
+            }
+            size = 0;
+        }
+    }
+}
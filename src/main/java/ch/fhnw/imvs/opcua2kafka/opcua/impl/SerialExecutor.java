@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes tasks one after another in submission order on a shared executor.
+ *
+ * Tasks of different {@link SerialExecutor}s run in parallel, while tasks of the same instance never overlap.
+ * Once the shared executor is shut down, the queued and further tasks are dropped.
+ */
+final class SerialExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    /**
+     * Number of tasks run before the thread is handed back, so that busy instances do not starve others.
+     */
+    private static final int MAX_TASKS_PER_DRAIN = 256;
+
+    private final Executor executor;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    private boolean active;
+
+    SerialExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (active) {
+                return;
+            }
+            active = true;
+        }
+        submitDrain();
+    }
+
+    int getQueued() {
+        synchronized (tasks) {
+            return tasks.size();
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_TASKS_PER_DRAIN; i++) {
+            final Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    active = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                logger.warn("Task failed", e);
+            }
+        }
+        submitDrain();
+    }
+
+    private void submitDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (final RejectedExecutionException e) {
+            synchronized (tasks) {
+                logger.debug("Dropping {} tasks, the executor is shut down", tasks.size());
+                tasks.clear();
+                active = false;
+            }
+        }
+    }
+}
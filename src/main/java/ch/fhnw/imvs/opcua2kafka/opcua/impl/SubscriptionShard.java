@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.SubscriptionGroup;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One of possibly many subscriptions of a {@link SubscriptionGroup}.
+ *
+ * Each shard processes its notifications in order on its own {@link SerialExecutor},
+ * so that the notifications of different shards are processed in parallel.
+ */
+final class SubscriptionShard {
+
+    private final SubscriptionGroup group;
+
+    private final int index;
+
+    private final CompletableFuture<UaSubscription> subscription;
+
+    private final SerialExecutor dispatcher;
+
+    private final LongAdder notifications = new LongAdder();
+
+    private int itemCount;
+
+    SubscriptionShard(final SubscriptionGroup group,
+                      final int index,
+                      final CompletableFuture<UaSubscription> subscription,
+                      final Executor dispatcherPool) {
+        this.group = group;
+        this.index = index;
+        this.subscription = subscription;
+        this.dispatcher = new SerialExecutor(dispatcherPool);
+    }
+
+    SubscriptionGroup getGroup() {
+        return group;
+    }
+
+    CompletableFuture<UaSubscription> getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Reserves capacity for additional monitored items.
+     *
+     * @param requested Number of items to add.
+     * @return Number of items which fit into this shard.
+     */
+    synchronized int reserve(final int requested) {
+        final int max = group.getMaxItemsPerSubscription() != null ? group.getMaxItemsPerSubscription() : 0;
+        final int granted = max > 0 ? Math.min(requested, Math.max(0, max - itemCount)) : requested;
+        itemCount += granted;
+        return granted;
+    }
+
+    synchronized void release(final int count) {
+        itemCount = Math.max(0, itemCount - count);
+    }
+
+    synchronized int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Processes the notifications of a publish response on the dispatcher of this shard.
+     *
+     * @param count Number of notifications.
+     * @param notification Task which processes the notifications.
+     */
+    void dispatch(final int count, final Runnable notification) {
+        notifications.add(count);
+        dispatcher.execute(notification);
+    }
+
+    long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    int getQueuedNotifications() {
+        return dispatcher.getQueued();
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionShard{group=" + group.getName() +
+                ", index=" + index +
+                ", items=" + getItemCount() +
+                ", notifications=" + getNotificationCount() +
+                ", queued=" + getQueuedNotifications() +
+                '}';
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel which runs many periodic tasks on a single thread.
+ *
+ * Time is divided into ticks of a fixed duration. Tasks are kept in the bucket of the tick they are due,
+ * so advancing the wheel only touches the tasks of a single bucket, independent of the total number of tasks.
+ * Periodic tasks run at a fixed rate measured in ticks and therefore do not drift. Tasks run on the wheel thread
+ * and must not block. If the wheel falls behind, e.g. because a task blocked, the runs of a periodic task which were
+ * missed meanwhile are skipped instead of being caught up in a burst, its phase is kept.
+ */
+final class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+
+    private final List<List<Task>> buckets;
+
+    private final int mask;
+
+    private final Queue<Task> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    private final Thread worker;
+
+    private volatile boolean running;
+
+    private volatile long currentTick;
+
+    private long startNanos;
+
+    /**
+     * @param tickDuration Duration of a tick, the resolution of the scheduled delays.
+     * @param unit Time unit of the tick duration.
+     * @param wheelSize Number of buckets, rounded up to a power of two.
+     * @param threadFactory Factory of the wheel thread.
+     */
+    TimingWheel(final long tickDuration, final TimeUnit unit, final int wheelSize, final ThreadFactory threadFactory) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        final int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.mask = size - 1;
+        this.worker = threadFactory.newThread(this::run);
+    }
+
+    long getTickDuration(final TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized void start() {
+        if (!running) {
+            running = true;
+            startNanos = System.nanoTime();
+            worker.start();
+        }
+    }
+
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Schedules a task which runs once after the initial delay and then every period.
+     *
+     * @param task Task to run.
+     * @param initialDelay Delay of the first run.
+     * @param period Period of the following runs, {@code 0} to run only once.
+     * @param unit Time unit of delay and period.
+     * @return Handle to cancel the task.
+     */
+    Task schedule(final Runnable task, final long initialDelay, final long period, final TimeUnit unit) {
+        final long periodTicks = period > 0 ? Math.max(1, Math.round((double) unit.toNanos(period) / tickNanos)) : 0;
+        final long delayTicks = Math.max(0, unit.toNanos(initialDelay) / tickNanos);
+        final Task scheduled = new Task(task, delayTicks, periodTicks);
+        pendingTasks.add(scheduled);
+        return scheduled;
+    }
+
+    private void run() {
+        while (running) {
+            final long deadline = startNanos + (currentTick + 1) * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            while (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (final InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                sleepNanos = deadline - System.nanoTime();
+            }
+            transferPendingTasks();
+            expire(buckets.get((int) (currentTick & mask)));
+            currentTick++;
+        }
+    }
+
+    private void transferPendingTasks() {
+        Task task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.deadlineTick = currentTick + task.deadlineTick;
+            insert(task, currentTick);
+        }
+    }
+
+    /**
+     * @param firstTick First tick whose bucket is still going to be expired, earlier deadlines are moved to it.
+     */
+    private void insert(final Task task, final long firstTick) {
+        task.deadlineTick = Math.max(task.deadlineTick, firstTick);
+        task.rounds = (task.deadlineTick - firstTick) / buckets.size();
+        buckets.get((int) (task.deadlineTick & mask)).add(task);
+    }
+
+    /**
+     * Moves the deadline of a periodic task past the runs it missed while the wheel was behind the clock.
+     */
+    private void skipMissedRuns(final Task task) {
+        final long clockTick = (System.nanoTime() - startNanos) / tickNanos;
+        if (task.deadlineTick < clockTick) {
+            final long missed = (clockTick - task.deadlineTick + task.periodTicks - 1) / task.periodTicks;
+            task.deadlineTick += missed * task.periodTicks;
+        }
+    }
+
+    private void expire(final List<Task> bucket) {
+        final List<Task> rescheduled = new ArrayList<>();
+        final Iterator<Task> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            final Task task = iterator.next();
+            if (task.cancelled) {
+                iterator.remove();
+            } else if (task.rounds > 0) {
+                task.rounds--;
+            } else {
+                iterator.remove();
+                try {
+                    task.runnable.run();
+                } catch (final RuntimeException e) {
+                    logger.warn("Scheduled task failed", e);
+                }
+                if (task.periodTicks > 0 && !task.cancelled) {
+                    task.deadlineTick += task.periodTicks;
+                    skipMissedRuns(task);
+                    rescheduled.add(task);
+                }
+            }
+        }
+        for (final Task task : rescheduled) {
+            insert(task, currentTick + 1);
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    static final class Task {
+
+        private final Runnable runnable;
+
+        private final long periodTicks;
+
+        /**
+         * Delay in ticks until the task is transferred to the wheel, afterwards the absolute tick it is due.
+         */
+        private long deadlineTick;
+
+        private long rounds;
+
+        private volatile boolean cancelled;
+
+        private Task(final Runnable runnable, final long delayTicks, final long periodTicks) {
+            this.runnable = runnable;
+            this.deadlineTick = delayTicks;
+            this.periodTicks = periodTicks;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -15,15 +15,22 @@
  */
 package ch.fhnw.imvs.opcua2kafka;
 
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
 import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnection;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnectionManager;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaPollService;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.List;
+
 @RunWith(MockitoJUnitRunner.class)
 public class ShutDownHandlerTest {
 
@@ -33,15 +40,33 @@ public class ShutDownHandlerTest {
     @Mock
     private OpcUaPollService opcUaPollService;
 
+    @Mock
+    private OpcUaService otherOpcUaService;
+
+    @Mock
+    private OpcUaPollService otherOpcUaPollService;
+
+    @Mock
+    private OpcUaConnectionManager connectionManager;
+
+    @Mock
+    private MessagePipe<Message> messagePipe;
+
     @Mock
     private KafkaService kafkaService;
 
     @Test
     public void destroy() {
-        final ShutDownHandler shutDownHandler = new ShutDownHandler(opcUaService, opcUaPollService, kafkaService);
+        Mockito.when(connectionManager.getConnections()).thenReturn(List.of(
+                new OpcUaConnection(OpcUaConnectionConfiguration.builder().name("first").build(), opcUaService, opcUaPollService),
+                new OpcUaConnection(OpcUaConnectionConfiguration.builder().name("second").build(), otherOpcUaService, otherOpcUaPollService)));
+        final ShutDownHandler shutDownHandler = new ShutDownHandler(connectionManager, messagePipe, kafkaService);
         shutDownHandler.destroy();
         Mockito.verify(opcUaPollService).stop();
         Mockito.verify(opcUaService).disconnect();
+        Mockito.verify(otherOpcUaPollService).stop();
+        Mockito.verify(otherOpcUaService).disconnect();
+        Mockito.verify(messagePipe).close();
         Mockito.verify(kafkaService).flush();
     }
 }
\ No newline at end of file
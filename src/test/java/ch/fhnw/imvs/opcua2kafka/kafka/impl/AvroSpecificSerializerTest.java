@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Key;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.Assert.*;
+
+public final class AvroSpecificSerializerTest {
+
+    private static final String TOPIC = "topic";
+
+    @Test
+    public void serializeWritesSameBytesAsKafkaAvroSerializer() {
+        final SchemaRegistryClient registry = new MockSchemaRegistryClient();
+        final KafkaAvroSerializer expectedSerializer = new KafkaAvroSerializer(registry);
+        final AvroSpecificSerializer<Message> serializer = new AvroSpecificSerializer<>(registry, false);
+
+        final Message message = createMessage("ns=2;s=Node1", 42.0);
+        assertArrayEquals(expectedSerializer.serialize(TOPIC, message), serializer.serialize(TOPIC, message));
+
+        final Message other = createMessage("ns=2;s=Node2", "text");
+        assertArrayEquals(expectedSerializer.serialize(TOPIC, other), serializer.serialize(TOPIC, other));
+    }
+
+    @Test
+    public void serializeUsesKeySubject() throws Exception {
+        final SchemaRegistryClient registry = new MockSchemaRegistryClient();
+        final AvroSpecificSerializer<Key> serializer = new AvroSpecificSerializer<>(registry, true);
+
+        final byte[] bytes = serializer.serialize(TOPIC, Key.newBuilder().setNodeId("ns=2;s=Node1").build());
+
+        final int id = registry.getLatestSchemaMetadata(TOPIC + "-key").getId();
+        assertEquals(0, bytes[0]);
+        assertEquals(id, ((bytes[1] & 0xff) << 24) | ((bytes[2] & 0xff) << 16) | ((bytes[3] & 0xff) << 8) | (bytes[4] & 0xff));
+    }
+
+    @Test
+    public void serializeNull() {
+        final AvroSpecificSerializer<Message> serializer = new AvroSpecificSerializer<>(new MockSchemaRegistryClient(), false);
+
+        assertNull(serializer.serialize(TOPIC, null));
+    }
+
+    private static Message createMessage(final String nodeId, final Object value) {
+        return Message.newBuilder()
+                .setMetadata(Metadata.newBuilder()
+                        .setAggregateId("aggregate")
+                        .setTraceId("00000000-0000-0000-0000-000000000000")
+                        .setTimestamp(Instant.now().truncatedTo(ChronoUnit.MICROS))
+                        .build())
+                .setPayload(Payload.newBuilder()
+                        .setNodeId(nodeId)
+                        .setBrowseName("Node")
+                        .setDisplayName("Node")
+                        .setDescription("")
+                        .setValue(String.valueOf(value))
+                        .setTypedValue(value)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class DiskSpoolTest {
+
+    private static final int SEGMENT_SIZE = 32;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void peekReturnsRecordsInOrderUntilCommit() throws Exception {
+        try (DiskSpool spool = new DiskSpool(folder.getRoot().toPath(), SEGMENT_SIZE, 1024, 0)) {
+            spool.append(record(1));
+            spool.append(record(2));
+            spool.append(record(3));
+
+            final List<byte[]> records = new ArrayList<>();
+            assertEquals(2, spool.peek(10, records));
+            assertEquals(2, spool.peek(10, records));
+            assertEquals(List.of("record-1", "record-2", "record-1", "record-2"), decode(records));
+
+            spool.commit();
+            records.clear();
+            assertEquals(1, spool.peek(10, records));
+            assertEquals(List.of("record-3"), decode(records));
+            assertEquals(1, spool.getRecordCount());
+
+            spool.commit();
+            assertTrue(spool.isEmpty());
+            assertEquals(3, spool.getCommittedRecordCount());
+        }
+    }
+
+    @Test
+    public void recoversUncommittedRecordsAfterReopen() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        try (DiskSpool spool = new DiskSpool(directory, SEGMENT_SIZE, 1024, 0)) {
+            for (int i = 1; i <= 5; i++) {
+                spool.append(record(i));
+            }
+            spool.peek(1, new ArrayList<>());
+            spool.commit();
+        }
+
+        try (DiskSpool spool = new DiskSpool(directory, SEGMENT_SIZE, 1024, 0)) {
+            assertEquals(4, spool.getRecordCount());
+            final List<String> records = new ArrayList<>();
+            while (!spool.isEmpty()) {
+                final List<byte[]> peeked = new ArrayList<>();
+                spool.peek(10, peeked);
+                spool.commit();
+                records.addAll(decode(peeked));
+            }
+            assertEquals(List.of("record-2", "record-3", "record-4", "record-5"), records);
+        }
+    }
+
+    @Test
+    public void dropsOldestSegmentsWhenFull() throws Exception {
+        try (DiskSpool spool = new DiskSpool(folder.getRoot().toPath(), SEGMENT_SIZE, 2 * SEGMENT_SIZE, 0)) {
+            for (int i = 1; i <= 6; i++) {
+                spool.append(record(i));
+            }
+
+            assertEquals(4, spool.getRecordCount());
+            assertEquals(2, spool.getDroppedRecordCount());
+            final List<byte[]> records = new ArrayList<>();
+            spool.peek(10, records);
+            assertEquals(List.of("record-3", "record-4"), decode(records));
+        }
+    }
+
+    @Test
+    public void dropsRecordLargerThanSegment() throws Exception {
+        try (DiskSpool spool = new DiskSpool(folder.getRoot().toPath(), SEGMENT_SIZE, 1024, 0)) {
+            assertFalse(spool.append(new byte[SEGMENT_SIZE]));
+            assertTrue(spool.isEmpty());
+            assertEquals(1, spool.getDroppedRecordCount());
+        }
+    }
+
+    /**
+     * @return Record of 8 bytes, two of which fit into a segment.
+     */
+    private static byte[] record(final int index) {
+        return String.format("record-%d", index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> decode(final List<byte[]> records) {
+        final List<String> result = new ArrayList<>();
+        for (final byte[] record : records) {
+            result.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Key;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class KeyCacheTest {
+
+    private static final String TOPIC = "topic";
+
+    private final AvroSpecificSerializer<Key> serializer = new AvroSpecificSerializer<>(new MockSchemaRegistryClient(), true);
+
+    @Test
+    public void getReturnsCachedKey() {
+        final KeyCache cache = new KeyCache(TOPIC, serializer);
+        cache.put(List.of("ns=2;s=Node1", "ns=2;s=Node2"));
+
+        final KeyCache.SerializedKey key = cache.get("ns=2;s=Node1");
+
+        assertSame(key, cache.get("ns=2;s=Node1"));
+        assertArrayEquals(serializer.serialize(TOPIC, Key.newBuilder().setNodeId("ns=2;s=Node1").build()), key.getBytes());
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void getSerializesUncachedKey() {
+        final KeyCache cache = new KeyCache(TOPIC, serializer);
+
+        final KeyCache.SerializedKey key = cache.get("ns=2;s=Node1");
+
+        assertArrayEquals(serializer.serialize(TOPIC, Key.newBuilder().setNodeId("ns=2;s=Node1").build()), key.getBytes());
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void evictRemovesKeys() {
+        final KeyCache cache = new KeyCache(TOPIC, serializer);
+        cache.put(List.of("ns=2;s=Node1", "ns=2;s=Node2"));
+
+        cache.evict(List.of("ns=2;s=Node1"));
+
+        assertEquals(1, cache.size());
+        cache.get("ns=2;s=Node1");
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void evictKeepsKeysCachedByOthers() {
+        final KeyCache cache = new KeyCache(TOPIC, serializer);
+        cache.put(List.of("ns=2;s=Node1", "ns=2;s=Node2"));
+        cache.put(List.of("ns=2;s=Node2"));
+
+        assertEquals(List.of("ns=2;s=Node1"), cache.evict(List.of("ns=2;s=Node1", "ns=2;s=Node2")));
+        assertEquals(1, cache.size());
+
+        assertEquals(List.of("ns=2;s=Node2"), cache.evict(List.of("ns=2;s=Node2")));
+        assertEquals(0, cache.size());
+        assertTrue(cache.evict(List.of("ns=2;s=Node2")).isEmpty());
+    }
+
+    @Test
+    public void hashMatchesDefaultPartitioner() {
+        final KeyCache cache = new KeyCache(TOPIC, serializer);
+        cache.put(List.of("ns=2;s=Node1"));
+
+        final KeyCache.SerializedKey key = cache.get("ns=2;s=Node1");
+
+        assertEquals(Utils.toPositive(Utils.murmur2(key.getBytes())), key.getHash());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.KafkaConfiguration.PartitionStrategy;
+import ch.fhnw.imvs.opcua2kafka.config.PartitionGroup;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class NodePartitionerTest {
+
+    @Test
+    public void defaultStrategyUsesKeyHash() {
+        final NodePartitioner partitioner = new NodePartitioner(PartitionStrategy.DEFAULT, List.of(), 12);
+        final KeyCache.SerializedKey key = new KeyCache.SerializedKey(new byte[]{0, 0, 0, 0, 1, 2, 3});
+
+        final NodePartitioner.Assignment assignment = partitioner.assignment("ns=2;s=Node1", key);
+
+        assertFalse(assignment.isSpread());
+        assertEquals(key.getHash() % 12, partitioner.partition(assignment, -1));
+    }
+
+    @Test
+    public void consistentHashMovesFewNodes() {
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final int before = NodePartitioner.consistentHash(i * 7919L, 10);
+            final int after = NodePartitioner.consistentHash(i * 7919L, 11);
+            assertTrue(before >= 0 && before < 10);
+            if (before != after) {
+                assertEquals(10, after);
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > 500 && moved < 1500);
+    }
+
+    @Test
+    public void groupPinsNodes() {
+        final NodePartitioner partitioner = new NodePartitioner(PartitionStrategy.CONSISTENT, List.of(
+                PartitionGroup.builder().name("drives").nodePattern("ns=2;s=Drive\\..*").partitions(List.of(3)).build()), 12);
+
+        for (int i = 0; i < 100; i++) {
+            final NodePartitioner.Assignment assignment = partitioner.assignment("ns=2;s=Drive." + i, null);
+            assertEquals(3, partitioner.partition(assignment, -1));
+        }
+        assertEquals(100, partitioner.getPartitionCounts()[3]);
+        assertEquals(12.0, partitioner.getSkew(), 0.001);
+    }
+
+    @Test
+    public void spreadGroupUsesAllPartitionsInSequence() {
+        final NodePartitioner partitioner = new NodePartitioner(PartitionStrategy.DEFAULT, List.of(
+                PartitionGroup.builder().name("hot").nodePattern("ns=2;s=Hot").partitions(List.of(4, 5, 6, 99)).spread(true).build()), 8);
+
+        final NodePartitioner.Assignment assignment = partitioner.assignment("ns=2;s=Hot", null);
+        assertTrue(assignment.isSpread());
+        for (int i = 0; i < 6; i++) {
+            final long sequence = assignment.nextSequence();
+            assertEquals(i, sequence);
+            assertEquals(4 + i % 3, partitioner.partition(assignment, sequence));
+        }
+    }
+
+    @Test
+    public void evictResolvesNodeAgain() {
+        final NodePartitioner partitioner = new NodePartitioner(PartitionStrategy.DEFAULT, List.of(), 4);
+        final NodePartitioner.Assignment assignment = partitioner.assignment("ns=2;s=Node1", null);
+
+        assertSame(assignment, partitioner.assignment("ns=2;s=Node1", null));
+        partitioner.evict(List.of("ns=2;s=Node1"));
+        assertNotSame(assignment, partitioner.assignment("ns=2;s=Node1", null));
+    }
+}
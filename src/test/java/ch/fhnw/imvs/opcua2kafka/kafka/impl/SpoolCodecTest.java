@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.kafka.impl;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public final class SpoolCodecTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreDecodedAfterRestart() {
+        final Path directory = folder.getRoot().toPath();
+        final Message message = createMessage(42.0);
+
+        final byte[] data = new SpoolCodec(directory).encode(message);
+
+        assertEquals(message, new SpoolCodec(directory).decode(data));
+    }
+
+    @Test
+    public void recordsOfAnOlderSchemaAreResolved() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final SpoolCodec codec = new SpoolCodec(directory);
+
+        // Payload of an older version without the typed value and the timestamps
+        final Schema payloadSchema = Payload.getClassSchema();
+        final List<Schema.Field> oldPayloadFields = payloadSchema.getFields().stream()
+                .filter(field -> field.defaultVal() == null)
+                .map(field -> new Schema.Field(field.name(), field.schema(), field.doc()))
+                .collect(Collectors.toList());
+        final Schema oldPayloadSchema = Schema.createRecord(payloadSchema.getName(), payloadSchema.getDoc(),
+                payloadSchema.getNamespace(), false, oldPayloadFields);
+        final Schema oldMessageSchema = Schema.createRecord(Message.getClassSchema().getName(), null,
+                Message.getClassSchema().getNamespace(), false, List.of(
+                        new Schema.Field("metadata", Metadata.getClassSchema(), null),
+                        new Schema.Field("payload", oldPayloadSchema, null)));
+        final long fingerprint = SchemaNormalization.parsingFingerprint64(oldMessageSchema);
+        Files.writeString(directory.resolve(String.format("%016x.avsc", fingerprint)), oldMessageSchema.toString(), StandardCharsets.UTF_8);
+
+        final GenericRecord metadata = new GenericData.Record(Metadata.getClassSchema());
+        metadata.put("AggregateId", "aggregate");
+        metadata.put("TraceId", "00000000-0000-0000-0000-000000000000");
+        metadata.put("Timestamp", 1_000_000L);
+        final GenericRecord payload = new GenericData.Record(oldPayloadSchema);
+        payload.put("nodeId", "ns=2;s=Node1");
+        payload.put("browseName", "Node");
+        payload.put("displayName", "Node");
+        payload.put("description", "");
+        payload.put("value", "42.0");
+        final GenericRecord oldMessage = new GenericData.Record(oldMessageSchema);
+        oldMessage.put("metadata", metadata);
+        oldMessage.put("payload", payload);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(ByteBuffer.allocate(Long.BYTES).putLong(fingerprint).array());
+        final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+        new GenericDatumWriter<GenericRecord>(oldMessageSchema).write(oldMessage, encoder);
+        encoder.flush();
+
+        final Message decoded = (Message) codec.decode(out.toByteArray());
+        assertEquals("ns=2;s=Node1", decoded.getPayload().getNodeId());
+        assertEquals("42.0", decoded.getPayload().getValue());
+        assertNull(decoded.getPayload().getTypedValue());
+        assertEquals(Instant.ofEpochSecond(1), decoded.getMetadata().getTimestamp());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordsOfAnUnknownSchemaAreRejected() {
+        final SpoolCodec codec = new SpoolCodec(folder.getRoot().toPath());
+        final byte[] data = codec.encode(createMessage(42.0));
+        data[1] ^= 1;
+
+        codec.decode(data);
+    }
+
+    private static Message createMessage(final Object value) {
+        return Message.newBuilder()
+                .setMetadata(Metadata.newBuilder()
+                        .setAggregateId("aggregate")
+                        .setTraceId("00000000-0000-0000-0000-000000000000")
+                        .setTimestamp(Instant.now().truncatedTo(ChronoUnit.MICROS))
+                        .build())
+                .setPayload(Payload.newBuilder()
+                        .setNodeId("ns=2;s=Node1")
+                        .setBrowseName("Node")
+                        .setDisplayName("Node")
+                        .setDescription("")
+                        .setValue(String.valueOf(value))
+                        .setTypedValue(value)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.loadtest;
+
+import ch.fhnw.imvs.opcua2kafka.Opcua2kafkaApplication;
+import ch.fhnw.imvs.opcua2kafka.simulation.SimulationServer;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.eclipse.milo.opcua.stack.core.Stack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs the whole application against a simulated OPC UA server and an embedded Kafka broker.
+ *
+ * The harness needs no network access, so that the throughput of every change can be measured on a developer machine.
+ * It is configured with the following system properties, the application itself with the usual environment variables:
+ * <ul>
+ *     <li>{@code loadtest.variables}: Number of simulated variables, all of them are monitored.</li>
+ *     <li>{@code loadtest.dataTypes}: Comma separated data types of the variables, see {@link SimulationServer.DataType}.</li>
+ *     <li>{@code loadtest.changeInterval}: Time in Milliseconds between two changes of every variable.</li>
+ *     <li>{@code loadtest.warmup}: Time in Seconds before the measurement starts.</li>
+ *     <li>{@code loadtest.duration}: Time in Seconds of the measurement.</li>
+ * </ul>
+ * The schema registry is replaced by an in-memory registry. After the measurement the sustained throughput,
+ * the end-to-end latency and the number of dropped records are logged.
+ */
+public final class LoadTestHarness {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final int PORT = 12687;
+
+    private static final int PARTITIONS = 10;
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int variables = Integer.getInteger("loadtest.variables", 10000);
+        final List<SimulationServer.DataType> dataTypes = Arrays.stream(System.getProperty("loadtest.dataTypes", "DOUBLE").split(","))
+                .map(String::trim)
+                .map(SimulationServer.DataType::valueOf)
+                .collect(Collectors.toList());
+        final long changeInterval = Long.getLong("loadtest.changeInterval", 1000);
+        final long warmup = Long.getLong("loadtest.warmup", 30);
+        final long duration = Long.getLong("loadtest.duration", 60);
+        logger.info("Load test with {} variables of {} changing every {} ms, warmup {} s, duration {} s",
+                variables, dataTypes, changeInterval, warmup, duration);
+
+        final EmbeddedKafkaBroker broker = new EmbeddedKafkaBroker(1, false, PARTITIONS);
+        broker.afterPropertiesSet();
+        final SimulationServer server = SimulationServer.start(PORT, variables, dataTypes, changeInterval);
+
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("OPCUA_SERVER", server.getEndpointUrl());
+        properties.put("OPCUA_NODES", String.join(",", server.getNodeIds()));
+        properties.put("OPCUA_POLLING_ENABLED", "false");
+        properties.put("KAFKA_BOOTSTRAP_SERVERS", broker.getBrokersAsString());
+        properties.put("KAFKA_TOPIC_PARTITION_COUNT", PARTITIONS);
+        properties.put("server.port", 0);
+        final ConfigurableApplicationContext context = new SpringApplicationBuilder(Opcua2kafkaApplication.class)
+                .properties(properties)
+                .initializers(LoadTestHarness::registerSchemaRegistryClient)
+                .run(args);
+        final Environment environment = context.getEnvironment();
+        final MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+        final RecordConsumer consumer = new RecordConsumer(broker.getBrokersAsString(),
+                environment.getProperty("configuration.kafka.topic.name"),
+                environment.getProperty("configuration.kafka.batchTopic.name"));
+        try {
+            TimeUnit.SECONDS.sleep(warmup);
+            final Snapshot start = new Snapshot(server, meterRegistry, consumer);
+            consumer.setMeasuring(true);
+            TimeUnit.SECONDS.sleep(duration);
+            consumer.setMeasuring(false);
+            final Snapshot end = new Snapshot(server, meterRegistry, consumer);
+            report(start, end, duration, consumer);
+        } finally {
+            consumer.close();
+            context.close();
+            server.close();
+            broker.destroy();
+            Stack.releaseSharedResources();
+        }
+    }
+
+    /**
+     * Replaces the schema registry by an in-memory registry, which is shared by all serializers of the application.
+     */
+    private static void registerSchemaRegistryClient(final ConfigurableApplicationContext context) {
+        ((GenericApplicationContext) context).registerBean(SchemaRegistryClient.class, MockSchemaRegistryClient::new);
+    }
+
+    private static void report(final Snapshot start, final Snapshot end, final long duration, final RecordConsumer consumer) {
+        logger.info("Load test results over {} s:", duration);
+        logger.info("  changed:   {} values/s", (end.changed - start.changed) / duration);
+        logger.info("  received:  {} records/s", (end.received - start.received) / duration);
+        logger.info("  consumed:  {} records/s", (end.consumed - start.consumed) / duration);
+        logger.info("  dropped:   {} in buffer, {} in spool, {} send failures, {} conflated",
+                end.bufferDropped - start.bufferDropped,
+                end.spoolDropped - start.spoolDropped,
+                end.sendFailures - start.sendFailures,
+                end.conflated - start.conflated);
+        final StringBuilder latency = new StringBuilder();
+        for (final ValueAtPercentile percentile : consumer.getLatency().takeSnapshot().percentileValues()) {
+            latency.append(String.format(" p%s=%.1fms", percentile.percentile() * 100,
+                    percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        logger.info("  latency:  {} max={}ms", latency, consumer.getLatency().max(TimeUnit.MILLISECONDS));
+    }
+
+    private static long sum(final MeterRegistry meterRegistry, final String name) {
+        double sum = 0;
+        for (final Meter meter : meterRegistry.find(name).meters()) {
+            sum += StreamSupport.stream(meter.measure().spliterator(), false)
+                    .mapToDouble(Measurement::getValue)
+                    .sum();
+        }
+        return (long) sum;
+    }
+
+    /**
+     * Counters at the start or end of the measurement.
+     */
+    private static final class Snapshot {
+
+        private final long changed;
+
+        private final long received;
+
+        private final long consumed;
+
+        private final long bufferDropped;
+
+        private final long spoolDropped;
+
+        private final long sendFailures;
+
+        private final long conflated;
+
+        Snapshot(final SimulationServer server, final MeterRegistry meterRegistry, final RecordConsumer consumer) {
+            this.changed = server.getChangeCount();
+            this.received = sum(meterRegistry, "opcua.records");
+            this.consumed = consumer.getConsumedCount();
+            this.bufferDropped = sum(meterRegistry, "message.buffer.dropped");
+            this.spoolDropped = sum(meterRegistry, "kafka.spool.dropped");
+            this.sendFailures = sum(meterRegistry, "kafka.send.failures");
+            this.conflated = sum(meterRegistry, "message.buffer.conflated");
+        }
+    }
+}
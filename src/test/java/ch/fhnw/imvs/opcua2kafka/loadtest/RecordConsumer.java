@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.loadtest;
+
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consumes the messages and message batches of the load test and measures their end-to-end latency.
+ *
+ * The latency is the time from the source timestamp of a value until its record was consumed, so it includes the
+ * sampling of the OPC UA server. The values are only counted while {@link #setMeasuring(boolean)} is set.
+ */
+final class RecordConsumer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordConsumer.class);
+
+    /**
+     * Length of the Confluent wire format header: magic byte and schema id.
+     */
+    private static final int HEADER_SIZE = 5;
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private final KafkaConsumer<byte[], byte[]> consumer;
+
+    private final String batchTopic;
+
+    private final SpecificDatumReader<Message> messageReader = new SpecificDatumReader<>(Message.class);
+
+    private final SpecificDatumReader<MessageBatch> batchReader = new SpecificDatumReader<>(MessageBatch.class);
+
+    private final Timer latency;
+
+    private final LongAdder consumed = new LongAdder();
+
+    private final Thread thread;
+
+    private BinaryDecoder decoder;
+
+    private volatile boolean measuring;
+
+    private volatile boolean closed;
+
+    RecordConsumer(final String bootstrapServers, final String topic, final String batchTopic) {
+        this.consumer = new KafkaConsumer<>(Map.<String, Object>of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ConsumerConfig.GROUP_ID_CONFIG, "opcua2kafka-loadtest",
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"),
+                new ByteArrayDeserializer(), new ByteArrayDeserializer());
+        this.consumer.subscribe(List.of(topic, batchTopic));
+        this.batchTopic = batchTopic;
+        this.latency = Timer.builder("loadtest.latency")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(new SimpleMeterRegistry());
+        this.thread = new Thread(this::consume, "loadtest-consumer");
+        this.thread.start();
+    }
+
+    void setMeasuring(final boolean measuring) {
+        this.measuring = measuring;
+    }
+
+    long getConsumedCount() {
+        return consumed.sum();
+    }
+
+    Timer getLatency() {
+        return latency;
+    }
+
+    private void consume() {
+        try {
+            while (!closed) {
+                for (final ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                    received(record);
+                }
+            }
+        } catch (final WakeupException e) {
+            logger.debug("Consumer woken up");
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private void received(final ConsumerRecord<byte[], byte[]> record) {
+        if (!measuring || record.value() == null) {
+            return;
+        }
+        final Instant now = Instant.now();
+        try {
+            if (batchTopic.equals(record.topic())) {
+                final MessageBatch batch = batchReader.read(null, decode(record.value()));
+                for (final Payload payload : batch.getPayloads()) {
+                    received(payload, now);
+                }
+            } else {
+                received(messageReader.read(null, decode(record.value())).getPayload(), now);
+            }
+        } catch (final IOException | RuntimeException e) {
+            logger.warn("Could not decode record of topic {}", record.topic(), e);
+        }
+    }
+
+    private void received(final Payload payload, final Instant now) {
+        consumed.increment();
+        if (payload.getSourceTimestamp() != null) {
+            latency.record(Duration.between(payload.getSourceTimestamp(), now));
+        }
+    }
+
+    private BinaryDecoder decode(final byte[] value) {
+        decoder = DecoderFactory.get().binaryDecoder(value, HEADER_SIZE, value.length - HEADER_SIZE, decoder);
+        return decoder;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        consumer.wakeup();
+        thread.join();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.MessageBatch;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class BatchingMessagePipeTest {
+
+    private static final long NO_DELAY = 60_000;
+
+    @Mock
+    private KafkaService kafkaService;
+
+    @Test
+    public void pipeBatchSendsFullBatches() {
+        final BatchingMessagePipe pipe = new BatchingMessagePipe(kafkaService, 2, 1_000_000, NO_DELAY);
+
+        pipe.pipeBatch(List.of(message("a", 1, 3), message("a", 2, 1), message("a", 3, 2)));
+
+        final ArgumentCaptor<MessageBatch> captor = ArgumentCaptor.forClass(MessageBatch.class);
+        Mockito.verify(kafkaService).sendBatch(captor.capture());
+        final MessageBatch batch = captor.getValue();
+        assertEquals("a", batch.getMetadata().getAggregateId());
+        assertEquals(Instant.ofEpochSecond(1), batch.getMetadata().getTimestamp());
+        assertEquals(2, batch.getPayloads().size());
+        assertEquals("ns=2;s=Node1", batch.getPayloads().get(0).getNodeId());
+        assertEquals("ns=2;s=Node2", batch.getPayloads().get(1).getNodeId());
+        pipe.close();
+    }
+
+    @Test
+    public void pipeSendsBatchBeforeBytesAreExceeded() {
+        final Message message = message("a", 1, 1);
+        final int size = BatchingMessagePipe.estimateSize(message.getPayload());
+        final BatchingMessagePipe pipe = new BatchingMessagePipe(kafkaService, 100, size * 2 + size / 2, NO_DELAY);
+
+        pipe.pipe(message);
+        pipe.pipe(message("a", 2, 1));
+        pipe.pipe(message("a", 3, 1));
+
+        final ArgumentCaptor<MessageBatch> captor = ArgumentCaptor.forClass(MessageBatch.class);
+        Mockito.verify(kafkaService).sendBatch(captor.capture());
+        assertEquals(2, captor.getValue().getPayloads().size());
+        pipe.close();
+    }
+
+    @Test
+    public void pipeKeepsAggregatesApart() {
+        final BatchingMessagePipe pipe = new BatchingMessagePipe(kafkaService, 2, 1_000_000, NO_DELAY);
+
+        pipe.pipeBatch(List.of(message("a", 1, 1), message("b", 2, 1), message("a", 3, 1)));
+
+        final ArgumentCaptor<MessageBatch> captor = ArgumentCaptor.forClass(MessageBatch.class);
+        Mockito.verify(kafkaService).sendBatch(captor.capture());
+        assertEquals("a", captor.getValue().getMetadata().getAggregateId());
+        assertEquals(2, captor.getValue().getPayloads().size());
+
+        pipe.close();
+        Mockito.verify(kafkaService, Mockito.times(2)).sendBatch(captor.capture());
+        assertEquals("b", captor.getValue().getMetadata().getAggregateId());
+        assertEquals(2, pipe.getSentBatchCount());
+        assertEquals(3, pipe.getSentPayloadCount());
+    }
+
+    @Test
+    public void pipeSendsBatchAfterDelay() {
+        final BatchingMessagePipe pipe = new BatchingMessagePipe(kafkaService, 100, 1_000_000, 20);
+
+        pipe.pipe(message("a", 1, 1));
+
+        Mockito.verify(kafkaService, Mockito.timeout(5_000)).sendBatch(Mockito.any(MessageBatch.class));
+        pipe.close();
+        Mockito.verify(kafkaService, Mockito.times(1)).sendBatch(Mockito.any(MessageBatch.class));
+    }
+
+    private static Message message(final String aggregateId, final int node, final long timestamp) {
+        return Message.newBuilder()
+                .setMetadata(Metadata.newBuilder()
+                        .setAggregateId(aggregateId)
+                        .setTraceId("1234")
+                        .setTimestamp(Instant.ofEpochSecond(timestamp))
+                        .build())
+                .setPayload(Payload.newBuilder()
+                        .setNodeId("ns=2;s=Node" + node)
+                        .setBrowseName("Node" + node)
+                        .setDisplayName("Node " + node)
+                        .setDescription("")
+                        .setValue(String.valueOf(node))
+                        .build())
+                .build();
+    }
+}
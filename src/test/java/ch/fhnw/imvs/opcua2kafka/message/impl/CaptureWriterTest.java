@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class CaptureWriterTest {
+
+    private static final Instant RECEIVED = Instant.parse("2020-03-01T12:00:00.123456Z");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsCapturedRecords() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("capture.cap");
+        final CaptureWriter writer = new CaptureWriter(file);
+        writer.write("press", List.of(record(1, 2.5), record(2, UInteger.valueOf(7))), RECEIVED);
+        writer.write("oven", List.of(record(1, new Double[]{1.0, 2.0}), new OpcUaRecord()), RECEIVED.plusSeconds(1));
+        writer.write("press", List.of(record(3, LocalizedText.english("on"))), RECEIVED.plusSeconds(2));
+        writer.close();
+        assertEquals(4, writer.getRecordCount());
+        assertEquals(0, writer.getDroppedRecordCount());
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            final CaptureReader.Batch first = reader.next();
+            assertEquals(RECEIVED, first.getReceived());
+            assertEquals("press", first.getConnection());
+            assertEquals(2, first.getRecords().size());
+            final OpcUaRecord record = first.getRecords().get(0);
+            assertEquals("ns=2;s=Node1", record.getString(OpcUaAttributes.NodeId));
+            assertEquals("Node 1", record.getString(OpcUaAttributes.DisplayName));
+            assertEquals(2.5, record.get(OpcUaAttributes.Value));
+            assertEquals(RECEIVED.minusMillis(10), record.getInstant(OpcUaAttributes.SourceTimestamp));
+            assertEquals(RECEIVED, record.getInstant(OpcUaAttributes.Timestamp));
+            assertNull(record.get(OpcUaAttributes.ServerTimestamp));
+            assertEquals(UInteger.valueOf(7), first.getRecords().get(1).get(OpcUaAttributes.Value));
+
+            final CaptureReader.Batch second = reader.next();
+            assertEquals("oven", second.getConnection());
+            assertEquals(1, second.getRecords().size());
+            assertEquals("ns=2;s=Node1", second.getRecords().get(0).getString(OpcUaAttributes.NodeId));
+            assertArrayEquals(new Object[]{1.0, 2.0}, (Object[]) second.getRecords().get(0).get(OpcUaAttributes.Value));
+
+            final CaptureReader.Batch third = reader.next();
+            assertEquals(LocalizedText.english("on"), third.getRecords().get(0).get(OpcUaAttributes.Value));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void writesCopiesOfReusedRecords() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("capture.cap");
+        final OpcUaRecord reused = record(1, 1.0);
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            writer.write("press", List.of(reused), RECEIVED);
+            reused.set(OpcUaAttributes.Value, 2.0);
+            writer.write("press", List.of(reused), RECEIVED);
+            reused.clear();
+        }
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertEquals(1.0, reader.next().getRecords().get(0).get(OpcUaAttributes.Value));
+            assertEquals(2.0, reader.next().getRecords().get(0).get(OpcUaAttributes.Value));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void skipsIncompleteBatch() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("capture.cap");
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            writer.write("press", List.of(record(1, 1.0)), RECEIVED);
+            writer.write("press", List.of(record(2, 2.0)), RECEIVED.plusSeconds(1));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertEquals(1, reader.next().getRecords().size());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void replaysWithShiftedTimestamps() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("capture.cap");
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            writer.write("press", List.of(record(1, 1.0), record(2, 2.0)), RECEIVED);
+            writer.write("oven", List.of(record(3, 3.0)), RECEIVED);
+        }
+
+        final List<String> piped = new ArrayList<>();
+        final List<OpcUaRecord> records = new ArrayList<>();
+        final Instant start = Instant.now();
+        new CaptureReplayer(file, (connection) -> new MessagePipe<OpcUaRecord>() {
+            @Override
+            public void pipe(final OpcUaRecord message) {
+                piped.add(connection + ":" + message.getString(OpcUaAttributes.NodeId));
+                records.add(message);
+            }
+        }, 0).run();
+
+        assertEquals(List.of("press:ns=2;s=Node1", "press:ns=2;s=Node2", "oven:ns=2;s=Node3"), piped);
+        for (final OpcUaRecord record : records) {
+            final Instant received = record.getInstant(OpcUaAttributes.Timestamp);
+            assertFalse(received.isBefore(start));
+            assertEquals(received.minusMillis(10), record.getInstant(OpcUaAttributes.SourceTimestamp));
+        }
+    }
+
+    @Test
+    public void replayContinuesAfterFailedBatch() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("capture.cap");
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            writer.write("press", List.of(record(1, 1.0)), RECEIVED);
+            writer.write("press", List.of(record(2, 2.0)), RECEIVED);
+            writer.write("press", List.of(record(3, 3.0)), RECEIVED);
+        }
+
+        final List<String> piped = new ArrayList<>();
+        final CaptureReplayer replayer = new CaptureReplayer(file, (connection) -> new MessagePipe<OpcUaRecord>() {
+            @Override
+            public void pipe(final OpcUaRecord message) {
+                if ("ns=2;s=Node2".equals(message.getString(OpcUaAttributes.NodeId))) {
+                    throw new IllegalStateException("pipe failed");
+                }
+                piped.add(message.getString(OpcUaAttributes.NodeId));
+            }
+        }, 0);
+        replayer.run();
+
+        assertEquals(List.of("ns=2;s=Node1", "ns=2;s=Node3"), piped);
+        assertEquals(1, replayer.getFailedBatchCount());
+    }
+
+    private static OpcUaRecord record(final int index, final Object value) {
+        final OpcUaRecord record = new OpcUaRecord();
+        record.set(OpcUaAttributes.NodeId, "ns=2;s=Node" + index);
+        record.set(OpcUaAttributes.BrowseName, "Node" + index);
+        record.set(OpcUaAttributes.DisplayName, "Node " + index);
+        record.set(OpcUaAttributes.Value, value);
+        record.set(OpcUaAttributes.Timestamp, RECEIVED);
+        record.set(OpcUaAttributes.SourceTimestamp, RECEIVED.minusMillis(10));
+        return record;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.kafka.KafkaService;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.NodeDescription;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class CompactMessagePipeTest {
+
+    @Mock
+    private KafkaService kafkaService;
+
+    @Mock
+    private MessagePipe<Message> nextPipe;
+
+    @Test
+    public void pipeSendsDescriptionOnce() {
+        final CompactMessagePipe pipe = new CompactMessagePipe(nextPipe, kafkaService);
+
+        final Message first = message("Temperature");
+        pipe.pipe(first);
+        pipe.pipe(message("Temperature"));
+
+        final ArgumentCaptor<NodeDescription> captor = ArgumentCaptor.forClass(NodeDescription.class);
+        Mockito.verify(kafkaService).sendNodeDescription(captor.capture());
+        assertEquals("ns=2;s=Node1", captor.getValue().getNodeId());
+        assertEquals("aggregate", captor.getValue().getAggregateId());
+        assertEquals("Temperature", captor.getValue().getDisplayName());
+        Mockito.verify(nextPipe).pipe(first);
+        assertEquals("ns=2;s=Node1", first.getPayload().getNodeId());
+        assertEquals("", first.getPayload().getBrowseName());
+        assertEquals("", first.getPayload().getDisplayName());
+        assertEquals("", first.getPayload().getDescription());
+        assertEquals("21.5", first.getPayload().getValue());
+    }
+
+    @Test
+    public void pipeBatchSendsChangedDescription() {
+        final CompactMessagePipe pipe = new CompactMessagePipe(nextPipe, kafkaService);
+
+        final List<Message> messages = List.of(message("Temperature"), message("Temperature"), message("Outside Temperature"));
+        pipe.pipeBatch(messages);
+
+        final ArgumentCaptor<NodeDescription> captor = ArgumentCaptor.forClass(NodeDescription.class);
+        Mockito.verify(kafkaService, Mockito.times(2)).sendNodeDescription(captor.capture());
+        assertEquals("Outside Temperature", captor.getValue().getDisplayName());
+        Mockito.verify(nextPipe).pipeBatch(messages);
+        assertEquals(2, pipe.getSentDescriptionCount());
+    }
+
+    @Test
+    public void pipeKeepsDescriptionsOfAggregatesApart() {
+        final CompactMessagePipe pipe = new CompactMessagePipe(nextPipe, kafkaService);
+
+        pipe.pipe(message("press", "Temperature"));
+        pipe.pipe(message("oven", "Temperature"));
+        pipe.pipe(message("press", "Temperature"));
+        pipe.pipe(message("oven", "Temperature"));
+
+        final ArgumentCaptor<NodeDescription> captor = ArgumentCaptor.forClass(NodeDescription.class);
+        Mockito.verify(kafkaService, Mockito.times(2)).sendNodeDescription(captor.capture());
+        assertEquals("press", captor.getAllValues().get(0).getAggregateId());
+        assertEquals("oven", captor.getAllValues().get(1).getAggregateId());
+        assertEquals(2, pipe.getSentDescriptionCount());
+    }
+
+    private static Message message(final String displayName) {
+        return message("aggregate", displayName);
+    }
+
+    private static Message message(final String aggregateId, final String displayName) {
+        return Message.newBuilder()
+                .setMetadata(Metadata.newBuilder()
+                        .setAggregateId(aggregateId)
+                        .setTraceId("1234")
+                        .setTimestamp(Instant.ofEpochSecond(1))
+                        .build())
+                .setPayload(Payload.newBuilder()
+                        .setNodeId("ns=2;s=Node1")
+                        .setBrowseName("Temperature")
+                        .setDisplayName(displayName)
+                        .setDescription("Temperature of machine 1")
+                        .setValue("21.5")
+                        .build())
+                .build();
+    }
+}
@@ -15,17 +15,31 @@
  */
 package ch.fhnw.imvs.opcua2kafka.message.impl;
 
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.ValueMode;
 import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.message.PipelineLatency;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
 import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
 import ch.fhnw.imvs.opcua2kafka.schemas.Message;
 import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
 import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -51,20 +65,20 @@ public final class CreateMessagePipeTest {
 
     @Test
     public void testPipeWithEmptyMap() {
-        createMessagePipe.pipe(new HashMap<>());
+        createMessagePipe.pipe(OpcUaRecord.fromMap(new HashMap<>()));
         assertNull(sinkMessagePipe.receivedMessage);
     }
 
     @Test
     public void testPipeWithFullMap() {
-        final Map<OpcUaAttribute, String> values = new HashMap<>();
+        final Map<OpcUaAttribute, Object> values = new HashMap<>();
         values.put(OpcUaAttributes.NodeId, "NodeId");
         values.put(OpcUaAttributes.BrowseName, "Browse");
         values.put(OpcUaAttributes.DisplayName, "Display");
         values.put(OpcUaAttributes.Description, "Description");
         values.put(OpcUaAttributes.Value, "Value");
 
-        createMessagePipe.pipe(values);
+        createMessagePipe.pipe(OpcUaRecord.fromMap(values));
 
         final Message receivedMessage = sinkMessagePipe.receivedMessage;
         assertNotNull(receivedMessage);
@@ -86,14 +100,14 @@ public final class CreateMessagePipeTest {
 
     @Test
     public void testPipeWithFullMapEmptyValues() {
-        final Map<OpcUaAttribute, String> values = new HashMap<>();
+        final Map<OpcUaAttribute, Object> values = new HashMap<>();
         values.put(OpcUaAttributes.NodeId, "");
         values.put(OpcUaAttributes.BrowseName, "");
         values.put(OpcUaAttributes.DisplayName, "");
         values.put(OpcUaAttributes.Description, "");
         values.put(OpcUaAttributes.Value, "");
 
-        createMessagePipe.pipe(values);
+        createMessagePipe.pipe(OpcUaRecord.fromMap(values));
 
         final Message receivedMessage = sinkMessagePipe.receivedMessage;
         assertNotNull(receivedMessage);
@@ -113,13 +127,119 @@ public final class CreateMessagePipeTest {
         assertEquals("", payload.getValue());
     }
 
+    @Test
+    public void testPipeWithTypedValue() {
+        final Map<OpcUaAttribute, Object> values = new HashMap<>();
+        values.put(OpcUaAttributes.NodeId, "NodeId");
+        values.put(OpcUaAttributes.BrowseName, "Browse");
+        values.put(OpcUaAttributes.DisplayName, "Display");
+        values.put(OpcUaAttributes.Description, "Description");
+        values.put(OpcUaAttributes.Value, 42.5);
+
+        new CreateMessagePipe(sinkMessagePipe, aggregateId, ValueMode.TYPED).pipe(OpcUaRecord.fromMap(values));
+        assertEquals("", sinkMessagePipe.receivedMessage.getPayload().getValue());
+        assertEquals(42.5, sinkMessagePipe.receivedMessage.getPayload().getTypedValue());
+
+        new CreateMessagePipe(sinkMessagePipe, aggregateId, ValueMode.BOTH).pipe(OpcUaRecord.fromMap(values));
+        assertEquals("42.5", sinkMessagePipe.receivedMessage.getPayload().getValue());
+        assertEquals(42.5, sinkMessagePipe.receivedMessage.getPayload().getTypedValue());
+
+        createMessagePipe.pipe(OpcUaRecord.fromMap(values));
+        assertEquals("42.5", sinkMessagePipe.receivedMessage.getPayload().getValue());
+        assertNull(sinkMessagePipe.receivedMessage.getPayload().getTypedValue());
+    }
+
+    @Test
+    public void testPipeBatch() {
+        final List<OpcUaRecord> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Map<OpcUaAttribute, Object> values = new HashMap<>();
+            values.put(OpcUaAttributes.NodeId, "NodeId" + i);
+            values.put(OpcUaAttributes.BrowseName, "Browse");
+            values.put(OpcUaAttributes.DisplayName, "Display");
+            values.put(OpcUaAttributes.Description, "Description");
+            values.put(OpcUaAttributes.Value, i);
+            batch.add(OpcUaRecord.fromMap(values));
+        }
+        batch.add(new OpcUaRecord());
+
+        createMessagePipe.pipeBatch(batch);
+
+        final List<Message> receivedBatch = sinkMessagePipe.receivedBatch;
+        assertNotNull(receivedBatch);
+        assertEquals(3, receivedBatch.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("NodeId" + i, receivedBatch.get(i).getPayload().getNodeId());
+            assertEquals(String.valueOf(i), receivedBatch.get(i).getPayload().getValue());
+            assertEquals(receivedBatch.get(0).getMetadata().getTimestamp(), receivedBatch.get(i).getMetadata().getTimestamp());
+        }
+        assertNull(sinkMessagePipe.receivedMessage);
+    }
+
+    @Test
+    public void testBuildTimer() {
+        final Timer timer = new SimpleMeterRegistry().timer("message.build");
+        final CreateMessagePipe pipe = new CreateMessagePipe(sinkMessagePipe, aggregateId, ValueMode.STRING, timer);
+        final Map<OpcUaAttribute, Object> values = new HashMap<>();
+        values.put(OpcUaAttributes.NodeId, "NodeId");
+        values.put(OpcUaAttributes.Value, 1);
+
+        pipe.pipe(OpcUaRecord.fromMap(values));
+        pipe.pipeBatch(List.of(OpcUaRecord.fromMap(values), OpcUaRecord.fromMap(values)));
+
+        assertEquals(2, timer.count());
+        assertNotNull(sinkMessagePipe.receivedMessage);
+        assertEquals(2, sinkMessagePipe.receivedBatch.size());
+    }
+
+    @Test
+    public void testTimestamps() {
+        final PipelineLatency latency = new PipelineLatency(new SimpleMeterRegistry());
+        final CreateMessagePipe pipe = new CreateMessagePipe(sinkMessagePipe, aggregateId, ValueMode.STRING, null, latency);
+        final Instant source = Instant.now().minusMillis(200);
+        final Instant server = source.plusMillis(50);
+        final OpcUaRecord record = new OpcUaRecord();
+        record.set(OpcUaAttributes.NodeId, "NodeId");
+        record.set(OpcUaAttributes.Value, 1);
+        record.setTimestamps(new DataValue(new Variant(1), StatusCode.GOOD,
+                new DateTime(Date.from(source)), new DateTime(Date.from(server))), server.plusMillis(50));
+
+        pipe.pipe(record);
+
+        final Payload payload = sinkMessagePipe.receivedMessage.getPayload();
+        assertEquals(source.toEpochMilli(), payload.getSourceTimestamp().toEpochMilli());
+        assertEquals(server.toEpochMilli(), payload.getServerTimestamp().toEpochMilli());
+        assertEquals(1, latency.getTimer(PipelineLatency.Stage.SOURCE_RECEIVED).count());
+        assertEquals(100, latency.getTimer(PipelineLatency.Stage.SOURCE_RECEIVED).totalTime(TimeUnit.MILLISECONDS), 1);
+        assertEquals(1, latency.getTimer(PipelineLatency.Stage.RECEIVED_BUILT).count());
+    }
+
+    @Test
+    public void testWithoutTimestamps() {
+        final Map<OpcUaAttribute, Object> values = new HashMap<>();
+        values.put(OpcUaAttributes.NodeId, "NodeId");
+        values.put(OpcUaAttributes.Value, 1);
+
+        createMessagePipe.pipe(OpcUaRecord.fromMap(values));
+
+        assertNull(sinkMessagePipe.receivedMessage.getPayload().getSourceTimestamp());
+        assertNull(sinkMessagePipe.receivedMessage.getPayload().getServerTimestamp());
+    }
+
     private static final class SinkMessagePipe implements MessagePipe<Message> {
 
         private volatile Message receivedMessage;
 
+        private volatile List<Message> receivedBatch;
+
         @Override
         public void pipe(final Message message) {
             this.receivedMessage = message;
         }
+
+        @Override
+        public void pipeBatch(final List<Message> messages) {
+            this.receivedBatch = new ArrayList<>(messages);
+        }
     }
 }
\ No newline at end of file
@@ -24,6 +24,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.List;
+
 @RunWith(MockitoJUnitRunner.class)
 public class KafkaMessagePipeTest {
 
@@ -46,4 +48,13 @@ public class KafkaMessagePipeTest {
 
         Mockito.verify(kafkaService).sendMessage(message);
     }
+
+    @Test
+    public void pipeBatch() {
+        final KafkaMessagePipe kafkaMessagePipe = new KafkaMessagePipe(kafkaService);
+        kafkaMessagePipe.pipeBatch(List.of(message, message));
+
+        Mockito.verify(kafkaService).sendMessages(List.of(message, message));
+        Mockito.verify(kafkaService, Mockito.never()).sendMessage(message);
+    }
 }
\ No newline at end of file
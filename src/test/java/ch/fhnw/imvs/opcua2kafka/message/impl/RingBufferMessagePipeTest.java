@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.BufferOverflowPolicy;
+import ch.fhnw.imvs.opcua2kafka.config.MessageConfiguration.BufferWaitStrategy;
+import ch.fhnw.imvs.opcua2kafka.message.MessagePipe;
+import ch.fhnw.imvs.opcua2kafka.schemas.Message;
+import ch.fhnw.imvs.opcua2kafka.schemas.Metadata;
+import ch.fhnw.imvs.opcua2kafka.schemas.Payload;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public final class RingBufferMessagePipeTest {
+
+    @Test
+    public void testMessagesAreForwardedInOrder() {
+        final SinkMessagePipe<String> sink = new SinkMessagePipe<>(null);
+        final RingBufferMessagePipe<String> pipe = createPipe(sink, 16, BufferOverflowPolicy.BLOCK);
+        for (int i = 0; i < 100; i++) {
+            pipe.pipe("a" + i);
+        }
+        pipe.close();
+        assertEquals(100, sink.received.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a" + i, sink.received.get(i));
+        }
+        assertTrue(sink.closed);
+        assertEquals(0, pipe.getSize());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final SinkMessagePipe<String> sink = new SinkMessagePipe<>(release);
+        final RingBufferMessagePipe<String> pipe = createPipe(sink, 2, BufferOverflowPolicy.DROP_OLDEST);
+        pipe.pipe("a0");
+        sink.awaitFirst();
+        pipe.pipe("a1");
+        pipe.pipe("a2");
+        pipe.pipe("a3");
+        release.countDown();
+        pipe.close();
+        assertEquals(List.of("a0", "a2", "a3"), sink.received);
+        assertEquals(1, pipe.getDroppedCount());
+    }
+
+    @Test
+    public void testConflate() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final SinkMessagePipe<String> sink = new SinkMessagePipe<>(release);
+        final RingBufferMessagePipe<String> pipe = createPipe(sink, 4, BufferOverflowPolicy.CONFLATE);
+        pipe.pipe("a0");
+        sink.awaitFirst();
+        pipe.pipe("a1");
+        pipe.pipe("b1");
+        pipe.pipe("a2");
+        release.countDown();
+        pipe.close();
+        assertEquals(List.of("a0", "a2", "b1"), sink.received);
+        assertEquals(1, pipe.getConflatedCount());
+        assertEquals(0, pipe.getDroppedCount());
+    }
+
+    @Test
+    public void testConflateKeepsAggregatesApart() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final SinkMessagePipe<Message> sink = new SinkMessagePipe<>(release);
+        final RingBufferMessagePipe<Message> pipe = new RingBufferMessagePipe<>(sink,
+                DefaultMessagePipeFactory::getBufferKey, 4, BufferWaitStrategy.BLOCKING, BufferOverflowPolicy.CONFLATE, 1);
+        pipe.pipe(message("press", "ns=2;s=Other", "0"));
+        sink.awaitFirst();
+        pipe.pipe(message("press", "ns=2;s=Temperature", "1"));
+        pipe.pipe(message("oven", "ns=2;s=Temperature", "2"));
+        pipe.pipe(message("press", "ns=2;s=Temperature", "3"));
+        release.countDown();
+        pipe.close();
+        assertEquals(List.of("press:0", "press:3", "oven:2"), sink.received.stream()
+                .map((message) -> message.getMetadata().getAggregateId() + ":" + message.getPayload().getValue())
+                .collect(Collectors.toList()));
+        assertEquals(1, pipe.getConflatedCount());
+    }
+
+    private static Message message(final String aggregateId, final String nodeId, final String value) {
+        return Message.newBuilder()
+                .setMetadata(Metadata.newBuilder()
+                        .setAggregateId(aggregateId)
+                        .setTraceId("trace")
+                        .setTimestamp(Instant.now())
+                        .build())
+                .setPayload(Payload.newBuilder()
+                        .setNodeId(nodeId)
+                        .setBrowseName("")
+                        .setDisplayName("")
+                        .setDescription("")
+                        .setValue(value)
+                        .build())
+                .build();
+    }
+
+    private static RingBufferMessagePipe<String> createPipe(final MessagePipe<String> sink,
+                                                            final int capacity,
+                                                            final BufferOverflowPolicy overflowPolicy) {
+        return new RingBufferMessagePipe<>(sink, (message) -> message.substring(0, 1), capacity,
+                BufferWaitStrategy.BLOCKING, overflowPolicy, 1);
+    }
+
+    private static final class SinkMessagePipe<T> implements MessagePipe<T> {
+
+        private final List<T> received = new CopyOnWriteArrayList<>();
+
+        private final CountDownLatch first = new CountDownLatch(1);
+
+        private final CountDownLatch release;
+
+        private volatile boolean closed;
+
+        SinkMessagePipe(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void pipe(final T message) {
+            received.add(message);
+            first.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        void awaitFirst() throws InterruptedException {
+            assertTrue(first.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.message.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class TypedValuesTest {
+
+    @Test
+    public void testPrimitivesAreNotConverted() {
+        final Double value = 1.5;
+        assertSame(value, TypedValues.of(value));
+        assertEquals(true, TypedValues.of(true));
+        assertEquals("text", TypedValues.of("text"));
+        assertNull(TypedValues.of(null));
+    }
+
+    @Test
+    public void testUnsignedValuesAreWidened() {
+        assertEquals(200, TypedValues.of(UByte.valueOf(200)));
+        assertEquals(4000000000L, TypedValues.of(UInteger.valueOf(4000000000L)));
+        assertEquals(-5, TypedValues.of((byte) -5));
+    }
+
+    @Test
+    public void testBuiltInTypes() {
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2}), TypedValues.of(ByteString.of(new byte[]{1, 2})));
+        assertEquals(0x80000000L, TypedValues.of(new StatusCode(0x80000000L)));
+        assertEquals("text", TypedValues.of(LocalizedText.english("text")));
+        assertEquals("ns=2;s=Node", TypedValues.of(new NodeId(2, "Node")));
+    }
+
+    @Test
+    public void testArrays() {
+        assertEquals(List.of(1, 2, 3), TypedValues.of(new Integer[]{1, 2, 3}));
+        assertEquals(List.of(1L, 2L), TypedValues.of(new UInteger[]{UInteger.valueOf(1), UInteger.valueOf(2)}));
+        assertEquals(List.of(), TypedValues.of(new Double[0]));
+    }
+}
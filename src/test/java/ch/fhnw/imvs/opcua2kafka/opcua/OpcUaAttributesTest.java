@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class OpcUaAttributesTest {
+
+    @Test
+    public void getAllReturnsReadableAttributes() {
+        final List<OpcUaAttribute> attributes = OpcUaAttributes.getAll();
+
+        assertEquals(List.of(OpcUaAttributes.NodeId, OpcUaAttributes.BrowseName, OpcUaAttributes.DisplayName,
+                OpcUaAttributes.Description, OpcUaAttributes.Value), attributes);
+        for (final OpcUaAttribute attribute : attributes) {
+            assertNotNull(attribute.getAttributeId());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public final class AsyncRequestLimiterTest {
+
+    @Test
+    public void testLimit() {
+        final AsyncRequestLimiter limiter = new AsyncRequestLimiter(1);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final AtomicInteger started = new AtomicInteger();
+
+        final CompletableFuture<String> firstResult = limiter.submit(() -> {
+            started.incrementAndGet();
+            return first;
+        });
+        final CompletableFuture<String> secondResult = limiter.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+
+        assertEquals(1, started.get());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(1, limiter.getQueued());
+
+        first.complete("first");
+        assertEquals("first", firstResult.join());
+        assertEquals("second", secondResult.join());
+        assertEquals(2, started.get());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getStartedCount());
+    }
+
+    @Test
+    public void testExpiredRequestsAreNotStarted() {
+        final AsyncRequestLimiter limiter = new AsyncRequestLimiter(1);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final AtomicInteger started = new AtomicInteger();
+
+        limiter.submit(() -> first);
+        final long deadline = System.nanoTime();
+        final CompletableFuture<String> expired = limiter.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("expired");
+        }, deadline);
+        final CompletableFuture<String> alreadyExpired = limiter.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("expired");
+        }, deadline - 1);
+
+        first.complete("first");
+
+        assertEquals(0, started.get());
+        assertEquals(2, limiter.getExpiredCount());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+        try {
+            expired.join();
+            fail("expired request completed normally");
+        } catch (final CompletionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(alreadyExpired.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSynchronouslyCompletingRequestsAreStartedIteratively() {
+        final AsyncRequestLimiter limiter = new AsyncRequestLimiter(1);
+        final CompletableFuture<Integer> first = new CompletableFuture<>();
+        final int count = 100_000;
+        final List<Integer> completed = new ArrayList<>(count + 1);
+
+        limiter.submit(() -> first).thenAccept(completed::add);
+        for (int i = 1; i <= count; i++) {
+            final int index = i;
+            limiter.submit(() -> CompletableFuture.completedFuture(index)).thenAccept(completed::add);
+        }
+        assertEquals(count, limiter.getQueued());
+
+        first.complete(0);
+
+        assertEquals(count + 1, completed.size());
+        for (int i = 0; i <= count; i++) {
+            assertEquals(i, (int) completed.get(i));
+        }
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(count + 1, limiter.getStartedCount());
+    }
+}
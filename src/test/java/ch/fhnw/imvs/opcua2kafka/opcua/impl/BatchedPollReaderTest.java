@@ -0,0 +1,319 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import ch.fhnw.imvs.opcua2kafka.opcua.OperationLimits;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public final class BatchedPollReaderTest {
+
+    private static final List<OpcUaAttribute> ATTRIBUTES = List.of(OpcUaAttributes.Value, OpcUaAttributes.DisplayName);
+
+    private static final List<String> NODE_IDS =
+            List.of("ns=2;s=Node0", "ns=2;s=Node1", "ns=2;s=Node2", "ns=2;s=Node3", "ns=2;s=Node4");
+
+    private final OpcUaService opcUaService = Mockito.mock(OpcUaService.class);
+
+    /**
+     * Ids of every Read call, in the order of the calls.
+     */
+    private final List<List<ReadValueId>> reads = new ArrayList<>();
+
+    /**
+     * Number of the Read call which fails, {@code -1} if all succeed.
+     */
+    private int failingRead = -1;
+
+    /**
+     * Reads which are completed by the test, {@code null} if reads complete immediately.
+     */
+    private List<CompletableFuture<List<DataValue>>> heldReads;
+
+    /**
+     * Registration which is completed by the test, {@code null} if registrations complete immediately.
+     */
+    private CompletableFuture<List<NodeId>> heldRegistration;
+
+    /**
+     * Number of RegisterNodes calls, every call returns new aliases like a new session.
+     */
+    private int registrations;
+
+    /**
+     * Node Ids which the server reports as unknown.
+     */
+    private final Set<NodeId> unknownNodes = new HashSet<>();
+
+    @Before
+    public void setUp() {
+        Mockito.when(opcUaService.read(Mockito.anyList())).thenAnswer((invocation) -> {
+            final List<ReadValueId> ids = List.copyOf(invocation.getArgument(0));
+            reads.add(ids);
+            if (reads.size() - 1 == failingRead) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Read failed"));
+            }
+            if (heldReads != null) {
+                final CompletableFuture<List<DataValue>> read = new CompletableFuture<>();
+                heldReads.add(read);
+                return read;
+            }
+            return CompletableFuture.completedFuture(createValues(ids));
+        });
+        Mockito.when(opcUaService.registerNodes(Mockito.anyList())).thenAnswer((invocation) -> {
+            final List<NodeId> nodeIds = invocation.getArgument(0);
+            registrations++;
+            if (heldRegistration != null) {
+                return heldRegistration;
+            }
+            return CompletableFuture.completedFuture(createAliases(nodeIds.size(), registrations));
+        });
+    }
+
+    @Test
+    public void chunksRespectServerLimit() {
+        withLimits(OperationLimits.builder().maxNodesPerRead(4).build());
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+
+        reader.read((records) -> { }).join();
+
+        assertEquals(List.of(4, 4, 2), reads.stream().map(List::size).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void chunksRespectConfiguredLimit() {
+        withLimits(OperationLimits.builder().maxNodesPerRead(100).build());
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 6, 1);
+
+        reader.read((records) -> { }).join();
+
+        assertEquals(List.of(6, 4), reads.stream().map(List::size).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void chunkContainsAtLeastOneNode() {
+        withLimits(OperationLimits.builder().maxNodesPerRead(1).build());
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+
+        reader.read((records) -> { }).join();
+
+        assertEquals(NODE_IDS.size(), reads.size());
+        assertTrue(reads.stream().allMatch((ids) -> ids.size() == ATTRIBUTES.size()));
+    }
+
+    @Test
+    public void valuesAreMappedToTheirNodes() {
+        withLimits(OperationLimits.builder().maxNodesPerRead(4).build());
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        final List<OpcUaRecord> received = new ArrayList<>();
+
+        reader.read((records) -> records.forEach((record) -> received.add(record.copy()))).join();
+
+        assertEquals(NODE_IDS.size(), received.size());
+        for (int i = 0; i < NODE_IDS.size(); i++) {
+            final OpcUaRecord record = received.get(i);
+            assertEquals(NODE_IDS.get(i), record.get(OpcUaAttributes.NodeId));
+            assertEquals("Node" + i + "/" + OpcUaAttributes.Value.getAttributeId().uid(), record.get(OpcUaAttributes.Value));
+            assertEquals("Node" + i + "/" + OpcUaAttributes.DisplayName.getAttributeId().uid(), record.get(OpcUaAttributes.DisplayName));
+        }
+    }
+
+    @Test
+    public void invalidNodesAreSkipped() {
+        withLimits(OperationLimits.UNLIMITED);
+        final BatchedPollReader reader = new BatchedPollReader(
+                opcUaService, List.of("ns=2;s=Node0", "invalid", "ns=2;s=Node2"), ATTRIBUTES, 0, 1);
+        final List<Object> received = new ArrayList<>();
+
+        reader.read((records) -> records.forEach((record) -> received.add(record.get(OpcUaAttributes.NodeId)))).join();
+
+        assertEquals(2, reader.getNodeCount());
+        assertEquals(List.of("ns=2;s=Node0", "ns=2;s=Node2"), received);
+    }
+
+    @Test
+    public void failedChunkDoesNotAffectOtherChunks() {
+        withLimits(OperationLimits.builder().maxNodesPerRead(4).build());
+        failingRead = 1;
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        final List<Object> received = new ArrayList<>();
+
+        final CompletableFuture<Void> cycle =
+                reader.read((records) -> records.forEach((record) -> received.add(record.get(OpcUaAttributes.NodeId))));
+
+        assertFalse(cycle.isCompletedExceptionally());
+        cycle.join();
+        assertEquals(3, reads.size());
+        assertEquals(List.of("ns=2;s=Node0", "ns=2;s=Node1", "ns=2;s=Node4"), received);
+    }
+
+    /**
+     * Creates values which identify the node and attribute they were read for.
+     */
+    private List<DataValue> createValues(final List<ReadValueId> ids) {
+        final List<DataValue> values = new ArrayList<>(ids.size());
+        for (final ReadValueId id : ids) {
+            if (unknownNodes.contains(id.getNodeId())) {
+                values.add(new DataValue(new StatusCode(StatusCodes.Bad_NodeIdUnknown)));
+                continue;
+            }
+            final String text = id.getNodeId().getIdentifier() + "/" + id.getAttributeId();
+            values.add(new DataValue(new Variant(AttributeId.DisplayName.uid().equals(id.getAttributeId()) ? LocalizedText.english(text) : text)));
+        }
+        return values;
+    }
+
+    /**
+     * Creates the registered Node Ids of a RegisterNodes call, {@code ns=1;i=<registration * 1000 + index>}.
+     */
+    private static List<NodeId> createAliases(final int count, final int registration) {
+        final List<NodeId> aliases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            aliases.add(new NodeId(1, registration * 1000 + i));
+        }
+        return aliases;
+    }
+
+    private static List<NodeId> readNodeIds(final List<ReadValueId> ids) {
+        return ids.stream().map(ReadValueId::getNodeId).distinct().collect(Collectors.toList());
+    }
+
+    @Test
+    public void registeredNodesAreReadWithTheirAliases() {
+        withLimits(OperationLimits.UNLIMITED);
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        final List<Object> received = new ArrayList<>();
+
+        reader.registerNodes().join();
+        reader.read((records) -> records.forEach((record) -> received.add(record.get(OpcUaAttributes.NodeId)))).join();
+
+        assertTrue(reader.isRegistered());
+        assertEquals(createAliases(NODE_IDS.size(), 1), readNodeIds(reads.get(0)));
+        assertEquals(NODE_IDS, received);
+    }
+
+    @Test
+    public void failedRegistrationReadsConfiguredNodeIds() {
+        withLimits(OperationLimits.UNLIMITED);
+        heldRegistration = CompletableFuture.failedFuture(new IllegalStateException("RegisterNodes failed"));
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+
+        reader.registerNodes().join();
+        reader.read((records) -> { }).join();
+
+        assertFalse(reader.isRegistered());
+        assertEquals(NODE_IDS.stream().map(NodeId::parse).collect(Collectors.toList()), readNodeIds(reads.get(0)));
+    }
+
+    @Test
+    public void resetRegistrationReadsConfiguredNodeIds() {
+        withLimits(OperationLimits.UNLIMITED);
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        reader.registerNodes().join();
+
+        reader.resetRegistration();
+        reader.read((records) -> { }).join();
+
+        assertFalse(reader.isRegistered());
+        assertEquals(NODE_IDS.stream().map(NodeId::parse).collect(Collectors.toList()), readNodeIds(reads.get(0)));
+    }
+
+    @Test
+    public void nodesAreRegisteredAgainAfterReconnect() {
+        withLimits(OperationLimits.UNLIMITED);
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        reader.registerNodes().join();
+
+        reader.resetRegistration();
+        reader.registerNodes().join();
+        reader.read((records) -> { }).join();
+
+        assertEquals(2, registrations);
+        assertTrue(reader.isRegistered());
+        assertEquals(createAliases(NODE_IDS.size(), 2), readNodeIds(reads.get(0)));
+    }
+
+    @Test
+    public void registrationCompletingAfterResetIsDiscarded() {
+        withLimits(OperationLimits.UNLIMITED);
+        heldRegistration = new CompletableFuture<>();
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        final CompletableFuture<Void> registered = reader.registerNodes();
+
+        reader.resetRegistration();
+        heldRegistration.complete(createAliases(NODE_IDS.size(), 1));
+        registered.join();
+        reader.read((records) -> { }).join();
+
+        assertFalse(reader.isRegistered());
+        assertEquals(NODE_IDS.stream().map(NodeId::parse).collect(Collectors.toList()), readNodeIds(reads.get(0)));
+    }
+
+    @Test
+    public void readWithResetRegistrationIsDiscarded() {
+        withLimits(OperationLimits.UNLIMITED);
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        reader.registerNodes().join();
+        heldReads = new ArrayList<>();
+        final List<OpcUaRecord> received = new ArrayList<>();
+        final CompletableFuture<Void> cycle = reader.read(received::addAll);
+
+        reader.resetRegistration();
+        heldReads.get(0).complete(createValues(reads.get(0)));
+
+        cycle.join();
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void unknownRegisteredNodesAreSkipped() {
+        withLimits(OperationLimits.UNLIMITED);
+        final BatchedPollReader reader = new BatchedPollReader(opcUaService, NODE_IDS, ATTRIBUTES, 0, 1);
+        reader.registerNodes().join();
+        unknownNodes.add(createAliases(NODE_IDS.size(), 1).get(1));
+        final List<Object> received = new ArrayList<>();
+
+        reader.read((records) -> records.forEach((record) -> received.add(record.get(OpcUaAttributes.NodeId)))).join();
+
+        assertEquals(List.of("ns=2;s=Node0", "ns=2;s=Node2", "ns=2;s=Node3", "ns=2;s=Node4"), received);
+    }
+
+    private void withLimits(final OperationLimits limits) {
+        Mockito.when(opcUaService.getOperationLimits()).thenReturn(CompletableFuture.completedFuture(limits));
+    }
+}
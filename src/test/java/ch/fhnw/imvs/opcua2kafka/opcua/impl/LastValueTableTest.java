@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public final class LastValueTableTest {
+
+    @Test
+    public void testEmitsOnlyChanges() {
+        final LastValueTable table = new LastValueTable(2, 0);
+        assertTrue(table.update(0, 1.5));
+        assertTrue(table.update(1, "on"));
+        assertFalse(table.update(0, 1.5));
+        assertFalse(table.update(1, "on"));
+        assertTrue(table.update(0, 1.6));
+        assertTrue(table.update(1, "off"));
+
+        assertEquals(4, table.getEmittedCount());
+        assertEquals(2, table.getSuppressedCount());
+        assertEquals(1.0 / 3, table.getSuppressionRatio(), 0.0001);
+    }
+
+    @Test
+    public void testTypeChangeIsAChange() {
+        final LastValueTable table = new LastValueTable(1, 0);
+        assertTrue(table.update(0, 1L));
+        assertFalse(table.update(0, UInteger.valueOf(1)));
+        assertTrue(table.update(0, 1.0));
+        assertTrue(table.update(0, true));
+        assertTrue(table.update(0, null));
+        assertFalse(table.update(0, null));
+    }
+
+    @Test
+    public void testNaNAndArrays() {
+        final LastValueTable table = new LastValueTable(2, 0);
+        assertTrue(table.update(0, Double.NaN));
+        assertFalse(table.update(0, Double.NaN));
+        assertTrue(table.update(1, new int[]{1, 2}));
+        assertFalse(table.update(1, new int[]{1, 2}));
+        assertTrue(table.update(1, new int[]{1, 3}));
+    }
+
+    @Test
+    public void testHeartbeat() {
+        final LastValueTable table = new LastValueTable(1, 3);
+        assertTrue(table.update(0, 42));
+        assertFalse(table.update(0, 42));
+        assertFalse(table.update(0, 42));
+        assertTrue(table.update(0, 42));
+        assertFalse(table.update(0, 42));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OperationLimits;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public final class MonitoredItemPlannerTest {
+
+    private static final List<Integer> ITEMS = IntStream.range(0, 25).boxed().collect(Collectors.toList());
+
+    @Test
+    public void testItemsPerCall() {
+        final MonitoredItemPlanner planner = new MonitoredItemPlanner(0, 1, 0, 0);
+        assertEquals(MonitoredItemPlanner.DEFAULT_MAX_ITEMS_PER_CALL, planner.getItemsPerCall(OperationLimits.UNLIMITED));
+        assertEquals(500, planner.getItemsPerCall(OperationLimits.builder().maxMonitoredItemsPerCall(500).build()));
+
+        final MonitoredItemPlanner configured = new MonitoredItemPlanner(100, 1, 0, 0);
+        assertEquals(100, configured.getItemsPerCall(OperationLimits.builder().maxMonitoredItemsPerCall(500).build()));
+    }
+
+    @Test
+    public void testChunking() {
+        final MonitoredItemPlanner planner = new MonitoredItemPlanner(0, 2, 0, 0);
+        final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+        final MonitoredItemPlanner.Progress progress = new MonitoredItemPlanner.Progress("test", ITEMS.size());
+
+        final List<Integer> failed = planner.execute(ITEMS, 10, (chunk) -> {
+            calls.add(new ArrayList<>(chunk));
+            return CompletableFuture.completedFuture(Collections.<Integer>emptyList());
+        }, progress).join();
+
+        assertTrue(failed.isEmpty());
+        assertEquals(3, calls.size());
+        assertEquals(List.of(20, 21, 22, 23, 24), calls.get(2));
+        assertEquals(ITEMS.size(), progress.getProcessed());
+    }
+
+    @Test
+    public void testRetriesOnlyFailedItems() {
+        final MonitoredItemPlanner planner = new MonitoredItemPlanner(0, 2, 2, 0);
+        final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+
+        final List<Integer> failed = planner.execute(ITEMS, 10, (chunk) -> {
+            calls.add(new ArrayList<>(chunk));
+            if (calls.size() == 1) {
+                return CompletableFuture.failedFuture(new IllegalStateException("timeout"));
+            }
+            // item 24 never succeeds
+            return CompletableFuture.completedFuture(chunk.contains(24) ? List.of(24) : Collections.emptyList());
+        }, new MonitoredItemPlanner.Progress("test", ITEMS.size())).join();
+
+        assertEquals(List.of(24), failed);
+        // 3 chunks, then the failed chunk and item 24, then item 24 once more
+        assertEquals(6, calls.size());
+        assertEquals(ITEMS.subList(0, 10), calls.get(3));
+        assertEquals(List.of(24), calls.get(4));
+        assertEquals(List.of(24), calls.get(5));
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        final MonitoredItemPlanner planner = new MonitoredItemPlanner(0, 2, 0, 0);
+        final List<CompletableFuture<List<Integer>>> pending = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<List<Integer>> result = planner.execute(ITEMS, 5, (chunk) -> {
+            final CompletableFuture<List<Integer>> call = new CompletableFuture<>();
+            pending.add(call);
+            return call;
+        }, new MonitoredItemPlanner.Progress("test", ITEMS.size()));
+
+        assertEquals(2, pending.size());
+        assertEquals(2, planner.getInFlightCalls());
+        assertEquals(3, planner.getQueuedCalls());
+        for (int i = 0; i < 5; i++) {
+            pending.get(i).complete(Collections.emptyList());
+        }
+        assertTrue(result.join().isEmpty());
+    }
+
+    @Test
+    public void testRetryableStatus() {
+        assertTrue(MonitoredItemPlanner.isRetryable(new StatusCode(StatusCodes.Bad_TooManyOperations)));
+        assertFalse(MonitoredItemPlanner.isRetryable(new StatusCode(StatusCodes.Bad_NodeIdUnknown)));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public final class NodeMetadataCacheTest {
+
+    private static final NodeId NODE_1 = new NodeId(2, "Node1");
+
+    private static final NodeId NODE_2 = new NodeId(2, "Node2");
+
+    private static final NodeId NODE_3 = new NodeId(2, "Node3");
+
+    @Test
+    public void testHitAndMiss() {
+        final NodeMetadataCache cache = new NodeMetadataCache(10, 0, TimeUnit.MILLISECONDS);
+        assertNull(cache.get(NODE_1));
+
+        final NodeMetadata metadata = new NodeMetadata("Browse", "Display", "Description", System.nanoTime());
+        cache.put(NODE_1, metadata);
+
+        assertSame(metadata, cache.get(NODE_1));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final NodeMetadataCache cache = new NodeMetadataCache(2, 0, TimeUnit.MILLISECONDS);
+        cache.put(NODE_1, new NodeMetadata("1", "1", "1", 0));
+        cache.put(NODE_2, new NodeMetadata("2", "2", "2", 0));
+        // touch NODE_1, so NODE_2 becomes the eldest entry
+        cache.get(NODE_1);
+        cache.put(NODE_3, new NodeMetadata("3", "3", "3", 0));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get(NODE_1));
+        assertNull(cache.get(NODE_2));
+        assertNotNull(cache.get(NODE_3));
+    }
+
+    @Test
+    public void testExpiration() {
+        final NodeMetadataCache cache = new NodeMetadataCache(10, 1, TimeUnit.SECONDS);
+        final NodeMetadata metadata = new NodeMetadata("Browse", "Display", "Description", 0);
+
+        assertFalse(cache.isExpired(metadata, TimeUnit.MILLISECONDS.toNanos(500)));
+        assertTrue(cache.isExpired(metadata, TimeUnit.MILLISECONDS.toNanos(1500)));
+    }
+
+    @Test
+    public void testNoExpirationWithoutTimeToLive() {
+        final NodeMetadataCache cache = new NodeMetadataCache(10, 0, TimeUnit.SECONDS);
+        final NodeMetadata metadata = new NodeMetadata("Browse", "Display", "Description", 0);
+
+        assertFalse(cache.isExpired(metadata, TimeUnit.DAYS.toNanos(365)));
+    }
+
+    @Test
+    public void testSavedTime() {
+        final NodeMetadataCache cache = new NodeMetadataCache(10, 0, TimeUnit.MILLISECONDS);
+        cache.recordLoad(100);
+        cache.recordLoad(300);
+        cache.put(NODE_1, new NodeMetadata("1", "1", "1", 0));
+        cache.get(NODE_1);
+        cache.get(NODE_1);
+
+        assertEquals(200, cache.getAverageLoadNanos());
+        assertEquals(400, cache.getSavedNanos());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final NodeMetadataCache cache = new NodeMetadataCache(10, 0, TimeUnit.MILLISECONDS);
+        cache.put(NODE_1, new NodeMetadata("1", "1", "1", 0));
+        cache.invalidate(NODE_1);
+
+        assertNull(cache.get(NODE_1));
+        assertEquals(0, cache.size());
+    }
+}
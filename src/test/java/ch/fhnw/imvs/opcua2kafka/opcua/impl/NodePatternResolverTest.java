@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MonitoringProfile;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class NodePatternResolverTest {
+
+    private static final MonitoringProfile DEFAULT_PROFILE = MonitoringProfile.builder()
+            .name("default")
+            .samplingInterval(1000.0)
+            .queueSize(1)
+            .discardOldest(true)
+            .trigger(MonitoringProfile.Trigger.STATUS_VALUE)
+            .build();
+
+    private static final MonitoringProfile TEMPERATURE_PROFILE = MonitoringProfile.builder()
+            .name("temperature")
+            .nodePattern("ns=2;s=Line1\\..*\\.Temperature")
+            .samplingInterval(100.0)
+            .deadbandType(MonitoringProfile.DeadbandType.ABSOLUTE)
+            .deadbandValue(0.5)
+            .build();
+
+    private static final MonitoringProfile LINE_PROFILE = MonitoringProfile.builder()
+            .name("line1")
+            .nodePattern("ns=2;s=Line1\\..*")
+            .samplingInterval(500.0)
+            .queueSize(10)
+            .build();
+
+    @Test
+    public void firstMatchingProfileWins() {
+        final NodePatternResolver<MonitoringProfile> resolver = createResolver(List.of(TEMPERATURE_PROFILE, LINE_PROFILE));
+
+        assertEquals("temperature", resolver.resolve("ns=2;s=Line1.Station1.Temperature").getName());
+        assertEquals("line1", resolver.resolve("ns=2;s=Line1.Station1.Pressure").getName());
+    }
+
+    @Test
+    public void profileOrderDefinesPrecedence() {
+        final NodePatternResolver<MonitoringProfile> resolver = createResolver(List.of(LINE_PROFILE, TEMPERATURE_PROFILE));
+
+        assertEquals("line1", resolver.resolve("ns=2;s=Line1.Station1.Temperature").getName());
+    }
+
+    @Test
+    public void patternHasToMatchWholeNodeId() {
+        final NodePatternResolver<MonitoringProfile> resolver = createResolver(List.of(LINE_PROFILE));
+
+        assertSame(DEFAULT_PROFILE, resolver.resolve("ns=3;s=Line1.Station1.Pressure"));
+        assertSame(DEFAULT_PROFILE, resolver.resolve("ns=2;s=Line2.Station1.Pressure"));
+    }
+
+    @Test
+    public void unsetValuesAreTakenFromDefaultProfile() {
+        final NodePatternResolver<MonitoringProfile> resolver = createResolver(List.of(TEMPERATURE_PROFILE));
+
+        final MonitoringProfile profile = resolver.resolve("ns=2;s=Line1.Station1.Temperature");
+
+        assertEquals(100.0, profile.getSamplingInterval(), 0);
+        assertEquals(1, (int) profile.getQueueSize());
+        assertTrue(profile.getDiscardOldest());
+        assertEquals(MonitoringProfile.DeadbandType.ABSOLUTE, profile.getDeadbandType());
+        assertEquals(0.5, profile.getDeadbandValue(), 0);
+        assertEquals(MonitoringProfile.Trigger.STATUS_VALUE, profile.getTrigger());
+    }
+
+    @Test
+    public void profilesWithoutPatternAreIgnored() {
+        final MonitoringProfile withoutPattern = MonitoringProfile.builder().name("without pattern").samplingInterval(10.0).build();
+        final NodePatternResolver<MonitoringProfile> resolver = createResolver(List.of(withoutPattern, LINE_PROFILE));
+
+        assertEquals("line1", resolver.resolve("ns=2;s=Line1.Station1.Pressure").getName());
+        assertSame(DEFAULT_PROFILE, resolver.resolve("ns=2;s=Line2.Station1.Pressure"));
+    }
+
+    @Test
+    public void defaultProfileWithoutProfiles() {
+        final NodePatternResolver<MonitoringProfile> resolver = createResolver(null);
+
+        assertSame(DEFAULT_PROFILE, resolver.resolve("ns=2;s=Line1.Station1.Temperature"));
+    }
+
+    private static NodePatternResolver<MonitoringProfile> createResolver(final List<MonitoringProfile> profiles) {
+        return new NodePatternResolver<>(DEFAULT_PROFILE, profiles, MonitoringProfile::getNodePattern, MonitoringProfile::withDefaults);
+    }
+}
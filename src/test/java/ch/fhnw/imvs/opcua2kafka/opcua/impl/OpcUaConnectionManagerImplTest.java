@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MonitoringProfile;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConnectionConfiguration;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class OpcUaConnectionManagerImplTest {
+
+    private static final OpcUaConnectionConfiguration DEFAULT_CONNECTION = OpcUaConnectionConfiguration.builder()
+            .name("default")
+            .opcUaServer("opc.tcp://default:4840")
+            .aggregateId("default-aggregate")
+            .usePollingService(true)
+            .defaultPollingCycle(1000L)
+            .build();
+
+    private static final MonitoringProfile DEFAULT_PROFILE = MonitoringProfile.builder()
+            .name("default")
+            .samplingInterval(1000.0)
+            .queueSize(1)
+            .discardOldest(true)
+            .build();
+
+    private static final MonitoringProfile GLOBAL_PROFILE = MonitoringProfile.builder()
+            .name("global")
+            .nodePattern("ns=2;s=Line\\..*")
+            .samplingInterval(500.0)
+            .build();
+
+    private static final MonitoringProfile CONNECTION_PROFILE = MonitoringProfile.builder()
+            .name("connection")
+            .nodePattern("ns=2;s=Line\\..*")
+            .samplingInterval(100.0)
+            .build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void servicesAreCreatedPerConnection() {
+        final OpcUaConnectionManagerImpl manager = createManager(
+                OpcUaConnectionConfiguration.builder().name("line1").build().withDefaults(DEFAULT_CONNECTION),
+                OpcUaConnectionConfiguration.builder().name("line2").build().withDefaults(DEFAULT_CONNECTION));
+
+        final List<OpcUaConnection> connections = manager.getConnections();
+
+        assertEquals(2, connections.size());
+        assertEquals("line1", connections.get(0).getName());
+        assertEquals("line2", connections.get(1).getName());
+        assertTrue(connections.get(0).getOpcUaService() instanceof OpcUaServiceImpl);
+        assertTrue(connections.get(0).getOpcUaPollService() instanceof OpcUaPollServiceImpl);
+        assertNotSame(connections.get(0).getOpcUaService(), connections.get(1).getOpcUaService());
+        assertNotSame(connections.get(0).getOpcUaPollService(), connections.get(1).getOpcUaPollService());
+        assertNotNull(meterRegistry.get("opcua.metadata.cache.hits").tag("connection", "line1").functionCounter());
+        assertNotNull(meterRegistry.get("opcua.metadata.cache.hits").tag("connection", "line2").functionCounter());
+    }
+
+    @Test
+    public void noConnectionsWithoutConfiguration() {
+        assertTrue(new OpcUaConnectionManagerImpl(null, meterRegistry).getConnections().isEmpty());
+        assertTrue(new OpcUaConnectionManagerImpl(OpcUaConfiguration.builder().build(), meterRegistry).getConnections().isEmpty());
+    }
+
+    @Test
+    public void connectionSettingsOverrideGlobalDefaults() {
+        final OpcUaConnectionManagerImpl manager = createManager(
+                OpcUaConnectionConfiguration.builder()
+                        .name("line1")
+                        .opcUaServer("opc.tcp://line1:4840")
+                        .usePollingService(false)
+                        .build()
+                        .withDefaults(DEFAULT_CONNECTION),
+                OpcUaConnectionConfiguration.builder()
+                        .name("line2")
+                        .aggregateId("line2-aggregate")
+                        .defaultPollingCycle(250L)
+                        .build()
+                        .withDefaults(DEFAULT_CONNECTION));
+
+        final OpcUaConnectionConfiguration line1 = manager.getConnections().get(0).getConfiguration();
+        final OpcUaConnectionConfiguration line2 = manager.getConnections().get(1).getConfiguration();
+
+        assertEquals("opc.tcp://line1:4840", line1.getOpcUaServer());
+        assertEquals("default-aggregate", line1.getAggregateId());
+        assertFalse(line1.getUsePollingService());
+        assertEquals(1000L, (long) line1.getDefaultPollingCycle());
+        assertEquals("opc.tcp://default:4840", line2.getOpcUaServer());
+        assertEquals("line2-aggregate", line2.getAggregateId());
+        assertTrue(line2.getUsePollingService());
+        assertEquals(250L, (long) line2.getDefaultPollingCycle());
+        assertTrue(line2.getMonitorNodes().isEmpty());
+    }
+
+    @Test
+    public void connectionMonitoringProfilesOverrideGlobalProfiles() {
+        final OpcUaConnectionManagerImpl manager = createManager(
+                OpcUaConnectionConfiguration.builder().name("line1").build().withDefaults(DEFAULT_CONNECTION),
+                OpcUaConnectionConfiguration.builder().name("line2").monitoringProfiles(List.of(CONNECTION_PROFILE)).build()
+                        .withDefaults(DEFAULT_CONNECTION));
+
+        final OpcUaServiceImpl line1 = (OpcUaServiceImpl) manager.getConnections().get(0).getOpcUaService();
+        final OpcUaServiceImpl line2 = (OpcUaServiceImpl) manager.getConnections().get(1).getOpcUaService();
+
+        assertEquals("global", line1.getMonitoringProfile("ns=2;s=Line.Temperature").getName());
+        assertEquals(500.0, line1.getMonitoringProfile("ns=2;s=Line.Temperature").getSamplingInterval(), 0);
+        assertEquals("connection", line2.getMonitoringProfile("ns=2;s=Line.Temperature").getName());
+        assertEquals(100.0, line2.getMonitoringProfile("ns=2;s=Line.Temperature").getSamplingInterval(), 0);
+        assertEquals(1, (int) line2.getMonitoringProfile("ns=2;s=Line.Temperature").getQueueSize());
+        assertSame(DEFAULT_PROFILE, line2.getMonitoringProfile("ns=2;s=Other"));
+    }
+
+    @Test
+    public void messagesAreCountedPerConnection() {
+        final OpcUaConnectionManagerImpl manager = createManager(
+                OpcUaConnectionConfiguration.builder().name("line1").build().withDefaults(DEFAULT_CONNECTION),
+                OpcUaConnectionConfiguration.builder().name("line2").build().withDefaults(DEFAULT_CONNECTION));
+        final OpcUaConnection line1 = manager.getConnections().get(0);
+        final OpcUaConnection line2 = manager.getConnections().get(1);
+
+        line1.recordSubscriptionMessages(10);
+        line1.recordPollingMessages(5);
+        line2.recordPollingMessages(3);
+
+        assertEquals(10, line1.getSubscriptionMessageCount());
+        assertEquals(5, line1.getPollingMessageCount());
+        assertEquals(15, line1.getMessageCount());
+        assertEquals(0, line2.getSubscriptionMessageCount());
+        assertEquals(3, line2.getMessageCount());
+    }
+
+    private OpcUaConnectionManagerImpl createManager(final OpcUaConnectionConfiguration... connections) {
+        final OpcUaConfiguration configuration = OpcUaConfiguration.builder()
+                .metadataCacheSize(100)
+                .defaultMonitoringProfile(DEFAULT_PROFILE)
+                .monitoringProfiles(List.of(GLOBAL_PROFILE))
+                .connections(List.of(connections))
+                .build();
+        return new OpcUaConnectionManagerImpl(configuration, meterRegistry);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.OpcUaConfiguration;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaListener;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public final class OpcUaPollServiceImplTest {
+
+    private final List<Collection<String>> monitored = new ArrayList<>();
+
+    private final List<Collection<String>> unmonitored = new ArrayList<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OpcUaPollServiceImpl pollService;
+
+    @Before
+    public void setUp() {
+        final OpcUaService opcUaService = Mockito.mock(OpcUaService.class);
+        Mockito.when(opcUaService.getOperationLimits()).thenReturn(new CompletableFuture<>());
+        final OpcUaConfiguration configuration = OpcUaConfiguration.builder().pollingChangeOnly(true).build();
+        pollService = new OpcUaPollServiceImpl(opcUaService, configuration, meterRegistry, "test");
+        pollService.addListener(new OpcUaListener() {
+            @Override
+            public void messageReceived(final Map<OpcUaAttribute, String> message) {
+            }
+
+            @Override
+            public void nodesMonitored(final Collection<String> nodeIds) {
+                monitored.add(List.copyOf(nodeIds));
+            }
+
+            @Override
+            public void nodesUnmonitored(final Collection<String> nodeIds) {
+                unmonitored.add(List.copyOf(nodeIds));
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        pollService.stop();
+    }
+
+    @Test
+    public void startAnnouncesValidNodes() {
+        pollService.start(List.of("ns=2;s=Node1", "invalid", "ns=2;s=Node2"), 60_000, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of(List.of("ns=2;s=Node1", "ns=2;s=Node2")), monitored);
+        assertTrue(unmonitored.isEmpty());
+    }
+
+    @Test
+    public void stopAnnouncesPolledNodes() {
+        pollService.start(List.of("ns=2;s=Node1", "ns=2;s=Node2"), 60_000, TimeUnit.MILLISECONDS);
+
+        pollService.stop();
+        pollService.stop();
+
+        assertEquals(List.of(List.of("ns=2;s=Node1", "ns=2;s=Node2")), unmonitored);
+    }
+
+    @Test
+    public void restartReplacesPolledNodes() {
+        pollService.start(List.of("ns=2;s=Node1", "ns=2;s=Node2"), 60_000, TimeUnit.MILLISECONDS);
+
+        pollService.start(List.of("ns=2;s=Node2", "ns=2;s=Node3"), 60_000, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of(List.of("ns=2;s=Node1", "ns=2;s=Node2")), unmonitored);
+        assertEquals(List.of(List.of("ns=2;s=Node1", "ns=2;s=Node2"), List.of("ns=2;s=Node2", "ns=2;s=Node3")), monitored);
+    }
+
+    @Test
+    public void metersAreRemovedOnStop() {
+        pollService.start(List.of("ns=2;s=Node1", "ns=2;s=Node2"), 60_000, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, meterRegistry.get("opcua.poll.overruns").tags("connection", "test", "group", "default").functionCounter().count(), 0);
+        assertEquals(0, meterRegistry.get("opcua.poll.changes.suppressed").tag("connection", "test").functionCounter().count(), 0);
+        assertNotNull(meterRegistry.get("opcua.poll.reads.inflight").tag("connection", "test").gauge());
+
+        pollService.stop();
+
+        assertNull(meterRegistry.find("opcua.poll.overruns").meter());
+        assertNull(meterRegistry.find("opcua.poll.reads.inflight").meter());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.MonitoringProfile;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.channel.EncodingLimits;
+import org.eclipse.milo.opcua.stack.core.serialization.SerializationContext;
+import org.eclipse.milo.opcua.stack.core.types.DataTypeManager;
+import org.eclipse.milo.opcua.stack.core.types.OpcUaDataTypeManager;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public final class OpcUaServiceImplTest {
+
+    private static final MonitoringProfile DEFAULT_PROFILE = MonitoringProfile.builder()
+            .name("default")
+            .samplingInterval(1000.0)
+            .queueSize(1)
+            .discardOldest(true)
+            .build();
+
+    private final SerializationContext serializationContext = new SerializationContext() {
+        private final NamespaceTable namespaceTable = new NamespaceTable();
+
+        @Override
+        public EncodingLimits getEncodingLimits() {
+            return EncodingLimits.DEFAULT;
+        }
+
+        @Override
+        public NamespaceTable getNamespaceTable() {
+            return namespaceTable;
+        }
+
+        @Override
+        public DataTypeManager getDataTypeManager() {
+            return OpcUaDataTypeManager.getInstance();
+        }
+    };
+
+    @Test
+    public void defaultProfileUsesServerDefaultFilter() {
+        final MonitoringParameters parameters = OpcUaServiceImpl.createMonitoringParameters(
+                UInteger.valueOf(7), DEFAULT_PROFILE, serializationContext);
+
+        assertEquals(UInteger.valueOf(7), parameters.getClientHandle());
+        assertEquals(1000.0, parameters.getSamplingInterval(), 0);
+        assertEquals(UInteger.valueOf(1), parameters.getQueueSize());
+        assertTrue(parameters.getDiscardOldest());
+        assertNull(parameters.getFilter());
+    }
+
+    @Test
+    public void statusValueTriggerWithoutDeadbandNeedsNoFilter() {
+        assertNull(OpcUaServiceImpl.createDataChangeFilter(MonitoringProfile.builder()
+                .deadbandType(MonitoringProfile.DeadbandType.NONE)
+                .trigger(MonitoringProfile.Trigger.STATUS_VALUE)
+                .build()));
+    }
+
+    @Test
+    public void absoluteDeadbandCreatesFilter() {
+        final MonitoringProfile profile = MonitoringProfile.builder()
+                .samplingInterval(100.0)
+                .queueSize(10)
+                .discardOldest(false)
+                .deadbandType(MonitoringProfile.DeadbandType.ABSOLUTE)
+                .deadbandValue(0.5)
+                .build();
+
+        final MonitoringParameters parameters = OpcUaServiceImpl.createMonitoringParameters(
+                UInteger.valueOf(1), profile, serializationContext);
+
+        assertEquals(100.0, parameters.getSamplingInterval(), 0);
+        assertEquals(UInteger.valueOf(10), parameters.getQueueSize());
+        assertFalse(parameters.getDiscardOldest());
+        final DataChangeFilter filter = (DataChangeFilter) parameters.getFilter().decode(serializationContext);
+        assertEquals(DataChangeTrigger.StatusValue, filter.getTrigger());
+        assertEquals(UInteger.valueOf(DeadbandType.Absolute.getValue()), filter.getDeadbandType());
+        assertEquals(0.5, filter.getDeadbandValue(), 0);
+    }
+
+    @Test
+    public void percentDeadbandCreatesFilter() {
+        final DataChangeFilter filter = OpcUaServiceImpl.createDataChangeFilter(MonitoringProfile.builder()
+                .deadbandType(MonitoringProfile.DeadbandType.PERCENT)
+                .deadbandValue(2.0)
+                .build());
+
+        assertEquals(DataChangeTrigger.StatusValue, filter.getTrigger());
+        assertEquals(UInteger.valueOf(DeadbandType.Percent.getValue()), filter.getDeadbandType());
+        assertEquals(2.0, filter.getDeadbandValue(), 0);
+    }
+
+    @Test
+    public void triggerCreatesFilterWithoutDeadband() {
+        final DataChangeFilter status = OpcUaServiceImpl.createDataChangeFilter(MonitoringProfile.builder()
+                .trigger(MonitoringProfile.Trigger.STATUS)
+                .build());
+        final DataChangeFilter timestamp = OpcUaServiceImpl.createDataChangeFilter(MonitoringProfile.builder()
+                .trigger(MonitoringProfile.Trigger.STATUS_VALUE_TIMESTAMP)
+                .build());
+
+        assertEquals(DataChangeTrigger.Status, status.getTrigger());
+        assertEquals(UInteger.valueOf(DeadbandType.None.getValue()), status.getDeadbandType());
+        assertEquals(0.0, status.getDeadbandValue(), 0);
+        assertEquals(DataChangeTrigger.StatusValueTimestamp, timestamp.getTrigger());
+    }
+
+    @Test
+    public void deadbandWithoutValueUsesZero() {
+        final DataChangeFilter filter = OpcUaServiceImpl.createDataChangeFilter(MonitoringProfile.builder()
+                .deadbandType(MonitoringProfile.DeadbandType.ABSOLUTE)
+                .build());
+
+        assertEquals(0.0, filter.getDeadbandValue(), 0);
+    }
+}
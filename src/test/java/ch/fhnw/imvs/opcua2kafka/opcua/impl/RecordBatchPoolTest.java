@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttribute;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaAttributes;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaListener;
+import ch.fhnw.imvs.opcua2kafka.opcua.OpcUaRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public final class RecordBatchPoolTest {
+
+    @Test
+    public void testBatchesAndRecordsAreReused() {
+        final RecordBatchPool pool = new RecordBatchPool(1);
+        final RecordBatchPool.Batch batch = pool.acquire();
+        final OpcUaRecord record = batch.add();
+        record.set(OpcUaAttributes.Value, 1);
+        batch.add().set(OpcUaAttributes.Value, 2);
+        assertEquals(2, batch.size());
+        pool.release(batch);
+
+        final RecordBatchPool.Batch reused = pool.acquire();
+        assertSame(batch, reused);
+        assertTrue(reused.isEmpty());
+        assertSame(record, reused.add());
+        assertTrue(record.isEmpty());
+        assertEquals(1, pool.getAllocatedBatchCount());
+
+        assertNotSame(reused, pool.acquire());
+        assertEquals(2, pool.getAllocatedBatchCount());
+    }
+
+    @Test
+    public void testMapListenerReceivesCopies() {
+        final List<Map<OpcUaAttribute, String>> received = new ArrayList<>();
+        final OpcUaListener listener = received::add;
+        final RecordBatchPool pool = new RecordBatchPool(1);
+        final RecordBatchPool.Batch batch = pool.acquire();
+        final OpcUaRecord record = batch.add();
+        record.set(OpcUaAttributes.NodeId, "ns=2;s=Node");
+        record.set(OpcUaAttributes.Value, 42.0);
+
+        listener.recordsReceived(batch);
+        pool.release(batch);
+
+        assertEquals(1, received.size());
+        assertEquals("ns=2;s=Node", received.get(0).get(OpcUaAttributes.NodeId));
+        assertEquals("42.0", received.get(0).get(OpcUaAttributes.Value));
+        assertFalse(received.get(0).containsKey(OpcUaAttributes.BrowseName));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public final class SerialExecutorTest {
+
+    @Test
+    public void tasksOfOneExecutorRunInOrderWithoutOverlap() throws InterruptedException {
+        final int executors = 8;
+        final int tasks = 2000;
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<List<Integer>> executed = new ArrayList<>();
+            final CountDownLatch done = new CountDownLatch(executors * tasks);
+            final AtomicBoolean overlapped = new AtomicBoolean();
+            for (int e = 0; e < executors; e++) {
+                final SerialExecutor executor = new SerialExecutor(pool);
+                final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+                final AtomicBoolean running = new AtomicBoolean();
+                executed.add(order);
+                for (int t = 0; t < tasks; t++) {
+                    final int task = t;
+                    executor.execute(() -> {
+                        if (!running.compareAndSet(false, true)) {
+                            overlapped.set(true);
+                        }
+                        order.add(task);
+                        running.set(false);
+                        done.countDown();
+                    });
+                }
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertFalse(overlapped.get());
+            for (final List<Integer> order : executed) {
+                assertEquals(tasks, order.size());
+                for (int t = 0; t < tasks; t++) {
+                    assertEquals(t, (int) order.get(t));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void drainHandsBackThreadAfterMaxTasks() {
+        final Queue<Runnable> submitted = new ArrayDeque<>();
+        final SerialExecutor executor = new SerialExecutor(submitted::add);
+        final AtomicInteger executed = new AtomicInteger();
+        for (int i = 0; i < 600; i++) {
+            executor.execute(executed::incrementAndGet);
+        }
+        assertEquals(1, submitted.size());
+        assertEquals(600, executor.getQueued());
+
+        submitted.poll().run();
+        assertEquals(256, executed.get());
+        assertEquals(1, submitted.size());
+
+        submitted.poll().run();
+        assertEquals(512, executed.get());
+        assertEquals(1, submitted.size());
+
+        submitted.poll().run();
+        assertEquals(600, executed.get());
+        assertTrue(submitted.isEmpty());
+        assertEquals(0, executor.getQueued());
+
+        executor.execute(executed::incrementAndGet);
+        assertEquals(1, submitted.size());
+    }
+
+    @Test
+    public void failedTaskDoesNotStopFollowingTasks() {
+        final SerialExecutor executor = new SerialExecutor(Runnable::run);
+        final AtomicInteger executed = new AtomicInteger();
+
+        executor.execute(() -> {
+            throw new IllegalStateException("Task failed");
+        });
+        executor.execute(executed::incrementAndGet);
+
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void tasksAreDroppedWhenExecutorIsShutDown() {
+        final SerialExecutor executor = new SerialExecutor((task) -> {
+            throw new RejectedExecutionException("shut down");
+        });
+
+        executor.execute(() -> fail("dropped task executed"));
+        executor.execute(() -> fail("dropped task executed"));
+
+        assertEquals(0, executor.getQueued());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import ch.fhnw.imvs.opcua2kafka.config.SubscriptionGroup;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public final class SubscriptionShardTest {
+
+    private static final SubscriptionGroup DEFAULT_GROUP = SubscriptionGroup.builder()
+            .name("default")
+            .publishingInterval(1000.0)
+            .maxItemsPerSubscription(3)
+            .build();
+
+    private static final SubscriptionGroup FAST_GROUP = SubscriptionGroup.builder()
+            .name("fast")
+            .nodePattern("ns=2;s=Fast\\..*")
+            .publishingInterval(100.0)
+            .maxItemsPerSubscription(2)
+            .build();
+
+    private final NodePatternResolver<SubscriptionGroup> groupResolver = new NodePatternResolver<>(
+            DEFAULT_GROUP, List.of(FAST_GROUP), SubscriptionGroup::getNodePattern, SubscriptionGroup::withDefaults);
+
+    private final Map<SubscriptionGroup, List<SubscriptionShard>> shards = new LinkedHashMap<>();
+
+    private final List<String> created = new ArrayList<>();
+
+    @Test
+    public void reserveGrantsRemainingCapacity() {
+        final SubscriptionShard shard = createShard(DEFAULT_GROUP, 0);
+
+        assertEquals(2, shard.reserve(2));
+        assertEquals(1, shard.reserve(2));
+        assertEquals(0, shard.reserve(1));
+        assertEquals(3, shard.getItemCount());
+
+        shard.release(2);
+        assertEquals(1, shard.getItemCount());
+        assertEquals(2, shard.reserve(5));
+    }
+
+    @Test
+    public void releaseDoesNotGoBelowZero() {
+        final SubscriptionShard shard = createShard(DEFAULT_GROUP, 0);
+        shard.reserve(1);
+
+        shard.release(5);
+
+        assertEquals(0, shard.getItemCount());
+        assertEquals(3, shard.reserve(3));
+    }
+
+    @Test
+    public void groupWithoutLimitGrantsEverything() {
+        final SubscriptionShard shard = createShard(SubscriptionGroup.builder().name("unlimited").build(), 0);
+
+        assertEquals(100_000, shard.reserve(100_000));
+        assertEquals(100_000, shard.getItemCount());
+    }
+
+    @Test
+    public void nodesAreAssignedToTheShardsOfTheirGroup() {
+        final Map<SubscriptionShard, List<String>> assignments = assign(
+                "ns=2;s=Fast.A", "ns=2;s=Slow.A", "ns=2;s=Fast.B", "ns=2;s=Fast.C", "ns=2;s=Slow.B");
+
+        assertEquals(List.of("fast/0", "fast/1", "default/0"), created);
+        final List<SubscriptionShard> fastShards = shards.get(groupResolver.resolve("ns=2;s=Fast.A"));
+        assertEquals(List.of("ns=2;s=Fast.A", "ns=2;s=Fast.B"), assignments.get(fastShards.get(0)));
+        assertEquals(List.of("ns=2;s=Fast.C"), assignments.get(fastShards.get(1)));
+        assertEquals(List.of("ns=2;s=Slow.A", "ns=2;s=Slow.B"), assignments.get(shards.get(DEFAULT_GROUP).get(0)));
+        assertEquals(100.0, fastShards.get(0).getGroup().getPublishingInterval(), 0);
+    }
+
+    @Test
+    public void existingShardsAreFilledUpFirst() {
+        assign("ns=2;s=Slow.A", "ns=2;s=Slow.B");
+
+        final Map<SubscriptionShard, List<String>> assignments = assign("ns=2;s=Slow.C", "ns=2;s=Slow.D", "ns=2;s=Slow.E");
+
+        final List<SubscriptionShard> defaultShards = shards.get(DEFAULT_GROUP);
+        assertEquals(List.of("default/0", "default/1"), created);
+        assertEquals(List.of("ns=2;s=Slow.C"), assignments.get(defaultShards.get(0)));
+        assertEquals(List.of("ns=2;s=Slow.D", "ns=2;s=Slow.E"), assignments.get(defaultShards.get(1)));
+        assertEquals(3, defaultShards.get(0).getItemCount());
+    }
+
+    @Test
+    public void releasedCapacityIsReused() {
+        assign("ns=2;s=Slow.A", "ns=2;s=Slow.B", "ns=2;s=Slow.C");
+        shards.get(DEFAULT_GROUP).get(0).release(1);
+
+        final Map<SubscriptionShard, List<String>> assignments = assign("ns=2;s=Slow.D");
+
+        assertEquals(List.of("default/0"), created);
+        assertEquals(List.of("ns=2;s=Slow.D"), assignments.get(shards.get(DEFAULT_GROUP).get(0)));
+    }
+
+    private Map<SubscriptionShard, List<String>> assign(final String... nodeIds) {
+        return OpcUaServiceImpl.assignToShards(List.of(nodeIds), groupResolver, shards, this::createShard);
+    }
+
+    private SubscriptionShard createShard(final SubscriptionGroup group, final int index) {
+        created.add(group.getName() + "/" + index);
+        return new SubscriptionShard(group, index, new CompletableFuture<>(), Runnable::run);
+    }
+}
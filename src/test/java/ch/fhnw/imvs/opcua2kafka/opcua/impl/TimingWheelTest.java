@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.opcua.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public final class TimingWheelTest {
+
+    private TimingWheel wheel;
+
+    @Before
+    public void setUp() {
+        // small wheel, so that tasks with longer periods need several rounds
+        wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8, Executors.defaultThreadFactory());
+        wheel.start();
+    }
+
+    @After
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    public void testPhaseOrder() throws InterruptedException {
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(3);
+        wheel.schedule(() -> { order.add(3); done.countDown(); }, 90, 0, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { order.add(1); done.countDown(); }, 10, 0, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { order.add(2); done.countDown(); }, 50, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2, 3), order);
+    }
+
+    @Test
+    public void testFixedRate() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(5);
+        final long start = System.nanoTime();
+        final TimingWheel.Task task = wheel.schedule(() -> {
+            runs.incrementAndGet();
+            done.countDown();
+        }, 0, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        task.cancel();
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // first run is immediate, four more runs take at least four periods
+        assertTrue("elapsed " + elapsed, elapsed >= 190);
+
+        final int runsAfterCancel = runs.get();
+        Thread.sleep(150);
+        assertEquals(runsAfterCancel, runs.get());
+    }
+
+    @Test
+    public void testStalledWheelSkipsMissedRuns() throws InterruptedException {
+        final List<Long> runs = new CopyOnWriteArrayList<>();
+        final AtomicLong stallEnd = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+        final TimingWheel.Task task = wheel.schedule(() -> runs.add(System.nanoTime()), 0, 20, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stallEnd.set(System.nanoTime());
+        }, 30, 0, TimeUnit.MILLISECONDS);
+        wheel.schedule(done::countDown, 450, 0, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        task.cancel();
+        // the wheel was blocked for 15 periods, they must not be caught up right after the stall
+        final long burstEnd = stallEnd.get() + TimeUnit.MILLISECONDS.toNanos(10);
+        final long burst = runs.stream().filter((run) -> run >= stallEnd.get() && run < burstEnd).count();
+        assertTrue("runs right after the stall: " + burst, burst <= 2);
+        final long afterStall = runs.stream().filter((run) -> run >= stallEnd.get()).count();
+        assertTrue("runs after the stall: " + afterStall, afterStall <= 10);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.simulation;
+
+import org.eclipse.milo.opcua.sdk.core.AccessLevel;
+import org.eclipse.milo.opcua.sdk.core.Reference;
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.api.DataItem;
+import org.eclipse.milo.opcua.sdk.server.api.ManagedNamespace;
+import org.eclipse.milo.opcua.sdk.server.api.MonitoredItem;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaFolderNode;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.sdk.server.util.SubscriptionModel;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+
+/**
+ * Namespace of the {@link SimulationServer} which contains a flat folder of simulated variables.
+ *
+ * The data types are assigned round robin from the configured list, so that every type is used for the same number
+ * of variables. {@link #change()} gives every variable a new value with the current time as source timestamp.
+ */
+final class SimulationNamespace extends ManagedNamespace {
+
+    static final String NAMESPACE_URI = "urn:fhnw:opcua2kafka:simulation";
+
+    private static final String FOLDER_NAME = "Simulation";
+
+    private final SubscriptionModel subscriptionModel;
+
+    private final int variableCount;
+
+    private final List<SimulationServer.DataType> dataTypes;
+
+    private final List<UaVariableNode> variables;
+
+    private long tick;
+
+    SimulationNamespace(final OpcUaServer server, final int variableCount, final List<SimulationServer.DataType> dataTypes) {
+        super(server, NAMESPACE_URI);
+        if (dataTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one data type is required");
+        }
+        this.subscriptionModel = new SubscriptionModel(server, this);
+        this.variableCount = variableCount;
+        this.dataTypes = List.copyOf(dataTypes);
+        this.variables = new ArrayList<>(variableCount);
+    }
+
+    List<UaVariableNode> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    /**
+     * Sets a new value for every variable.
+     *
+     * @return Number of changed variables.
+     */
+    synchronized int change() {
+        tick++;
+        final DateTime now = DateTime.now();
+        for (int i = 0; i < variables.size(); i++) {
+            variables.get(i).setValue(new DataValue(new Variant(getDataType(i).valueOf(i + tick)), StatusCode.GOOD, now));
+        }
+        return variables.size();
+    }
+
+    private SimulationServer.DataType getDataType(final int index) {
+        return dataTypes.get(index % dataTypes.size());
+    }
+
+    @Override
+    protected void onStartup() {
+        super.onStartup();
+
+        final UaFolderNode folder = new UaFolderNode(
+                getNodeContext(),
+                newNodeId(FOLDER_NAME),
+                newQualifiedName(FOLDER_NAME),
+                LocalizedText.english(FOLDER_NAME));
+        getNodeManager().addNode(folder);
+        folder.addReference(new Reference(
+                folder.getNodeId(),
+                Identifiers.Organizes,
+                Identifiers.ObjectsFolder.expanded(),
+                false));
+
+        for (int i = 0; i < variableCount; i++) {
+            final String name = String.format("Variable%06d", i);
+            final UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(getNodeContext())
+                    .setNodeId(newNodeId(FOLDER_NAME + "/" + name))
+                    .setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)))
+                    .setUserAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)))
+                    .setBrowseName(newQualifiedName(name))
+                    .setDisplayName(LocalizedText.english(name))
+                    .setDescription(LocalizedText.english("Simulated variable " + name))
+                    .setDataType(getDataType(i).getIdentifier())
+                    .setTypeDefinition(Identifiers.BaseDataVariableType)
+                    .build();
+            node.setValue(new DataValue(new Variant(getDataType(i).valueOf(i))));
+            getNodeManager().addNode(node);
+            folder.addOrganizes(node);
+            variables.add(node);
+        }
+    }
+
+    @Override
+    public void onDataItemsCreated(final List<DataItem> dataItems) {
+        subscriptionModel.onDataItemsCreated(dataItems);
+    }
+
+    @Override
+    public void onDataItemsModified(final List<DataItem> dataItems) {
+        subscriptionModel.onDataItemsModified(dataItems);
+    }
+
+    @Override
+    public void onDataItemsDeleted(final List<DataItem> dataItems) {
+        subscriptionModel.onDataItemsDeleted(dataItems);
+    }
+
+    @Override
+    public void onMonitoringModeChanged(final List<MonitoredItem> monitoredItems) {
+        subscriptionModel.onMonitoringModeChanged(monitoredItems);
+    }
+}
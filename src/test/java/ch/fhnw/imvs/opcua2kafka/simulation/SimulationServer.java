@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 FHNW (University of Applied Sciences and Arts Northwestern Switzerland)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.fhnw.imvs.opcua2kafka.simulation;
+
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.api.config.OpcUaServerConfig;
+import org.eclipse.milo.opcua.sdk.server.identity.UsernameIdentityValidator;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.security.DefaultCertificateManager;
+import org.eclipse.milo.opcua.stack.core.security.DefaultTrustListManager;
+import org.eclipse.milo.opcua.stack.core.security.SecurityPolicy;
+import org.eclipse.milo.opcua.stack.core.transport.TransportProfile;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MessageSecurityMode;
+import org.eclipse.milo.opcua.stack.server.EndpointConfiguration;
+import org.eclipse.milo.opcua.stack.server.security.DefaultServerCertificateValidator;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * In-process OPC UA server which exposes a configurable number of simulated variables.
+ *
+ * Used by benchmarks and load tests, so that they can run without a PLC.
+ * The server offers a single endpoint without security.
+ * If a change interval is set, all variables get a new value in every interval.
+ */
+public final class SimulationServer implements AutoCloseable {
+
+    /**
+     * Data types of the simulated variables.
+     */
+    public enum DataType {
+        DOUBLE(Identifiers.Double, (value) -> (double) value),
+        INT32(Identifiers.Int32, (value) -> (int) value),
+        BOOLEAN(Identifiers.Boolean, (value) -> value % 2 == 0),
+        STRING(Identifiers.String, (value) -> "Value " + value);
+
+        private final NodeId identifier;
+
+        private final LongFunction<Object> values;
+
+        DataType(final NodeId identifier, final LongFunction<Object> values) {
+            this.identifier = identifier;
+            this.values = values;
+        }
+
+        NodeId getIdentifier() {
+            return identifier;
+        }
+
+        Object valueOf(final long value) {
+            return values.apply(value);
+        }
+    }
+
+    private static final String PATH = "/simulation";
+
+    private final OpcUaServer server;
+
+    private final SimulationNamespace namespace;
+
+    private final String endpointUrl;
+
+    private final ScheduledExecutorService changeExecutor;
+
+    private final AtomicLong changes = new AtomicLong();
+
+    private SimulationServer(final OpcUaServer server,
+                             final SimulationNamespace namespace,
+                             final String endpointUrl,
+                             final long changeInterval) {
+        this.server = server;
+        this.namespace = namespace;
+        this.endpointUrl = endpointUrl;
+        if (changeInterval > 0) {
+            changeExecutor = Executors.newSingleThreadScheduledExecutor();
+            changeExecutor.scheduleAtFixedRate(() -> changes.addAndGet(namespace.change()),
+                    changeInterval, changeInterval, TimeUnit.MILLISECONDS);
+        } else {
+            changeExecutor = null;
+        }
+    }
+
+    /**
+     * Starts a simulation server on localhost with constant Double variables.
+     *
+     * @param port TCP port to bind.
+     * @param variableCount Number of simulated variables.
+     * @return Started server.
+     * @throws Exception if the server could not be started.
+     */
+    public static SimulationServer start(final int port, final int variableCount) throws Exception {
+        return start(port, variableCount, List.of(DataType.DOUBLE), 0);
+    }
+
+    /**
+     * Starts a simulation server on localhost.
+     *
+     * @param port TCP port to bind.
+     * @param variableCount Number of simulated variables.
+     * @param dataTypes Data types of the variables, assigned round robin.
+     * @param changeInterval Time in Milliseconds between two changes of every variable, {@code 0} for constant values.
+     * @return Started server.
+     * @throws Exception if the server could not be started.
+     */
+    public static SimulationServer start(final int port,
+                                         final int variableCount,
+                                         final List<DataType> dataTypes,
+                                         final long changeInterval) throws Exception {
+        final DefaultTrustListManager trustListManager =
+                new DefaultTrustListManager(Files.createTempDirectory("opcua2kafka-simulation-pki").toFile());
+
+        final EndpointConfiguration endpoint = EndpointConfiguration.newBuilder()
+                .setBindAddress("localhost")
+                .setHostname("localhost")
+                .setBindPort(port)
+                .setPath(PATH)
+                .setTransportProfile(TransportProfile.TCP_UASC_UABINARY)
+                .setSecurityPolicy(SecurityPolicy.None)
+                .setSecurityMode(MessageSecurityMode.None)
+                .addTokenPolicies(OpcUaServerConfig.USER_TOKEN_POLICY_ANONYMOUS)
+                .build();
+
+        final OpcUaServerConfig config = OpcUaServerConfig.builder()
+                .setApplicationUri("urn:fhnw:opcua2kafka:simulation:server")
+                .setApplicationName(LocalizedText.english("opcua2kafka simulation server"))
+                .setProductUri("urn:fhnw:opcua2kafka:simulation")
+                .setEndpoints(Set.of(endpoint))
+                .setCertificateManager(new DefaultCertificateManager())
+                .setTrustListManager(trustListManager)
+                .setCertificateValidator(new DefaultServerCertificateValidator(trustListManager))
+                .setIdentityValidator(new UsernameIdentityValidator(true, challenge -> false))
+                .build();
+
+        final OpcUaServer server = new OpcUaServer(config);
+        final SimulationNamespace namespace = new SimulationNamespace(server, variableCount, dataTypes);
+        namespace.startup();
+        server.startup().get();
+        return new SimulationServer(server, namespace, "opc.tcp://localhost:" + port + PATH, changeInterval);
+    }
+
+    public String getEndpointUrl() {
+        return endpointUrl;
+    }
+
+    /**
+     * Returns the parseable Node Ids of all simulated variables.
+     *
+     * @return Node Ids in creation order.
+     */
+    public List<String> getNodeIds() {
+        return namespace.getVariables()
+                .stream()
+                .map(UaVariableNode::getNodeId)
+                .map(nodeId -> nodeId.toParseableString())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the number of value changes since the server was started.
+     *
+     * @return Number of changes of all variables.
+     */
+    public long getChangeCount() {
+        return changes.get();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (changeExecutor != null) {
+            changeExecutor.shutdownNow();
+        }
+        server.shutdown().get();
+    }
+}